@@ -0,0 +1,66 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.bench;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JGraphpad benchmarks and writes the results as JSON to a new file
+ * in the results directory, so that the results of different runs can be
+ * compared over time. Usage: <code>java -jar build/jgraphpad-bench.jar
+ * [regexp [directory]]</code> where regexp selects the benchmarks to run
+ * (default is all benchmarks) and directory is the results directory (default
+ * is {@link #RESULTS_DIRECTORY}). The manifest of the jar references
+ * dist/jgraphpad.jar and the runtime dependencies in the lib directory, which
+ * is where they are retrieved from the ivy configurations.
+ */
+public class JGraphpadBenchmarks {
+
+	/**
+	 * Specifies the default results directory. Default is bench/results.
+	 */
+	public static String RESULTS_DIRECTORY = "bench/results";
+
+	/**
+	 * Specifies the default pattern for the benchmarks to run.
+	 */
+	public static String DEFAULT_INCLUDE = "com\\.jgraph\\.bench\\..*";
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args
+	 *            The pattern for the benchmarks and the results directory.
+	 * @throws RunnerException
+	 *             If the benchmarks cannot be run.
+	 */
+	public static void main(String[] args) throws RunnerException {
+		String include = (args.length > 0) ? args[0] : DEFAULT_INCLUDE;
+		File directory = new File((args.length > 1) ? args[1]
+				: RESULTS_DIRECTORY);
+		directory.mkdirs();
+		String filename = "jgraphpad-"
+				+ new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())
+				+ ".json";
+		Options options = new OptionsBuilder().include(include).resultFormat(
+				ResultFormatType.JSON).result(
+				new File(directory, filename).getPath()).build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.bench;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.jgraph.JGraph;
+import org.jgraph.graph.GraphLayoutCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jgraph.codecplugin.JGraphpadGXLCodec;
+import com.jgraph.codecplugin.JGraphpadGraphvizCodec;
+import com.jgraph.pad.graph.JGraphpadGraphLayoutCache;
+
+/**
+ * Measures encoding and decoding of GXL and Graphviz documents using the
+ * codecs of the codec plugin.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true" })
+@State(Scope.Thread)
+public class JGraphpadCodecBenchmark {
+
+	/**
+	 * Holds the number of vertices of each shape.
+	 */
+	@Param( { "10", "100", "1000" })
+	public int size;
+
+	protected JGraphpadDiagramGenerator.BenchmarkApplication application;
+
+	protected JGraph graph;
+
+	protected Object[] cells;
+
+	protected byte[] gxl, dot;
+
+	@Setup
+	public void setup() throws Exception {
+		JGraphpadDiagramGenerator generator = new JGraphpadDiagramGenerator();
+		application = generator.application;
+		GraphLayoutCache cache = new JGraphpadGraphLayoutCache();
+		graph = JGraphpadDiagramGenerator.createGraph(cache);
+		generator.populate(cache, size);
+		cells = graph.getDescendants(graph.getRoots());
+		JGraphpadGXLCodec.setValidateDTD(false);
+		gxl = JGraphpadGXLCodec.encode(graph).getBytes("UTF-8");
+		dot = JGraphpadGraphvizCodec.encode(graph, cells).getBytes("UTF-8");
+	}
+
+	@Benchmark
+	public int encodeGXL() {
+		return JGraphpadGXLCodec.encode(graph).length();
+	}
+
+	@Benchmark
+	public Object decodeGXL() throws Exception {
+		GraphLayoutCache cache = new JGraphpadGraphLayoutCache();
+		JGraphpadDiagramGenerator.createGraph(cache);
+		JGraphpadGXLCodec.decode(new ByteArrayInputStream(gxl), cache,
+				application.createVertex(), application.createEdge());
+		return cache;
+	}
+
+	@Benchmark
+	public int encodeGraphviz() {
+		return JGraphpadGraphvizCodec.encode(graph, cells).length();
+	}
+
+	@Benchmark
+	public Object decodeGraphviz() throws Exception {
+		GraphLayoutCache cache = new JGraphpadGraphLayoutCache();
+		JGraphpadDiagramGenerator.createGraph(cache);
+		JGraphpadGraphvizCodec.decode(new ByteArrayInputStream(dot), cache,
+				application.createVertex(), application.createEdge());
+		return cache;
+	}
+
+}
@@ -0,0 +1,238 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.bench;
+
+import java.awt.Color;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jgraph.JGraph;
+import org.jgraph.graph.DefaultEdge;
+import org.jgraph.graph.DefaultGraphCell;
+import org.jgraph.graph.GraphConstants;
+import org.jgraph.graph.GraphLayoutCache;
+
+import com.jgraph.JGraphpad;
+import com.jgraph.editor.JGraphEditorModel;
+import com.jgraph.pad.JGraphpadDiagram;
+import com.jgraph.pad.JGraphpadFile;
+import com.jgraph.pad.graph.JGraphpadBusinessObject;
+import com.jgraph.pad.graph.JGraphpadGraph;
+import com.jgraph.pad.graph.JGraphpadGraphConstants;
+import com.jgraph.pad.graph.JGraphpadGraphLayoutCache;
+import com.jgraph.pad.graph.JGraphpadRichTextValue;
+import com.jgraph.pad.graph.JGraphpadVertexRenderer;
+
+/**
+ * Creates synthetic diagrams for the benchmarks. A diagram of size n contains
+ * n vertices of each shape of {@link JGraphpadVertexRenderer} on a grid. By
+ * default every fourth vertex has a rich text label, every third vertex has a
+ * gradient and the vertices are connected in a chain where every fifth pair of
+ * vertices is connected by two additional parallel edges. The diagrams are
+ * created using the vertex and edge prototypes of the application and are the
+ * same for the same seed.
+ */
+public class JGraphpadDiagramGenerator {
+
+	/**
+	 * Holds the shapes of the vertices.
+	 */
+	public static final int[] SHAPES = new int[] {
+			JGraphpadVertexRenderer.SHAPE_RECTANGLE,
+			JGraphpadVertexRenderer.SHAPE_CIRCLE,
+			JGraphpadVertexRenderer.SHAPE_DIAMOND,
+			JGraphpadVertexRenderer.SHAPE_ROUNDED,
+			JGraphpadVertexRenderer.SHAPE_CYLINDER,
+			JGraphpadVertexRenderer.SHAPE_TRIANGLE };
+
+	/**
+	 * Specifies the distance between the vertices on the grid.
+	 */
+	public static int SPACING_X = 140, SPACING_Y = 90;
+
+	/**
+	 * References the application that is used to create cells and models.
+	 */
+	protected BenchmarkApplication application = new BenchmarkApplication();
+
+	/**
+	 * Holds the seed of the random colors.
+	 */
+	protected long seed;
+
+	/**
+	 * Holds the interval of the vertices with rich text labels. Default is 4.
+	 */
+	protected int richTextInterval = 4;
+
+	/**
+	 * Specifies if the vertices should be connected. Default is true.
+	 */
+	protected boolean connected = true;
+
+	/**
+	 * Constructs a new generator with a seed of 0.
+	 */
+	public JGraphpadDiagramGenerator() {
+		this(0);
+	}
+
+	/**
+	 * Constructs a new generator with the specified seed.
+	 *
+	 * @param seed
+	 *            The seed of the random colors.
+	 */
+	public JGraphpadDiagramGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the interval of the vertices with rich text labels, eg. 1 to use
+	 * rich text labels for all vertices.
+	 * 
+	 * @param richTextInterval
+	 *            The interval of the vertices with rich text labels.
+	 */
+	public void setRichTextInterval(int richTextInterval) {
+		this.richTextInterval = richTextInterval;
+	}
+
+	/**
+	 * Sets if the vertices should be connected by edges.
+	 * 
+	 * @param connected
+	 *            Whether to insert edges between the vertices.
+	 */
+	public void setConnected(boolean connected) {
+		this.connected = connected;
+	}
+
+	/**
+	 * Returns a new document model that is configured by the application, so
+	 * that it can read and write JGraphpad files.
+	 *
+	 * @return Returns a new document model.
+	 */
+	public JGraphEditorModel createModel() {
+		return application.createModel();
+	}
+
+	/**
+	 * Returns a new file with a single diagram of the specified size.
+	 *
+	 * @param filename
+	 *            The filename of the new file.
+	 * @param size
+	 *            The number of vertices of each shape.
+	 * @return Returns a new file.
+	 */
+	public JGraphpadFile createFile(String filename, int size) {
+		JGraphpadFile file = new JGraphpadFile(filename);
+		file.add(createDiagram("Diagram", size));
+		return file;
+	}
+
+	/**
+	 * Returns a new diagram of the specified size.
+	 *
+	 * @param name
+	 *            The name of the new diagram.
+	 * @param size
+	 *            The number of vertices of each shape.
+	 * @return Returns a new diagram.
+	 */
+	public JGraphpadDiagram createDiagram(String name, int size) {
+		GraphLayoutCache cache = new JGraphpadGraphLayoutCache();
+		populate(cache, size);
+		return new JGraphpadDiagram(name, cache);
+	}
+
+	/**
+	 * Inserts the cells of a diagram of the specified size into the specified
+	 * cache.
+	 *
+	 * @param cache
+	 *            The cache to insert the cells into.
+	 * @param size
+	 *            The number of vertices of each shape.
+	 */
+	public void populate(GraphLayoutCache cache, int size) {
+		Random random = new Random(seed);
+		int count = size * SHAPES.length;
+		int columns = Math.max(1, (int) Math.sqrt(count));
+		List vertices = new ArrayList(count);
+		for (int i = 0; i < count; i++) {
+			Object value = (i % richTextInterval == 0) ? (Object) new JGraphpadRichTextValue(
+					"Vertex " + i) : "Vertex " + i;
+			DefaultGraphCell vertex = (DefaultGraphCell) application
+					.createVertex(new JGraphpadBusinessObject(value));
+			Map attributes = vertex.getAttributes();
+			JGraphpadGraphConstants.setVertexShape(attributes, SHAPES[i
+					% SHAPES.length]);
+			GraphConstants.setBounds(attributes, new Rectangle2D.Double(
+					(i % columns) * SPACING_X, (i / columns) * SPACING_Y, 100,
+					50));
+			GraphConstants.setBackground(attributes, new Color(random
+					.nextInt(0x1000000)));
+			GraphConstants.setOpaque(attributes, true);
+			if (i % 3 == 0)
+				GraphConstants.setGradientColor(attributes, new Color(random
+						.nextInt(0x1000000)));
+			vertices.add(vertex);
+		}
+		List cells = new ArrayList(vertices);
+		for (int i = 1; i < count && connected; i++) {
+			DefaultGraphCell source = (DefaultGraphCell) vertices.get(i - 1);
+			DefaultGraphCell target = (DefaultGraphCell) vertices.get(i);
+			int edges = (i % 5 == 0) ? 3 : 1;
+			for (int j = 0; j < edges; j++) {
+				DefaultEdge edge = application
+						.createEdge(new JGraphpadBusinessObject(
+								(j == 0) ? "Edge " + i : ""));
+				if (edges > 1)
+					GraphConstants.setRouting(edge.getAttributes(),
+							JGraphpadGraphConstants.getParallelEdgeRouting());
+				edge.setSource(source.getChildAt(0));
+				edge.setTarget(target.getChildAt(0));
+				cells.add(edge);
+			}
+		}
+		cache.insert(cells.toArray());
+	}
+
+	/**
+	 * Returns a new graph for the specified cache with antialiasing enabled.
+	 *
+	 * @param cache
+	 *            The cache to create the graph for.
+	 * @return Returns a new graph.
+	 */
+	public static JGraph createGraph(GraphLayoutCache cache) {
+		JGraph graph = new JGraphpadGraph(cache);
+		graph.setAntiAliased(true);
+		return graph;
+	}
+
+	/**
+	 * Application that makes the model factory method accessible.
+	 */
+	public static class BenchmarkApplication extends JGraphpad {
+
+		public JGraphEditorModel createModel() {
+			return super.createModel();
+		}
+
+	}
+
+}
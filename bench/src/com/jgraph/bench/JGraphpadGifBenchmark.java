@@ -0,0 +1,151 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.bench;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jgraph.pad.util.JGraphpadGifWriter;
+import com.jgraph.pad.util.JGraphpadImageEncoder;
+
+/**
+ * Compares the legacy {@link JGraphpadImageEncoder.GifEncoder} with the
+ * {@link JGraphpadGifWriter}. The legacy encoder is only measured on images
+ * with at most 256 colors since it cannot write other images. Images with
+ * antialiased shapes are measured with and without dithering.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JGraphpadGifBenchmark {
+
+	/**
+	 * Image with flat shapes in at most 64 colors.
+	 */
+	@State(Scope.Thread)
+	public static class FlatImage {
+
+		@Param( { "512", "2048" })
+		public int size;
+
+		public BufferedImage image;
+
+		public ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		@Setup
+		public void setup() {
+			image = createImage(size, false);
+		}
+
+	}
+
+	/**
+	 * Image with antialiased shapes in more than 256 colors.
+	 */
+	@State(Scope.Thread)
+	public static class AntialiasedImage {
+
+		@Param( { "512", "2048" })
+		public int size;
+
+		public BufferedImage image;
+
+		public ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		@Setup
+		public void setup() {
+			image = createImage(size, true);
+		}
+
+	}
+
+	/**
+	 * Returns a diagram-like image of the specified size with boxes and lines
+	 * in 64 colors.
+	 */
+	protected static BufferedImage createImage(int size, boolean antialiased) {
+		BufferedImage image = new BufferedImage(size, size * 3 / 4,
+				BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		if (antialiased)
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+					RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(Color.white);
+		g.fillRect(0, 0, image.getWidth(), image.getHeight());
+		g.setStroke(new BasicStroke(2));
+		Random random = new Random(size);
+		for (int i = 0; i < size / 4; i++) {
+			int rgb = random.nextInt(64);
+			g.setColor(new Color((rgb & 3) * 85, ((rgb >> 2) & 3) * 85,
+					((rgb >> 4) & 3) * 85));
+			int x = random.nextInt(image.getWidth());
+			int y = random.nextInt(image.getHeight());
+			g.fillRoundRect(x, y, 80, 30, 10, 10);
+			g.setColor(Color.black);
+			g.drawLine(x + 40, y + 15, random.nextInt(image.getWidth()), random
+					.nextInt(image.getHeight()));
+		}
+		g.dispose();
+		return image;
+	}
+
+	@Benchmark
+	public int legacyEncoder(FlatImage state) throws IOException {
+		state.out.reset();
+		new JGraphpadImageEncoder.GifEncoder(state.image, state.out).encode();
+		return state.out.size();
+	}
+
+	@Benchmark
+	public int gifWriter(FlatImage state) throws IOException {
+		state.out.reset();
+		JGraphpadGifWriter.write(state.image, state.out);
+		return state.out.size();
+	}
+
+	@Benchmark
+	public int gifWriterQuantized(AntialiasedImage state) throws IOException {
+		state.out.reset();
+		JGraphpadGifWriter.write(state.image, state.out);
+		return state.out.size();
+	}
+
+	@Benchmark
+	public int gifWriterDithered(AntialiasedImage state) throws IOException {
+		state.out.reset();
+		JGraphpadGifWriter writer = new JGraphpadGifWriter(state.out);
+		writer.setDither(true);
+		writer.addFrame(state.image, 0);
+		writer.finish();
+		return state.out.size();
+	}
+
+}
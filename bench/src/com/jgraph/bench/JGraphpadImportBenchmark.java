@@ -0,0 +1,77 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.bench;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jgraph.graph.GraphLayoutCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jgraph.pad.action.JGraphpadFileAction;
+import com.jgraph.pad.graph.JGraphpadGraphLayoutCache;
+
+/**
+ * Measures the import of comma-separated edge lists with
+ * {@link JGraphpadFileAction#importCSVFile(GraphLayoutCache, java.io.InputStream, String, Object, Object, String)}.
+ * The edge lists connect random pairs of a tenth as many vertices as there
+ * are edges and are the same for each run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true" })
+@State(Scope.Thread)
+public class JGraphpadImportBenchmark {
+
+	/**
+	 * Holds the number of lines of the edge list.
+	 */
+	@Param( { "1000", "10000", "100000" })
+	public int edges;
+
+	protected JGraphpadDiagramGenerator.BenchmarkApplication application;
+
+	protected byte[] csv;
+
+	@Setup
+	public void setup() throws Exception {
+		application = new JGraphpadDiagramGenerator().application;
+		Random random = new Random(0);
+		int vertices = Math.max(2, edges / 10);
+		StringBuffer buffer = new StringBuffer(edges * 16);
+		for (int i = 0; i < edges; i++)
+			buffer.append("v" + random.nextInt(vertices) + ",v"
+					+ random.nextInt(vertices) + ",e" + i + "\n");
+		csv = buffer.toString().getBytes("UTF-8");
+	}
+
+	@Benchmark
+	public Object importCSV() throws Exception {
+		GraphLayoutCache cache = new JGraphpadGraphLayoutCache();
+		JGraphpadFileAction.importCSVFile(cache, new ByteArrayInputStream(
+				csv), ",", application.createVertex(), application
+				.createEdge(), "");
+		return cache;
+	}
+
+}
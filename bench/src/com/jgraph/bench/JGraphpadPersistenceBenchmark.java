@@ -0,0 +1,91 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jgraph.editor.JGraphEditorModel;
+import com.jgraph.pad.JGraphpadFile;
+import com.jgraph.pad.util.JGraphpadBinaryCodec;
+
+/**
+ * Measures loading and saving of files using
+ * {@link JGraphEditorModel#readObject(java.io.InputStream, String)} and
+ * {@link JGraphEditorModel#writeObject(Object, java.io.OutputStream, String)}
+ * in the XML and in the binary format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JGraphpadPersistenceBenchmark {
+
+	/**
+	 * Holds the number of vertices of each shape.
+	 */
+	@Param( { "10", "100", "1000" })
+	public int size;
+
+	/**
+	 * Holds the extension of the file format.
+	 */
+	@Param( { ".xml", JGraphpadBinaryCodec.EXTENSION })
+	public String format;
+
+	protected JGraphEditorModel model;
+
+	protected JGraphpadFile file;
+
+	protected String uri;
+
+	protected byte[] data;
+
+	protected ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	@Setup
+	public void setup() throws IOException {
+		JGraphpadDiagramGenerator generator = new JGraphpadDiagramGenerator();
+		model = generator.createModel();
+		uri = "benchmark" + format;
+		file = generator.createFile(uri, size);
+		model.writeObject(file, out, uri);
+		data = out.toByteArray();
+	}
+
+	@Benchmark
+	public int save() throws IOException {
+		out.reset();
+		model.writeObject(file, out, uri);
+		return out.size();
+	}
+
+	@Benchmark
+	public Object load() throws IOException {
+		return model.readObject(new ByteArrayInputStream(data), uri);
+	}
+
+}
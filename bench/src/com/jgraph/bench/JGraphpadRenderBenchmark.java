@@ -0,0 +1,94 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.bench;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.jgraph.JGraph;
+import org.jgraph.graph.GraphLayoutCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jgraph.pad.graph.JGraphpadGraphLayoutCache;
+import com.jgraph.pad.util.JGraphpadRenderService;
+import com.jgraph.pad.util.JGraphpadTiledImage;
+import com.jgraph.svgplugin.JGraphpadSVGAction;
+
+/**
+ * Measures painting a diagram into an image using the
+ * {@link JGraphpadRenderService}, writing it as a PNG image using the
+ * {@link JGraphpadTiledImage} and exporting it as an SVG document. The sizes
+ * are smaller than for the other benchmarks to limit the size of the images.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true" })
+@State(Scope.Thread)
+public class JGraphpadRenderBenchmark {
+
+	/**
+	 * Holds the number of vertices of each shape.
+	 */
+	@Param( { "10", "50", "200" })
+	public int size;
+
+	protected GraphLayoutCache cache;
+
+	protected JGraph graph;
+
+	protected ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	@Setup
+	public void setup() {
+		cache = new JGraphpadGraphLayoutCache();
+		graph = JGraphpadDiagramGenerator.createGraph(cache);
+		new JGraphpadDiagramGenerator().populate(cache, size);
+	}
+
+	@Benchmark
+	public int renderToImage() {
+		BufferedImage image = JGraphpadRenderService.getSharedInstance()
+				.getImage(cache, graph, Color.white, 5);
+		return image.getWidth();
+	}
+
+	@Benchmark
+	public int writePNG() throws IOException {
+		out.reset();
+		ImageIO.write(new JGraphpadTiledImage(cache, graph, Color.white, null,
+				5), "png", out);
+		return out.size();
+	}
+
+	@Benchmark
+	public int exportSVG() throws IOException {
+		out.reset();
+		JGraphpadSVGAction.writeSVG(graph, out, 10);
+		return out.size();
+	}
+
+}
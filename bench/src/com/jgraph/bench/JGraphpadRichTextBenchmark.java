@@ -0,0 +1,133 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.text.Document;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.jgraph.editor.JGraphEditorModel;
+import com.jgraph.pad.graph.JGraphpadRichTextValue;
+
+/**
+ * Measures loading of files where all vertices have rich text labels and no
+ * edges, so that the time is not dominated by the edge routing, and the
+ * conversion of rich text values to plain text and documents. The methods
+ * with the editorKit suffix measure the conversions using the RTF editor kit
+ * directly for comparison.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JGraphpadRichTextBenchmark {
+
+	/**
+	 * Holds the number of rich text labels.
+	 */
+	@Param( { "1000", "10000" })
+	public int size;
+
+	/**
+	 * Specifies the number of distinct labels to be inserted into documents.
+	 */
+	public static int DISTINCT_LABELS = 100;
+
+	protected JGraphEditorModel model;
+
+	protected byte[] data;
+
+	protected String[] labels;
+
+	protected Document document = JGraphpadRichTextValue
+			.createDefaultDocument(null);
+
+	@Setup
+	public void setup() throws IOException {
+		JGraphpadDiagramGenerator generator = new JGraphpadDiagramGenerator();
+		generator.setRichTextInterval(1);
+		generator.setConnected(false);
+		model = generator.createModel();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		model.writeObject(generator.createFile("benchmark.xml", size
+				/ JGraphpadDiagramGenerator.SHAPES.length), out,
+				"benchmark.xml");
+		data = out.toByteArray();
+		labels = new String[size];
+		for (int i = 0; i < size; i++)
+			labels[i] = new JGraphpadRichTextValue("Label " + i).getRichText();
+	}
+
+	@Benchmark
+	public Object load() throws IOException {
+		return model.readObject(new ByteArrayInputStream(data), "benchmark.xml");
+	}
+
+	@Benchmark
+	public int plainText() {
+		int length = 0;
+		for (int i = 0; i < labels.length; i++) {
+			JGraphpadRichTextValue value = new JGraphpadRichTextValue();
+			value.setRichText(labels[i]);
+			length += value.toString().length();
+		}
+		return length;
+	}
+
+	@Benchmark
+	public int plainTextEditorKit() throws Exception {
+		int length = 0;
+		for (int i = 0; i < labels.length; i++) {
+			Document doc = JGraphpadRichTextValue.createDefaultDocument(null);
+			JGraphpadRichTextValue.editorKit.read(new ByteArrayInputStream(
+					labels[i].getBytes()), doc, 0);
+			length += doc.getText(0, doc.getLength()).trim().length();
+		}
+		return length;
+	}
+
+	@Benchmark
+	public int insertInto() {
+		JGraphpadRichTextValue value = new JGraphpadRichTextValue();
+		for (int i = 0; i < labels.length; i++) {
+			value.setRichText(labels[i % DISTINCT_LABELS]);
+			value.insertInto(document);
+		}
+		return document.getLength();
+	}
+
+	@Benchmark
+	public int insertIntoEditorKit() throws Exception {
+		for (int i = 0; i < labels.length; i++) {
+			document.remove(0, document.getLength());
+			JGraphpadRichTextValue.editorKit.read(new ByteArrayInputStream(
+					labels[i % DISTINCT_LABELS].getBytes()), document, 0);
+		}
+		return document.getLength();
+	}
+
+}
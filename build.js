@@ -7,4 +7,8 @@ copy("res", "build/classes");
 mkdir("dist");
 jar("dist/jgraphpad.jar", "build/classes", ".*", "manifest.mf");
 
+mkdir("build/bench");
+javac("bench/src", "build/bench");
+jar("build/jgraphpad-bench.jar", "build/bench", ".*", "bench/manifest.mf");
+
 publish("dist")
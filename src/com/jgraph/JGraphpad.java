@@ -71,7 +71,9 @@ import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 import com.jgraph.editor.JGraphEditorAction;
+import com.jgraph.editor.JGraphEditorDiagram;
 import com.jgraph.editor.JGraphEditorFactory;
+import com.jgraph.editor.JGraphEditorFile;
 import com.jgraph.editor.JGraphEditorKit;
 import com.jgraph.editor.JGraphEditorModel;
 import com.jgraph.editor.JGraphEditorPlugin;
@@ -79,6 +81,7 @@ import com.jgraph.editor.JGraphEditorResources;
 import com.jgraph.editor.JGraphEditorSettings;
 import com.jgraph.editor.JGraphEditorTool;
 import com.jgraph.editor.factory.JGraphEditorComboBox;
+import com.jgraph.editor.factory.JGraphEditorDiagramPane;
 import com.jgraph.editor.factory.JGraphEditorNavigator;
 import com.jgraph.pad.JGraphpadDiagram;
 import com.jgraph.pad.JGraphpadFile;
@@ -90,8 +93,11 @@ import com.jgraph.pad.action.JGraphpadFormatAction;
 import com.jgraph.pad.action.JGraphpadHelpAction;
 import com.jgraph.pad.action.JGraphpadViewAction;
 import com.jgraph.pad.dialog.JGraphpadAuthenticator;
+import com.jgraph.pad.dialog.JGraphpadDialogs;
 import com.jgraph.pad.factory.JGraphpadComboBox;
 import com.jgraph.pad.factory.JGraphpadConsole;
+import com.jgraph.pad.factory.JGraphpadDiagramPane;
+import com.jgraph.pad.factory.JGraphpadFindPanel;
 import com.jgraph.pad.factory.JGraphpadLibraryPane;
 import com.jgraph.pad.factory.JGraphpadOpenRecentMenu;
 import com.jgraph.pad.factory.JGraphpadPane;
@@ -104,6 +110,7 @@ import com.jgraph.pad.graph.JGraphpadGraphConstants;
 import com.jgraph.pad.graph.JGraphpadGraphLayoutCache;
 import com.jgraph.pad.graph.JGraphpadGraphModel;
 import com.jgraph.pad.graph.JGraphpadHeavyweightRenderer;
+import com.jgraph.pad.graph.JGraphpadLevelOfDetail;
 import com.jgraph.pad.graph.JGraphpadMarqueeHandler;
 import com.jgraph.pad.graph.JGraphpadPortView;
 import com.jgraph.pad.graph.JGraphpadRichTextValue;
@@ -112,8 +119,10 @@ import com.jgraph.pad.graph.JGraphpadVertexRenderer;
 import com.jgraph.pad.graph.JGraphpadVertexView;
 import com.jgraph.pad.tool.JGraphpadEdgeTool;
 import com.jgraph.pad.tool.JGraphpadVertexTool;
+import com.jgraph.pad.util.JGraphpadBinaryCodec;
 import com.jgraph.pad.util.JGraphpadFocusManager;
 import com.jgraph.pad.util.JGraphpadImageIcon;
+import com.jgraph.pad.util.JGraphpadJournal;
 import com.jgraph.pad.util.JGraphpadParallelEdgeRouter;
 import com.jgraph.pad.util.JGraphpadParallelSplineRouter;
 import com.jgraph.pad.util.JGraphpadShadowBorder;
@@ -202,6 +211,17 @@ public class JGraphpad {
 	 */
 	public static String NAME_SETTINGSFILE = ".jgraphpad.ini";
 
+	/**
+	 * Defines the path to the directory that holds the journals of modified
+	 * files. If this is null then no journals are written.
+	 */
+	public static String PATH_JOURNAL;
+
+	/**
+	 * Defines the name of the journal directory. Default is .jgraphpad-journal
+	 */
+	public static String NAME_JOURNALDIR = ".jgraphpad-journal";
+
 	/**
 	 * Defines the name for the ui XML document in the editor settings.
 	 */
@@ -416,6 +436,8 @@ public class JGraphpad {
 		try {
 			PATH_USERSETTINGS = System.getProperty("user.home")
 					+ File.separator + NAME_SETTINGSFILE;
+			PATH_JOURNAL = System.getProperty("user.home") + File.separator
+					+ NAME_JOURNALDIR;
 		} catch (SecurityException e) {
 			// ignore
 		}
@@ -551,6 +573,11 @@ public class JGraphpad {
 		editor.getSettings().restoreSplitPane(NAME_USERSETTINGS,
 				JGraphpadPane.KEY_RIGHTSPLIT);
 
+		// Installs the journal and offers to recover the unsaved changes
+		// of the last session before any files are opened.
+		if (PATH_JOURNAL != null)
+			createJournal(editor, mainWindow);
+
 		// Opens the specified documents
 
 		// Removes file actions from the kit for the demo version.
@@ -579,6 +606,71 @@ public class JGraphpad {
 		return mainWindow;
 	}
 
+	/**
+	 * Installs a {@link JGraphpadJournal} in {@link #PATH_JOURNAL} to record
+	 * the changes of all modified files. If journals of a previous session are
+	 * found which contain unsaved changes, then the user is asked whether the
+	 * changes should be recovered before the journal is read. Journals of
+	 * other instances which are still running are ignored, all other journals
+	 * are claimed using {@link JGraphpadJournal#claim(File)} before they are
+	 * read or deleted. Journals which are older than their files, have been
+	 * recovered or declined are deleted. Journals which cannot be recovered
+	 * are kept using {@link JGraphpadJournal#keep(File)} and the user is told
+	 * where to find them.
+	 * 
+	 * @param editor
+	 *            The editor to install the journal for.
+	 * @param mainWindow
+	 *            The parent window for the recovery dialogs.
+	 */
+	protected void createJournal(JGraphEditor editor, Window mainWindow) {
+		final JGraphpadJournal journal = new JGraphpadJournal(editor
+				.getModel(), new File(PATH_JOURNAL));
+		File[] journals = journal.getJournals();
+		editor.getModel().setJournal(journal);
+		editor.getModel().addTreeModelListener(journal);
+		editor.getSettings().addShutdownHook(
+				new JGraphEditorSettings.ShutdownHook() {
+
+					// Deletes the journals of all files as the user has
+					// chosen to save or discard the changes on exit.
+					public void shutdown() {
+						journal.shutdown();
+					}
+				});
+		for (int i = 0; i < journals.length; i++) {
+			File claimed = null;
+			try {
+				claimed = journal.claim(journals[i]);
+				if (claimed != null) {
+					if (journal.isRecoverable(claimed)
+							&& JGraphpadDialogs.getSharedInstance()
+									.confirmDialog(
+											mainWindow,
+											JGraphEditorResources.getString(
+													"RecoverChanges", journal
+															.getName(claimed)),
+											true, false)) {
+						JGraphEditorFile file = journal.recover(claimed);
+						editor.getModel().addRoot(file);
+						editor.getModel().setModified(file, true);
+						journal.snapshot(file);
+					}
+					claimed.delete();
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+				File failed = (claimed != null) ? claimed : journals[i];
+				File kept = journal.keep(failed);
+				JGraphpadDialogs.getSharedInstance().errorDialog(
+						mainWindow,
+						JGraphEditorResources.getString("RecoveryFailed",
+								new Object[] { failed.getName(),
+										kept.getPath() }));
+			}
+		}
+	}
+
 	/**
 	 * Helper method that invokes the specified factory method and configures
 	 * the main window by setting its bounds and installing window listeners.
@@ -777,6 +869,12 @@ public class JGraphpad {
 			settings.add(NAME_USERSETTINGS, JGraphEditorResources
 					.getInputStream(PATH_DEFAULTSETTINGS));
 
+		// Reads the level of detail thresholds for the renderers from the
+		// user settings. Missing thresholds are added with their defaults
+		// so that they appear in the stored user settings.
+		JGraphpadLevelOfDetail.getSharedInstance().configure(
+				settings.getProperties(NAME_USERSETTINGS));
+
 		// Adds a shutdown hook to save the user settings when
 		// the program terminates. This shutdown hook is added
 		// at creation time to make sure it is the last hook
@@ -870,7 +968,10 @@ public class JGraphpad {
 	 * value that can hold text formatting information. <br>
 	 * <b>JGraphShadowBorder </b> <br>
 	 * Since the shadow border is a singleton we must tell the decoder which
-	 * method to use in order to find the shared instance of the class.
+	 * method to use in order to find the shared instance of the class. <br>
+	 * <b>JGraphpadBinaryCodec </b> <br>
+	 * Files with the {@link JGraphpadBinaryCodec#EXTENSION} are read and
+	 * written using the binary codec instead of the XML encoder.
 	 * 
 	 * @param model
 	 *            The document model to be configured.
@@ -934,6 +1035,10 @@ public class JGraphpad {
 								"getParallelSplineRouting", null);
 					}
 				});
+
+		// Binary file format
+		model.addCodec(JGraphpadBinaryCodec.EXTENSION,
+				new JGraphpadBinaryCodec());
 	}
 
 	/**
@@ -976,7 +1081,7 @@ public class JGraphpad {
 			 * library pane (ie of its backing graph) changes.
 			 */
 			public void valueChanged(GraphSelectionEvent e) {
-				kit.update();
+				kit.scheduleUpdate(JGraphEditorKit.CHANGE_SELECTION);
 			}
 
 		};
@@ -990,7 +1095,7 @@ public class JGraphpad {
 			 */
 			public void propertyChange(PropertyChangeEvent e) {
 				if (e.getPropertyName().equals("permanentFocusOwner"))
-					kit.update();
+					kit.scheduleUpdate(JGraphEditorKit.CHANGE_FOCUS);
 
 				// Keeps the selection listener installed with the library
 				// pane's backing graph. Travels along with the focus.
@@ -1012,12 +1117,39 @@ public class JGraphpad {
 					 * (non-Javadoc)
 					 */
 					public void propertyChange(PropertyChangeEvent e) {
-						kit.update();
+						kit.scheduleUpdate(getChanges(e.getPropertyName()));
 					}
 				});
 		kit.update();
 	}
 
+	/**
+	 * Returns the kinds of changes for the specified property name of an event
+	 * of the {@link JGraphpadFocusManager} as a combination of the
+	 * JGraphEditorKit.CHANGE_* constants. Names which are not notifications
+	 * of the focus manager are property changes of the focused graph.
+	 * 
+	 * @param name
+	 *            The name of the property that has changed.
+	 * @return Returns the kinds of changes for <code>name</code>.
+	 */
+	protected int getChanges(String name) {
+		if (JGraphpadFocusManager.FOCUSED_GRAPH_PROPERTY.equals(name))
+			return JGraphEditorKit.CHANGE_FOCUS;
+		else if (JGraphpadFocusManager.SELECTION_CHANGE_NOTIFICATION
+				.equals(name))
+			return JGraphEditorKit.CHANGE_SELECTION;
+		else if (JGraphpadFocusManager.MODEL_CHANGE_NOTIFICATION.equals(name))
+			return JGraphEditorKit.CHANGE_MODEL;
+		else if (JGraphpadFocusManager.GRAPHLAYOUT_CHANGE_NOTIFICATION
+				.equals(name))
+			return JGraphEditorKit.CHANGE_LAYOUT;
+		else if (JGraphpadFocusManager.UNDOABLE_CHANGE_NOTIFICATION
+				.equals(name))
+			return JGraphEditorKit.CHANGE_UNDO;
+		return JGraphEditorKit.CHANGE_PROPERTY;
+	}
+
 	//
 	// Actions
 	//
@@ -1211,7 +1343,9 @@ public class JGraphpad {
 	 * Constructs a default factory for new editors. This implementation
 	 * constructs a new instance of JGraphEditorFactory and overrides
 	 * {@link JGraphEditorFactory#createGraph(GraphLayoutCache)} to call
-	 * {@link #createGraph(JGraphEditor, GraphLayoutCache)} and configures the
+	 * {@link #createGraph(JGraphEditor, GraphLayoutCache)} and
+	 * {@link JGraphEditorFactory#createDiagramPane(JGraphEditorDiagram)} to
+	 * return a {@link JGraphpadDiagramPane} and configures the
 	 * factory using
 	 * {@link #configureFactory(JGraphEditor, JGraphEditorFactory)}.
 	 * 
@@ -1224,6 +1358,12 @@ public class JGraphpad {
 			public JGraph createGraph(GraphLayoutCache graphLayoutCache) {
 				return JGraphpad.this.createGraph(editor, graphLayoutCache);
 			}
+
+			public JGraphEditorDiagramPane createDiagramPane(
+					JGraphEditorDiagram diagram) {
+				return new JGraphpadDiagramPane(diagram, createGraph(diagram
+						.getGraphLayoutCache()));
+			}
 		};
 		configureFactory(editor, factory);
 		return factory;
@@ -1267,6 +1407,7 @@ public class JGraphpad {
 		factory.addMethod(new JGraphpadOpenRecentMenu(editor));
 		factory.addMethod(new JGraphpadConsole.FactoryMethod());
 		factory.addMethod(new JGraphpadStatusBar.FactoryMethod(editor));
+		factory.addMethod(new JGraphpadFindPanel.FactoryMethod());
 	}
 
 	/**
@@ -1622,7 +1763,9 @@ public class JGraphpad {
 					if (arg.startsWith("-")) {
 						key = arg.substring(1);
 						arguments.put(key, "");
-						if (key.equals(ARG_VERSION))
+						if (key.equals(ARG_VERSION)
+								|| key
+										.equals(JGraphpadBatchExport.ARG_TRANSPARENT))
 							key = null;
 					} else if (key != null) {
 						arguments.put(key, arg);
@@ -1638,6 +1781,10 @@ public class JGraphpad {
 				System.out.println(USAGE);
 			} else if (arguments.containsKey(ARG_VERSION)) {
 				System.out.println(JGraphpad.VERSION + "\n" + JGraph.VERSION);
+			} else if (arguments.containsKey(JGraphpadBatchExport.ARG_EXPORT)) {
+				if (System.getProperty("java.awt.headless") == null)
+					System.setProperty("java.awt.headless", "true");
+				System.exit(JGraphpadBatchExport.main(files, arguments));
 			} else {
 				// in plugin init
 				new JGraphpad().createApplication(files, arguments);
@@ -1652,7 +1799,7 @@ public class JGraphpad {
 	 * http://java.sun.com/docs/books/tutorial/uiswing/misc/plaf.html#programmatic
 	 * on setting the look and feel.
 	 */
-	public static final String USAGE = "Usage: java com.jgraph.JGraphpad [OPTION]...\n"
+	public static final String USAGE = "Usage: java com.jgraph.JGraphpad [OPTION]... [FILE]...\n"
 			+ "  -"
 			+ ARG_SYSTEMLOOKANDFEEL
 			+ "                               use system look and feel\n"
@@ -1661,6 +1808,18 @@ public class JGraphpad {
 			+ "  -"
 			+ ARG_VERSION
 			+ "                               print version\n"
+			+ "  -"
+			+ JGraphpadBatchExport.ARG_EXPORT
+			+ " DIR                      export the diagrams in FILE... to DIR\n"
+			+ "  -"
+			+ JGraphpadBatchExport.ARG_FORMAT
+			+ " FORMAT,...               export formats, eg. png,svg,pdf,eps\n"
+			+ "  -"
+			+ JGraphpadBatchExport.ARG_THREADS
+			+ " N                       number of export threads\n"
+			+ "  -"
+			+ JGraphpadBatchExport.ARG_TRANSPARENT
+			+ "                     transparent PNG and GIF exports\n"
 			+ "\nTip: java -Dswing.defaultlaf=com.jgoodies.looks.plastic.Plastic3DLookAndFeel\n"
 			+ "Exit status is 0 if OK, 1 if minor problems, 2 if serious trouble.\n"
 			+ "\nReport bugs via http://www.jgraph.com/tracker\n\n";
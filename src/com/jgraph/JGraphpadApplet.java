@@ -17,7 +17,6 @@ import java.util.Hashtable;
 import java.util.Map;
 
 import javax.swing.JButton;
-import javax.swing.JTextPane;
 import javax.swing.text.rtf.RTFEditorKit;
 
 import org.jgraph.graph.AbstractCellView;
@@ -129,7 +128,6 @@ public class JGraphpadApplet extends Applet {
 		// re-initialized.
 		JGraphpadFocusManager.currentGraphFocusManager = new JGraphpadFocusManager();
 		JGraphpadRichTextValue.editorKit = new RTFEditorKit();
-		JGraphpadVertexRenderer.textPane = new JTextPane();
 		JGraphpadVertexView.editor = new JGraphpadRichTextEditor();
 		JGraphpadVertexView.renderer = new JGraphpadVertexRenderer();
 		JGraphpadEdgeView.editor = new JGraphpadRichTextEditor();
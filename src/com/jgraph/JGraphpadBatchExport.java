@@ -0,0 +1,590 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.jgraph.JGraph;
+import org.jgraph.graph.GraphLayoutCache;
+
+import com.jgraph.editor.JGraphEditorDiagram;
+import com.jgraph.editor.JGraphEditorModel;
+import com.jgraph.pad.graph.JGraphpadGraph;
+import com.jgraph.pad.util.JGraphpadBinaryCodec;
+import com.jgraph.pad.util.JGraphpadImageEncoder;
+import com.jgraph.pad.util.JGraphpadRenderService;
+
+/**
+ * Exports the diagrams of a list of files to images without a user interface.
+ * The files are read using {@link JGraphEditorModel#readFile(String)} and each
+ * diagram is written in all requested formats to the output directory. The
+ * files are processed in parallel by a fixed number of worker threads, where
+ * the number of files in memory is limited by the number of threads. Outputs
+ * that are newer than their input file are not written again. Inputs with the
+ * same name get unique output names and files whose outputs would overwrite
+ * the outputs of another file fail. This is invoked
+ * from {@link JGraphpad#main(String[])} if the {@link #ARG_EXPORT} argument is
+ * specified, for example:
+ * <p>
+ * <code>java com.jgraph.JGraphpad -export images -format png,svg,pdf a.xml.gz b.xml.gz</code>
+ */
+public class JGraphpadBatchExport {
+
+	/**
+	 * Defines the export argument name. The value is the output directory.
+	 */
+	public static String ARG_EXPORT = "export";
+
+	/**
+	 * Defines the format argument name. The value is a comma-separated list of
+	 * formats. Default is png.
+	 */
+	public static String ARG_FORMAT = "format";
+
+	/**
+	 * Defines the threads argument name. The value is the number of worker
+	 * threads. Default is the number of available processors.
+	 */
+	public static String ARG_THREADS = "threads";
+
+	/**
+	 * Defines the transparent argument name. If specified then PNG and GIF
+	 * images have a transparent background.
+	 */
+	public static String ARG_TRANSPARENT = "transparent";
+
+	/**
+	 * Specifies the inset around the cells in the output. Default is 5.
+	 */
+	public static int INSET = 5;
+
+	/**
+	 * Maps from formats to the names of the classes and static methods that
+	 * are used to write the format. The methods must have the signature
+	 * <code>(JGraph graph, OutputStream out, int inset)</code>. Formats that
+	 * are not listed here are written as images.
+	 */
+	public static String[][] ENCODERS = new String[][] {
+			{ "svg", "com.jgraph.svgplugin.JGraphpadSVGAction", "writeSVG" },
+			{ "pdf", "com.jgraph.pdfplugin.JGraphpadPDFAction", "writePDF" },
+			{ "eps", "com.jgraph.epsplugin.JGraphpadEPSAction", "writeEPS" } };
+
+	/**
+	 * Specifies the extensions of the files to be exported if a directory is
+	 * specified as an input.
+	 */
+	public static String[] EXTENSIONS = new String[] { ".xml", ".xml.gz",
+			JGraphpadBinaryCodec.EXTENSION };
+
+	/**
+	 * References the application that is used to configure the document
+	 * models.
+	 */
+	protected JGraphpad application;
+
+	/**
+	 * Holds the output directory.
+	 */
+	protected File directory;
+
+	/**
+	 * Holds the formats to be written.
+	 */
+	protected String[] formats;
+
+	/**
+	 * Holds the number of worker threads.
+	 */
+	protected int threads;
+
+	/**
+	 * Specifies if PNG and GIF images should have a transparent background.
+	 */
+	protected boolean transparent;
+
+	/**
+	 * Counts the files that have been exported, skipped and failed.
+	 */
+	protected int exported = 0, skipped = 0, failed = 0;
+
+	/**
+	 * Maps from the absolute input files to their unique base names.
+	 */
+	protected Map baseNames = new HashMap();
+
+	/**
+	 * Maps from the reserved output names to the absolute input files they
+	 * are reserved for.
+	 */
+	protected Map outputs = new HashMap();
+
+	/**
+	 * Constructs a new batch export.
+	 *
+	 * @param application
+	 *            The application to configure the document models.
+	 * @param directory
+	 *            The directory to write the outputs to.
+	 * @param formats
+	 *            The formats to write.
+	 * @param threads
+	 *            The number of worker threads.
+	 * @param transparent
+	 *            Whether PNG and GIF images are transparent.
+	 */
+	public JGraphpadBatchExport(JGraphpad application, File directory,
+			String[] formats, int threads, boolean transparent) {
+		this.application = application;
+		this.directory = directory;
+		this.formats = formats;
+		this.threads = Math.max(1, threads);
+		this.transparent = transparent;
+	}
+
+	/**
+	 * Runs the batch export as specified by the command line arguments and
+	 * returns the exit status.
+	 *
+	 * @param files
+	 *            The files and directories to be exported.
+	 * @param args
+	 *            The command line arguments.
+	 * @return Returns 0 if all files were exported, 1 if some files failed
+	 *         and 2 if the arguments are invalid.
+	 */
+	public static int main(List files, Map args) {
+		String dir = (String) args.get(ARG_EXPORT);
+		if (dir == null || dir.length() == 0 || files.isEmpty()) {
+			System.out.println(JGraphpad.USAGE);
+			return 2;
+		}
+		String format = (String) args.get(ARG_FORMAT);
+		List formats = new ArrayList();
+		StringTokenizer st = new StringTokenizer((format != null && format
+				.length() > 0) ? format : "png", ",");
+		while (st.hasMoreTokens())
+			formats.add(st.nextToken().trim().toLowerCase());
+		int threads = Runtime.getRuntime().availableProcessors();
+		try {
+			String value = (String) args.get(ARG_THREADS);
+			if (value != null && value.length() > 0)
+				threads = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			System.out.println(JGraphpad.USAGE);
+			return 2;
+		}
+		Iterator it = formats.iterator();
+		while (it.hasNext()) {
+			String name = (String) it.next();
+			if (!isSupported(name)) {
+				System.out.println("Unsupported format: " + name);
+				return 2;
+			}
+		}
+		File directory = new File(dir);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			System.out.println("Cannot create " + directory);
+			return 2;
+		}
+		JGraphpadBatchExport export = new JGraphpadBatchExport(
+				new JGraphpad(), directory, (String[]) formats
+						.toArray(new String[formats.size()]), threads, args
+						.containsKey(ARG_TRANSPARENT));
+		return export.run(expand(files));
+	}
+
+	/**
+	 * Returns true if the specified format can be written, that is, if the
+	 * class of the encoder is available or if it is an image format.
+	 *
+	 * @param format
+	 *            The format to check.
+	 * @return Returns true if <code>format</code> is supported.
+	 */
+	public static boolean isSupported(String format) {
+		for (int i = 0; i < ENCODERS.length; i++) {
+			if (ENCODERS[i][0].equals(format)) {
+				try {
+					Class.forName(ENCODERS[i][1]);
+					return true;
+				} catch (Throwable e) {
+					return false;
+				}
+			}
+		}
+		return format.equals("gif")
+				|| ImageIO.getImageWritersByFormatName(format).hasNext();
+	}
+
+	/**
+	 * Returns the list of files for the specified list of filenames, where
+	 * directories are replaced with the files they contain that have one of
+	 * the {@link #EXTENSIONS}.
+	 *
+	 * @param filenames
+	 *            The filenames to be expanded.
+	 * @return Returns a list of files.
+	 */
+	public static List expand(List filenames) {
+		List result = new ArrayList();
+		Iterator it = filenames.iterator();
+		while (it.hasNext())
+			expand(new File(String.valueOf(it.next())), result, true);
+		return result;
+	}
+
+	/**
+	 * Adds the specified file or the files in the specified directory to the
+	 * result.
+	 */
+	protected static void expand(File file, List result, boolean explicit) {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children != null) {
+				Arrays.sort(children);
+				for (int i = 0; i < children.length; i++)
+					expand(children[i], result, false);
+			}
+		} else if (explicit || getExtension(file.getName()) != null)
+			result.add(file);
+	}
+
+	/**
+	 * Returns the extension of the specified filename from
+	 * {@link #EXTENSIONS} or null if the filename has none of the extensions.
+	 */
+	protected static String getExtension(String filename) {
+		String result = null;
+		String lower = filename.toLowerCase();
+		for (int i = 0; i < EXTENSIONS.length; i++)
+			if (lower.endsWith(EXTENSIONS[i])
+					&& (result == null || EXTENSIONS[i].length() > result
+							.length()))
+				result = EXTENSIONS[i];
+		return result;
+	}
+
+	/**
+	 * Exports the specified files using the worker threads and prints the
+	 * timing of each file. The base names of the outputs are reserved using
+	 * {@link #reserveBaseNames(List)} before the first file is exported. At
+	 * most one task per thread is queued so that the number of files in memory
+	 * is bounded.
+	 *
+	 * @param files
+	 *            The files to be exported.
+	 * @return Returns 0 if all files were exported or skipped, 1 otherwise.
+	 */
+	public int run(List files) {
+		long t0 = System.currentTimeMillis();
+		files = reserveBaseNames(files);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue(threads),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		Iterator it = files.iterator();
+		while (it.hasNext()) {
+			final File file = (File) it.next();
+			executor.execute(new Runnable() {
+				public void run() {
+					export(file);
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		System.out.println(exported + " exported, " + skipped + " skipped, "
+				+ failed + " failed in " + (System.currentTimeMillis() - t0)
+				+ " ms");
+		return (failed > 0) ? 1 : 0;
+	}
+
+	/**
+	 * Reserves a unique base name for each of the specified files in the
+	 * order of the list, so that files with the same name in different
+	 * directories or with different extensions do not overwrite each other's
+	 * outputs. Duplicate names are made unique by appending a number. Returns
+	 * the files without the files that appear more than once in the list.
+	 *
+	 * @param files
+	 *            The files to reserve the base names for.
+	 * @return Returns the list of distinct files.
+	 */
+	protected List reserveBaseNames(List files) {
+		List result = new ArrayList(files.size());
+		Iterator it = files.iterator();
+		while (it.hasNext()) {
+			File file = (File) it.next();
+			File key = file.getAbsoluteFile();
+			if (!baseNames.containsKey(key)) {
+				String name = getBaseName(file);
+				String unique = name;
+				for (int j = 2; outputs.containsKey(unique); j++)
+					unique = name + "-" + j;
+				outputs.put(unique, key);
+				baseNames.put(key, unique);
+				if (!unique.equals(name))
+					System.out.println(file + ": exported as " + unique);
+				result.add(file);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Exports all diagrams of the specified file and prints the timing. If the
+	 * outputs for the base name of the file are not up to date then the file
+	 * is read to find the output names of its diagrams, which are reserved
+	 * using {@link #reserveOutputNames(File, String[])}.
+	 *
+	 * @param file
+	 *            The file to be exported.
+	 */
+	protected void export(File file) {
+		long t0 = System.currentTimeMillis();
+		try {
+			int written = 0;
+			if (!isUpToDate(file, new String[] { getReservedName(file) })) {
+				JGraphEditorModel model = application.createModel();
+				Object root = model.readFile(file.getPath());
+				List diagrams = new ArrayList();
+				addDiagrams(model, root, diagrams);
+				String[] names = getOutputNames(file, diagrams);
+				reserveOutputNames(file, names);
+				if (!isUpToDate(file, names))
+					for (int i = 0; i < diagrams.size(); i++)
+						written += export((JGraphEditorDiagram) diagrams
+								.get(i), names[i], file.lastModified());
+			}
+			long dt = System.currentTimeMillis() - t0;
+			synchronized (this) {
+				if (written > 0) {
+					exported++;
+					System.out.println(file + ": " + written + " outputs in "
+							+ dt + " ms");
+				} else {
+					skipped++;
+					System.out.println(file + ": up to date");
+				}
+			}
+		} catch (Throwable e) {
+			synchronized (this) {
+				failed++;
+				System.out.println(file + ": " + e);
+			}
+		}
+	}
+
+	/**
+	 * Writes the specified diagram in all formats whose output is older than
+	 * the specified time and returns the number of outputs written.
+	 */
+	protected int export(JGraphEditorDiagram diagram, String name,
+			long lastModified) throws Exception {
+		int written = 0;
+		GraphLayoutCache cache = diagram.getGraphLayoutCache();
+		if (cache == null || cache.getRoots().length == 0)
+			return 0;
+		JGraph graph = null;
+		for (int i = 0; i < formats.length; i++) {
+			File output = new File(directory, name + "." + formats[i]);
+			if (output.lastModified() <= lastModified) {
+				if (graph == null)
+					graph = new JGraphpadGraph(cache);
+				OutputStream out = new BufferedOutputStream(
+						new FileOutputStream(output));
+				boolean success = false;
+				try {
+					write(graph, formats[i], out);
+					success = true;
+				} finally {
+					out.close();
+
+					// Removes incomplete outputs so that they are not
+					// taken as up to date in the next run
+					if (!success)
+						output.delete();
+				}
+				written++;
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Writes the specified graph in the specified format to the specified
+	 * stream using the {@link #ENCODERS} or the image encoders.
+	 *
+	 * @param graph
+	 *            The graph to be written.
+	 * @param format
+	 *            The format to write the graph in.
+	 * @param out
+	 *            The stream to write to.
+	 */
+	protected void write(JGraph graph, String format, OutputStream out)
+			throws Exception {
+		for (int i = 0; i < ENCODERS.length; i++) {
+			if (ENCODERS[i][0].equals(format)) {
+				Method method = Class.forName(ENCODERS[i][1]).getMethod(
+						ENCODERS[i][2],
+						new Class[] { JGraph.class, OutputStream.class,
+								int.class });
+				try {
+					method.invoke(null, new Object[] { graph, out,
+							new Integer(INSET) });
+				} catch (InvocationTargetException e) {
+					if (e.getCause() instanceof Exception)
+						throw (Exception) e.getCause();
+					throw e;
+				}
+				return;
+			}
+		}
+		Color bg = (transparent && (format.equals("png") || format
+				.equals("gif"))) ? null : graph.getBackground();
+		BufferedImage img = JGraphpadRenderService.getSharedInstance()
+				.getImage(graph.getGraphLayoutCache(), graph, bg, INSET);
+		if (format.equals("gif"))
+			JGraphpadImageEncoder.writeGIF(img, out);
+		else if (!ImageIO.write(img, format, out))
+			throw new IOException("Unsupported format: " + format);
+	}
+
+	/**
+	 * Returns true if the outputs for the specified names in all formats are
+	 * newer than the specified file. The names are the base name of the file
+	 * for files with one diagram and the names from
+	 * {@link #getOutputNames(File, List)} otherwise.
+	 *
+	 * @param file
+	 *            The input file.
+	 * @param names
+	 *            The output names of the diagrams of <code>file</code>.
+	 * @return Returns true if all outputs are newer than <code>file</code>.
+	 */
+	protected boolean isUpToDate(File file, String[] names) {
+		for (int i = 0; i < names.length; i++) {
+			for (int j = 0; j < formats.length; j++) {
+				File output = new File(directory, names[i] + "." + formats[j]);
+				if (output.lastModified() <= file.lastModified())
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reserves the specified output names for the specified file.
+	 *
+	 * @param file
+	 *            The file to reserve the names for.
+	 * @param names
+	 *            The output names to be reserved.
+	 * @throws IOException
+	 *             If one of the names is reserved for another file.
+	 */
+	protected synchronized void reserveOutputNames(File file, String[] names)
+			throws IOException {
+		File key = file.getAbsoluteFile();
+		for (int i = 0; i < names.length; i++) {
+			Object owner = outputs.get(names[i]);
+			if (owner != null && !owner.equals(key))
+				throw new IOException("Output " + names[i]
+						+ " is also used by " + owner);
+		}
+		for (int i = 0; i < names.length; i++)
+			outputs.put(names[i], key);
+	}
+
+	/**
+	 * Returns the base name that was reserved for the specified file using
+	 * {@link #reserveBaseNames(List)} or the name of the file without the
+	 * extension if no name was reserved.
+	 */
+	protected synchronized String getReservedName(File file) {
+		String name = (String) baseNames.get(file.getAbsoluteFile());
+		return (name != null) ? name : getBaseName(file);
+	}
+
+	/**
+	 * Adds all diagrams below the specified node to the specified list.
+	 */
+	protected void addDiagrams(JGraphEditorModel model, Object node,
+			List diagrams) {
+		if (node instanceof JGraphEditorDiagram)
+			diagrams.add(node);
+		if (node != null)
+			for (int i = 0; i < model.getChildCount(node); i++)
+				addDiagrams(model, model.getChild(node, i), diagrams);
+	}
+
+	/**
+	 * Returns the output names for the specified diagrams of the specified
+	 * file. If the file contains one diagram then the reserved base name of
+	 * the file is used, otherwise the name of each diagram is appended to the
+	 * base name. Names are made unique by appending a number.
+	 */
+	protected String[] getOutputNames(File file, List diagrams) {
+		String base = getReservedName(file);
+		String[] names = new String[diagrams.size()];
+		Set used = new HashSet();
+		for (int i = 0; i < names.length; i++) {
+			String name = base;
+			if (names.length > 1)
+				name += "-" + String.valueOf(diagrams.get(i))
+						.replaceAll("[^A-Za-z0-9._-]", "_");
+			String unique = name;
+			for (int j = 2; used.contains(unique); j++)
+				unique = name + "-" + j;
+			used.add(unique);
+			names[i] = unique;
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the name of the specified file without the extension.
+	 */
+	protected static String getBaseName(File file) {
+		String name = file.getName();
+		String ext = getExtension(name);
+		if (ext == null && name.lastIndexOf('.') > 0)
+			ext = name.substring(name.lastIndexOf('.'));
+		return (ext != null) ? name.substring(0, name.length() - ext.length())
+				: name;
+	}
+
+}
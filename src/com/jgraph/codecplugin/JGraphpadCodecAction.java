@@ -11,24 +11,40 @@ package com.jgraph.codecplugin;
 
 import java.awt.Component;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.geom.Rectangle2D;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.ProgressMonitor;
+import javax.swing.ProgressMonitorInputStream;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import org.jgraph.JGraph;
 import org.jgraph.graph.CellView;
 import org.jgraph.graph.DefaultGraphModel;
 import org.jgraph.graph.GraphLayoutCache;
+import org.jgraph.graph.GraphModel;
 
 import com.jgraph.JGraphEditor;
 import com.jgraph.JGraphpad;
 import com.jgraph.editor.JGraphEditorAction;
+import com.jgraph.editor.JGraphEditorResources;
 import com.jgraph.editor.factory.JGraphEditorDiagramPane;
 import com.jgraph.pad.action.JGraphpadFileAction;
 import com.jgraph.pad.graph.JGraphpadBusinessObject;
+import com.jgraph.pad.util.JGraphpadSaveManager;
 
 /**
  * Export actions for HTML image maps, gxl and graphviz.
@@ -40,6 +56,11 @@ public class JGraphpadCodecAction extends JGraphpadFileAction {
 	 */
 	public static final String NAME_SAVEIMAGEMAP = "saveImageMap";
 
+	/**
+	 * Specifies the name for the <code>importGraphviz</code> action.
+	 */
+	public static final String NAME_IMPORTGRAPHVIZ = "importGraphviz";
+
 	/**
 	 * Specifies the name for the <code>saveGXL</code> action.
 	 */
@@ -78,26 +99,23 @@ public class JGraphpadCodecAction extends JGraphpadFileAction {
 							getPermanentFocusOwnerOrParent(),
 							getString("SaveImage"), false, lastDirectory), 0);
 				else if (getName().equals(NAME_SAVEGRAPHVIZ))
-					doSave(dlgs
+					doSaveGraphviz(graph, dlgs.fileDialog(
+							getPermanentFocusOwnerOrParent(),
+							getString("SaveGraphvizFile"), false, ".dot",
+							getString("GraphvizFileDescription"),
+							lastDirectory));
+				else if (getName().equals(NAME_IMPORTGRAPHVIZ))
+					doImportGraphviz(graph.getGraphLayoutCache(), dlgs
 							.fileDialog(getPermanentFocusOwnerOrParent(),
-									getString("SaveGraphvizFile"), false,
+									getString("OpenGraphvizFile"), true,
 									".dot",
 									getString("GraphvizFileDescription"),
-									lastDirectory), JGraphpadGraphvizCodec
-							.encode(
-									graph,
-									(graph.isSelectionEmpty()) ? graph
-											.getRoots() : graph
-											.getSelectionCells()).getBytes());
+									lastDirectory));
 				else if (getName().equals(NAME_SAVEGXL))
-					doSave(dlgs.fileDialog(getPermanentFocusOwnerOrParent(),
+					doSaveGXL(graph, dlgs.fileDialog(
+							getPermanentFocusOwnerOrParent(),
 							getString("SaveGXLFile"), false, ".xml",
-							getString("GXLFileDescription"), lastDirectory),
-							JGraphpadGXLCodec.encode(
-									graph,
-									(graph.isSelectionEmpty()) ? graph
-											.getRoots() : graph
-											.getSelectionCells()).getBytes());
+							getString("GXLFileDescription"), lastDirectory));
 				else if (getName().equals(NAME_IMPORTGXL))
 					doImportGXL(graph.getGraphLayoutCache(), dlgs.fileDialog(
 							getPermanentFocusOwnerOrParent(), getString("OpenGXLFile"),
@@ -130,6 +148,216 @@ public class JGraphpadCodecAction extends JGraphpadFileAction {
 		}
 	}
 
+	/**
+	 * Writes the selection cells or all cells of the specified graph and their
+	 * descendants to the specified file using {@link JGraphpadGraphvizCodec}.
+	 * The cells are copied using {@link #createSnapshot(JGraph, Object[])} and
+	 * the copy is written in a background thread while a progress monitor is
+	 * displayed which allows to cancel the export. If the cells cannot be
+	 * copied then they are written in the calling thread. Errors are displayed
+	 * in an error dialog.
+	 * 
+	 * @param graph
+	 *            The graph to be exported.
+	 * @param filename
+	 *            The filename to write to.
+	 * @throws Exception
+	 *             If the file cannot be opened or written.
+	 */
+	protected void doSaveGraphviz(JGraph graph, final String filename)
+			throws Exception {
+		if (filename != null) {
+			Object[] cells = graph.getDescendants((graph.isSelectionEmpty()) ? graph
+					.getRoots() : graph.getSelectionCells());
+			final JGraph source = createSnapshot(graph, cells);
+			final OutputStream out = editor.getModel().getOutputStream(
+					filename);
+			final JGraphpadGraphvizCodec codec = new JGraphpadGraphvizCodec();
+			if (!JGraphEditor.isURL(filename))
+				lastDirectory = new File(filename).getParentFile();
+			if (source == null) {
+				writeGraphviz(codec, graph, cells, out, filename);
+				return;
+			}
+			final Object[] copies = DefaultGraphModel.getDescendants(
+					source.getModel(),
+					DefaultGraphModel.getRoots(source.getModel())).toArray();
+			final ProgressMonitor monitor = new ProgressMonitor(
+					getActiveFrame(), JGraphEditorResources.getString(
+							"Exporting", filename), null, 0, 2 * copies.length);
+
+			// Updates the progress monitor and cancels the export if the
+			// user has clicked on cancel
+			final Timer timer = new Timer(250, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					if (monitor.isCanceled())
+						codec.cancel();
+					monitor.setProgress(codec.getCount());
+				}
+			});
+			timer.start();
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					Exception error = null;
+					try {
+						writeGraphviz(codec, source, copies, out, filename);
+					} catch (InterruptedIOException e) {
+						// cancelled
+					} catch (Exception e) {
+						error = e;
+					}
+					final Exception exception = error;
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							timer.stop();
+							monitor.close();
+							if (exception != null)
+								dlgs.errorDialog(getActiveFrame(), exception
+										.getLocalizedMessage());
+						}
+					});
+				}
+			}, "JGraphpadGraphvizCodec");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Returns a graph for a copy of the specified cells of the specified
+	 * graph, or null if the cells cannot be copied. The cells must contain
+	 * the descendants of each cell. The copy is created using
+	 * {@link JGraphpadSaveManager#createSnapshot(GraphLayoutCache, Object[])}
+	 * so that it may be written in a background thread while the graph is
+	 * being changed. This must be invoked on the event dispatch thread.
+	 * 
+	 * @param graph
+	 *            The graph that contains the cells.
+	 * @param cells
+	 *            The cells to be copied.
+	 * @return Returns a graph for a copy of <code>cells</code> or null.
+	 */
+	protected JGraph createSnapshot(JGraph graph, Object[] cells) {
+		GraphModel model = graph.getModel();
+		Set set = new HashSet(Arrays.asList(cells));
+		Set added = new HashSet();
+		List roots = new ArrayList();
+		for (int i = 0; i < cells.length; i++)
+			if (!set.contains(model.getParent(cells[i])) && added.add(cells[i]))
+				roots.add(cells[i]);
+		GraphLayoutCache cache = JGraphpadSaveManager.createSnapshot(graph
+				.getGraphLayoutCache(), roots.toArray());
+		return (cache != null) ? editor.getFactory().createGraph(cache) : null;
+	}
+
+	/**
+	 * Writes the specified cells of the specified graph to the specified
+	 * stream using the specified codec and closes the stream. If the cells
+	 * cannot be written or the export is cancelled then the incomplete file is
+	 * deleted, otherwise the file is posted if the filename is an URL.
+	 * 
+	 * @param codec
+	 *            The codec to write the cells with.
+	 * @param graph
+	 *            The graph that contains the cells.
+	 * @param cells
+	 *            The cells to be written.
+	 * @param out
+	 *            The stream to write to.
+	 * @param filename
+	 *            The filename of the stream.
+	 * @throws Exception
+	 *             If the file cannot be written or the export was cancelled.
+	 */
+	protected void writeGraphviz(JGraphpadGraphvizCodec codec, JGraph graph,
+			Object[] cells, OutputStream out, String filename)
+			throws Exception {
+		boolean success = false;
+		try {
+			codec.write(graph, cells, out);
+			success = true;
+		} finally {
+			out.close();
+			if (!success && !JGraphEditor.isURL(filename))
+				new File(filename).delete();
+		}
+		if (JGraphEditor.isURL(filename)) {
+			URL url = new URL(filename);
+			post(url, url.getFile(), MIME_HTML, out);
+		}
+	}
+
+	/**
+	 * Imports the specified Graphviz file into the specified graph layout
+	 * cache using {@link JGraphpadGraphvizCodec}. The file is read in a
+	 * background thread and a progress monitor is displayed which allows to
+	 * cancel the import. Errors are displayed in an error dialog.
+	 * 
+	 * @param cache
+	 *            The graph layout cache to import into.
+	 * @param filename
+	 *            The filename to import from.
+	 * @throws IOException
+	 *             If the file cannot be opened.
+	 */
+	protected void doImportGraphviz(final GraphLayoutCache cache,
+			String filename) throws IOException {
+		if (filename != null) {
+			final InputStream in = new ProgressMonitorInputStream(
+					getActiveFrame(), JGraphEditorResources.getString(
+							"Importing", filename), editor.getModel()
+							.getInputStream(filename));
+			final Object vertexPrototype = getValue(KEY_VERTEXPROTOTYPE);
+			final Object edgePrototype = getValue(KEY_EDGEPROTOTYPE);
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						JGraphpadGraphvizCodec.decode(in, cache,
+								vertexPrototype, edgePrototype);
+					} catch (InterruptedIOException e) {
+						// cancelled
+					} catch (final Exception e) {
+						SwingUtilities.invokeLater(new Runnable() {
+							public void run() {
+								dlgs.errorDialog(getActiveFrame(), e
+										.getLocalizedMessage());
+							}
+						});
+					}
+				}
+			}, "JGraphpadGraphvizCodec");
+			thread.setDaemon(true);
+			thread.start();
+			lastDirectory = new File(filename).getParentFile();
+		}
+	}
+
+	/**
+	 * Writes the selection cells or all cells of the specified graph to the
+	 * specified file using {@link JGraphpadGXLCodec}. The document is written
+	 * directly to the output stream of the file.
+	 * 
+	 * @param graph
+	 *            The graph to be exported.
+	 * @param filename
+	 *            The filename to write to.
+	 * @throws Exception
+	 */
+	protected void doSaveGXL(JGraph graph, String filename) throws Exception {
+		if (filename != null) {
+			Object[] cells = (graph.isSelectionEmpty()) ? graph.getRoots()
+					: graph.getSelectionCells();
+			OutputStream out = editor.getModel().getOutputStream(filename);
+			JGraphpadGXLCodec.encode(graph, cells, out);
+			out.close();
+			if (JGraphEditor.isURL(filename)) {
+				URL url = new URL(filename);
+				post(url, url.getFile(), MIME_HTML, out);
+			} else
+				lastDirectory = new File(filename).getParentFile();
+		}
+	}
+
 	/**
 	 * Exports the specified graph as an image map. The filename and map name
 	 * are constructed out of the specified image filename.
@@ -263,7 +491,7 @@ public class JGraphpadCodecAction extends JGraphpadFileAction {
 		 * therefore created at construction time.
 		 */
 		public JGraphEditorAction actionSaveImageMap, actionSaveGraphViz,
-				actionSaveGXL, actionImportGXL;
+				actionImportGraphViz, actionSaveGXL, actionImportGXL;
 
 		/**
 		 * Constructs the action bundle for the enclosing class.
@@ -273,6 +501,8 @@ public class JGraphpadCodecAction extends JGraphpadFileAction {
 					editor);
 			actionSaveGraphViz = new JGraphpadCodecAction(NAME_SAVEGRAPHVIZ,
 					editor);
+			actionImportGraphViz = new JGraphpadCodecAction(
+					NAME_IMPORTGRAPHVIZ, editor);
 			actionSaveGXL = new JGraphpadCodecAction(NAME_SAVEGXL, editor);
 			actionImportGXL = new JGraphpadCodecAction(NAME_IMPORTGXL, editor);
 			Object vertexPrototype = editor.getSettings().getObject(
@@ -281,6 +511,8 @@ public class JGraphpadCodecAction extends JGraphpadFileAction {
 					JGraphpad.KEY_EDGEPROTOTYPE);
 			actionImportGXL.putValue(KEY_VERTEXPROTOTYPE, vertexPrototype);
 			actionImportGXL.putValue(KEY_EDGEPROTOTYPE, edgePrototype);
+			actionImportGraphViz.putValue(KEY_VERTEXPROTOTYPE, vertexPrototype);
+			actionImportGraphViz.putValue(KEY_EDGEPROTOTYPE, edgePrototype);
 		}
 
 		/*
@@ -288,7 +520,8 @@ public class JGraphpadCodecAction extends JGraphpadFileAction {
 		 */
 		public JGraphEditorAction[] getActions() {
 			return new JGraphEditorAction[] { actionSaveImageMap,
-					actionSaveGraphViz, actionSaveGXL, actionImportGXL };
+					actionSaveGraphViz, actionImportGraphViz, actionSaveGXL,
+					actionImportGXL };
 		}
 
 		/*
@@ -299,6 +532,7 @@ public class JGraphpadCodecAction extends JGraphpadFileAction {
 			boolean e = component instanceof JGraph;
 			actionSaveImageMap.setEnabled(e);
 			actionSaveGraphViz.setEnabled(e);
+			actionImportGraphViz.setEnabled(e);
 			actionSaveGXL.setEnabled(e);
 			actionImportGXL.setEnabled(e);
 		}
@@ -35,23 +35,22 @@ import java.awt.Font;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.Rectangle2D;
-import java.beans.BeanInfo;
-import java.beans.Introspector;
-import java.beans.PropertyDescriptor;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.jgraph.JGraph;
 import org.jgraph.graph.ConnectionSet;
@@ -61,22 +60,31 @@ import org.jgraph.graph.GraphCell;
 import org.jgraph.graph.GraphConstants;
 import org.jgraph.graph.GraphLayoutCache;
 import org.jgraph.graph.GraphModel;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.EntityResolver;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 import com.jgraph.pad.graph.JGraphpadRichTextValue;
 
 /**
- * GXL Codec.
+ * GXL Codec. The codec writes GXL documents to an output stream using a
+ * streaming XML writer and reads them using a pull parser, so that neither
+ * the document nor a DOM is held in memory. While reading, the cells are
+ * inserted into the layout cache in batches as the elements arrive.<br>
+ * The static methods create a new codec for each call. A codec instance holds
+ * the ids of the last encoded or decoded cells and must not be used by
+ * several threads at the same time, but separate instances may be used
+ * concurrently.
  */
 public class JGraphpadGXLCodec {
 
+	/**
+	 * Specifies the minimum number of cells to insert at once while decoding.
+	 * Default is 5000.
+	 */
+	public static int BATCH_SIZE = 5000;
+
+	/**
+	 * Holds the encoding and decoding hashtables of the last call to the
+	 * static methods.
+	 */
 	static transient Hashtable encodeHash;
 
 	static transient Hashtable decodeHash;
@@ -87,13 +95,27 @@ public class JGraphpadGXLCodec {
 	 */
 	private static boolean validateDTD = false;
 
+	/**
+	 * Maps from the encoded vertices to their GXL ids.
+	 */
+	protected Hashtable ids = new Hashtable();
+
+	/**
+	 * Maps from the GXL ids to the decoded vertices.
+	 */
+	protected Hashtable cells = new Hashtable();
+
 	/**
 	 * Retrieves the encoding Hashtable with the node's Id.
 	 * 
 	 * It may be usefull to sirialize the values of the nodes.
 	 * 
 	 * @return Hastable with elements : ((key : node), (value : GXL id)).
+	 * @deprecated Use {@link #getEncodingHashtable()} on a codec instance,
+	 *             which is safe if several graphs are encoded at the same
+	 *             time.
 	 */
+	@Deprecated
 	public static Hashtable getLastEncodingHashtable() {
 		return encodeHash;
 	}
@@ -103,12 +125,37 @@ public class JGraphpadGXLCodec {
 	 * 
 	 * It may be usefull to sirialize the values of the nodes.
 	 * 
-	 * @return Hastable with elements : ((key : node), (value : GXL id)).
+	 * @return Hastable with elements : ((key : GXL id), (value : node)).
+	 * @deprecated Use {@link #getDecodingHashtable()} on a codec instance,
+	 *             which is safe if several files are decoded at the same
+	 *             time.
 	 */
+	@Deprecated
 	public static Hashtable getLastDecodingHashtable() {
 		return decodeHash;
 	}
 
+	/**
+	 * Returns the hashtable from the vertices of the last call to
+	 * {@link #write(JGraph, Object[], OutputStream)} to their GXL ids.
+	 * 
+	 * @return Hashtable with elements : ((key : node), (value : GXL id)).
+	 */
+	public Hashtable getEncodingHashtable() {
+		return ids;
+	}
+
+	/**
+	 * Returns the hashtable from the GXL ids of the last call to
+	 * {@link #read(InputStream, GraphLayoutCache, Object, Object)} to the
+	 * vertices.
+	 * 
+	 * @return Hashtable with elements : ((key : GXL id), (value : node)).
+	 */
+	public Hashtable getDecodingHashtable() {
+		return cells;
+	}
+
 	/**
 	 * Create a GXL-representation for all the cells.
 	 * 
@@ -131,777 +178,644 @@ public class JGraphpadGXLCodec {
 	 * @return Encoded string.
 	 */
 	public static String encode(JGraph graph, Object[] cells) {
-		int counter = 0;
-		encodeHash = new Hashtable();
-		String gxl = "<?xml version=\"1.0\"?>\n"
-				+ "<!DOCTYPE gxl SYSTEM \"http://www.gupro.de/GXL/gxl-1.1.dtd\">\n"
-				+ "<gxl xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n"
-				+ "<graph id=\"jGraph\">\n";
-
-		// Create external keys for nodes
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			encode(graph, cells, out);
+			return out.toString("UTF-8");
+		} catch (XMLStreamException e) {
+			throw new RuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Writes a GXL-representation for the specified cells to the specified
+	 * stream using UTF-8. The stream is not closed.
+	 * 
+	 * @param graph
+	 *            JGraph to encode.
+	 * @param cells
+	 *            Selected cells to be encoded.
+	 * @param out
+	 *            Stream to write the document to.
+	 * @throws XMLStreamException
+	 *             If the document cannot be written.
+	 */
+	public static void encode(JGraph graph, Object[] cells, OutputStream out)
+			throws XMLStreamException {
+		JGraphpadGXLCodec codec = new JGraphpadGXLCodec();
+		codec.write(graph, cells, out);
+		encodeHash = codec.getEncodingHashtable();
+	}
+
+	/**
+	 * Decodes a GXL File.
+	 * 
+	 * @param inputStream
+	 *            Stream to be decoded.
+	 * @param cache
+	 *            GraphLayoutCache where the decode file is inserted.
+	 * @param vertexPrototype
+	 *            The prototype to create new vertices with.
+	 * @param edgePrototype
+	 *            The prototype to create new edges with.
+	 */
+	public static void decode(InputStream inputStream, GraphLayoutCache cache,
+			Object vertexPrototype, Object edgePrototype) throws Exception {
+		JGraphpadGXLCodec codec = new JGraphpadGXLCodec();
+		codec.read(inputStream, cache, vertexPrototype, edgePrototype);
+		decodeHash = codec.getDecodingHashtable();
+	}
+
+	/**
+	 * Writes a GXL-representation for the specified cells to the specified
+	 * stream using UTF-8. The stream is not closed.
+	 * 
+	 * @param graph
+	 *            JGraph to encode.
+	 * @param cells
+	 *            Selected cells to be encoded.
+	 * @param out
+	 *            Stream to write the document to.
+	 * @throws XMLStreamException
+	 *             If the document cannot be written.
+	 */
+	public void write(JGraph graph, Object[] cells, OutputStream out)
+			throws XMLStreamException {
+		ids = new Hashtable();
+		XMLStreamWriter writer = XMLOutputFactory.newInstance()
+				.createXMLStreamWriter(out, "UTF-8");
+		writer.writeStartDocument("UTF-8", "1.0");
+		writer.writeCharacters("\n");
+		writer
+				.writeDTD("<!DOCTYPE gxl SYSTEM \"http://www.gupro.de/GXL/gxl-1.1.dtd\">");
+		writer.writeCharacters("\n");
+		writer.writeStartElement("gxl");
+		writer.writeNamespace("xlink", "http://www.w3.org/1999/xlink");
+		writer.writeCharacters("\n");
+		writer.writeStartElement("graph");
+		writer.writeAttribute("id", "jGraph");
+
+		// Create external keys for nodes and converts nodes
 		for (int i = 0; i < cells.length; i++) {
 			if (JGraphpadCodecPlugin.isVertex(graph, cells[i])) {
-				encodeHash.put(cells[i], "node" + counter);
-				counter++;
+				String id = "node" + ids.size();
+				ids.put(cells[i], id);
+				writeVertex(writer, graph, id, cells[i]);
 			}
 		}
 
-		// Convert Nodes
-		Iterator it = encodeHash.keySet().iterator();
-		while (it.hasNext()) {
-			Object node = it.next();
-			gxl += encodeVertex(graph, (String) encodeHash.get(node), node);
-		}
-
 		// Convert Edges
 		int edges = 0;
 		for (int i = 0; i < cells.length; i++)
 			if (graph.getModel().isEdge(cells[i]))
-				gxl += encodeEdge(graph, new Integer(edges++), cells[i]);
+				writeEdge(writer, graph, "edge" + (edges++), cells[i]);
 
 		// Close main tags
-		gxl += "\n</graph>\n</gxl>";
-		return gxl;
+		writer.writeCharacters("\n");
+		writer.writeEndElement();
+		writer.writeCharacters("\n");
+		writer.writeEndElement();
+		writer.writeEndDocument();
+		writer.flush();
 	}
 
 	/**
-	 * Create a string with tabs.
+	 * Writes a newline and the specified number of tabs.
 	 * 
+	 * @param writer
+	 *            Writer to write to.
 	 * @param level
 	 *            Tab level.
-	 * @return Tab string.
 	 */
-	private static String createTab(int level) {
-		String tab = "";
-		for (int i = 0; i < level; i++) {
-			tab += "\t";
-		}
-		return tab;
+	protected void writeTab(XMLStreamWriter writer, int level)
+			throws XMLStreamException {
+		writer.writeCharacters("\n");
+		for (int i = 0; i < level; i++)
+			writer.writeCharacters("\t");
 	}
 
 	/**
 	 * Basic value encoding.
 	 * 
+	 * @param writer
+	 *            Writer to write to.
 	 * @param type
-	 *            GXL Type of the value (int, bool, ...)
+	 *            GXL Type of the value (int, bool, string, ...)
 	 * @param value
 	 *            Value to be encoded.
 	 * @param level
 	 *            Tab level.
-	 * @return Encoded string.
 	 */
-	protected static String encodeValue(String type, String value, int level) {
-		return createTab(level) + "<" + type + ">" + value + "</" + type
-				+ ">\n";
+	protected void writeValue(XMLStreamWriter writer, String type,
+			String value, int level) throws XMLStreamException {
+		writeTab(writer, level);
+		writer.writeStartElement(type);
+		writer.writeCharacters(value);
+		writer.writeEndElement();
 	}
 
 	/**
-	 * Basic boolean encoding.
+	 * Writes the start of an attribute. The attribute is ended using
+	 * {@link #writeEndAttribute(XMLStreamWriter, int)}.
 	 * 
-	 * @param value
-	 *            Value to be encoded.
-	 * @param level
-	 *            Tab level.
-	 * @return Encoded string.
-	 */
-	private static String encodeValue(boolean value, int level) {
-		return createTab(level) + "<bool>" + value + "</bool>\n";
-	}
-
-	/**
-	 * Basic integer encoding.
-	 * 
-	 * @param value
-	 *            Value to be encoded.
+	 * @param writer
+	 *            Writer to write to.
+	 * @param attributeName
+	 *            name of the attribute.
 	 * @param level
 	 *            Tab level.
-	 * @return Encoded string.
 	 */
-	protected static String encodeValue(int value, int level) {
-		return createTab(level) + "<int>" + value + "</int>\n";
+	protected void writeStartAttribute(XMLStreamWriter writer,
+			String attributeName, int level) throws XMLStreamException {
+		writeTab(writer, level);
+		writer.writeStartElement("attr");
+		writer.writeAttribute("name", attributeName);
 	}
 
 	/**
-	 * Basic String encoding.
+	 * Writes the end of an attribute.
 	 * 
-	 * @param value
-	 *            Value to be encoded.
+	 * @param writer
+	 *            Writer to write to.
 	 * @param level
 	 *            Tab level.
-	 * @return Encoded string.
 	 */
-	protected static String encodeValue(String value, int level) {
-		return createTab(level) + "<string>" + value + "</string>\n";
-	}
-
-	/**
-	 * Attribute encoding.
-	 * 
-	 * @param values
-	 *            Values of the attribute.
-	 * @param attributeName
-	 *            name of the attribute.
-	 * @param level
-	 *            Tab level.
-	 * @return Encoded string.
-	 */
-	protected static String encodeAttribute(String values,
-			String attributeName, int level) {
-		String tab = createTab(level);
-		return tab + "<attr name=\"" + attributeName + "\">\n" + values + tab
-				+ "</attr>\n";
+	protected void writeEndAttribute(XMLStreamWriter writer, int level)
+			throws XMLStreamException {
+		writeTab(writer, level);
+		writer.writeEndElement();
 	}
 
 	/**
 	 * String encoding.
 	 * 
+	 * @param writer
+	 *            Writer to write to.
 	 * @param value
 	 *            Value of the attribute.
 	 * @param attributeName
 	 *            name of the attribute.
 	 * @param level
 	 *            Tab level.
-	 * @return Encoded string.
 	 */
-	protected static String encodeString(String value, String attributeName,
-			int level) {
+	protected void writeString(XMLStreamWriter writer, String value,
+			String attributeName, int level) throws XMLStreamException {
 		if (value != null) {
-			return encodeAttribute(encodeValue(value, level + 1),
-					attributeName, level);
-		} else {
-			return "";
+			writeStartAttribute(writer, attributeName, level);
+			writeValue(writer, "string", value, level + 1);
+			writeEndAttribute(writer, level);
 		}
 	}
 
 	/**
 	 * Integer encoding.
 	 * 
+	 * @param writer
+	 *            Writer to write to.
 	 * @param value
 	 *            Value of the attribute.
 	 * @param attributeName
 	 *            name of the attribute.
 	 * @param level
 	 *            Tab level.
-	 * @return Encoded string.
 	 */
-	protected static String encodeInteger(int value, String attributeName,
-			int level) {
-		return encodeAttribute(encodeValue(value, level + 1), attributeName,
-				level);
+	protected void writeInteger(XMLStreamWriter writer, int value,
+			String attributeName, int level) throws XMLStreamException {
+		writeStartAttribute(writer, attributeName, level);
+		writeValue(writer, "int", String.valueOf(value), level + 1);
+		writeEndAttribute(writer, level);
 	}
 
 	/**
-	 * Boolean encoding.
+	 * Tuple encoding.
 	 * 
-	 * @param value
-	 *            Value of the attribute.
+	 * @param writer
+	 *            Writer to write to.
+	 * @param types
+	 *            GXL Types of the values.
+	 * @param values
+	 *            Values of the tuple.
 	 * @param attributeName
 	 *            name of the attribute.
 	 * @param level
 	 *            Tab level.
-	 * @return Encoded string.
 	 */
-	protected static String encodeBoolean(boolean value, String attributeName,
-			int level) {
-		return encodeAttribute(encodeValue(value, level + 1), attributeName,
-				level);
+	protected void writeTuple(XMLStreamWriter writer, String[] types,
+			String[] values, String attributeName, int level)
+			throws XMLStreamException {
+		writeStartAttribute(writer, attributeName, level);
+		writeTab(writer, level + 1);
+		writer.writeStartElement("tup");
+		for (int i = 0; i < values.length; i++)
+			writeValue(writer, types[i], values[i], level + 2);
+		writeTab(writer, level + 1);
+		writer.writeEndElement();
+		writeEndAttribute(writer, level);
 	}
 
 	/**
 	 * Color encoding.
 	 * 
+	 * @param writer
+	 *            Writer to write to.
 	 * @param color
 	 *            Color of the attribute.
 	 * @param attributeName
 	 *            name of the attribute.
 	 * @param level
 	 *            Tab level.
-	 * @return Encoded string.
 	 */
-	protected static String encodeColor(Color color, String attributeName,
-			int level) {
-		if (color != null) {
-			String tab1 = createTab(level + 1);
-			int level2 = level + 2;
-			String values = tab1 + "<tup>\n"
-					+ encodeValue(color.getRed(), level2)
-					+ encodeValue(color.getGreen(), level2)
-					+ encodeValue(color.getBlue(), level2) + tab1 + "</tup>\n";
-			return encodeAttribute(values, attributeName, level);
-		} else {
-			return "";
-		}
+	protected void writeColor(XMLStreamWriter writer, Color color,
+			String attributeName, int level) throws XMLStreamException {
+		if (color != null)
+			writeTuple(writer, new String[] { "int", "int", "int" },
+					new String[] { String.valueOf(color.getRed()),
+							String.valueOf(color.getGreen()),
+							String.valueOf(color.getBlue()) }, attributeName,
+					level);
 	}
 
 	/**
 	 * Font encoding.
 	 * 
+	 * @param writer
+	 *            Writer to write to.
 	 * @param font
 	 *            Font of the attribute.
 	 * @param attributeName
 	 *            name of the attribute.
 	 * @param level
 	 *            Tab level.
-	 * @return Encoded string.
 	 */
-	protected static String encodeFont(Font font, String attributeName,
-			int level) {
-		if (font != null) {
-			String tab1 = createTab(level + 1);
-			int level2 = level + 2;
-			String values = tab1 + "<tup>\n"
-					+ encodeValue(font.getFontName(), level2)
-					+ encodeValue(font.getStyle(), level2)
-					+ encodeValue(font.getSize(), level2) + tab1 + "</tup>\n";
-			return encodeAttribute(values, attributeName, level);
-		} else {
-			return "";
-		}
+	protected void writeFont(XMLStreamWriter writer, Font font,
+			String attributeName, int level) throws XMLStreamException {
+		if (font != null)
+			writeTuple(writer, new String[] { "string", "int", "int" },
+					new String[] { font.getFontName(),
+							String.valueOf(font.getStyle()),
+							String.valueOf(font.getSize()) }, attributeName,
+					level);
 	}
 
 	/**
 	 * Rectangle encoding.
 	 * 
+	 * @param writer
+	 *            Writer to write to.
 	 * @param rec
 	 *            Rectangle to be encoded.
 	 * @param attributeName
 	 *            name of the attribute.
 	 * @param level
 	 *            Tab level.
-	 * @return Encoded string.
 	 */
-	protected static String encodeRectangle(Rectangle2D rec,
-			String attributeName, int level) {
-		if (rec != null) {
-			String tab1 = createTab(level + 1);
-			int level2 = level + 2;
-			String values = tab1 + "<tup>\n"
-					+ encodeValue((int) rec.getCenterX(), level2)
-					+ encodeValue((int) rec.getCenterY(), level2)
-					+ encodeValue((int) rec.getWidth(), level2)
-					+ encodeValue((int) rec.getHeight(), level2) + tab1
-					+ "</tup>\n";
-			return encodeAttribute(values, attributeName, level);
-		} else {
-			return "";
-		}
-	}
-
-	/**
-	 * Bean encoding. This is usefull to encode the userObject in the Vertex. It
-	 * must be a bean with a beanInfo class in order to inspect it.
-	 * 
-	 * @param bean
-	 *            Bean to be encoded.
-	 * @param attributeName
-	 *            name of the attribute.
-	 * @param level
-	 *            Tab level.
-	 * @return Encoded string.
-	 */
-	protected static String encodeBean(Object bean, String attributeName,
-			int level) {
-		String encoded = "";
-		if (bean != null) {
-			try {
-				int level1 = level + 1;
-				BeanInfo bi = null;
-				PropertyDescriptor tmpProperties[] = null;
-				PropertyDescriptor prop = null;
-
-				bi = Introspector.getBeanInfo(bean.getClass());
-				tmpProperties = bi.getPropertyDescriptors();
-				encoded += encodeString(bean.getClass().getName(), "ClassName",
-						level1);
-				for (int i = 0; i < tmpProperties.length; i++) {
-					prop = tmpProperties[i];
-					encoded += encodeString(prop.getReadMethod().invoke(bean).toString(), prop.getDisplayName(), level1);
-				}
-				encoded = encodeAttribute(encoded, attributeName, level);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		}
-		return encoded;
+	protected void writeRectangle(XMLStreamWriter writer, Rectangle2D rec,
+			String attributeName, int level) throws XMLStreamException {
+		if (rec != null)
+			writeTuple(writer, new String[] { "int", "int", "int", "int" },
+					new String[] { String.valueOf((int) rec.getCenterX()),
+							String.valueOf((int) rec.getCenterY()),
+							String.valueOf((int) rec.getWidth()),
+							String.valueOf((int) rec.getHeight()) },
+					attributeName, level);
 	}
 
 	/**
 	 * Encode a Vertex of a graph
 	 * 
+	 * @param writer
+	 *            Writer to write to.
 	 * @param graph
 	 *            Graph containing the vertex.
 	 * @param id
 	 *            Id of the vertex.
 	 * @param vertex
 	 *            Vertex to be encoded.
-	 * @return Encoded string.
 	 */
-	protected static String encodeVertex(JGraph graph, String id, Object vertex) {
+	protected void writeVertex(XMLStreamWriter writer, JGraph graph,
+			String id, Object vertex) throws XMLStreamException {
 		int level = 2;
 		String label = graph.convertValueToString(vertex);
 		Map attributes = ((GraphCell) vertex).getAttributes();
-		String encoded = "\n\t<node id=\""
-				+ id
-				+ "\">\n"
-				+ encodeString(label, "Label", level)
-				+ encodeRectangle(GraphConstants.getBounds(attributes),
-						"Bounds", level)
-				+ encodeColor(GraphConstants.getBorderColor(attributes),
-						"BorderColor", level)
-				+ encodeColor(GraphConstants.getForeground(attributes),
-						"BorderColor", level)
-				+ encodeColor(GraphConstants.getBackground(attributes),
-						"BorderColor", level)
-				+ encodeFont(GraphConstants.getFont(attributes), "Font", level)
-				+ encodeColor(GraphConstants.getLineColor(attributes),
-						"BorderColor", level)
-				// + encodeBoolean(GraphConstants.getOpaque(attributes),
-				// "Opaque", level)
-				// + encodeBean(GraphConstants.getValue(attributes), "Value",
-				// level)
-				+ "\t</node>";
-		return encoded;
+		writer.writeCharacters("\n");
+		writeTab(writer, 1);
+		writer.writeStartElement("node");
+		writer.writeAttribute("id", id);
+		writeString(writer, label, "Label", level);
+		writeRectangle(writer, GraphConstants.getBounds(attributes), "Bounds",
+				level);
+		writeColor(writer, GraphConstants.getBorderColor(attributes),
+				"BorderColor", level);
+		writeColor(writer, GraphConstants.getForeground(attributes),
+				"BorderColor", level);
+		writeColor(writer, GraphConstants.getBackground(attributes),
+				"BorderColor", level);
+		writeFont(writer, GraphConstants.getFont(attributes), "Font", level);
+		writeColor(writer, GraphConstants.getLineColor(attributes),
+				"BorderColor", level);
+		writeTab(writer, 1);
+		writer.writeEndElement();
 	}
 
 	/**
 	 * Encode a Edge of a graph
 	 * 
+	 * @param writer
+	 *            Writer to write to.
 	 * @param graph
 	 *            Graph containing the edge.
 	 * @param id
-	 *            Id of the vertex.
+	 *            Id of the edge.
 	 * @param edge
 	 *            Edge to be encoded.
-	 * @return Encoded string.
 	 */
-	protected static String encodeEdge(JGraph graph, Object id, Object edge) {
+	protected void writeEdge(XMLStreamWriter writer, JGraph graph, String id,
+			Object edge) throws XMLStreamException {
 		GraphModel model = graph.getModel();
 		String from = "";
 		if (model.getSource(edge) != null) {
-			Object source = encodeHash.get(model.getParent(model
-					.getSource(edge)));
+			Object source = ids.get(model.getParent(model.getSource(edge)));
 			if (source != null)
 				from = source.toString();
 		}
 		String to = "";
 		if (model.getTarget(edge) != null) {
-			Object target = encodeHash.get(model.getParent(model
-					.getTarget(edge)));
+			Object target = ids.get(model.getParent(model.getTarget(edge)));
 			if (target != null)
 				to = target.toString();
 		}
-		if (from != null && to != null) {
-			int level = 2;
-			Map attributes = ((GraphCell) edge).getAttributes();
-			String label = graph.convertValueToString(edge);
-			return "\n\t<edge id=\"edge"
-					+ id.toString()
-					+ "\""
-					+ " from=\""
-					+ from
-					+ "\""
-					+ " to=\""
-					+ to
-					+ "\">\n"
-					+ encodeString(label, "Label", 2)
-					+ encodeInteger(GraphConstants.getLineEnd(attributes),
-							"LineEnd", level)
-					+ encodeColor(GraphConstants.getForeground(attributes),
-							"Foreground", level)
-					+ encodeFont(GraphConstants.getFont(attributes), "Font",
-							level)
-					+ encodeInteger(GraphConstants.getLineStyle(attributes),
-							"LineStyle", level)
-					+ encodeColor(GraphConstants.getLineColor(attributes),
-							"LineColor", level) + "\n\t</edge>";
-		} else
-			return "";
+		int level = 2;
+		Map attributes = ((GraphCell) edge).getAttributes();
+		String label = graph.convertValueToString(edge);
+		writer.writeCharacters("\n");
+		writeTab(writer, 1);
+		writer.writeStartElement("edge");
+		writer.writeAttribute("id", id);
+		writer.writeAttribute("from", from);
+		writer.writeAttribute("to", to);
+		writeString(writer, label, "Label", level);
+		writeInteger(writer, GraphConstants.getLineEnd(attributes), "LineEnd",
+				level);
+		writeColor(writer, GraphConstants.getForeground(attributes),
+				"Foreground", level);
+		writeFont(writer, GraphConstants.getFont(attributes), "Font", level);
+		writeInteger(writer, GraphConstants.getLineStyle(attributes),
+				"LineStyle", level);
+		writeColor(writer, GraphConstants.getLineColor(attributes),
+				"LineColor", level);
+		writeTab(writer, 1);
+		writer.writeEndElement();
 	}
 
 	/**
-	 * Extracts visual properties of the node from the child 'view' element
-	 * Currently recognized properties: - Bounds - color - background-color -
-	 * autosize - Font - Line-End, Line-size, Line-color
-	 */
-	protected static void decodeCell(Node gnode, Map gnode_attrs) {
-		NodeList gnode_children = gnode.getChildNodes();
-		for (int gnode_child_i = 0; gnode_child_i < gnode_children.getLength(); gnode_child_i++) {
-			Node gnode_child = gnode_children.item(gnode_child_i);
-			if (gnode_child.getNodeName().equals("attr")) {
-				String name = ((Element) gnode_child).getAttribute("name");
-				LinkedList values = new LinkedList();
-				// Retreaving all the values in the node
-				readGXLAttributeValues(gnode_child, values);
-				if ((name != null) && (values.size() > 0)) {
-					if (name.equals("Bounds")) {
-						if (values.size() == 4) {
-							Point p = new Point(Integer
-									.parseInt((String) values.get(0)), Integer
-									.parseInt((String) values.get(1)));
-							Dimension d = new Dimension(Integer
-									.parseInt((String) values.get(2)), Integer
-									.parseInt((String) values.get(3)));
-							Rectangle2D bounds = new Rectangle(p, d);
-							GraphConstants.setBounds(gnode_attrs, bounds);
-						}
-					} else if (name.equals("Font")) {
-						if (values.size() == 3) {
-							Font font = new Font((String) values.get(0),
-									Integer.parseInt((String) values.get(1)),
-									Integer.parseInt((String) values.get(2)));
-							GraphConstants.setFont(gnode_attrs, font);
-						}
-					} else if (name.equals("Foreground")) {
-						try {
-							Color color = new Color(Integer
-									.parseInt((String) values.get(0)), Integer
-									.parseInt((String) values.get(1)), Integer
-									.parseInt((String) values.get(2)));
-							GraphConstants.setForeground(gnode_attrs, color);
-						} catch (Exception nfe) {
-						}
-					} else if (name.equals("BorderColor")) {
-						try {
-							Color color = new Color(Integer
-									.parseInt((String) values.get(0)), Integer
-									.parseInt((String) values.get(1)), Integer
-									.parseInt((String) values.get(2)));
-							GraphConstants.setBorderColor(gnode_attrs, color);
-						} catch (Exception nfe) {
-						}
-					} else if (name.equals("LineColor")) {
-						try {
-							Color color = new Color(Integer
-									.parseInt((String) values.get(0)), Integer
-									.parseInt((String) values.get(1)), Integer
-									.parseInt((String) values.get(2)));
-							GraphConstants.setLineColor(gnode_attrs, color);
-						} catch (Exception nfe) {
-						}
-					} else if (name.equals("Background")) {
-						try {
-							Color color = new Color(Integer
-									.parseInt((String) values.get(0)), Integer
-									.parseInt((String) values.get(1)), Integer
-									.parseInt((String) values.get(2)));
-							GraphConstants.setBackground(gnode_attrs, color);
-						} catch (Exception nfe) {
-						}
-					} else if (name.equals("LineColor")) {
-						try {
-							Color color = new Color(Integer
-									.parseInt((String) values.get(0)), Integer
-									.parseInt((String) values.get(1)), Integer
-									.parseInt((String) values.get(2)));
-							GraphConstants.setLineColor(gnode_attrs, color);
-						} catch (Exception nfe) {
-						}
-					} else if (name.equals("LineEnd")) {
-						try {
-							GraphConstants.setLineEnd(gnode_attrs, Integer
-									.parseInt((String) values.get(0)));
-						} catch (Exception e) {
-						}
-					} else if (name.equals("LineStyle")) {
-						try {
-							GraphConstants.setLineStyle(gnode_attrs, Integer
-									.parseInt((String) values.get(0)));
-						} catch (Exception e) {
-						}
-					} else if (name.equals("AutoSize")) {
-						GraphConstants.setAutoSize(gnode_attrs, "true"
-								.equals((String) values.get(0)));
+	 * Reads a GXL document from the specified stream and inserts the nodes
+	 * and edges of its graphs into the specified cache. The cells are
+	 * inserted in batches of at least {@link #BATCH_SIZE} cells while the
+	 * document is read. Edges can only be connected to nodes that appear
+	 * before the edge in the document.
+	 * 
+	 * @param in
+	 *            Stream to be decoded.
+	 * @param cache
+	 *            GraphLayoutCache where the decode file is inserted.
+	 * @param vertexPrototype
+	 *            The prototype to create new vertices with.
+	 * @param edgePrototype
+	 *            The prototype to create new edges with.
+	 * @throws XMLStreamException
+	 *             If the document cannot be parsed.
+	 */
+	public void read(InputStream in, GraphLayoutCache cache,
+			Object vertexPrototype, Object edgePrototype)
+			throws XMLStreamException {
+		cells = new Hashtable();
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean
+				.valueOf(validateDTD));
+		XMLStreamReader reader = factory.createXMLStreamReader(in);
+		GraphModel model = cache.getModel();
+		List batch = new ArrayList();
+		Map attributes = new Hashtable();
+		ConnectionSet cs = new ConnectionSet();
+		int count = 0;
+		boolean defaultDirected = false;
+
+		// The depth of the current element, where the root element has a
+		// depth of 1 and the graphs of the root element have a depth of 2
+		int depth = 0;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+			else if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				String type = reader.getLocalName().toLowerCase();
+				if (depth == 2 && type.equals("graph")) {
+					String edgemode = reader.getAttributeValue(null,
+							"edgemode");
+					defaultDirected = "directed".equals(edgemode)
+							|| "defaultdirected".equals(edgemode);
+				} else if (depth == 3 && type.equals("node")) {
+					String id = reader.getAttributeValue(null, "id");
+					Map map = new Hashtable();
+					String label = readCell(reader, map);
+					depth--;
+
+					// Need unique valid ID
+					if (id != null && !cells.containsKey(id)) {
+						Object vertex = DefaultGraphModel.cloneCell(model,
+								vertexPrototype);
+						model.valueForCellChanged(vertex,
+								new JGraphpadRichTextValue(label));
+						cells.put(id, vertex);
+						attributes.put(vertex, map);
+						batch.add(vertex);
+					}
+				} else if (depth == 3 && type.equals("edge")) {
+					String source = reader.getAttributeValue(null, "from");
+					String target = reader.getAttributeValue(null, "to");
+					String directed = reader.getAttributeValue(null,
+							"isdirected");
+					Map map = new Hashtable();
+					if (("true".equals(directed) || defaultDirected)
+							&& !"false".equals(directed)) {
+						GraphConstants.setLineEnd(map,
+								GraphConstants.ARROW_CLASSIC);
+						GraphConstants.setEndFill(map, true);
+					}
+					String label = readCell(reader, map);
+					depth--;
+					Object edge = DefaultGraphModel.cloneCell(model,
+							edgePrototype);
+					model.valueForCellChanged(edge, label);
+					if (source != null) {
+						DefaultGraphCell vertex = (DefaultGraphCell) cells
+								.get(source);
+						if (vertex != null)
+							cs.connect(edge, vertex.getChildAt(0), true);
+					}
+					if (target != null) {
+						DefaultGraphCell vertex = (DefaultGraphCell) cells
+								.get(target);
+						if (vertex != null)
+							cs.connect(edge, vertex.getChildAt(0), false);
 					}
+					attributes.put(edge, map);
+					batch.add(edge);
 				}
-			}
-		}
-	}
 
-	/**
-	 * Reads the values of an GXL Attribute.
-	 * 
-	 * @param enode
-	 *            Node to read.
-	 * @param values
-	 *            List to populate : with 2 dimension String arrys. return[0] :
-	 *            type of value return[1] : value
-	 */
-	protected static void readGXLAttributeValues(Node enode, LinkedList values) {
-		// read Child Elements
-		NodeList child_list = enode.getChildNodes();
-		for (int j = 0; j < child_list.getLength(); j++) {
-			Node currentNode = child_list.item(j);
-			String nodeName = currentNode.getNodeName();
-			if (nodeName.equals("tup") || nodeName.equals("set")
-					|| nodeName.equals("enum") || nodeName.equals("seq")
-					|| nodeName.equals("bag")) {
-				readGXLAttributeValues(currentNode, values);
-			} else if (nodeName.equals("int") || nodeName.equals("bool")
-					|| nodeName.equals("float") || nodeName.equals("string")
-					|| nodeName.equals("locator")) {
-				try {
-					Node firstChild = currentNode.getFirstChild();
-					// Check to see if first child exists. Null strings
-					// will just show no value
-					if (null == firstChild) {
-						if (nodeName.equals("string"))
-							values.add(new String(""));
-					} else {
-						values.add(currentNode.getFirstChild().getNodeValue());
-					}
-				} catch (DOMException e) {
+				// Inserts the cells of the batch and starts a new batch. The
+				// batches grow with the number of inserted cells because the
+				// cache reloads all roots for each insert.
+				if (batch.size() >= Math.max(BATCH_SIZE, count / 2)) {
+					count += batch.size();
+					cache.insert(batch.toArray(), attributes, cs, null, null);
+					batch = new ArrayList();
+					attributes = new Hashtable();
+					cs = new ConnectionSet();
 				}
 			}
 		}
+		reader.close();
+		if (!batch.isEmpty())
+			cache.insert(batch.toArray(), attributes, cs, null, null);
 	}
 
 	/**
-	 * Decodes a Edge.
+	 * Reads the attributes of the node or edge at the current position of the
+	 * specified reader into the specified map and returns the label of the
+	 * cell. When this returns the reader is positioned at the end of the node
+	 * or edge.<br>
+	 * Currently recognized attributes: Label, Bounds, Font, Foreground,
+	 * Background, BorderColor, LineColor, LineEnd, LineStyle and AutoSize.
 	 * 
-	 * @param enode
-	 *            XML Node.
-	 * @param enode_attrs
-	 *            Cell Attributes.
+	 * @param reader
+	 *            Reader positioned at the start of the node or edge.
+	 * @param map
+	 *            Map to store the attributes in.
+	 * @return Returns the label of the cell or an empty string.
 	 */
-	protected static void decodeEdge(Node enode, Map enode_attrs) {
-		decodeCell(enode, enode_attrs);
+	protected String readCell(XMLStreamReader reader, Map map)
+			throws XMLStreamException {
+		String label = null;
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+			else if (event == XMLStreamConstants.START_ELEMENT) {
+				if (depth == 1 && reader.getLocalName().equals("attr")) {
+					String name = reader.getAttributeValue(null, "name");
+					LinkedList values = new LinkedList();
+					readAttributeValues(reader, values);
+					if (name != null && name.equals("Label")
+							&& !values.isEmpty())
+						label = (String) values.getLast();
+					else if (name != null && values.size() > 0)
+						decodeAttribute(name, values, map);
+				} else
+					depth++;
+			}
+		}
+		return (label != null) ? label : "";
 	}
 
 	/**
-	 * Manage DTD offline.
+	 * Reads the values of the GXL attribute at the current position of the
+	 * specified reader. Values in tuples, sets, enums, sequences and bags are
+	 * added in the order of the document. When this returns the reader is
+	 * positioned at the end of the attribute.
 	 * 
-	 * @param db
-	 *            XML document builder.
-	 */
-	private static void manageDTDLookup(DocumentBuilder db) {
-		// Error During DTD validation : can't find www.gupro.de
-		// Forget validation
-		db.setEntityResolver(new EntityResolver() {
-			public InputSource resolveEntity(java.lang.String publicId,
-					java.lang.String systemId) throws SAXException,
-					java.io.IOException {
-				InputSource is = null;
-				try {
-					URL url = new URL(systemId);
-					HttpURLConnection con = (HttpURLConnection) url
-							.openConnection();
-					con.connect();
-					int responseCode = con.getResponseCode();
-					con.disconnect();
-					if (responseCode != HttpURLConnection.HTTP_NOT_FOUND) {
-						is = new InputSource(systemId);
-					} else {
-						is = new InputSource(new ByteArrayInputStream(
-								"<?xml version='1.0' encoding='UTF-8'?>"
-										.getBytes()));
-					}
-				} catch (IOException e) {
-					is = new InputSource(
-							new ByteArrayInputStream(
-									"<?xml version='1.0' encoding='UTF-8'?>"
-											.getBytes()));
-				}
-				return is;
+	 * @param reader
+	 *            Reader positioned at the start of the attribute.
+	 * @param values
+	 *            List to add the values to.
+	 */
+	protected void readAttributeValues(XMLStreamReader reader,
+			LinkedList values) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+			else if (event == XMLStreamConstants.START_ELEMENT) {
+				String nodeName = reader.getLocalName();
+				if (nodeName.equals("int") || nodeName.equals("bool")
+						|| nodeName.equals("float")
+						|| nodeName.equals("string")
+						|| nodeName.equals("locator")) {
+					String value = reader.getElementText();
+					if (value.length() > 0 || nodeName.equals("string"))
+						values.add(value);
+				} else
+					depth++;
 			}
-		});
+		}
 	}
 
 	/**
-	 * Decodes a GXL File.
+	 * Stores the specified attribute in the specified map.
 	 * 
-	 * @param inputStream
-	 *            Stream to be decoded.
-	 * @param cache
-	 *            GraphLayoutCache where the decode file is inserted.
+	 * @param name
+	 *            The name of the GXL attribute.
+	 * @param values
+	 *            The values of the GXL attribute.
+	 * @param map
+	 *            Map to store the attribute in.
 	 */
-	public static void decode(InputStream inputStream, GraphLayoutCache cache,
-			Object vertexPrototype, Object edgePrototype) throws Exception {
-		String defaultLayout = null;
-		// Create a DocumentBuilderFactory
-		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-		// Create a DocumentBuilder
-		DocumentBuilder db = dbf.newDocumentBuilder();
-		// Manage the compliange with the DTD File.
-		if (validateDTD == false) {
-			manageDTDLookup(db);
-		}
-		// Parse the input file to get a Document object
-		Document doc = db.parse(inputStream);
-		// Get the first child (the graph-element)
-		// List for the new Cells
-		List newCells = new ArrayList();
-		// ConnectionSet for the Insert method
-		ConnectionSet cs = new ConnectionSet();
-		// Hashtable for the ID lookup (ID to Vertex)
-		decodeHash = new Hashtable();
-		// Hashtable for Attributes (Vertex to Map)
-		Hashtable attributes = new Hashtable();
-
-		Element gxl = (Element) doc.getDocumentElement(); // First gxl element
-
-		NodeList graph_list = gxl.getChildNodes();
-		if (graph_list.getLength() == 0) {
-			return;
-		}
-		for (int graph_index = 0; graph_index < graph_list.getLength(); graph_index++) {
-			Node graph_node = graph_list.item(graph_index);
-			if (graph_node.getNodeName().equals("graph")) {
-				Element graph_elem = (Element) graph_node;
-				NodeList list = graph_elem.getChildNodes();
-				boolean defaultDirected = "directed".equals(graph_elem
-						.getAttribute("edgemode"))
-						|| "defaultdirected".equals(graph_elem
-								.getAttribute("edgemode"));
-				// End of Opheamro
-
-				// Get Graph's Child Nodes (the cells)
-
-				// Loop Children
-				for (int i = 0; i < list.getLength(); i++) {
-					Node node = list.item(i);
-					// Fetch Label
-					String label = getLabel(node);
-					// If Valid Node
-					if (node.getAttributes() != null
-							&& node.getNodeName() != null) {
-						// Fetch Type
-						String type = node.getNodeName().toString()
-								.toLowerCase();
-
-						// Create Vertex
-						if (type.equals("node")) {
-							// Fetch ID Node
-							String id = null;
-							Node tmp = node.getAttributes().getNamedItem("id");
-							// Fetch ID Value
-							if (tmp != null)
-								id = tmp.getNodeValue();
-							// Need unique valid ID
-							if (id != null && !decodeHash.keySet().contains(id)) {
-								// Create Vertex with label
-								Object vertex = DefaultGraphModel.cloneCell(
-										cache.getModel(), vertexPrototype);
-								cache.getModel().valueForCellChanged(vertex,
-										new JGraphpadRichTextValue(label));
-								// Add ID, Vertex pair to Hashtable
-								decodeHash.put(id, vertex);
-								// Add Default Attributes
-								Map node_attrs = new Hashtable(); // createDefaultAttributes(new
-								// Hashtable());
-								decodeCell(node, node_attrs);
-								attributes.put(vertex, node_attrs);
-								// Add Vertex to new Cells
-								newCells.add(vertex);
-							}
-
-							// Create Edge
-						} else if (type.equals("edge")) {
-							Element edge_node = (Element) node;
-							// Fetch Source ID Node
-							Node tmp = node.getAttributes()
-									.getNamedItem("from");
-							// Fetch Source ID Value
-							String source = null;
-							if (tmp != null)
-								source = tmp.getNodeValue();
-							// Fetch Target ID Node
-							tmp = node.getAttributes().getNamedItem("to");
-							// Fetch Target ID Value
-							String target = null;
-							if (tmp != null)
-								target = tmp.getNodeValue();
-							// Create Edge with label
-							Object edge = DefaultGraphModel.cloneCell(cache
-									.getModel(), edgePrototype);
-							cache.getModel().valueForCellChanged(edge, label);
-							// Find Source Port
-							if (source != null) {
-								// Fetch Vertex for Source ID
-								DefaultGraphCell vertex = (DefaultGraphCell) decodeHash
-										.get(source);
-								if (vertex != null)
-									// Connect to Source Port
-									cs
-											.connect(edge,
-													vertex.getChildAt(0), true);
-							}
-							// Find Target Port
-							if (target != null) {
-								// Fetch Vertex for Target ID
-								DefaultGraphCell vertex = (DefaultGraphCell) decodeHash
-										.get(target);
-								if (vertex != null)
-									// Connect to Target Port
-									cs.connect(edge, vertex.getChildAt(0),
-											false);
-							}
-
-							boolean edge_directed = ("true".equals(edge_node
-									.getAttribute("isdirected")) || defaultDirected)
-									&& !("false".equals(edge_node
-											.getAttribute("isdirected")));
-							Map map = new Hashtable();
-							if (edge_directed) {
-								GraphConstants.setLineEnd(map,
-										GraphConstants.ARROW_CLASSIC);
-								GraphConstants.setEndFill(map, true);
-							}
-							decodeEdge(edge_node, map);
-							attributes.put(edge, map);
-
-							// Add Edge to new Cells
-							newCells.add(edge);
-						} else if (type.equals("view")) { // Graph view
-							// attributes
-							// Currently defined: defaultlayout
-							defaultLayout = ((Element) node)
-									.getAttribute("defaultlayout");
-						}
-					}
+	protected void decodeAttribute(String name, List values, Map map) {
+		try {
+			if (name.equals("Bounds")) {
+				if (values.size() == 4) {
+					Point p = new Point(Integer.parseInt((String) values
+							.get(0)), Integer.parseInt((String) values.get(1)));
+					Dimension d = new Dimension(Integer
+							.parseInt((String) values.get(2)), Integer
+							.parseInt((String) values.get(3)));
+					GraphConstants.setBounds(map, new Rectangle(p, d));
 				}
-			}
+			} else if (name.equals("Font")) {
+				if (values.size() == 3)
+					GraphConstants.setFont(map, new Font((String) values
+							.get(0), Integer.parseInt((String) values.get(1)),
+							Integer.parseInt((String) values.get(2))));
+			} else if (name.equals("Foreground"))
+				GraphConstants.setForeground(map, decodeColor(values));
+			else if (name.equals("BorderColor"))
+				GraphConstants.setBorderColor(map, decodeColor(values));
+			else if (name.equals("LineColor"))
+				GraphConstants.setLineColor(map, decodeColor(values));
+			else if (name.equals("Background"))
+				GraphConstants.setBackground(map, decodeColor(values));
+			else if (name.equals("LineEnd"))
+				GraphConstants.setLineEnd(map, Integer.parseInt((String) values
+						.get(0)));
+			else if (name.equals("LineStyle"))
+				GraphConstants.setLineStyle(map, Integer
+						.parseInt((String) values.get(0)));
+			else if (name.equals("AutoSize"))
+				GraphConstants.setAutoSize(map, "true".equals(values.get(0)));
+		} catch (Exception e) {
+			// ignore invalid values
 		}
-		// Insert the cells (View stores attributes)
-		cache.insert(newCells.toArray(), attributes, cs, null, null);
 	}
 
 	/**
-	 * Returns an attributeMap for the specified position and color.
+	 * Returns the color for the specified red, green and blue values.
 	 */
-	protected static Map createDefaultAttributes(Map map) {
-		// Set a Black Line Border (the Border-Attribute must be Null!)
-		GraphConstants.setBorderColor(map, Color.black);
-		// Return the Map
-		return map;
-	}
-
-	// Fetch Cell Label from Node
-	protected static String getLabel(Node node) {
-		String lab = null;
-		NodeList children = node.getChildNodes();
-		for (int j = 0; j < children.getLength(); j++) {
-			Node attr = children.item(j);
-			if (attr.getNodeName().equals("attr")
-					&& attr.getAttributes().getNamedItem("name").getNodeValue()
-							.equals("Label")) {
-				NodeList values = attr.getChildNodes();
-				for (int k = 0; k < values.getLength(); k++) {
-					if (values.item(k).getNodeName().equals("string")) {
-						Node labelNode = values.item(k).getFirstChild();
-						if (labelNode != null)
-							lab = labelNode.getNodeValue();
-					}
-				}
-			}
-		}
-		return (lab != null) ? lab : new String("");
+	protected Color decodeColor(List values) {
+		return new Color(Integer.parseInt((String) values.get(0)), Integer
+				.parseInt((String) values.get(1)), Integer
+				.parseInt((String) values.get(2)));
 	}
 
 	/**
 	 * Setter for the property validateDTD
 	 * 
 	 * @param validate
-	 *            True, the validation will occur.
+	 *            True, the DTD of the document is processed.
 	 */
 	public static void setValidateDTD(boolean validate) {
 		validateDTD = validate;
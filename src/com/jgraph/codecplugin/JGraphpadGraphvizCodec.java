@@ -20,85 +20,1389 @@
  */
 package com.jgraph.codecplugin;
 
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PushbackReader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
 import java.text.DateFormat;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+import javax.swing.SwingUtilities;
 
 import org.jgraph.JGraph;
+import org.jgraph.graph.AttributeMap;
+import org.jgraph.graph.ConnectionSet;
+import org.jgraph.graph.DefaultGraphModel;
+import org.jgraph.graph.GraphConstants;
+import org.jgraph.graph.GraphLayoutCache;
 import org.jgraph.graph.GraphModel;
 
+import com.jgraph.pad.graph.JGraphpadGraphConstants;
+import com.jgraph.pad.graph.JGraphpadRichTextValue;
+import com.jgraph.pad.graph.JGraphpadVertexRenderer;
+
 /**
- * Graphviz Codec.
+ * Graphviz Codec. The codec writes the cells of a graph as a DOT file and
+ * reads DOT files into a graph layout cache. Both directions are streaming:
+ * The writer writes each cell as it is visited and the parser creates the
+ * cells for each statement as it is read and inserts them into the layout
+ * cache in batches of at least {@link #BATCH_SIZE} cells.<br>
+ * The following attributes are mapped: Vertex shape, bounds (as
+ * <code>pos</code>, <code>width</code> and <code>height</code>), border,
+ * fill, gradient and font colors, font, line width, dash pattern and the
+ * arrows of edges. Vertex positions are written in points with the y-axis
+ * pointing upwards inside the bounding box of the graph, which is written as
+ * the <code>bb</code> attribute of the graph, so that the files can be
+ * rendered with <code>neato -n</code>. Vertices without a position are
+ * placed in a matrix. The parser ignores ports, clusters and the
+ * <code>strict</code> keyword and flattens subgraphs.<br>
+ * A codec instance holds the state of one encoding or decoding and must not
+ * be used by several threads at the same time. The encoding or decoding may
+ * run in a background thread and may be cancelled from another thread, in
+ * which case an {@link InterruptedIOException} is thrown. The parser inserts
+ * the cells on the event dispatch thread.
  */
 public class JGraphpadGraphvizCodec {
 
-	static transient Hashtable hash;
+	/**
+	 * Specifies the minimum number of cells to insert at once while decoding.
+	 * Default is 5000.
+	 */
+	public static int BATCH_SIZE = 5000;
+
+	/**
+	 * Defines the geometry of the matrix for vertices without a position.
+	 */
+	public static int COLUMNS = 8, OFFSET = 40, WIDTH = 100, HEIGHT = 100;
+
+	/**
+	 * Defines the number of points per inch for the width and height of
+	 * vertices. Default is 72.
+	 */
+	public static double POINTS_PER_INCH = 72;
+
+	/**
+	 * Holds the DOT names for the vertex shapes in the order of the shape
+	 * constants in {@link JGraphpadVertexRenderer}. Rounded rectangles are
+	 * boxes with a rounded style.
+	 */
+	public static String[] SHAPES = new String[] { "box", "ellipse",
+			"diamond", "box", "cylinder", "triangle" };
+
+	/**
+	 * Token types for the parser. Other tokens are returned as the character
+	 * they consist of.
+	 */
+	protected static final int TOKEN_EOF = -1, TOKEN_ID = -2,
+			TOKEN_EDGEOP = -3;
+
+	/**
+	 * Maps from the encoded vertices to their DOT ids.
+	 */
+	protected Map ids = new HashMap();
+
+	/**
+	 * Holds the number of cells that have been encoded or decoded.
+	 */
+	protected volatile int count = 0;
+
+	/**
+	 * Specifies if the encoding or decoding has been cancelled.
+	 */
+	protected volatile boolean cancelled = false;
+
+	/**
+	 * Formats the numbers of positions and sizes.
+	 */
+	protected DecimalFormat numberFormat = new DecimalFormat("0.####",
+			new DecimalFormatSymbols(Locale.US));
+
+	/**
+	 * References the layout cache to decode into.
+	 */
+	protected GraphLayoutCache cache;
+
+	/**
+	 * References the prototypes to create new vertices and edges with.
+	 */
+	protected Object vertexPrototype, edgePrototype;
+
+	/**
+	 * Maps from the DOT ids to the decoded vertices.
+	 */
+	protected Map vertices = new HashMap();
+
+	/**
+	 * Holds the cells of the current batch.
+	 */
+	protected List batch = new ArrayList();
+
+	/**
+	 * Holds the vertices of the current batch.
+	 */
+	protected Set batchVertices = new HashSet();
+
+	/**
+	 * Holds the attributes of inserted vertices which have been changed by
+	 * later statements.
+	 */
+	protected Map nested = new Hashtable();
+
+	/**
+	 * Holds the connections of the edges in the current batch.
+	 */
+	protected ConnectionSet cs = new ConnectionSet();
+
+	/**
+	 * Holds the number of cells that have been inserted.
+	 */
+	protected int insertCount = 0;
+
+	/**
+	 * Specifies if the graph being decoded is directed.
+	 */
+	protected boolean directed = true;
+
+	/**
+	 * Holds the value to subtract y-coordinates from or NaN if the decoded
+	 * graph has no bounding box.
+	 */
+	protected double flipY = Double.NaN;
 
+	/**
+	 * References the reader of the parser.
+	 */
+	protected PushbackReader reader;
+
+	/**
+	 * Holds the type and the text of the current token.
+	 */
+	protected int tokenType;
+
+	protected String token;
+
+	/**
+	 * Specifies if the current token should be returned again by
+	 * {@link #nextToken()}.
+	 */
+	protected boolean pushedBack = false;
+
+	/**
+	 * Specifies if the parser is at the beginning of a line.
+	 */
+	protected boolean lineStart = true;
+
+	/**
+	 * Creates a DOT-representation for the specified cells.
+	 * 
+	 * @param graph
+	 *            JGraph to encode.
+	 * @param cells
+	 *            Cells to be encoded.
+	 * @return Encoded string.
+	 */
 	public static String encode(JGraph graph, Object[] cells) {
-		hash = new Hashtable();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			encode(graph, cells, out);
+			return out.toString("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Writes a DOT-representation for the specified cells to the specified
+	 * stream using UTF-8. The stream is not closed.
+	 * 
+	 * @param graph
+	 *            JGraph to encode.
+	 * @param cells
+	 *            Cells to be encoded.
+	 * @param out
+	 *            Stream to write the file to.
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 */
+	public static void encode(JGraph graph, Object[] cells, OutputStream out)
+			throws IOException {
+		new JGraphpadGraphvizCodec().write(graph, cells, out);
+	}
+
+	/**
+	 * Decodes a DOT file.
+	 * 
+	 * @param in
+	 *            Stream to be decoded.
+	 * @param cache
+	 *            GraphLayoutCache where the decode file is inserted.
+	 * @param vertexPrototype
+	 *            The prototype to create new vertices with.
+	 * @param edgePrototype
+	 *            The prototype to create new edges with.
+	 * @throws IOException
+	 *             If the file cannot be read or parsed.
+	 */
+	public static void decode(InputStream in, GraphLayoutCache cache,
+			Object vertexPrototype, Object edgePrototype) throws IOException {
+		new JGraphpadGraphvizCodec().read(in, cache, vertexPrototype,
+				edgePrototype);
+	}
+
+	/**
+	 * Cancels the encoding or decoding.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns true if the encoding or decoding has been cancelled.
+	 * 
+	 * @return Returns true if the codec was cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns the number of cells that have been encoded or decoded.
+	 * 
+	 * @return Returns the number of cells.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Writes a DOT-representation for the specified cells to the specified
+	 * stream using UTF-8. The stream is not closed.
+	 * 
+	 * @param graph
+	 *            JGraph to encode.
+	 * @param cells
+	 *            Cells to be encoded.
+	 * @param out
+	 *            Stream to write the file to.
+	 * @throws IOException
+	 *             If the file cannot be written or the encoding was
+	 *             cancelled.
+	 */
+	public void write(JGraph graph, Object[] cells, OutputStream out)
+			throws IOException {
+		ids = new HashMap();
+		count = 0;
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+				"UTF-8"));
 		DateFormat dateformat = DateFormat.getDateTimeInstance(DateFormat.LONG,
 				DateFormat.LONG);
 		String date = dateformat.format(new Date());
-		StringBuffer gv = new StringBuffer("/* Graphviz file generated by "
-				+ "JGraph - " + date + " */" + "\n\ndigraph G {");
+		writer.write("/* Graphviz file generated by JGraph - " + date
+				+ " */\n\ndigraph G {");
 
-		// Create external keys for nodes
-		for (int i = 0; i < cells.length; i++)
-			if (JGraphpadCodecPlugin.isVertex(graph, cells[i]))
-				hash.put(cells[i], new Integer(hash.size()));
+		// Positions are flipped inside the bounding box
+		Rectangle2D bounds = graph.getCellBounds(cells);
+		double bottom = 0;
+		if (bounds != null) {
+			bottom = Math.max(0, bounds.getMaxY());
+			writer.write("\n\tgraph [bb=\"0,0,"
+					+ format(Math.max(0, bounds.getMaxX())) + ","
+					+ format(bottom) + "\"];");
+		}
 
 		// Process Nodes
-		Iterator it = hash.keySet().iterator();
-		while (it.hasNext()) {
-			Object node = it.next();
-			gv.append(encodeVertex(graph, hash.get(node), node));
+		for (int i = 0; i < cells.length && !cancelled; i++) {
+			if (JGraphpadCodecPlugin.isVertex(graph, cells[i])) {
+				Integer id = new Integer(ids.size());
+				ids.put(cells[i], id);
+				writeVertex(writer, graph, id, cells[i], bottom);
+			}
+			count = i;
 		}
 
 		// Process Edges
-		int edges = 0;
-		for (int i = 0; i < cells.length; i++)
+		for (int i = 0; i < cells.length && !cancelled; i++) {
 			if (graph.getModel().isEdge(cells[i]))
-				gv.append(encodeEdge(graph, new Integer(edges++), cells[i]));
+				writeEdge(writer, graph, cells[i]);
+			count = cells.length + i;
+		}
+		if (cancelled)
+			throw new InterruptedIOException();
 
 		// Close main tags
-		gv.append("\n}");
-		return gv.toString();
+		writer.write("\n}\n");
+		writer.flush();
 	}
 
-	private static String encodeVertex(JGraph graph, Object id, Object vertex) {
-		if (id == null)
-			return "";
+	/**
+	 * Writes the specified vertex.
+	 * 
+	 * @param writer
+	 *            Writer to write to.
+	 * @param graph
+	 *            Graph containing the vertex.
+	 * @param id
+	 *            Id of the vertex.
+	 * @param vertex
+	 *            Vertex to be encoded.
+	 * @param bottom
+	 *            The y-coordinate to flip the positions with.
+	 */
+	protected void writeVertex(Writer writer, JGraph graph, Object id,
+			Object vertex, double bottom) throws IOException {
+		Map attributes = graph.getModel().getAttributes(vertex);
 		String label = graph.convertValueToString(vertex);
-		if (label == null)
-			label = "";
-		return "\n\t" + id.toString() + " [label=\"" + label + "\", "
-				+ "shape=\"box\"];";
+		writer.write("\n\t" + id + " [");
+		writeAttribute(writer, "label", escape((label != null) ? label : ""),
+				true);
+		Rectangle2D bounds = graph.getCellBounds(vertex);
+		if (bounds != null) {
+			writeAttribute(writer, "pos", format(bounds.getCenterX()) + ","
+					+ format(bottom - bounds.getCenterY()), false);
+			writeAttribute(writer, "width", format(bounds.getWidth()
+					/ POINTS_PER_INCH), false);
+			writeAttribute(writer, "height", format(bounds.getHeight()
+					/ POINTS_PER_INCH), false);
+		}
+		int shape = JGraphpadGraphConstants.getVertexShape(attributes);
+		writeAttribute(writer, "shape",
+				SHAPES[(shape >= 0 && shape < SHAPES.length) ? shape : 0], false);
+		Color background = GraphConstants.getBackground(attributes);
+		Color gradient = GraphConstants.getGradientColor(attributes);
+		String style = (shape == JGraphpadVertexRenderer.SHAPE_ROUNDED) ? "rounded"
+				: null;
+		if (background != null || gradient != null)
+			style = (style != null) ? style + ",filled" : "filled";
+		writeAttribute(writer, "style", style, false);
+		writeAttribute(writer, "color", format(GraphConstants
+				.getBorderColor(attributes)), false);
+		if (background != null || gradient != null) {
+			String fill = format((background != null) ? background
+					: Color.white);
+			if (gradient != null)
+				fill += ":" + format(gradient);
+			writeAttribute(writer, "fillcolor", fill, false);
+		}
+		if (attributes.containsKey(GraphConstants.LINEWIDTH))
+			writeAttribute(writer, "penwidth", format(GraphConstants
+					.getLineWidth(attributes)), false);
+		writeFont(writer, attributes);
+		writer.write("];");
 	}
 
-	private static String encodeEdge(JGraph graph, Object id, Object edge) {
+	/**
+	 * Writes the specified edge if its source and target are encoded
+	 * vertices.
+	 * 
+	 * @param writer
+	 *            Writer to write to.
+	 * @param graph
+	 *            Graph containing the edge.
+	 * @param edge
+	 *            Edge to be encoded.
+	 */
+	protected void writeEdge(Writer writer, JGraph graph, Object edge)
+			throws IOException {
 		GraphModel model = graph.getModel();
-		String from = null;
-		Object es = model.getSource(edge);
-		if (es != null) {
-			Object ps = hash.get(model.getParent(es));
-			if (ps != null)
-				from = ps.toString();
-			// debug if (es != null)
-			// from = graph.convertValueToString(model.getParent(es));
-			String to = null;
-			Object et = model.getTarget(edge);
-			if (et != null) {
-				Object tp = hash.get(model.getParent(et));
-				if (tp != null)
-					to = tp.toString();
-				// debug if (et != null)
-				// to = graph.convertValueToString(model.getParent(et));
+		Object from = null, to = null;
+		Object source = model.getSource(edge);
+		if (source != null)
+			from = ids.get(model.getParent(source));
+		Object target = model.getTarget(edge);
+		if (target != null)
+			to = ids.get(model.getParent(target));
+		if (from != null && to != null) {
+			Map attributes = model.getAttributes(edge);
+			String label = graph.convertValueToString(edge);
+			writer.write("\n\t" + from + " -> " + to + " [");
+			writeAttribute(writer, "label", escape((label != null) ? label
+					: ""), true);
+			writeAttribute(writer, "color", format(GraphConstants
+					.getLineColor(attributes)), false);
+			if (attributes.containsKey(GraphConstants.LINEWIDTH))
+				writeAttribute(writer, "penwidth", format(GraphConstants
+						.getLineWidth(attributes)), false);
+			float[] dash = GraphConstants.getDashPattern(attributes);
+			if (dash != null && dash.length > 0)
+				writeAttribute(writer, "style", (dash[0] <= 1) ? "dotted"
+						: "dashed", false);
+
+			// Arrows
+			int begin = GraphConstants.getLineBegin(attributes);
+			int end = GraphConstants.getLineEnd(attributes);
+			if (begin != GraphConstants.ARROW_NONE) {
+				writeAttribute(writer, "dir",
+						(end != GraphConstants.ARROW_NONE) ? "both" : "back",
+						false);
+				writeAttribute(writer, "arrowtail", getArrow(begin,
+						GraphConstants.isBeginFill(attributes)), false);
+			} else if (end == GraphConstants.ARROW_NONE)
+				writeAttribute(writer, "dir", "none", false);
+			if (end != GraphConstants.ARROW_NONE)
+				writeAttribute(writer, "arrowhead", getArrow(end,
+						GraphConstants.isEndFill(attributes)), false);
+			writeFont(writer, attributes);
+			writer.write("];");
+		}
+	}
+
+	/**
+	 * Writes the font and the font color of the specified attributes if they
+	 * are defined.
+	 */
+	protected void writeFont(Writer writer, Map attributes) throws IOException {
+		writeAttribute(writer, "fontcolor", format(GraphConstants
+				.getForeground(attributes)), false);
+		if (attributes.containsKey(GraphConstants.FONT)) {
+			Font font = GraphConstants.getFont(attributes);
+			String name = font.getFamily();
+			if (font.isBold())
+				name += " Bold";
+			if (font.isItalic())
+				name += " Italic";
+			writeAttribute(writer, "fontname", name, false);
+			writeAttribute(writer, "fontsize", format(font.getSize2D()), false);
+		}
+	}
+
+	/**
+	 * Writes the specified attribute if the value is not null.
+	 * 
+	 * @param writer
+	 *            Writer to write to.
+	 * @param name
+	 *            The name of the attribute.
+	 * @param value
+	 *            The value of the attribute.
+	 * @param first
+	 *            Whether this is the first attribute in the list.
+	 */
+	protected void writeAttribute(Writer writer, String name, String value,
+			boolean first) throws IOException {
+		if (value != null) {
+			if (!first)
+				writer.write(", ");
+			writer.write(name);
+			writer.write("=\"");
+			writer.write(value);
+			writer.write("\"");
+		}
+	}
+
+	/**
+	 * Returns the DOT name for the specified arrow.
+	 * 
+	 * @param arrow
+	 *            The arrow constant.
+	 * @param fill
+	 *            Whether the arrow is filled.
+	 */
+	protected String getArrow(int arrow, boolean fill) {
+		switch (arrow) {
+		case GraphConstants.ARROW_NONE:
+			return "none";
+		case GraphConstants.ARROW_TECHNICAL:
+			return (fill) ? "vee" : "ovee";
+		case GraphConstants.ARROW_SIMPLE:
+			return "open";
+		case GraphConstants.ARROW_CIRCLE:
+			return (fill) ? "dot" : "odot";
+		case GraphConstants.ARROW_LINE:
+			return "tee";
+		case GraphConstants.ARROW_DOUBLELINE:
+			return "teetee";
+		case GraphConstants.ARROW_DIAMOND:
+			return (fill) ? "diamond" : "odiamond";
+		}
+		return (fill) ? "normal" : "onormal";
+	}
+
+	/**
+	 * Returns the specified text as the content of a quoted DOT string.
+	 */
+	protected String escape(String text) {
+		StringBuffer buffer = new StringBuffer(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\')
+				buffer.append('\\').append(c);
+			else if (c == '\n')
+				buffer.append("\\n");
+			else if (c != '\r')
+				buffer.append(c);
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Returns the specified color as a DOT color or null if the color is
+	 * null.
+	 */
+	protected String format(Color color) {
+		if (color == null)
+			return null;
+		String hex = Integer.toHexString(color.getRGB() & 0xffffff);
+		return "#000000".substring(0, 7 - hex.length()) + hex;
+	}
+
+	/**
+	 * Returns the specified number with up to 4 decimals.
+	 */
+	protected String format(double value) {
+		return numberFormat.format(value);
+	}
+
+	/**
+	 * Reads the first graph of the specified DOT file and inserts its nodes and
+	 * edges into the specified layout cache. The cells are inserted on the
+	 * event dispatch thread in batches of at least {@link #BATCH_SIZE} cells
+	 * and half as many cells as have been inserted before, because the layout
+	 * cache reloads all its roots for each insert. If the decoding is
+	 * cancelled or fails then the batches that have been inserted remain in
+	 * the model. The stream is closed when this returns.
+	 * 
+	 * @param in
+	 *            Stream to be decoded.
+	 * @param cache
+	 *            GraphLayoutCache where the decode file is inserted.
+	 * @param vertexPrototype
+	 *            The prototype to create new vertices with.
+	 * @param edgePrototype
+	 *            The prototype to create new edges with.
+	 * @throws IOException
+	 *             If the file cannot be read or parsed or the decoding was
+	 *             cancelled.
+	 */
+	public void read(InputStream in, GraphLayoutCache cache,
+			Object vertexPrototype, Object edgePrototype) throws IOException {
+		this.cache = cache;
+		this.vertexPrototype = vertexPrototype;
+		this.edgePrototype = edgePrototype;
+		reader = new PushbackReader(new BufferedReader(new InputStreamReader(
+				in, "UTF-8")), 2);
+		try {
+			nextToken();
+			if (isKeyword("strict"))
+				nextToken();
+			if (isKeyword("digraph"))
+				directed = true;
+			else if (isKeyword("graph"))
+				directed = false;
+			else
+				throw new IOException("graph expected: " + token);
+			if (nextToken() == TOKEN_ID)
+				nextToken();
+			if (tokenType != '{')
+				throw new IOException("{ expected: " + token);
+			readStatements(new HashMap(), new HashMap(), null);
+		} finally {
+			flush();
+			reader.close();
+		}
+		if (cancelled)
+			throw new InterruptedIOException();
+	}
+
+	/**
+	 * Reads the statements of a graph or subgraph up to and including the
+	 * closing brace.
+	 * 
+	 * @param nodeDefaults
+	 *            The default attributes for new vertices.
+	 * @param edgeDefaults
+	 *            The default attributes for new edges.
+	 * @param nodes
+	 *            List to add the vertices of the statements to or null.
+	 */
+	protected void readStatements(Map nodeDefaults, Map edgeDefaults,
+			List nodes) throws IOException {
+		while (nextToken() != '}') {
+			if (tokenType == TOKEN_EOF)
+				throw new IOException("} expected");
+			else if (cancelled)
+				return;
+			else if (tokenType == ';' || tokenType == ',')
+				continue;
+			boolean node = isKeyword("node"), edge = isKeyword("edge");
+			if (node || edge || isKeyword("graph")) {
+				nextToken();
+				if (tokenType == '[') {
+					Map attrs = readAttributes(new HashMap());
+					if (node)
+						nodeDefaults.putAll(attrs);
+					else if (edge)
+						edgeDefaults.putAll(attrs);
+					else
+						readGraphAttributes(attrs);
+				} else
+					pushBack();
+			} else {
+				String id = token;
+				List operand = readOperand(nodeDefaults, edgeDefaults, nodes);
+				if (operand == null && nextToken() == '=') {
+					nextToken();
+					Map attrs = new HashMap();
+					attrs.put(id, token);
+					readGraphAttributes(attrs);
+				} else {
+					if (operand == null) {
+						pushBack();
+						readPort();
+					}
+
+					// Edge statements
+					if (nextToken() == TOKEN_EDGEOP) {
+						List operands = new ArrayList();
+						operands.add((operand != null) ? (Object) operand : id);
+						while (tokenType == TOKEN_EDGEOP) {
+							nextToken();
+							String target = token;
+							List subgraph = readOperand(nodeDefaults,
+									edgeDefaults, nodes);
+							if (subgraph == null)
+								readPort();
+							operands.add((subgraph != null) ? (Object) subgraph
+									: target);
+							nextToken();
+						}
+						Map attrs = new HashMap(edgeDefaults);
+						if (tokenType == '[')
+							readAttributes(attrs);
+						else
+							pushBack();
+						for (int i = 1; i < operands.size(); i++)
+							addEdges(getVertices(operands.get(i - 1),
+									nodeDefaults, nodes), getVertices(operands
+									.get(i), nodeDefaults, nodes), attrs);
+					}
+
+					// Node statements
+					else if (operand == null) {
+						Map attrs = null;
+						if (tokenType == '[')
+							attrs = readAttributes(new HashMap());
+						else
+							pushBack();
+						Object vertex = vertices.get(id);
+						if (vertex == null) {
+							Map merged = new HashMap(nodeDefaults);
+							if (attrs != null)
+								merged.putAll(attrs);
+							vertex = addVertex(id, merged);
+						} else if (attrs != null)
+							updateVertex(id, vertex, attrs);
+						if (nodes != null)
+							nodes.add(vertex);
+					} else
+						pushBack();
+				}
+			}
+			if (batch.size() >= Math.max(BATCH_SIZE, insertCount / 2))
+				flush();
+		}
+	}
+
+	/**
+	 * Reads a subgraph if the current token starts a subgraph and returns its
+	 * vertices, otherwise returns null.
+	 */
+	protected List readOperand(Map nodeDefaults, Map edgeDefaults, List nodes)
+			throws IOException {
+		if (isKeyword("subgraph")) {
+			if (nextToken() == TOKEN_ID)
+				nextToken();
+			if (tokenType != '{')
+				throw new IOException("{ expected: " + token);
+		}
+		if (tokenType == '{') {
+			List subgraph = new ArrayList();
+			readStatements(new HashMap(nodeDefaults), new HashMap(edgeDefaults),
+					subgraph);
+			if (nodes != null)
+				nodes.addAll(subgraph);
+			return subgraph;
+		} else if (tokenType != TOKEN_ID)
+			throw new IOException("id expected: " + token);
+		return null;
+	}
+
+	/**
+	 * Skips the port and compass point of a node id.
+	 */
+	protected void readPort() throws IOException {
+		while (nextToken() == ':')
+			nextToken();
+		pushBack();
+	}
+
+	/**
+	 * Reads an attribute list, which may consist of several bracketed lists,
+	 * starting at the current opening bracket into the specified map.
+	 * 
+	 * @param attrs
+	 *            Map to store the attributes in.
+	 * @return Returns <code>attrs</code>.
+	 */
+	protected Map readAttributes(Map attrs) throws IOException {
+		while (tokenType == '[') {
+			while (nextToken() != ']') {
+				if (tokenType == TOKEN_ID) {
+					String name = token;
+					if (nextToken() == '=') {
+						nextToken();
+						attrs.put(name, token);
+					} else {
+						attrs.put(name, "true");
+						pushBack();
+					}
+				} else if (tokenType == TOKEN_EOF)
+					throw new IOException("] expected");
+			}
+			nextToken();
+		}
+		pushBack();
+		return attrs;
+	}
+
+	/**
+	 * Processes the specified graph attributes. This implementation uses the
+	 * bounding box to flip the y-coordinates of positions.
+	 */
+	protected void readGraphAttributes(Map attrs) {
+		String bb = (String) attrs.get("bb");
+		if (bb != null) {
+			double[] box = parseNumbers(bb);
+			if (box.length == 4)
+				flipY = box[1] + box[3];
+		}
+	}
+
+	/**
+	 * Returns the vertices for the specified operand of an edge statement,
+	 * which is a list of vertices or a node id.
+	 */
+	protected List getVertices(Object operand, Map nodeDefaults, List nodes) {
+		if (operand instanceof List)
+			return (List) operand;
+		List result = new ArrayList(1);
+		Object vertex = vertices.get(operand);
+		if (vertex == null)
+			vertex = addVertex((String) operand, new HashMap(nodeDefaults));
+		if (nodes != null)
+			nodes.add(vertex);
+		result.add(vertex);
+		return result;
+	}
+
+	/**
+	 * Creates a new vertex for the specified id and DOT attributes and adds it
+	 * to the current batch.
+	 */
+	protected Object addVertex(String id, Map attrs) {
+		GraphModel model = cache.getModel();
+		Object vertex = DefaultGraphModel.cloneCell(model, vertexPrototype);
+		Map attributes = model.getAttributes(vertex);
+		model.valueForCellChanged(vertex, new JGraphpadRichTextValue(getLabel(
+				id, attrs)));
+
+		// Sets the initial location and the default size of Graphviz for
+		// vertices with a position or size, or resizes other vertices
+		int col = vertices.size() / COLUMNS;
+		int row = vertices.size() % COLUMNS;
+		Rectangle2D bounds = new Rectangle2D.Double(row * WIDTH + OFFSET, col
+				* HEIGHT + OFFSET, 10, 10);
+		if (attrs.containsKey("pos") || attrs.containsKey("width")
+				|| attrs.containsKey("height"))
+			bounds.setFrame(bounds.getX(), bounds.getY(),
+					0.75 * POINTS_PER_INCH, 0.5 * POINTS_PER_INCH);
+		else
+			GraphConstants.setResize(attributes, true);
+		GraphConstants.setBounds(attributes, bounds);
+		applyVertexAttributes(attrs, attributes);
+		vertices.put(id, vertex);
+		batch.add(vertex);
+		batchVertices.add(vertex);
+		count++;
+		return vertex;
+	}
+
+	/**
+	 * Applies the specified DOT attributes of a node statement to an existing
+	 * vertex.
+	 */
+	protected void updateVertex(String id, Object vertex, Map attrs) {
+		GraphModel model = cache.getModel();
+		if (batchVertices.contains(vertex)) {
+			if (attrs.containsKey("label"))
+				model.valueForCellChanged(vertex, new JGraphpadRichTextValue(
+						getLabel(id, attrs)));
+			applyVertexAttributes(attrs, model.getAttributes(vertex));
+		} else {
+			Map attributes = (Map) nested.get(vertex);
+			if (attributes == null) {
+				attributes = new AttributeMap();
+				Rectangle2D bounds = GraphConstants.getBounds(model
+						.getAttributes(vertex));
+				if (bounds != null)
+					GraphConstants.setBounds(attributes, (Rectangle2D) bounds
+							.clone());
+				nested.put(vertex, attributes);
+			}
+			if (attrs.containsKey("label"))
+				GraphConstants.setValue(attributes, new JGraphpadRichTextValue(
+						getLabel(id, attrs)));
+			applyVertexAttributes(attrs, attributes);
+		}
+	}
+
+	/**
+	 * Creates a new edge for each pair of the specified sources and targets
+	 * and adds it to the current batch.
+	 */
+	protected void addEdges(List sources, List targets, Map attrs) {
+		GraphModel model = cache.getModel();
+		for (int i = 0; i < sources.size(); i++) {
+			for (int j = 0; j < targets.size(); j++) {
+				Object sourcePort = model.getChild(sources.get(i), 0);
+				Object targetPort = model.getChild(targets.get(j), 0);
+				if (sourcePort != null && targetPort != null) {
+					Object edge = DefaultGraphModel.cloneCell(model,
+							edgePrototype);
+					String label = (String) attrs.get("label");
+					model.valueForCellChanged(edge, (label != null) ? unescape(
+							label, "") : "");
+					applyEdgeAttributes(attrs, model.getAttributes(edge));
+					cs.connect(edge, sourcePort, targetPort);
+					batch.add(edge);
+					count++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores the specified DOT attributes of a node in the specified map.
+	 * 
+	 * @param attrs
+	 *            The DOT attributes.
+	 * @param attributes
+	 *            Map to store the attributes in.
+	 */
+	protected void applyVertexAttributes(Map attrs, Map attributes) {
+		Rectangle2D bounds = GraphConstants.getBounds(attributes);
+		if (bounds != null) {
+			double w = parseSize((String) attrs.get("width"), bounds
+					.getWidth());
+			double h = parseSize((String) attrs.get("height"), bounds
+					.getHeight());
+			double x = bounds.getX(), y = bounds.getY();
+			double[] pos = parseNumbers((String) attrs.get("pos"));
+			if (pos.length >= 2) {
+				x = pos[0] - w / 2;
+				y = ((Double.isNaN(flipY)) ? pos[1] : flipY - pos[1]) - h / 2;
+			}
+			bounds.setFrame(x, y, w, h);
+			if (attrs.containsKey("width") || attrs.containsKey("height"))
+				GraphConstants.setResize(attributes, false);
+		}
+		String shape = (String) attrs.get("shape");
+		if (shape != null) {
+			shape = shape.toLowerCase();
+			int value = JGraphpadVertexRenderer.SHAPE_RECTANGLE;
+			if (shape.equals("ellipse") || shape.equals("oval")
+					|| shape.equals("circle") || shape.equals("doublecircle")
+					|| shape.equals("point"))
+				value = JGraphpadVertexRenderer.SHAPE_CIRCLE;
+			else if (shape.equals("diamond") || shape.equals("mdiamond"))
+				value = JGraphpadVertexRenderer.SHAPE_DIAMOND;
+			else if (shape.equals("cylinder"))
+				value = JGraphpadVertexRenderer.SHAPE_CYLINDER;
+			else if (shape.equals("triangle"))
+				value = JGraphpadVertexRenderer.SHAPE_TRIANGLE;
+			JGraphpadGraphConstants.setVertexShape(attributes, value);
+		}
+		Set style = parseStyle((String) attrs.get("style"));
+		if (style.contains("rounded"))
+			JGraphpadGraphConstants.setVertexShape(attributes,
+					JGraphpadVertexRenderer.SHAPE_ROUNDED);
+		Color color = parseColor((String) attrs.get("color"), 0);
+		if (color != null)
+			GraphConstants.setBorderColor(attributes, color);
+		if (style.contains("filled")) {
+			String fill = (String) attrs.get("fillcolor");
+			if (fill == null)
+				fill = (String) attrs.get("color");
+			Color background = parseColor(fill, 0);
+			GraphConstants.setBackground(attributes,
+					(background != null) ? background : Color.lightGray);
+			GraphConstants.setOpaque(attributes, true);
+			Color gradient = parseColor(fill, 1);
+			if (gradient != null)
+				GraphConstants.setGradientColor(attributes, gradient);
+		}
+		if (style.contains("bold"))
+			GraphConstants.setLineWidth(attributes, 2);
+		applyCommonAttributes(attrs, attributes);
+	}
+
+	/**
+	 * Stores the specified DOT attributes of an edge in the specified map.
+	 * 
+	 * @param attrs
+	 *            The DOT attributes.
+	 * @param attributes
+	 *            Map to store the attributes in.
+	 */
+	protected void applyEdgeAttributes(Map attrs, Map attributes) {
+		Color color = parseColor((String) attrs.get("color"), 0);
+		if (color != null)
+			GraphConstants.setLineColor(attributes, color);
+		Set style = parseStyle((String) attrs.get("style"));
+		if (style.contains("dashed"))
+			GraphConstants.setDashPattern(attributes, new float[] { 5, 5 });
+		else if (style.contains("dotted"))
+			GraphConstants.setDashPattern(attributes, new float[] { 1, 3 });
+		if (style.contains("bold"))
+			GraphConstants.setLineWidth(attributes, 2);
+
+		// Arrows
+		String dir = (String) attrs.get("dir");
+		if (dir == null)
+			dir = (directed) ? "forward" : "none";
+		int end = GraphConstants.ARROW_NONE, begin = GraphConstants.ARROW_NONE;
+		if (dir.equals("forward") || dir.equals("both")) {
+			String arrow = (String) attrs.get("arrowhead");
+			end = parseArrow(arrow);
+			GraphConstants.setEndFill(attributes, isFilled(arrow));
+		}
+		if (dir.equals("back") || dir.equals("both")) {
+			String arrow = (String) attrs.get("arrowtail");
+			begin = parseArrow(arrow);
+			GraphConstants.setBeginFill(attributes, isFilled(arrow));
+		}
+		GraphConstants.setLineEnd(attributes, end);
+		GraphConstants.setLineBegin(attributes, begin);
+		applyCommonAttributes(attrs, attributes);
+	}
+
+	/**
+	 * Stores the font, font color and line width of the specified DOT
+	 * attributes in the specified map.
+	 */
+	protected void applyCommonAttributes(Map attrs, Map attributes) {
+		Color color = parseColor((String) attrs.get("fontcolor"), 0);
+		if (color != null)
+			GraphConstants.setForeground(attributes, color);
+		String penwidth = (String) attrs.get("penwidth");
+		if (penwidth != null) {
+			double[] width = parseNumbers(penwidth);
+			if (width.length > 0)
+				GraphConstants.setLineWidth(attributes, (float) width[0]);
+		}
+		String name = (String) attrs.get("fontname");
+		String size = (String) attrs.get("fontsize");
+		if (name != null || size != null) {
+			Font font = GraphConstants.getFont(attributes);
+			int style = Font.PLAIN;
+			if (name != null) {
+
+				// Removes the style words from the family name
+				StringTokenizer tokenizer = new StringTokenizer(name, " -");
+				StringBuffer family = new StringBuffer();
+				while (tokenizer.hasMoreTokens()) {
+					String word = tokenizer.nextToken();
+					String lower = word.toLowerCase();
+					if (lower.startsWith("bold"))
+						style |= Font.BOLD;
+					if (lower.endsWith("italic") || lower.endsWith("oblique"))
+						style |= Font.ITALIC;
+					if (style == Font.PLAIN && !lower.equals("regular")) {
+						if (family.length() > 0)
+							family.append(' ');
+						family.append(word);
+					}
+				}
+				name = (family.length() > 0) ? family.toString() : font
+						.getFamily();
+			} else {
+				name = font.getFamily();
+				style = font.getStyle();
+			}
+			double[] points = parseNumbers(size);
+			font = new Font(name, style, font.getSize()).deriveFont(
+					(points.length > 0) ? (float) points[0] : font.getSize2D());
+			GraphConstants.setFont(attributes, font);
+		}
+	}
+
+	/**
+	 * Returns the label for the node with the specified id and attributes.
+	 */
+	protected String getLabel(String id, Map attrs) {
+		String label = (String) attrs.get("label");
+		return (label != null) ? unescape(label, id) : id;
+	}
+
+	/**
+	 * Replaces the escape sequences of a DOT label. Line breaks are replaced
+	 * by newlines and <code>\N</code> is replaced by the node id.
+	 */
+	protected String unescape(String label, String id) {
+		if (label.indexOf('\\') < 0)
+			return label;
+		StringBuffer buffer = new StringBuffer(label.length());
+		for (int i = 0; i < label.length(); i++) {
+			char c = label.charAt(i);
+			if (c == '\\' && i + 1 < label.length()) {
+				c = label.charAt(++i);
+				if (c == 'n' || c == 'l' || c == 'r')
+					buffer.append('\n');
+				else if (c == 'N')
+					buffer.append(id);
+				else
+					buffer.append(c);
+			} else
+				buffer.append(c);
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Returns the arrow constant for the specified DOT arrow name. Null is
+	 * the default arrow.
+	 */
+	protected int parseArrow(String arrow) {
+		if (arrow == null)
+			return GraphConstants.ARROW_CLASSIC;
+		arrow = arrow.toLowerCase();
+		if (arrow.equals("none"))
+			return GraphConstants.ARROW_NONE;
+		else if (arrow.equals("teetee"))
+			return GraphConstants.ARROW_DOUBLELINE;
+		else if (arrow.endsWith("vee"))
+			return GraphConstants.ARROW_TECHNICAL;
+		else if (arrow.equals("open"))
+			return GraphConstants.ARROW_SIMPLE;
+		else if (arrow.endsWith("dot"))
+			return GraphConstants.ARROW_CIRCLE;
+		else if (arrow.endsWith("tee"))
+			return GraphConstants.ARROW_LINE;
+		else if (arrow.endsWith("diamond"))
+			return GraphConstants.ARROW_DIAMOND;
+		return GraphConstants.ARROW_CLASSIC;
+	}
+
+	/**
+	 * Returns true if the specified DOT arrow is filled.
+	 */
+	protected boolean isFilled(String arrow) {
+		return arrow == null || !arrow.toLowerCase().startsWith("o");
+	}
+
+	/**
+	 * Returns the lowercase style names of the specified DOT style.
+	 */
+	protected Set parseStyle(String style) {
+		Set result = new HashSet();
+		if (style != null) {
+			StringTokenizer tokenizer = new StringTokenizer(style
+					.toLowerCase(), ", ");
+			while (tokenizer.hasMoreTokens())
+				result.add(tokenizer.nextToken());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the color at the specified index of the specified DOT color
+	 * list or null if the color cannot be parsed. Supported colors are RGB
+	 * values with a leading hash, HSV values and some color names.
+	 */
+	protected Color parseColor(String value, int index) {
+		if (value == null)
+			return null;
+		StringTokenizer tokenizer = new StringTokenizer(value, ":");
+		for (int i = 0; i < index && tokenizer.hasMoreTokens(); i++)
+			tokenizer.nextToken();
+		if (!tokenizer.hasMoreTokens())
+			return null;
+		String color = tokenizer.nextToken().trim().toLowerCase();
+		int semicolon = color.indexOf(';');
+		if (semicolon >= 0)
+			color = color.substring(0, semicolon);
+		try {
+			if (color.startsWith("#") && color.length() >= 7)
+				return new Color(Integer.parseInt(color.substring(1, 7), 16));
+			double[] hsv = parseNumbers(color);
+			if (hsv.length == 3)
+				return Color.getHSBColor((float) hsv[0], (float) hsv[1],
+						(float) hsv[2]);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		if (color.equals("black"))
+			return Color.black;
+		else if (color.equals("white"))
+			return Color.white;
+		else if (color.equals("red"))
+			return Color.red;
+		else if (color.equals("green"))
+			return Color.green;
+		else if (color.equals("blue"))
+			return Color.blue;
+		else if (color.equals("yellow"))
+			return Color.yellow;
+		else if (color.equals("orange"))
+			return Color.orange;
+		else if (color.equals("pink"))
+			return Color.pink;
+		else if (color.equals("cyan"))
+			return Color.cyan;
+		else if (color.equals("magenta"))
+			return Color.magenta;
+		else if (color.equals("gray") || color.equals("grey"))
+			return Color.gray;
+		else if (color.equals("lightgray") || color.equals("lightgrey"))
+			return Color.lightGray;
+		else if (color.equals("darkgray") || color.equals("darkgrey"))
+			return Color.darkGray;
+		return null;
+	}
+
+	/**
+	 * Returns the size in points for the specified DOT value in inches or the
+	 * specified default value if the value cannot be parsed.
+	 */
+	protected double parseSize(String value, double defaultValue) {
+		double[] size = parseNumbers(value);
+		return (size.length > 0) ? Math.round(size[0] * POINTS_PER_INCH
+				* 100) / 100.0 : defaultValue;
+	}
+
+	/**
+	 * Returns the numbers in the specified string, which are separated by
+	 * commas or spaces. A trailing exclamation mark is ignored.
+	 */
+	protected double[] parseNumbers(String value) {
+		if (value == null)
+			return new double[0];
+		StringTokenizer tokenizer = new StringTokenizer(value, ", !");
+		double[] numbers = new double[tokenizer.countTokens()];
+		try {
+			for (int i = 0; i < numbers.length; i++)
+				numbers[i] = Double.parseDouble(tokenizer.nextToken());
+		} catch (NumberFormatException e) {
+			return new double[0];
+		}
+		return numbers;
+	}
+
+	/**
+	 * Inserts the cells of the current batch into the layout cache, applies
+	 * the changed attributes of inserted vertices and starts a new batch. The
+	 * cells are inserted on the event dispatch thread.
+	 */
+	protected void flush() {
+		if (!batch.isEmpty() || !nested.isEmpty()) {
+			final Object[] cells = batch.toArray();
+			final ConnectionSet connections = cs;
+			final Map changes = nested;
+			insertCount += cells.length;
+			batch = new ArrayList();
+			batchVertices = new HashSet();
+			cs = new ConnectionSet();
+			nested = new Hashtable();
+			Runnable insert = new Runnable() {
+				public void run() {
+					if (cells.length > 0)
+						cache.insert(cells, null, connections, null, null);
+					if (!changes.isEmpty())
+						cache.edit(changes, null, null, null);
+				}
+			};
+			if (SwingUtilities.isEventDispatchThread()) {
+				insert.run();
+			} else {
+				try {
+					SwingUtilities.invokeAndWait(insert);
+				} catch (InterruptedException e) {
+					cancelled = true;
+				} catch (InvocationTargetException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the current token is the specified keyword.
+	 */
+	protected boolean isKeyword(String keyword) {
+		return tokenType == TOKEN_ID && keyword.equalsIgnoreCase(token);
+	}
+
+	/**
+	 * Makes the next call to {@link #nextToken()} return the current token.
+	 */
+	protected void pushBack() {
+		pushedBack = true;
+	}
+
+	/**
+	 * Reads the next token and returns its type. The text of the token is
+	 * stored in {@link #token}. Comments and preprocessor lines are skipped.
+	 * 
+	 * @return Returns the type of the next token.
+	 */
+	protected int nextToken() throws IOException {
+		if (pushedBack) {
+			pushedBack = false;
+			return tokenType;
+		}
+		int c = skipWhitespace();
+		if (c < 0) {
+			token = null;
+			tokenType = TOKEN_EOF;
+		} else if (c == '"') {
+			StringBuffer buffer = new StringBuffer();
+			c = reader.read();
+			while (c >= 0 && c != '"') {
+				if (c == '\\') {
+					c = reader.read();
+					if (c != '"' && c != '\n') {
+						buffer.append('\\');
+						if (c < 0)
+							break;
+						buffer.append((char) c);
+					} else if (c == '"')
+						buffer.append('"');
+				} else
+					buffer.append((char) c);
+				c = reader.read();
+			}
+			token = buffer.toString();
+			tokenType = TOKEN_ID;
+		} else if (c == '<') {
+			StringBuffer buffer = new StringBuffer();
+			int depth = 1;
+			c = reader.read();
+			while (c >= 0 && (c != '>' || depth > 1)) {
+				if (c == '<')
+					depth++;
+				else if (c == '>')
+					depth--;
+				buffer.append((char) c);
+				c = reader.read();
+			}
+			token = buffer.toString();
+			tokenType = TOKEN_ID;
+		} else if (c == '-' && isEdgeOperator()) {
+			reader.read();
+			token = "->";
+			tokenType = TOKEN_EDGEOP;
+		} else if (isIdentifierPart(c)) {
+			StringBuffer buffer = new StringBuffer();
+			while (isIdentifierPart(c) && !(c == '-' && isEdgeOperator())) {
+				buffer.append((char) c);
+				c = reader.read();
+			}
+			if (c >= 0)
+				reader.unread(c);
+			token = buffer.toString();
+			tokenType = TOKEN_ID;
+		} else {
+			token = String.valueOf((char) c);
+			tokenType = c;
+		}
+		if (cancelled)
+			throw new InterruptedIOException();
+		return tokenType;
+	}
+
+	/**
+	 * Returns true if the next character after a minus sign makes it an edge
+	 * operator.
+	 */
+	protected boolean isEdgeOperator() throws IOException {
+		int c = reader.read();
+		if (c >= 0)
+			reader.unread(c);
+		return c == '>' || c == '-';
+	}
+
+	/**
+	 * Returns true if the specified character may be part of an unquoted id.
+	 */
+	protected boolean isIdentifierPart(int c) {
+		return c >= 0
+				&& (Character.isLetterOrDigit((char) c) || c == '_' || c == '.'
+						|| c == '-' || c >= 128);
+	}
+
+	/**
+	 * Skips whitespace, comments and preprocessor lines and returns the next
+	 * character.
+	 */
+	protected int skipWhitespace() throws IOException {
+		int c = reader.read();
+		while (c >= 0) {
+			if (c == '\n') {
+				lineStart = true;
+			} else if (c == '#' && lineStart) {
+				while (c >= 0 && c != '\n')
+					c = reader.read();
+				continue;
+			} else if (c == '/') {
+				int next = reader.read();
+				if (next == '/') {
+					while (c >= 0 && c != '\n')
+						c = reader.read();
+					continue;
+				} else if (next == '*') {
+					int last = 0;
+					c = reader.read();
+					while (c >= 0 && !(last == '*' && c == '/')) {
+						last = c;
+						c = reader.read();
+					}
+				} else {
+					if (next >= 0)
+						reader.unread(next);
+					lineStart = false;
+					return c;
+				}
+			} else if (!Character.isWhitespace((char) c)) {
+				lineStart = false;
+				return c;
 			}
-			if (from != null && to != null)
-				return "\n\t" + from + " -> " + to + ";";
+			c = reader.read();
 		}
-		return "";
+		return c;
 	}
 
 }
@@ -382,4 +382,22 @@ public abstract class JGraphEditorAction extends AbstractAction
 
 	}
 
+	/**
+	 * A bundle which is only updated for specific kinds of changes.
+	 * 
+	 * @see JGraphEditorKit#update(int)
+	 */
+	public interface DependentBundle extends Bundle
+	{
+
+		/**
+		 * Returns the kinds of changes that require an update of the actions
+		 * as a combination of the JGraphEditorKit.CHANGE_* constants.
+		 * 
+		 * @return Returns the kinds of changes the actions depend on.
+		 */
+		public int getDependencies();
+
+	}
+
 }
\ No newline at end of file
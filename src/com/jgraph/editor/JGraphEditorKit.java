@@ -15,11 +15,33 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import javax.swing.SwingUtilities;
+
 /**
- * Holds references to actions and mouse tools and updates their states.
+ * Holds references to actions and mouse tools and updates their states. The
+ * application requests updates for specific kinds of changes using
+ * {@link #scheduleUpdate(int)}. The requests are coalesced into a single
+ * update which is performed on the event dispatch thread, and only the
+ * bundles that depend on the requested kinds of changes are updated.
  */
 public class JGraphEditorKit {
 
+	/**
+	 * Defines the kinds of changes that require an update of the actions. The
+	 * constants may be combined using bitwise or.
+	 * 
+	 * @see JGraphEditorAction.DependentBundle#getDependencies()
+	 */
+	public static final int CHANGE_FOCUS = 1, CHANGE_SELECTION = 2,
+			CHANGE_MODEL = 4, CHANGE_LAYOUT = 8, CHANGE_UNDO = 16,
+			CHANGE_PROPERTY = 32;
+
+	/**
+	 * Defines the combination of all kinds of changes.
+	 */
+	public static final int CHANGE_ALL = CHANGE_FOCUS | CHANGE_SELECTION
+			| CHANGE_MODEL | CHANGE_LAYOUT | CHANGE_UNDO | CHANGE_PROPERTY;
+
 	/**
 	 * Holds the (name, action) and (name, tool) pairs respectively.
 	 */
@@ -30,6 +52,12 @@ public class JGraphEditorKit {
 	 */
 	protected List bundles = new ArrayList(2);
 
+	/**
+	 * Holds the kinds of changes of the scheduled update or 0 if no update is
+	 * scheduled.
+	 */
+	protected transient int pendingChanges = 0;
+
 	/**
 	 * Adds the specified action to the kit.
 	 * 
@@ -113,9 +141,55 @@ public class JGraphEditorKit {
 	 * @see JGraphEditorAction.Bundle#update()
 	 */
 	public void update() {
+		update(CHANGE_ALL);
+	}
+
+	/**
+	 * Updates the bundles which depend on the specified kinds of changes.
+	 * Bundles which do not implement {@link JGraphEditorAction.DependentBundle}
+	 * are always updated.
+	 * 
+	 * @param changes
+	 *            The kinds of changes that have occurred.
+	 */
+	public void update(int changes) {
 		Iterator it = bundles.iterator();
-		while (it.hasNext())
-			((JGraphEditorAction.Bundle) it.next()).update();
+		while (it.hasNext()) {
+			JGraphEditorAction.Bundle bundle = (JGraphEditorAction.Bundle) it
+					.next();
+			if (!(bundle instanceof JGraphEditorAction.DependentBundle)
+					|| (((JGraphEditorAction.DependentBundle) bundle)
+							.getDependencies() & changes) != 0)
+				bundle.update();
+		}
+	}
+
+	/**
+	 * Schedules an update for the specified kinds of changes. All updates
+	 * which are scheduled before the event dispatch thread runs the update
+	 * are combined into a single call to {@link #update(int)}. This may be
+	 * invoked from any thread.
+	 * 
+	 * @param changes
+	 *            The kinds of changes that have occurred.
+	 */
+	public void scheduleUpdate(int changes) {
+		synchronized (this) {
+			boolean scheduled = pendingChanges != 0;
+			pendingChanges |= changes;
+			if (scheduled || changes == 0)
+				return;
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				int changes;
+				synchronized (JGraphEditorKit.this) {
+					changes = pendingChanges;
+					pendingChanges = 0;
+				}
+				update(changes);
+			}
+		});
 	}
 
 	/**
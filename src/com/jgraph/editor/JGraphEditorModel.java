@@ -21,11 +21,17 @@ import java.beans.PropertyDescriptor;
 import java.beans.XMLDecoder;
 import java.beans.XMLEncoder;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -33,6 +39,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -84,6 +91,25 @@ public class JGraphEditorModel extends DefaultTreeModel {
 	 */
 	protected Map persistenceDelegates = new Hashtable();
 
+	/**
+	 * Holds the (extension, codec) pairs. Files whose name ends with one of
+	 * the extensions (ignoring a trailing <code>.gz</code>) are read and
+	 * written using the respective codec instead of the XML encoder.
+	 */
+	protected Map codecs = new Hashtable();
+
+	/**
+	 * Maps from files to their revision numbers. The revision of a file is
+	 * incremented each time the file is marked as modified.
+	 */
+	protected Map revisions = new WeakHashMap();
+
+	/**
+	 * References the journal that receives all changes of the diagrams in
+	 * this model. Default is null.
+	 */
+	protected Journal journal;
+
 	/**
 	 * Reference to the mutable root node.
 	 */
@@ -213,6 +239,68 @@ public class JGraphEditorModel extends DefaultTreeModel {
 		return null;
 	}
 
+	/**
+	 * Associates the specified codec with all files ending with
+	 * <code>extension</code>, for example <code>.jgpb</code>. A trailing
+	 * <code>.gz</code> is ignored when looking up codecs, so compressed files
+	 * are handled by the same codec.
+	 * 
+	 * @param extension
+	 *            The extension to associate the codec with.
+	 * @param codec
+	 *            The codec to use for the extension.
+	 * @return Returns the previous codec for <code>extension</code>.
+	 */
+	public Object addCodec(String extension, Codec codec) {
+		if (extension != null && codec != null)
+			return codecs.put(extension.toLowerCase(), codec);
+		return null;
+	}
+
+	/**
+	 * Sets the journal that receives all changes of the diagrams in this
+	 * model.
+	 * 
+	 * @param journal
+	 *            The journal to be used or null.
+	 */
+	public void setJournal(Journal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Returns the journal that receives all changes of the diagrams in this
+	 * model.
+	 * 
+	 * @return Returns the journal or null.
+	 */
+	public Journal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Returns the codec for the specified URI or <code>null</code> if the
+	 * URI should be read and written as XML.
+	 * 
+	 * @param uri
+	 *            The URI to return the codec for.
+	 * @return Returns the codec for <code>uri</code> or <code>null</code>.
+	 */
+	public Codec getCodec(String uri) {
+		if (uri != null && !codecs.isEmpty()) {
+			String name = uri.toLowerCase();
+			if (name.endsWith(".gz"))
+				name = name.substring(0, name.length() - 3);
+			Iterator it = codecs.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry entry = (Map.Entry) it.next();
+				if (name.endsWith((String) entry.getKey()))
+					return (Codec) entry.getValue();
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Adds the specified root as a child to {@link #rootNode}. Calls
 	 * {@link #installListeners(TreeNode)}on the node.
@@ -258,7 +346,7 @@ public class JGraphEditorModel extends DefaultTreeModel {
 			Object file = getFileByFilename(uri);
 			if (file == null) {
 				InputStream in = getInputStream(uri);
-				file = readObject(in);
+				file = readObject(in, uri);
 				in.close();
 				if (file instanceof JGraphEditorFile) {
 					((JGraphEditorFile) file).setFilename(uri);
@@ -312,7 +400,8 @@ public class JGraphEditorModel extends DefaultTreeModel {
 	/**
 	 * Installs the listeners required to update the modified state of the
 	 * parent file node to <code>diagram</code>. This implementation adds a
-	 * graph layout cache listener and a graph model listener.
+	 * graph layout cache listener and a graph model listener, which also pass
+	 * the events to the journal if one is set.
 	 * 
 	 * @param diagram
 	 *            The diagram to install the listeners to.
@@ -329,6 +418,8 @@ public class JGraphEditorModel extends DefaultTreeModel {
 							file = (JGraphEditorFile) file.getParent();
 						}
 						setModified(file, true);
+						if (journal != null)
+							journal.graphLayoutCacheChanged(file, diagram, e);
 					}
 
 				});
@@ -343,6 +434,8 @@ public class JGraphEditorModel extends DefaultTreeModel {
 							file = (JGraphEditorFile) file.getParent();
 						}
 						setModified(file, true);
+						if (journal != null)
+							journal.graphChanged(file, diagram, e);
 					}
 				});
 	}
@@ -400,11 +493,28 @@ public class JGraphEditorModel extends DefaultTreeModel {
 	 */
 	public void setModified(JGraphEditorFile file, boolean modified) {
 		if (file != null) {
+			if (modified)
+				revisions.put(file, new Long(getRevision(file) + 1));
 			file.setModified(modified);
 			nodeChanged(file);
 		}
 	}
 
+	/**
+	 * Returns the revision of the specified file. The revision is incremented
+	 * each time the file is marked as modified, so callers may compare
+	 * revisions to find out if a file was changed in the meantime, for example
+	 * while it was being saved in the background.
+	 * 
+	 * @param file
+	 *            The file to return the revision for.
+	 * @return Returns the revision of <code>file</code>.
+	 */
+	public long getRevision(JGraphEditorFile file) {
+		Long revision = (Long) revisions.get(file);
+		return (revision != null) ? revision.longValue() : 0;
+	}
+
 	/**
 	 * Returns the file for the specified filename if it is in the model or
 	 * <code>null</code> if no such file exists.
@@ -466,6 +576,29 @@ public class JGraphEditorModel extends DefaultTreeModel {
 					+ problems.get(0) + ")");
 	}
 
+	/**
+	 * Writes the specified object to the output stream using the codec for
+	 * <code>uri</code> or {@link #writeObject(Object, OutputStream)} if no
+	 * codec is registered for <code>uri</code>.
+	 * 
+	 * @param object
+	 *            The object to be written.
+	 * @param out
+	 *            The output stream to write to.
+	 * @param uri
+	 *            The URI used to find the codec.
+	 * 
+	 * @see #getCodec(String)
+	 */
+	public void writeObject(Object object, OutputStream out, String uri)
+			throws IOException {
+		Codec codec = getCodec(uri);
+		if (codec != null)
+			codec.writeObject(this, object, out);
+		else
+			writeObject(object, out);
+	}
+
 	/**
 	 * Hook for subclassers to configure a new XML encoder for writing an
 	 * object. This implementation sets all registered persistence delegates and
@@ -516,12 +649,71 @@ public class JGraphEditorModel extends DefaultTreeModel {
 	 * @return Returns an output stream for the specified URI.
 	 */
 	public OutputStream getOutputStream(String uri) throws IOException {
-		OutputStream out = JGraphEditorResources.getOutputStream(uri);
+		return getOutputStream(JGraphEditorResources.getOutputStream(uri), uri);
+	}
+
+	/**
+	 * Hook for subclassers to wrap the specified output stream for the
+	 * specified URI. This implementation wraps the stream in a
+	 * {@link java.util.zip.GZIPOutputStream} if the URI ends with
+	 * <code>.gz</code>.
+	 * 
+	 * @param out
+	 *            The output stream to be wrapped.
+	 * @param uri
+	 *            The URI that the stream writes to.
+	 * @return Returns an output stream for the specified URI.
+	 */
+	protected OutputStream getOutputStream(OutputStream out, String uri)
+			throws IOException {
 		if (uri.toLowerCase().endsWith(".gz"))
 			out = new GZIPOutputStream(out);
 		return out;
 	}
 
+	/**
+	 * Writes the specified object to the specified local file using
+	 * {@link #writeObject(Object, OutputStream, String)}. The object is first
+	 * written to a temporary file in the same directory which is then renamed
+	 * to <code>filename</code>, so that an existing file is only replaced
+	 * once the new file has been written completely.
+	 * 
+	 * @param object
+	 *            The object to be written.
+	 * @param filename
+	 *            The name of the local file to write to.
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 */
+	public void writeFile(Object object, String filename) throws IOException {
+		File file = new File(filename).getAbsoluteFile();
+		File tmp = File.createTempFile(file.getName() + ".", ".tmp", file
+				.getParentFile());
+		boolean written = false;
+		try {
+			OutputStream out = getOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmp)), filename);
+			try {
+				writeObject(object, out, filename);
+				out.flush();
+			} finally {
+				out.close();
+			}
+			try {
+				Files.move(tmp.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			written = true;
+		} finally {
+			if (!written)
+				tmp.delete();
+		}
+	}
+
 	/**
 	 * Returns a new object from the specified stream using a new XML decoder.
 	 * This method does nothing special. Subclassers can override this method if
@@ -540,6 +732,26 @@ public class JGraphEditorModel extends DefaultTreeModel {
 		return null;
 	}
 
+	/**
+	 * Returns a new object from the specified stream using the codec for
+	 * <code>uri</code> or {@link #readObject(InputStream)} if no codec is
+	 * registered for <code>uri</code>.
+	 * 
+	 * @param in
+	 *            The input stream to read from.
+	 * @param uri
+	 *            The URI used to find the codec.
+	 * @return Returns a new object from the specified stream.
+	 * 
+	 * @see #getCodec(String)
+	 */
+	public Object readObject(InputStream in, String uri) throws IOException {
+		Codec codec = getCodec(uri);
+		if (codec != null)
+			return codec.readObject(this, in);
+		return readObject(in);
+	}
+
 	/**
 	 * Makes the specified field transient in the bean info of
 	 * <code>clazz</code>.
@@ -608,4 +820,78 @@ public class JGraphEditorModel extends DefaultTreeModel {
 		return null;
 	}
 
+	/**
+	 * Defines the requirements for classes that read and write files in a
+	 * format other than XML. Codecs are registered for a file extension using
+	 * {@link JGraphEditorModel#addCodec(String, Codec)} and operate on the
+	 * streams returned by {@link JGraphEditorModel#getInputStream(String)} and
+	 * {@link JGraphEditorModel#getOutputStream(String)}.
+	 */
+	public interface Codec {
+
+		/**
+		 * Writes the specified object to the output stream.
+		 * 
+		 * @param model
+		 *            The document model that invoked the codec.
+		 * @param object
+		 *            The object to be written.
+		 * @param out
+		 *            The output stream to write to.
+		 */
+		public void writeObject(JGraphEditorModel model, Object object,
+				OutputStream out) throws IOException;
+
+		/**
+		 * Returns a new object from the specified input stream.
+		 * 
+		 * @param model
+		 *            The document model that invoked the codec.
+		 * @param in
+		 *            The input stream to read from.
+		 * @return Returns a new object from the specified stream.
+		 */
+		public Object readObject(JGraphEditorModel model, InputStream in)
+				throws IOException;
+
+	}
+
+	/**
+	 * Defines the requirements for classes that record the changes of the
+	 * diagrams in the model, eg. to recover unsaved changes after a crash. The
+	 * journal is set using {@link JGraphEditorModel#setJournal(Journal)} and
+	 * is invoked on the event dispatch thread from the listeners installed in
+	 * {@link JGraphEditorModel#installDiagramListeners(JGraphEditorDiagram)}.
+	 */
+	public interface Journal {
+
+		/**
+		 * Invoked after the model of the specified diagram has changed.
+		 * 
+		 * @param file
+		 *            The file that contains the diagram.
+		 * @param diagram
+		 *            The diagram that has changed.
+		 * @param event
+		 *            The event that describes the change.
+		 */
+		public void graphChanged(JGraphEditorFile file,
+				JGraphEditorDiagram diagram, GraphModelEvent event);
+
+		/**
+		 * Invoked after the graph layout cache of the specified diagram has
+		 * changed.
+		 * 
+		 * @param file
+		 *            The file that contains the diagram.
+		 * @param diagram
+		 *            The diagram that has changed.
+		 * @param event
+		 *            The event that describes the change.
+		 */
+		public void graphLayoutCacheChanged(JGraphEditorFile file,
+				JGraphEditorDiagram diagram, GraphLayoutCacheEvent event);
+
+	}
+
 }
@@ -25,6 +25,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.awt.print.PageFormat;
 import java.awt.print.Printable;
 import java.beans.PropertyChangeEvent;
@@ -258,7 +259,8 @@ public class JGraphEditorDiagramPane extends JScrollPane implements Printable {
 	 * the bg color. Therefore, one should only use a null background if the
 	 * fileformat support transparency, eg. GIF and PNG. For JPG, you can use
 	 * <code>Color.WHITE</code> for example. This implementation also takes
-	 * into account potential background images.
+	 * into account potential background images. The cells are painted using
+	 * {@link #paintImage(Graphics2D)}.
 	 * 
 	 * @return Returns an image of the graph.
 	 */
@@ -285,16 +287,48 @@ public class JGraphEditorDiagramPane extends JScrollPane implements Printable {
 			}
 			graphics.translate((int) (-bounds.getX() + inset), (int) (-bounds
 					.getY() + inset));
-			boolean tmp = isDoubleBuffered();
-			RepaintManager currentManager = RepaintManager.currentManager(this);
-			currentManager.setDoubleBufferingEnabled(false);
-			graph.paint(graphics);
-			currentManager.setDoubleBufferingEnabled(tmp);
+			paintImage(graphics);
+			graphics.dispose();
 			return img;
 		}
 		return null;
 	}
 
+	/**
+	 * Hook for subclassers to paint the cells of the graph for
+	 * {@link #getImage(Color, int)}. This implementation paints the graph
+	 * with double buffering disabled.
+	 * 
+	 * @param graphics
+	 *            The graphics to paint the cells to.
+	 */
+	protected void paintImage(Graphics2D graphics) {
+		boolean tmp = isDoubleBuffered();
+		RepaintManager currentManager = RepaintManager.currentManager(this);
+		currentManager.setDoubleBufferingEnabled(false);
+		graph.paint(graphics);
+		currentManager.setDoubleBufferingEnabled(tmp);
+	}
+
+	/**
+	 * Hook for subclassers to return an image of the graph that is rendered
+	 * in tiles on demand using inset as an empty border around the cells, so
+	 * that it needs memory proportional to its width rather than its size if
+	 * it is written row by row, eg. using the PNG or TIFF writers of the
+	 * image I/O API. If bg is null then the background of the image is
+	 * transparent. Returns null if the graph contains no cells. This
+	 * implementation returns {@link #getImage(Color, int)}.
+	 * 
+	 * @param bg
+	 *            The background color or null.
+	 * @param inset
+	 *            The empty border around the cells.
+	 * @return Returns a tiled image of the graph or null.
+	 */
+	public RenderedImage getTiledImage(Color bg, int inset) {
+		return getImage(bg, inset);
+	}
+
 	/**
 	 * Returns the graph undo manager.
 	 * 
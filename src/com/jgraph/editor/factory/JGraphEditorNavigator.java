@@ -9,14 +9,18 @@
  */
 package com.jgraph.editor.factory;
 
+import java.awt.AlphaComposite;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.AdjustmentEvent;
 import java.awt.event.AdjustmentListener;
 import java.awt.event.ComponentAdapter;
@@ -26,19 +30,25 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JViewport;
-import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import org.jgraph.JGraph;
 import org.jgraph.event.GraphLayoutCacheEvent;
+import org.jgraph.event.GraphLayoutCacheEvent.GraphLayoutCacheChange;
 import org.jgraph.event.GraphLayoutCacheListener;
 import org.jgraph.event.GraphModelEvent;
 import org.jgraph.event.GraphModelListener;
@@ -50,6 +60,12 @@ import com.jgraph.JGraphEditor;
 /**
  * Birds-eye view on a graph. The displayed graph may be changed at runtime. The
  * class provides the {@link FactoryMethod} to be added to an editor factory.
+ * <br>
+ * The navigator keeps an offscreen image of the backing graph, so that
+ * scrolling the displayed graph only draws the image and the viewport
+ * rectangle. The changes of the displayed graph are collected and the dirty
+ * regions of the image are redrawn at most once every
+ * {@link #REFRESH_DELAY} milliseconds.
  */
 public class JGraphEditorNavigator extends JPanel implements
 		GraphLayoutCacheListener, GraphModelListener, PropertyChangeListener,
@@ -67,6 +83,19 @@ public class JGraphEditorNavigator extends JPanel implements
 	 */
 	public static Color DEFAULT_BACKGROUND = Color.lightGray;
 
+	/**
+	 * Specifies the delay in milliseconds between the first of a series of
+	 * changes and the refresh of the navigator. Default is 40.
+	 */
+	public static int REFRESH_DELAY = 40;
+
+	/**
+	 * Specifies the number of pixels by which the dirty regions of the
+	 * offscreen image are enlarged to include antialiased outlines. Default is
+	 * 4.
+	 */
+	public static int DIRTY_MARGIN = 4;
+
 	/**
 	 * Component listener to udpate the scale.
 	 */
@@ -112,6 +141,33 @@ public class JGraphEditorNavigator extends JPanel implements
 	 */
 	protected boolean isBackgroundImageVisible = true;
 
+	/**
+	 * Specifies whether the backing graph should be painted using an offscreen
+	 * image. Default is true.
+	 */
+	protected boolean isOverviewBuffered = true;
+
+	/**
+	 * Holds the changes since the last refresh.
+	 */
+	protected transient List pendingChanges = new ArrayList();
+
+	/**
+	 * Holds the region of the pending changes before the changes were applied
+	 * in graph coordinates.
+	 */
+	protected transient Rectangle2D pendingRegion;
+
+	/**
+	 * Timer to refresh the navigator after a series of changes.
+	 */
+	protected Timer refreshTimer = new Timer(REFRESH_DELAY,
+			new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					refresh();
+				}
+			});
+
 	/**
 	 * Constructs a new graph navigator using <code>backingGraph</code> to
 	 * display the graph in {@link #currentGraph}.
@@ -122,6 +178,7 @@ public class JGraphEditorNavigator extends JPanel implements
 	public JGraphEditorNavigator(JGraph backingGraph) {
 		super(new BorderLayout());
 		setDoubleBuffered(true);
+		refreshTimer.setRepeats(false);
 		setBackingGraph(backingGraph);
 		initialLayoutCache = backingGraph.getGraphLayoutCache();
 		backingGraph.setOpaque(false);
@@ -210,6 +267,23 @@ public class JGraphEditorNavigator extends JPanel implements
 		this.isBackgroundImageVisible = isBackgroundImageVisible;
 	}
 
+	/**
+	 * @return Returns the isOverviewBuffered.
+	 */
+	public boolean isOverviewBuffered() {
+		return isOverviewBuffered;
+	}
+
+	/**
+	 * @param isOverviewBuffered
+	 *            The isOverviewBuffered to set.
+	 */
+	public void setOverviewBuffered(boolean isOverviewBuffered) {
+		this.isOverviewBuffered = isOverviewBuffered;
+		navigatorPane.invalidateOverview(null);
+		navigatorPane.repaint();
+	}
+
 	/**
 	 * Sets the graph that is currently displayed.
 	 * 
@@ -261,54 +335,112 @@ public class JGraphEditorNavigator extends JPanel implements
 					backingGraph.setGraphLayoutCache(sourceGraph
 							.getGraphLayoutCache());
 				}
+				pendingChanges.clear();
+				pendingRegion = null;
+				navigatorPane.invalidateOverview(null);
 				updateScale();
 			}
 		}
 	}
 
 	/**
-	 * Updates the scale of the backing graph.
+	 * Schedules a refresh of the navigator. All calls within
+	 * {@link #REFRESH_DELAY} milliseconds result in a single refresh.
 	 */
 	protected void updateScale() {
-		SwingUtilities.invokeLater(new Runnable() {
-			public void run() {
-				JGraph graph = getCurrentGraph();
-				if (graph != null) {
-					Dimension d = graph.getPreferredSize();
-					Dimension b = graph.getBounds().getSize();
-					d.width = Math.max(d.width, b.width);
-					b.height = Math.max(d.height, b.height);
-					double scale = graph.getScale();
-					d.setSize(d.width * 1 / scale, d.height * 1 / scale);
-					Dimension s = getScrollPane().getViewport().getSize();
-					double sx = s.getWidth() / d.getWidth();
-					double sy = s.getHeight() / d.getHeight();
-					scale = Math.min(Math.min(sx, sy), getMaximumScale());
-					getBackingGraph().setScale(scale);
-					repaint();
+		if (!refreshTimer.isRunning())
+			refreshTimer.start();
+	}
+
+	/**
+	 * Updates the scale of the backing graph and redraws the regions of the
+	 * offscreen image which are affected by the pending changes. If the scale
+	 * has changed then the complete image is redrawn.
+	 */
+	protected void refresh() {
+		JGraph graph = getCurrentGraph();
+		if (graph != null) {
+			Dimension d = graph.getPreferredSize();
+			Dimension b = graph.getBounds().getSize();
+			d.width = Math.max(d.width, b.width);
+			b.height = Math.max(d.height, b.height);
+			double scale = graph.getScale();
+			d.setSize(d.width * 1 / scale, d.height * 1 / scale);
+			Dimension s = getScrollPane().getViewport().getSize();
+			double sx = s.getWidth() / d.getWidth();
+			double sy = s.getHeight() / d.getHeight();
+			scale = Math.min(Math.min(sx, sy), getMaximumScale());
+			if (scale != getBackingGraph().getScale()) {
+				getBackingGraph().setScale(scale);
+				navigatorPane.invalidateOverview(null);
+			} else {
+
+				// Adds the regions of the changes after they were applied
+				Rectangle2D region = pendingRegion;
+				Iterator it = pendingChanges.iterator();
+				while (it.hasNext()) {
+					GraphLayoutCacheChange change = (GraphLayoutCacheChange) it
+							.next();
+					region = union(region, change.getDirtyRegion());
+					region = union(region, backingGraph
+							.getClipRectangle(change));
 				}
+				if (region != null)
+					navigatorPane.invalidateOverview(region);
 			}
-		});
+			repaint();
+		}
+		pendingChanges.clear();
+		pendingRegion = null;
+	}
+
+	/**
+	 * Adds the specified change to the pending changes and schedules a
+	 * refresh. The region of the change is stored so that the region of
+	 * removed and moved cells can be redrawn after the change.
+	 * 
+	 * @param change
+	 *            The change to be added.
+	 */
+	protected void addPendingChange(GraphLayoutCacheChange change) {
+		pendingRegion = union(pendingRegion, change.getDirtyRegion());
+		pendingRegion = union(pendingRegion, backingGraph
+				.getClipRectangle(change));
+		pendingChanges.add(change);
+		updateScale();
+	}
+
+	/**
+	 * Helper method that returns the union of the specified rectangles. Either
+	 * rectangle may be null. The first rectangle may be changed.
+	 */
+	protected static Rectangle2D union(Rectangle2D r1, Rectangle2D r2) {
+		if (r1 == null)
+			return (r2 != null) ? (Rectangle2D) r2.clone() : null;
+		else if (r2 != null)
+			r1.add(r2);
+		return r1;
 	}
 
 	/*
 	 * (non-Javadoc)
 	 */
 	public void graphLayoutCacheChanged(GraphLayoutCacheEvent e) {
-		updateScale();
+		addPendingChange(e.getChange());
 	}
 
 	/*
 	 * (non-Javadoc)
 	 */
 	public void graphChanged(GraphModelEvent e) {
-		updateScale();
+		addPendingChange(e.getChange());
 	}
 
 	/*
 	 * (non-Javadoc)
 	 */
 	public void propertyChange(PropertyChangeEvent event) {
+		navigatorPane.invalidateOverview(null);
 		updateScale();
 	}
 
@@ -367,6 +499,17 @@ public class JGraphEditorNavigator extends JPanel implements
 		 */
 		protected Point lastPoint = null;
 
+		/**
+		 * Holds the offscreen image of the backing graph.
+		 */
+		protected transient BufferedImage overview;
+
+		/**
+		 * Holds the region of the offscreen image to be redrawn or null if
+		 * the image is valid.
+		 */
+		protected transient Rectangle overviewDirty;
+
 		/**
 		 * Constructs a new navigator pane using the specified backing graph to
 		 * display the preview.
@@ -380,6 +523,80 @@ public class JGraphEditorNavigator extends JPanel implements
 			getViewport().setOpaque(false);
 		}
 
+		/**
+		 * Returns a new {@link OverviewViewport}.
+		 */
+		protected JViewport createViewport() {
+			return new OverviewViewport();
+		}
+
+		/**
+		 * Marks the specified region of the offscreen image as dirty. The
+		 * region is redrawn the next time the navigator is painted.
+		 * 
+		 * @param region
+		 *            The region in graph coordinates or null to redraw the
+		 *            complete image.
+		 */
+		public void invalidateOverview(Rectangle2D region) {
+			if (region == null) {
+				overview = null;
+				overviewDirty = null;
+			} else if (overview != null) {
+				Rectangle rect = backingGraph.toScreen(
+						(Rectangle2D) region.clone()).getBounds();
+				rect.grow(DIRTY_MARGIN, DIRTY_MARGIN);
+				if (overviewDirty == null)
+					overviewDirty = rect;
+				else
+					overviewDirty.add(rect);
+			}
+		}
+
+		/**
+		 * Returns the offscreen image of the backing graph after redrawing its
+		 * dirty region. A new image is created if the size of the backing
+		 * graph has changed. Returns null if the backing graph has no size.
+		 * 
+		 * @return Returns the offscreen image.
+		 */
+		protected BufferedImage getOverview() {
+			int w = backingGraph.getWidth();
+			int h = backingGraph.getHeight();
+			if (w <= 0 || h <= 0)
+				return null;
+			if (overview == null || overview.getWidth() != w
+					|| overview.getHeight() != h) {
+				overview = new BufferedImage(w, h,
+						BufferedImage.TYPE_INT_ARGB_PRE);
+				overviewDirty = new Rectangle(0, 0, w, h);
+			}
+			if (overviewDirty != null) {
+				Rectangle rect = overviewDirty.intersection(new Rectangle(0,
+						0, w, h));
+				overviewDirty = null;
+				if (!rect.isEmpty()) {
+					Graphics2D g2 = overview.createGraphics();
+					try {
+						g2.setComposite(AlphaComposite.Clear);
+						g2.fill(rect);
+						g2.setComposite(AlphaComposite.SrcOver);
+						g2.clip(rect);
+
+						// Paints the graph without the double buffering of
+						// the repaint manager, which does not preserve the
+						// transparency of the image
+						g2.setColor(backingGraph.getForeground());
+						g2.setFont(backingGraph.getFont());
+						backingGraph.getUI().update(g2, backingGraph);
+					} finally {
+						g2.dispose();
+					}
+				}
+			}
+			return overview;
+		}
+
 		/**
 		 * Paints the navigator pane on the specified graphics.
 		 * 
@@ -433,6 +650,41 @@ public class JGraphEditorNavigator extends JPanel implements
 			// empty
 		}
 
+		/**
+		 * Viewport that paints the offscreen image of the backing graph
+		 * instead of the backing graph if the overview is buffered.
+		 */
+		public class OverviewViewport extends JViewport {
+
+			/**
+			 * Constructs a new viewport which repaints instead of blitting
+			 * its contents when scrolled, so that it always paints the
+			 * offscreen image.
+			 */
+			public OverviewViewport() {
+				setScrollMode(SIMPLE_SCROLL_MODE);
+			}
+
+			/**
+			 * Paints the offscreen image of the backing graph or invokes the
+			 * superclass implementation if the overview is not buffered.
+			 * 
+			 * @param g
+			 *            The graphics to paint the viewport to.
+			 */
+			public void paint(Graphics g) {
+				BufferedImage image = (isOverviewBuffered() && getView() == backingGraph) ? getOverview()
+						: null;
+				if (image != null) {
+					Point pt = getViewPosition();
+					g.drawImage(image, -pt.x, -pt.y, this);
+				} else {
+					super.paint(g);
+				}
+			}
+
+		}
+
 		/*
 		 * (non-Javadoc)
 		 */
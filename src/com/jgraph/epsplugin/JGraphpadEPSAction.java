@@ -18,7 +18,6 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
 
-import javax.swing.RepaintManager;
 
 import org.jgraph.JGraph;
 import org.jibble.epsgraphics.EpsGraphics2D;
@@ -26,6 +25,7 @@ import org.jibble.epsgraphics.EpsGraphics2D;
 import com.jgraph.JGraphEditor;
 import com.jgraph.editor.JGraphEditorAction;
 import com.jgraph.pad.action.JGraphpadFileAction;
+import com.jgraph.pad.util.JGraphpadRenderService;
 
 /**
  * Implements all actions that require EPSGraphics in the classpath.
@@ -82,27 +82,7 @@ public class JGraphpadEPSAction extends JGraphpadFileAction {
 			throws IOException {
 		if (filename != null) {
 			OutputStream out = editor.getModel().getOutputStream(filename);
-			Object[] cells = graph.getDescendants(graph.getRoots());
-			if (cells.length > 0) {
-				EpsGraphics2D graphics = new EpsGraphics2D();
-				graphics.setColor(graph.getBackground());
-				Rectangle2D bounds = graph.toScreen(graph.getCellBounds(cells));
-				Dimension d = bounds.getBounds().getSize();
-				graphics.fillRect(0, 0, d.width + 2 * inset, d.height + 2
-						* inset);
-				graphics.translate(-bounds.getX() + inset, -bounds.getY()
-						+ inset);
-
-				// Paints the graph to the svg generator with no double
-				// buffering enabled to make sure we get a vector image.
-				RepaintManager currentManager = RepaintManager
-						.currentManager(graph);
-				currentManager.setDoubleBufferingEnabled(false);
-				graph.paint(graphics);
-				out.write(graphics.toString().getBytes());
-				currentManager.setDoubleBufferingEnabled(true);
-			}
-
+			writeEPS(graph, out, inset);
 			out.close();
 			if (JGraphEditor.isURL(filename)) {
 				URL url = new URL(filename);
@@ -112,6 +92,37 @@ public class JGraphpadEPSAction extends JGraphpadFileAction {
 		}
 	}
 
+	/**
+	 * Writes the specified graph as an EPS vector graphics to the specified
+	 * stream. The stream is not closed. This does not require the event
+	 * dispatch thread if the graph is not changed while it is written.
+	 * 
+	 * @param graph
+	 *            The graph to write as EPS.
+	 * @param out
+	 *            The stream to write the EPS to.
+	 * @param inset
+	 *            The inset to use for the EPS graphics.
+	 */
+	public static void writeEPS(JGraph graph, OutputStream out, int inset)
+			throws IOException {
+		Object[] cells = graph.getDescendants(graph.getRoots());
+		if (cells.length > 0) {
+			EpsGraphics2D graphics = new EpsGraphics2D();
+			graphics.setColor(graph.getBackground());
+			Rectangle2D bounds = graph.toScreen(graph.getCellBounds(cells));
+			Dimension d = bounds.getBounds().getSize();
+			graphics.fillRect(0, 0, d.width + 2 * inset, d.height + 2 * inset);
+			graphics.translate(-bounds.getX() + inset, -bounds.getY() + inset);
+
+			// Paints the cells to the eps graphics without using the
+			// repaint manager to make sure we get a vector image.
+			JGraphpadRenderService.getSharedInstance().paint(graphics,
+					graph.getGraphLayoutCache(), graph);
+			out.write(graphics.toString().getBytes());
+		}
+	}
+
 	/**
 	 * Bundle of all actions in this class.
 	 */
@@ -0,0 +1,261 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.jgxplugin;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.jgraph.graph.DefaultGraphModel;
+import org.jgraph.graph.GraphLayoutCache;
+import org.jgraph.graph.GraphModel;
+
+import com.jgraph.editor.JGraphEditorModel;
+import com.jgraph.pad.JGraphpadDiagram;
+import com.jgraph.pad.JGraphpadFile;
+import com.jgraph.pad.graph.JGraphpadGraphLayoutCache;
+import com.jgraph.pad.graph.JGraphpadGraphModel;
+
+/**
+ * Converts JGX files of older JGraphpad versions to the native file format.
+ * Each file is imported into the model of a new diagram using
+ * {@link JGraphpadJGXImporter} and written next to the JGX file with the
+ * {@link #EXTENSION} using {@link JGraphEditorModel#writeFile(Object, String)}.
+ * The files are converted in parallel by a fixed number of worker threads,
+ * where the number of files in memory is limited by the number of threads.
+ * Targets that are newer than their JGX file are not written again.
+ */
+public class JGraphpadJGXConverter {
+
+	/**
+	 * Specifies the extension of the converted files. Default is .xml.gz.
+	 */
+	public static String EXTENSION = ".xml.gz";
+
+	/**
+	 * References the document model to write the files.
+	 */
+	protected JGraphEditorModel model;
+
+	/**
+	 * References the prototypes to create new vertices and edges with.
+	 */
+	protected Object vertexPrototype, edgePrototype;
+
+	/**
+	 * Holds the number of worker threads.
+	 */
+	protected int threads;
+
+	/**
+	 * Counts the files that have been converted, skipped and failed.
+	 */
+	protected int converted = 0, skipped = 0, failed = 0;
+
+	/**
+	 * Holds the errors of the failed files.
+	 */
+	protected List errors = new ArrayList();
+
+	/**
+	 * Specifies if the conversion has been cancelled.
+	 */
+	protected volatile boolean cancelled = false;
+
+	/**
+	 * Constructs a new converter.
+	 *
+	 * @param model
+	 *            The document model to write the files.
+	 * @param vertexPrototype
+	 *            The prototype to create new vertices with.
+	 * @param edgePrototype
+	 *            The prototype to create new edges with.
+	 * @param threads
+	 *            The number of worker threads.
+	 */
+	public JGraphpadJGXConverter(JGraphEditorModel model,
+			Object vertexPrototype, Object edgePrototype, int threads) {
+		this.model = model;
+		this.vertexPrototype = vertexPrototype;
+		this.edgePrototype = edgePrototype;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Returns the JGX files in the specified directory sorted by name.
+	 *
+	 * @param directory
+	 *            The directory to return the files for.
+	 * @return Returns the JGX files in <code>directory</code>.
+	 */
+	public static File[] getFiles(File directory) {
+		List result = new ArrayList();
+		File[] children = directory.listFiles();
+		if (children != null) {
+			Arrays.sort(children);
+			for (int i = 0; i < children.length; i++)
+				if (children[i].isFile()
+						&& children[i].getName().toLowerCase().endsWith(".jgx"))
+					result.add(children[i]);
+		}
+		return (File[]) result.toArray(new File[result.size()]);
+	}
+
+	/**
+	 * Returns the file to write the specified JGX file to.
+	 *
+	 * @param file
+	 *            The JGX file to be converted.
+	 * @return Returns the target file for <code>file</code>.
+	 */
+	public File getTarget(File file) {
+		String name = file.getName();
+		if (name.toLowerCase().endsWith(".jgx"))
+			name = name.substring(0, name.length() - 4);
+		return new File(file.getParentFile(), name + EXTENSION);
+	}
+
+	/**
+	 * Converts the specified files using the worker threads. At most one task
+	 * per thread is queued so that the number of files in memory is bounded.
+	 * This returns when all files have been converted or the conversion has
+	 * been cancelled.
+	 *
+	 * @param files
+	 *            The files to be converted.
+	 * @return Returns the number of files that failed.
+	 */
+	public int run(File[] files) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue(threads),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		for (int i = 0; i < files.length && !cancelled; i++) {
+			final File file = files[i];
+			executor.execute(new Runnable() {
+				public void run() {
+					if (!cancelled)
+						convert(file);
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return getFailed();
+	}
+
+	/**
+	 * Converts the specified JGX file unless the target is newer than the
+	 * file. Errors are added to the list of errors.
+	 *
+	 * @param file
+	 *            The JGX file to be converted.
+	 */
+	protected void convert(File file) {
+		File target = getTarget(file);
+		try {
+			if (target.lastModified() > file.lastModified()) {
+				synchronized (this) {
+					skipped++;
+				}
+			} else {
+				// Imports into the model without creating views because
+				// the shared renderers of the views are not thread-safe
+				GraphModel graphModel = new JGraphpadGraphModel();
+				JGraphpadJGXImporter importer = new JGraphpadJGXImporter(
+						graphModel, vertexPrototype, edgePrototype);
+				importer.setDispatch(false);
+				importer.importStream(new BufferedInputStream(
+						new FileInputStream(file)));
+				GraphLayoutCache cache = new JGraphpadGraphLayoutCache(
+						graphModel, null, true);
+				cache.setVisibleSet(new HashSet(DefaultGraphModel
+						.getDescendants(graphModel, DefaultGraphModel
+								.getRoots(graphModel))));
+				JGraphpadFile result = new JGraphpadFile(target.getPath());
+				result.add(new JGraphpadDiagram(file.getName(), cache));
+				model.writeFile(result, target.getPath());
+				synchronized (this) {
+					converted++;
+				}
+			}
+		} catch (Throwable e) {
+			synchronized (this) {
+				failed++;
+				errors.add(file + ": " + e);
+			}
+		}
+	}
+
+	/**
+	 * Cancels the conversion. Files that are being converted are completed.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns true if the conversion has been cancelled.
+	 *
+	 * @return Returns true if the conversion was cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns the number of files that have been converted, skipped or
+	 * failed.
+	 *
+	 * @return Returns the number of processed files.
+	 */
+	public synchronized int getCount() {
+		return converted + skipped + failed;
+	}
+
+	/**
+	 * Returns the number of files that have been converted.
+	 *
+	 * @return Returns the number of converted files.
+	 */
+	public synchronized int getConverted() {
+		return converted;
+	}
+
+	/**
+	 * Returns the number of files that failed.
+	 *
+	 * @return Returns the number of failed files.
+	 */
+	public synchronized int getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Returns the errors of the failed files.
+	 *
+	 * @return Returns a list of error messages.
+	 */
+	public synchronized List getErrors() {
+		return new ArrayList(errors);
+	}
+
+}
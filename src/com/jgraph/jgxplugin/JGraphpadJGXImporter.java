@@ -0,0 +1,1053 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.jgxplugin;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Point;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import javax.swing.BorderFactory;
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+import javax.swing.border.Border;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jgraph.graph.AttributeMap;
+import org.jgraph.graph.ConnectionSet;
+import org.jgraph.graph.DefaultGraphCell;
+import org.jgraph.graph.DefaultGraphModel;
+import org.jgraph.graph.DefaultPort;
+import org.jgraph.graph.Edge;
+import org.jgraph.graph.GraphConstants;
+import org.jgraph.graph.GraphLayoutCache;
+import org.jgraph.graph.GraphModel;
+
+import com.jgraph.pad.graph.JGraphpadBusinessObject;
+import com.jgraph.pad.graph.JGraphpadGraphConstants;
+import com.jgraph.pad.graph.JGraphpadRichTextValue;
+import com.jgraph.pad.graph.JGraphpadVertexRenderer;
+import com.jgraph.pad.util.JGraphpadImageIcon;
+import com.jgraph.pad.util.JGraphpadShadowBorder;
+
+/**
+ * Streaming importer for files of older JGraphpad versions (.jgx). The file
+ * is read with a StAX reader in a single pass, where the model section
+ * creates the cells, the user section holds the user objects, the attrs
+ * section holds the attribute maps, which may inherit from a parent map, and
+ * the view section holds the settings of the graph. The ids of the file are
+ * resolved using {@link IdTable}s, which store the numeric ids written by
+ * JGraphpad in arrays, and references to ports that appear later in the
+ * file are resolved at the end of the model section.<br>
+ * Since the user objects and attributes follow the model in the file, the
+ * cells are inserted into the layout cache after the file has been read. The
+ * cells are inserted in batches of at least {@link #BATCH_SIZE} cells and half
+ * as many cells as have been inserted before, where the cells without
+ * connections are inserted first so that edges are always inserted after
+ * their terminals. The batches are inserted on the event dispatch thread if
+ * {@link #isDispatch()} is true, so the import may run in a background thread
+ * and may be cancelled between the batches. If the importer is constructed
+ * for a model then the cells are inserted into the model without views. All
+ * state is held in the
+ * importer, so several files may be imported at the same time using one
+ * importer per file.
+ */
+public class JGraphpadJGXImporter {
+
+	/**
+	 * Defines the types of the cells in JGX files.
+	 */
+	public static final String TYPE_RECT = "rect", TYPE_TEXT = "text",
+			TYPE_ELLIPSE = "ellipse", TYPE_DIAMOND = "diamond",
+			TYPE_TRIANGLE = "triangle", TYPE_ROUNDRECT = "roundRect",
+			TYPE_SWIMLANE = "swimlane", TYPE_IMAGE = "image",
+			TYPE_PORT = "port", TYPE_EDGE = "edge";
+
+	/**
+	 * Marks values which remove the inherited value of an attribute.
+	 */
+	public static final String EMPTY = new String("Empty");
+
+	/**
+	 * Key for the id of the parent map of an attribute map.
+	 */
+	public static final String PARENT = new String("Parent");
+
+	/**
+	 * Specifies the minimum number of cells to insert at once. Default is
+	 * 5000.
+	 */
+	public static int BATCH_SIZE = 5000;
+
+	/**
+	 * Defines the attribute keys which are decoded using the type at the same
+	 * index in {@link #KEY_TYPES}. Values of other keys are strings.
+	 */
+	public static String[] KNOWN_KEYS = new String[] {
+			GraphConstants.ABSOLUTEX, GraphConstants.ABSOLUTEY,
+			GraphConstants.AUTOSIZE, GraphConstants.BACKGROUND,
+			GraphConstants.GRADIENTCOLOR, GraphConstants.BEGINFILL,
+			GraphConstants.BEGINSIZE, GraphConstants.BENDABLE,
+			GraphConstants.BORDER, GraphConstants.BORDERCOLOR,
+			GraphConstants.BOUNDS, GraphConstants.CHILDRENSELECTABLE,
+			GraphConstants.CONNECTABLE, GraphConstants.CONSTRAINED,
+			GraphConstants.DASHPATTERN, GraphConstants.DASHOFFSET,
+			GraphConstants.DISCONNECTABLE, GraphConstants.EDITABLE,
+			GraphConstants.ENDFILL, GraphConstants.ENDSIZE,
+			GraphConstants.EXTRALABELS, GraphConstants.EXTRALABELPOSITIONS,
+			GraphConstants.FONT, GraphConstants.FOREGROUND,
+			GraphConstants.HORIZONTAL_ALIGNMENT,
+			GraphConstants.VERTICAL_ALIGNMENT, GraphConstants.ICON,
+			GraphConstants.INSET, GraphConstants.LABELALONGEDGE,
+			GraphConstants.LABELPOSITION, GraphConstants.LINEBEGIN,
+			GraphConstants.LINECOLOR, GraphConstants.LINEEND,
+			GraphConstants.LINESTYLE, GraphConstants.LINEWIDTH,
+			GraphConstants.MOVEABLE, GraphConstants.MOVEABLEAXIS,
+			GraphConstants.MOVEHIDDENCHILDREN, GraphConstants.OFFSET,
+			GraphConstants.OPAQUE, GraphConstants.POINTS,
+			GraphConstants.RESIZE, GraphConstants.ROUTING,
+			GraphConstants.SELECTABLE, GraphConstants.SIZE,
+			GraphConstants.SIZEABLE, GraphConstants.SIZEABLEAXIS,
+			GraphConstants.VALUE, GraphConstants.HORIZONTAL_TEXT_POSITION,
+			GraphConstants.VERTICAL_TEXT_POSITION };
+
+	/**
+	 * Defines the types of the values for the {@link #KNOWN_KEYS}.
+	 */
+	public static Class[] KEY_TYPES = new Class[] { Boolean.class, // ABSOLUTEX
+			Boolean.class, Boolean.class, // ABSOLUTEY, AUTOSIZE
+			Color.class, Color.class, // BACKGROUND, GRADIENTCOLOR,
+			Boolean.class, Integer.class, // BEGINFILL, BEGINSIZE,
+			Boolean.class, Border.class, // BENDABLE, BORDER,
+			Color.class, Rectangle2D.class, // BORDERCOLOR, BOUNDS,
+			Boolean.class, Boolean.class, // CHILDRENSELECTABLE, CONNECTABLE
+			Boolean.class, float[].class, // CONSTRAINED, DASHPATTERN
+			float.class, // DASHOFFSET
+			Boolean.class, Boolean.class, // DISCONNECTABLE, EDITABLE,
+			Boolean.class, Integer.class, // ENDFILL, ENDSIZE,
+			Object[].class, Point[].class, // EXTRALABELS, EXTRALABELPOSITIONS
+			Font.class, Color.class, // FONT, FOREGROUND,
+			Integer.class, Integer.class, // HORIZONTAL_ALIGNMENT,
+			// VERTICAL_ALIGNMENT
+			Icon.class, Integer.class, // ICON, INSET,
+			Boolean.class, Point.class, // LABELALONGEDGE, LABELPOSITION,
+			Integer.class, Color.class, // LINEBEGIN, LINECOLOR,
+			Integer.class, Integer.class, // LINEEND, LINESTYLE,
+			Float.class, Boolean.class, // LINEWIDTH, MOVEABLE,
+			Integer.class, Boolean.class, // MOVEABLEAXIS, MOVEHIDDENCHILDREN
+			Point.class, Boolean.class, // OFFSET, OPAQUE,
+			List.class, Boolean.class, Edge.Routing.class, // POINTS, RESIZE,
+			// ROUTING,
+			Boolean.class, // SELECTABLE
+			Dimension.class, Boolean.class,// SIZE, SIZEABLE,
+			Integer.class, // SIZEABLEAXIS
+			Object.class, Integer.class, // VALUE, HORIZONTAL_TEXT_POSITION
+			Integer.class }; // VERTICAL_TEXT_POSITION
+
+	/**
+	 * Maps from the {@link #KNOWN_KEYS} to their {@link #KEY_TYPES}.
+	 */
+	protected static Map keyTypes = new HashMap();
+
+	static {
+		for (int i = 0; i < KNOWN_KEYS.length; i++)
+			keyTypes.put(KNOWN_KEYS[i], KEY_TYPES[i]);
+	}
+
+	/**
+	 * References the layout cache to import the cells into or null if the
+	 * cells are inserted into the model without creating views.
+	 */
+	protected GraphLayoutCache cache;
+
+	/**
+	 * References the model to import the cells into.
+	 */
+	protected GraphModel model;
+
+	/**
+	 * References the prototypes to create new vertices and edges with.
+	 */
+	protected Object vertexPrototype, edgePrototype;
+
+	/**
+	 * Specifies if the cells should be inserted on the event dispatch thread.
+	 * Default is true.
+	 */
+	protected boolean dispatch = true;
+
+	/**
+	 * Maps from ids to cells, user objects and attribute maps. The attribute
+	 * maps contain the {@link #PARENT} key until they are resolved.
+	 */
+	protected IdTable cells = new IdTable(), values = new IdTable(),
+			attributes = new IdTable();
+
+	/**
+	 * Holds the entries for the cells in the order of the file. The
+	 * descendants of a cell follow the entry of the cell.
+	 */
+	protected List entries = new ArrayList();
+
+	/**
+	 * Holds the entries for the root cells.
+	 */
+	protected List roots = new ArrayList();
+
+	/**
+	 * Holds the entries for edges whose terminals could not be resolved when
+	 * the edge was read.
+	 */
+	protected List unresolved = new ArrayList();
+
+	/**
+	 * Holds the settings of the graph.
+	 */
+	protected Map settings = new Hashtable();
+
+	/**
+	 * Holds the number of cells that have been inserted.
+	 */
+	protected int insertCount = 0;
+
+	/**
+	 * Specifies if the import has been cancelled.
+	 */
+	protected volatile boolean cancelled = false;
+
+	/**
+	 * Constructs a new importer for the specified layout cache.
+	 *
+	 * @param cache
+	 *            The layout cache to import into.
+	 * @param vertexPrototype
+	 *            The prototype to create new vertices with.
+	 * @param edgePrototype
+	 *            The prototype to create new edges with.
+	 */
+	public JGraphpadJGXImporter(GraphLayoutCache cache,
+			Object vertexPrototype, Object edgePrototype) {
+		this(cache.getModel(), vertexPrototype, edgePrototype);
+		this.cache = cache;
+	}
+
+	/**
+	 * Constructs a new importer for the specified model. The cells are
+	 * inserted into the model without creating views, which is safe to do in
+	 * any thread as long as the model is not used elsewhere. The cells must
+	 * be made visible in the layout cache for the model, for example using
+	 * {@link GraphLayoutCache#setVisibleSet(java.util.Set)}.
+	 *
+	 * @param model
+	 *            The model to import into.
+	 * @param vertexPrototype
+	 *            The prototype to create new vertices with.
+	 * @param edgePrototype
+	 *            The prototype to create new edges with.
+	 */
+	public JGraphpadJGXImporter(GraphModel model, Object vertexPrototype,
+			Object edgePrototype) {
+		this.model = model;
+		this.vertexPrototype = vertexPrototype;
+		this.edgePrototype = edgePrototype;
+	}
+
+	/**
+	 * Reads the specified stream and inserts the cells into the layout cache.
+	 * The stream is closed when this returns. If the import is cancelled then
+	 * this throws an {@link InterruptedIOException}.
+	 *
+	 * @param in
+	 *            The stream to import the cells from.
+	 * @throws IOException
+	 *             If the stream cannot be read or the import was cancelled.
+	 * @throws XMLStreamException
+	 *             If the stream cannot be parsed.
+	 */
+	public void importStream(InputStream in) throws IOException,
+			XMLStreamException {
+		try {
+			read(in);
+		} catch (XMLStreamException e) {
+			// Passes on the exceptions of the stream, in particular
+			// the exception of a cancelled progress monitor stream
+			if (e.getNestedException() instanceof IOException)
+				throw (IOException) e.getNestedException();
+			throw e;
+		} finally {
+			in.close();
+		}
+		if (!cancelled)
+			insertCells();
+		if (cancelled)
+			throw new InterruptedIOException();
+	}
+
+	/**
+	 * Reads the sections of the JGX file from the specified stream.
+	 *
+	 * @param in
+	 *            The stream to be read.
+	 */
+	protected void read(InputStream in) throws XMLStreamException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		XMLStreamReader reader = factory.createXMLStreamReader(in);
+
+		// Stack of the entries of the open cells in the model section,
+		// where null stands for a cell that could not be created
+		List stack = new ArrayList();
+		String section = null;
+
+		// Holds the id, value and properties of the current user object or
+		// the id and entries of the current attribute map
+		String id = null;
+		String value = null;
+		Map map = null;
+		int depth = 0;
+		try {
+			while (reader.hasNext() && !cancelled) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+					String name = reader.getLocalName().toLowerCase();
+					if (depth == 2) {
+						section = name;
+					} else if (section == null || !name.equals("a")
+							&& !name.equals("map")) {
+						// ignore
+					} else if (section.equals("model")) {
+						if (depth == stack.size() + 3)
+							stack.add(readCell(reader, name, stack));
+					} else if (depth == 3 && section.equals("user")) {
+						id = reader.getAttributeValue(null, "key");
+						value = decodeURL(reader.getAttributeValue(null,
+								"val"));
+						map = (name.equals("a") && id != null) ? new Hashtable()
+								: null;
+					} else if (depth == 3 && section.equals("attrs")) {
+						id = reader.getAttributeValue(null, "id");
+						value = reader.getAttributeValue(null, "pid");
+						map = (name.equals("map") && id != null) ? new Hashtable()
+								: null;
+					} else if (depth == 4 && map != null) {
+						readAttribute(reader, name, map, section
+								.equals("attrs"), section.equals("user"));
+					} else if (depth == 3 && section.equals("view")) {
+						readAttribute(reader, name, settings, false, false);
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (depth > 2 && section != null
+							&& section.equals("model")
+							&& depth == stack.size() + 2) {
+						Entry entry = (Entry) stack.remove(stack.size() - 1);
+						if (entry != null)
+							entry.end = entries.size();
+					} else if (depth == 3 && map != null) {
+						if (section.equals("user"))
+							addUserObject(id, value, map);
+						else
+							addAttributes(id, value, map);
+						map = null;
+					} else if (depth == 2) {
+						if (section != null && section.equals("model"))
+							resolveTerminals();
+						section = null;
+					}
+					depth--;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Creates the cell for the element at the current position of the
+	 * specified reader and returns its entry, or null if the element is not a
+	 * cell or the cell cannot be created. The cell is added to the cell on
+	 * top of the specified stack or to the roots if the stack is empty.
+	 *
+	 * @param reader
+	 *            The reader positioned at the start of the cell.
+	 * @param name
+	 *            The lowercase name of the element.
+	 * @param stack
+	 *            The entries of the ancestors of the cell.
+	 * @return Returns the entry for the new cell.
+	 */
+	protected Entry readCell(XMLStreamReader reader, String name, List stack) {
+		Entry parent = (stack.isEmpty()) ? null : (Entry) stack.get(stack
+				.size() - 1);
+		String id = reader.getAttributeValue(null, "id");
+		String type = reader.getAttributeValue(null, "class");
+		if (!name.equals("a") || id == null || type == null
+				|| (parent == null && !stack.isEmpty()))
+			return null;
+		Object cell = createCell(type);
+		if (cell == null)
+			return null;
+		Entry entry = new Entry(cell, type);
+		entry.value = reader.getAttributeValue(null, "val");
+		entry.attributes = reader.getAttributeValue(null, "attr");
+		entry.sourceId = reader.getAttributeValue(null, "src");
+		entry.targetId = reader.getAttributeValue(null, "tgt");
+		if (entry.attributes != null) {
+			String value = reader.getAttributeValue(null, "rect");
+			if (value != null) {
+				Object rectangle = decodeValue(Rectangle2D.class, value);
+				if (rectangle instanceof Rectangle2D)
+					entry.bounds = (Rectangle2D) rectangle;
+			}
+			value = reader.getAttributeValue(null, "pts");
+			if (value != null) {
+				Object pointList = decodeValue(List.class, value);
+				if (pointList instanceof List)
+					entry.points = (List) pointList;
+			}
+		}
+		cells.put(id, cell);
+		if (entry.sourceId != null || entry.targetId != null) {
+			entry.source = (entry.sourceId != null) ? cells
+					.get(entry.sourceId) : null;
+			entry.target = (entry.targetId != null) ? cells
+					.get(entry.targetId) : null;
+			if ((entry.sourceId != null && entry.source == null)
+					|| (entry.targetId != null && entry.target == null))
+				unresolved.add(entry);
+			Entry root = (stack.isEmpty()) ? entry : (Entry) stack.get(0);
+			root.connected = true;
+		}
+		if (parent != null)
+			((DefaultGraphCell) parent.cell).add((DefaultGraphCell) cell);
+		else
+			roots.add(new Integer(entries.size()));
+		entries.add(entry);
+		return entry;
+	}
+
+	/**
+	 * Resolves the terminals of the edges which reference ports that appear
+	 * after the edge in the file. This is invoked at the end of the model
+	 * section.
+	 */
+	protected void resolveTerminals() {
+		Iterator it = unresolved.iterator();
+		while (it.hasNext()) {
+			Entry entry = (Entry) it.next();
+			if (entry.source == null && entry.sourceId != null)
+				entry.source = cells.get(entry.sourceId);
+			if (entry.target == null && entry.targetId != null)
+				entry.target = cells.get(entry.targetId);
+		}
+		unresolved.clear();
+	}
+
+	/**
+	 * Reads the key and value of the element at the current position of the
+	 * specified reader into the specified map.
+	 *
+	 * @param reader
+	 *            The reader positioned at the start of the element.
+	 * @param name
+	 *            The lowercase name of the element.
+	 * @param map
+	 *            The map to put the value into.
+	 * @param useKnownKeys
+	 *            Whether the {@link #KNOWN_KEYS} should be decoded.
+	 * @param decodeURL
+	 *            Whether the key and value are URL encoded.
+	 */
+	protected void readAttribute(XMLStreamReader reader, String name, Map map,
+			boolean useKnownKeys, boolean decodeURL) {
+		String key = reader.getAttributeValue(null, "key");
+		String value = reader.getAttributeValue(null, "val");
+		if (name.equals("a") && key != null && value != null) {
+			Object decoded = value;
+			if (useKnownKeys) {
+				Class type = (Class) keyTypes.get(key);
+				if (type != null)
+					decoded = decodeValue(type, value);
+			} else if (decodeURL) {
+				key = decodeURL(key);
+				decoded = decodeURL(value);
+			}
+			if (decoded != null && !(useKnownKeys && key.equals(PARENT)))
+				map.put(key, decoded);
+		}
+	}
+
+	/**
+	 * Adds the user object for the specified id. User objects without
+	 * properties are stored as their value, otherwise the value is added to
+	 * the properties.
+	 *
+	 * @param id
+	 *            The id of the user object.
+	 * @param value
+	 *            The value of the user object or null.
+	 * @param properties
+	 *            The properties of the user object.
+	 */
+	protected void addUserObject(String id, String value, Map properties) {
+		if (value != null && properties.isEmpty()) {
+			values.put(id, value);
+		} else {
+			if (value != null && value.length() > 0)
+				properties.put(JGraphpadBusinessObject.valueKey, value);
+			values.put(id, properties);
+		}
+	}
+
+	/**
+	 * Adds the attribute map for the specified id if it has entries. The id
+	 * of the parent map is stored under the {@link #PARENT} key until the map
+	 * is resolved in {@link #getAttributes(String)}, otherwise the
+	 * {@link #EMPTY} values are removed.
+	 *
+	 * @param id
+	 *            The id of the attribute map.
+	 * @param parentId
+	 *            The id of the parent map or null.
+	 * @param map
+	 *            The entries of the attribute map.
+	 */
+	protected void addAttributes(String id, String parentId, Map map) {
+		if (!map.isEmpty()) {
+			if (parentId != null)
+				map.put(PARENT, parentId);
+			else
+				removeEmptyValues(map);
+			attributes.put(id, map);
+		}
+	}
+
+	/**
+	 * Removes all {@link #EMPTY} values from the specified map.
+	 */
+	protected void removeEmptyValues(Map map) {
+		Iterator it = map.values().iterator();
+		while (it.hasNext())
+			if (it.next() == EMPTY)
+				it.remove();
+	}
+
+	/**
+	 * Returns the URL decoded form of the specified value or null if the
+	 * value is null.
+	 */
+	protected String decodeURL(String value) {
+		if (value != null) {
+			try {
+				return URLDecoder.decode(value, "UTF-8");
+			} catch (Exception e) {
+				System.err.println(e.getMessage());
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the attribute map for the specified id with the inherited
+	 * attributes of its parent maps and without the {@link #EMPTY} values. The
+	 * result is stored in the id table so that each map is resolved only
+	 * once.
+	 *
+	 * @param id
+	 *            The id of the attribute map.
+	 * @return Returns the resolved attribute map or null.
+	 */
+	protected Map getAttributes(String id) {
+		Map map = (Map) attributes.get(id);
+		if (map == null || !map.containsKey(PARENT))
+			return map;
+
+		// Marks the map as being resolved to stop cyclic references
+		Object parentId = map.remove(PARENT);
+		Map parent = getAttributes(String.valueOf(parentId));
+		Map result = new Hashtable();
+		if (parent != null)
+			result.putAll(parent);
+		result.putAll(map);
+		removeEmptyValues(result);
+		attributes.put(id, result);
+		return result;
+	}
+
+	/**
+	 * Returns the settings of the graph from the view section of the file.
+	 *
+	 * @return Returns the settings.
+	 */
+	public Map getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Inserts the cells that have been read into the layout cache. The roots
+	 * without connections are inserted before the roots with connections.
+	 */
+	protected void insertCells() {
+		List batch = new ArrayList();
+		Map nested = new Hashtable();
+		ConnectionSet cs = new ConnectionSet();
+		int size = 0;
+		for (int pass = 0; pass < 2 && !cancelled; pass++) {
+			for (int i = 0; i < roots.size() && !cancelled; i++) {
+				int index = ((Integer) roots.get(i)).intValue();
+				Entry root = (Entry) entries.get(index);
+				if (root.connected == (pass == 1)) {
+					batch.add(root.cell);
+					for (int j = index; j < root.end; j++) {
+						Entry entry = (Entry) entries.get(j);
+						if (!entry.type.equals(TYPE_PORT))
+							setValue(entry.cell, entry.type,
+									(entry.value != null) ? values
+											.get(entry.value) : "");
+						if (entry.source != null)
+							cs.connect(entry.cell, entry.source, true);
+						if (entry.target != null)
+							cs.connect(entry.cell, entry.target, false);
+						if (entry.attributes != null)
+							nested.put(entry.cell, createAttributes(entry));
+					}
+					size += root.end - index;
+					if (size >= Math.max(BATCH_SIZE, insertCount / 2)) {
+						flush(batch.toArray(), nested, cs);
+						insertCount += size;
+						batch.clear();
+						nested = new Hashtable();
+						cs = new ConnectionSet();
+						size = 0;
+					}
+				}
+			}
+		}
+		if (!batch.isEmpty() && !cancelled)
+			flush(batch.toArray(), nested, cs);
+	}
+
+	/**
+	 * Returns the attributes for the specified entry. The resolved attribute
+	 * map is shared between cells without bounds and points, which is safe
+	 * because the model copies the values when the attributes are applied.
+	 */
+	protected Map createAttributes(Entry entry) {
+		Map map = getAttributes(entry.attributes);
+		if (map == null)
+			map = new Hashtable();
+		if (entry.bounds != null || entry.points != null) {
+			map = new Hashtable(map);
+			if (entry.bounds != null)
+				GraphConstants.setBounds(map, entry.bounds);
+			if (entry.points != null)
+				GraphConstants.setPoints(map, entry.points);
+		}
+		return map;
+	}
+
+	/**
+	 * Inserts the specified cells into the layout cache, on the event
+	 * dispatch thread if {@link #isDispatch()} is true. If there is no layout
+	 * cache then the cells are inserted into the model.
+	 */
+	protected void flush(final Object[] roots, final Map nested,
+			final ConnectionSet cs) {
+		Runnable insert = new Runnable() {
+			public void run() {
+				if (cache != null)
+					cache.insert(roots, nested, cs, null, null);
+				else
+					model.insert(roots, nested, cs, null, null);
+			}
+		};
+		if (!dispatch || SwingUtilities.isEventDispatchThread()) {
+			insert.run();
+		} else {
+			try {
+				SwingUtilities.invokeAndWait(insert);
+			} catch (InterruptedException e) {
+				cancelled = true;
+			} catch (InvocationTargetException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Returns a new cell for the specified type or null if the prototype for
+	 * the type is not a {@link DefaultGraphCell}. The shape of vertices is
+	 * set according to the type.
+	 *
+	 * @param type
+	 *            The type of the cell to be created.
+	 * @return Returns a new cell.
+	 */
+	protected Object createCell(String type) {
+		if (type.equals(TYPE_EDGE)) {
+			if (edgePrototype instanceof DefaultGraphCell)
+				return DefaultGraphModel.cloneCell(model, edgePrototype);
+		} else if (type.equals(TYPE_PORT)) {
+			return new DefaultPort(); // no port prototype
+		} else if (vertexPrototype instanceof DefaultGraphCell) {
+			Object vertex = DefaultGraphModel.cloneCell(model, vertexPrototype);
+			Map attrs = model.getAttributes(vertex);
+			if (type.equals(TYPE_ROUNDRECT))
+				JGraphpadGraphConstants.setVertexShape(attrs,
+						JGraphpadVertexRenderer.SHAPE_ROUNDED);
+			else if (type.equals(TYPE_ELLIPSE))
+				JGraphpadGraphConstants.setVertexShape(attrs,
+						JGraphpadVertexRenderer.SHAPE_CIRCLE);
+			else if (type.equals(TYPE_DIAMOND))
+				JGraphpadGraphConstants.setVertexShape(attrs,
+						JGraphpadVertexRenderer.SHAPE_DIAMOND);
+			else if (type.equals(TYPE_TRIANGLE))
+				JGraphpadGraphConstants.setVertexShape(attrs,
+						JGraphpadVertexRenderer.SHAPE_TRIANGLE);
+			return vertex;
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the specified user object as the value of the specified cell. For
+	 * text cells the value of the user object is converted to rich text.
+	 *
+	 * @param cell
+	 *            The cell to change the value for.
+	 * @param type
+	 *            The type of the cell.
+	 * @param userObject
+	 *            The user object from the file.
+	 */
+	protected void setValue(Object cell, String type, Object userObject) {
+		model.valueForCellChanged(cell, userObject);
+		if (type.equals(TYPE_TEXT) && userObject instanceof Map) {
+			Object text = ((Map) userObject).get("value");
+			if (text != null)
+				model.valueForCellChanged(cell, new JGraphpadRichTextValue(
+						text.toString()));
+		}
+	}
+
+	/**
+	 * Splits the specified string into tokens.
+	 */
+	public static final String[] tokenize(String s, String token) {
+		StringTokenizer tokenizer = new StringTokenizer(s, token);
+		String[] tok = new String[tokenizer.countTokens()];
+		int i = 0;
+		while (tokenizer.hasMoreElements()) {
+			tok[i++] = tokenizer.nextToken();
+		}
+		return tok;
+	}
+
+	/**
+	 * Returns the object for the specified string representation of a value
+	 * of the specified type. Empty values of types other than string and
+	 * object are returned as {@link #EMPTY}.
+	 *
+	 * @param key
+	 *            The type of the value.
+	 * @param value
+	 *            The string representation of the value.
+	 * @return Returns the decoded value.
+	 */
+	public Object decodeValue(Class key, String value) {
+		if (key != String.class && key != Object.class
+				&& (value == null || value.equals("")))
+			return EMPTY;
+		if (key == Rectangle2D.class) {
+			String[] tok = tokenize(value, ",");
+			if (tok.length == 4) {
+				double x = Double.parseDouble(tok[0]);
+				double y = Double.parseDouble(tok[1]);
+				double w = Double.parseDouble(tok[2]);
+				double h = Double.parseDouble(tok[3]);
+				return new Rectangle2D.Double(x, y, w, h);
+			}
+		} else if (key == List.class) { // FIX: Do not assume Points!
+			List list = new LinkedList();
+			String[] tok = tokenize(value, ",");
+			for (int i = 0; i < tok.length; i = i + 2) {
+				double x = Double.parseDouble(tok[i]);
+				double y = Double.parseDouble(tok[i + 1]);
+				Point2D point = AttributeMap.emptyAttributeMap.createPoint(x,
+						y);
+				list.add(point);
+			}
+			return list;
+		} else if (key == Font.class) {
+			String[] tok = tokenize(value, ",");
+			if (tok.length == 3) {
+				String name = tok[0];
+				int size = Integer.parseInt(tok[1]);
+				int style = Integer.parseInt(tok[2]);
+				return new Font(name, style, size);
+			}
+		} else if (key == Color.class) {
+			String[] tok = tokenize(value, ",");
+			if (tok.length == 3) {
+				int r = Integer.parseInt(tok[0]);
+				int g = Integer.parseInt(tok[1]);
+				int b = Integer.parseInt(tok[2]);
+				return new Color(r, g, b);
+			}
+			return new Color(Integer.parseInt(value));
+		} else if (key == Point.class) {
+			String[] tok = tokenize(value, ",");
+			if (tok.length == 2) {
+				int x = Integer.parseInt(tok[0]);
+				int y = Integer.parseInt(tok[1]);
+				return new Point(x, y);
+			}
+		} else if (key == float[].class) {
+			String[] tok = tokenize(value, ",");
+			float[] f = new float[tok.length];
+			for (int i = 0; i < tok.length; i++)
+				f[i] = Float.parseFloat(tok[i]);
+			return f;
+		} else if (key == Integer.class) {
+			return new Integer(value);
+		} else if (key == Border.class) {
+			String[] tok = tokenize(value, ",");
+			if (tok[0].equals("L")) { // LineBorder
+				Color c = new Color(Integer.parseInt(tok[1]));
+				int thickness = Integer.parseInt(tok[2]);
+				return BorderFactory.createLineBorder(c, thickness);
+			} else if (tok[0].equals("B")) { // BevelBorder
+				int type = Integer.parseInt(tok[1]);
+				return BorderFactory.createBevelBorder(type);
+			} else if (tok[0].equals("S")) { // ShadowBorder
+				return JGraphpadShadowBorder.sharedInstance;
+			}
+			return BorderFactory.createLineBorder(Color.black, 1);
+		} else if (key == Boolean.class) {
+			return new Boolean(value);
+		} else if (key == Float.class) {
+			return new Float(value);
+		} else if (key == Icon.class) {
+			try {
+				return new JGraphpadImageIcon(new URL(value));
+			} catch (Exception e) {
+				System.err.println("Invalid URL: " + value);
+				return new JGraphpadImageIcon(value);
+			}
+		} else if (key == Edge.Routing.class) {
+			if (value.equals("simple"))
+				return GraphConstants.ROUTING_SIMPLE;
+		}
+		return value;
+	}
+
+	/**
+	 * Specifies if the cells should be inserted on the event dispatch thread.
+	 * This should be false if the layout cache is not displayed.
+	 *
+	 * @param dispatch
+	 *            Whether to insert on the event dispatch thread.
+	 */
+	public void setDispatch(boolean dispatch) {
+		this.dispatch = dispatch;
+	}
+
+	/**
+	 * Returns true if the cells are inserted on the event dispatch thread.
+	 *
+	 * @return Returns true if the cells are inserted on the EDT.
+	 */
+	public boolean isDispatch() {
+		return dispatch;
+	}
+
+	/**
+	 * Cancels the import. Batches that have been inserted remain in the
+	 * layout cache.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns true if the import has been cancelled.
+	 *
+	 * @return Returns true if the import was cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns the number of cells that have been read.
+	 *
+	 * @return Returns the number of cells.
+	 */
+	public int getCellCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Holds a cell that has been read together with the references to its
+	 * user object, attribute map and terminals.
+	 */
+	protected static class Entry {
+
+		/**
+		 * References the cell.
+		 */
+		protected Object cell;
+
+		/**
+		 * Holds the type of the cell.
+		 */
+		protected String type;
+
+		/**
+		 * Holds the ids of the user object and attribute map.
+		 */
+		protected String value, attributes;
+
+		/**
+		 * Holds the ids of the source and target port.
+		 */
+		protected String sourceId, targetId;
+
+		/**
+		 * References the source and target port.
+		 */
+		protected Object source, target;
+
+		/**
+		 * Holds the bounds and points of the cell.
+		 */
+		protected Rectangle2D bounds;
+
+		protected List points;
+
+		/**
+		 * Holds the index of the entry after the last descendant.
+		 */
+		protected int end;
+
+		/**
+		 * Specifies if the cell or one of its descendants has a terminal.
+		 */
+		protected boolean connected = false;
+
+		/**
+		 * Constructs a new entry for the specified cell and type.
+		 */
+		public Entry(Object cell, String type) {
+			this.cell = cell;
+			this.type = type;
+		}
+
+	}
+
+	/**
+	 * Table from the ids of a JGX file to objects. Ids that are small
+	 * non-negative numbers, which are the only ids written by JGraphpad, are
+	 * used as indices into an array and other ids are stored in a hash map.
+	 */
+	public static class IdTable {
+
+		/**
+		 * Specifies the maximum numeric id that is stored in the array.
+		 */
+		public static int MAX_INDEX = 1 << 22;
+
+		/**
+		 * Holds the objects for the numeric ids.
+		 */
+		protected Object[] objects = new Object[256];
+
+		/**
+		 * Maps from the other ids to objects.
+		 */
+		protected Map named = new HashMap();
+
+		/**
+		 * Returns the object for the specified id or null.
+		 *
+		 * @param id
+		 *            The id to return the object for.
+		 * @return Returns the object for <code>id</code>.
+		 */
+		public Object get(String id) {
+			int index = getIndex(id);
+			if (index >= 0)
+				return (index < objects.length) ? objects[index] : null;
+			return named.get(id);
+		}
+
+		/**
+		 * Associates the specified object with the specified id.
+		 *
+		 * @param id
+		 *            The id of the object.
+		 * @param object
+		 *            The object to associate with the id.
+		 */
+		public void put(String id, Object object) {
+			int index = getIndex(id);
+			if (index >= 0) {
+				if (index >= objects.length) {
+					Object[] tmp = new Object[Math.max(index + 1,
+							2 * objects.length)];
+					System.arraycopy(objects, 0, tmp, 0, objects.length);
+					objects = tmp;
+				}
+				objects[index] = object;
+			} else {
+				named.put(id, object);
+			}
+		}
+
+		/**
+		 * Returns the array index for the specified id or -1 if the id is not
+		 * a number without leading zeros up to {@link #MAX_INDEX}.
+		 */
+		protected static int getIndex(String id) {
+			int n = id.length();
+			if (n == 0 || n > 7 || (n > 1 && id.charAt(0) == '0'))
+				return -1;
+			int index = 0;
+			for (int i = 0; i < n; i++) {
+				char c = id.charAt(i);
+				if (c < '0' || c > '9')
+					return -1;
+				index = index * 10 + (c - '0');
+			}
+			return (index <= MAX_INDEX) ? index : -1;
+		}
+
+	}
+
+}
@@ -18,7 +18,6 @@ import org.xml.sax.SAXException;
 
 import com.jgraph.JGraphEditor;
 import com.jgraph.JGraphpad;
-import com.jgraph.codecplugin.JGraphpadCodecAction;
 import com.jgraph.editor.JGraphEditorPlugin;
 import com.jgraph.editor.JGraphEditorResources;
 import com.jgraph.editor.JGraphEditorSettings;
@@ -53,7 +52,7 @@ public class JGraphpadJGXPlugin implements JGraphEditorPlugin {
 	 */
 	public void initialize(JGraphEditor editor, Node configuration)
 			throws ParserConfigurationException, SAXException, IOException {
-		editor.getKit().addBundle(new JGraphpadCodecAction.AllActions(editor));
+		editor.getKit().addBundle(new JGraphpadJGXAction.AllActions(editor));
 		editor.getSettings().add(
 				JGraphpad.NAME_UICONFIG,
 				JGraphEditorSettings.parse(JGraphEditorResources
@@ -0,0 +1,67 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.layoutplugin;
+
+import java.awt.geom.Rectangle2D;
+
+import com.jgraph.layout.JGraphFacade;
+import com.jgraph.layout.organic.JGraphFastOrganicLayout;
+
+/**
+ * Fast organic layout that publishes the locations of the vertices after the
+ * iterations as intermediate results if it runs on a
+ * {@link JGraphpadLayoutExecutor.SnapshotFacade}, so that the progress of the
+ * layout is visible in large graphs.
+ */
+public class JGraphpadFastOrganicLayout extends JGraphFastOrganicLayout {
+
+	/**
+	 * References the facade to publish the intermediate results to while the
+	 * layout is running.
+	 */
+	protected transient JGraphpadLayoutExecutor.SnapshotFacade snapshotFacade;
+
+	/**
+	 * Runs the layout on the specified facade.
+	 *
+	 * @param facade
+	 *            The facade to run the layout on.
+	 */
+	public void run(JGraphFacade facade) {
+		snapshotFacade = (facade instanceof JGraphpadLayoutExecutor.SnapshotFacade) ? (JGraphpadLayoutExecutor.SnapshotFacade) facade
+				: null;
+		try {
+			super.run(facade);
+		} finally {
+			snapshotFacade = null;
+		}
+	}
+
+	/**
+	 * Overrides the parent's implementation to publish the locations of the
+	 * vertices if an intermediate result is due. While the layout is running
+	 * the locations refer to the centers of the vertices.
+	 */
+	public void calcPositions() {
+		super.calcPositions();
+		if (snapshotFacade != null && snapshotFacade.isFrameDue()) {
+			double[][] locations = new double[vertexArray.length][2];
+			for (int i = 0; i < vertexArray.length; i++) {
+				Rectangle2D bounds = snapshotFacade.getBounds(vertexArray[i]);
+				double w = (bounds != null) ? bounds.getWidth() : 0;
+				double h = (bounds != null) ? bounds.getHeight() : 0;
+				locations[i][0] = cellLocation[i][0] - w / 2;
+				locations[i][1] = cellLocation[i][1] - h / 2;
+			}
+			snapshotFacade.publish(vertexArray, locations);
+		}
+	}
+
+}
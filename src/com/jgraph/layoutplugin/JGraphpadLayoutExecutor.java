@@ -0,0 +1,897 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.layoutplugin;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.jgraph.JGraph;
+import org.jgraph.event.GraphModelEvent;
+import org.jgraph.event.GraphModelListener;
+import org.jgraph.graph.AttributeMap;
+import org.jgraph.graph.CellView;
+import org.jgraph.graph.DefaultGraphModel;
+import org.jgraph.graph.GraphConstants;
+import org.jgraph.graph.GraphLayoutCache;
+import org.jgraph.graph.GraphModel;
+
+import com.jgraph.algebra.JGraphAlgebra;
+import com.jgraph.algebra.cost.JGraphDistanceCostFunction;
+import com.jgraph.layout.JGraphFacade;
+import com.jgraph.layout.JGraphLayout;
+import com.jgraph.layout.JGraphLayoutProgress;
+import com.jgraph.pad.dialog.JGraphpadDialogs;
+import com.jgraph.pad.graph.JGraphpadGraphLayoutCache;
+import com.jgraph.pad.util.JGraphpadSaveManager;
+
+/**
+ * Runs layouts in a single background thread. Each {@link Task} creates a
+ * {@link SnapshotFacade} on the event dispatch thread, runs the layout on the
+ * snapshot in the worker thread and applies the result on the event dispatch
+ * thread, so that the user may continue to edit the graph while the layout is
+ * running. At most one task is waiting to be executed: A task that is
+ * submitted while another task is waiting replaces the waiting task, and a
+ * task for the layout and graph of the running task is ignored, so that
+ * repeated requests result in a single run. Tasks may be cancelled at any
+ * time, and iterative layouts may publish intermediate results which are
+ * displayed while the layout is running.
+ */
+public class JGraphpadLayoutExecutor {
+
+	/**
+	 * Specifies the minimum delay between intermediate results in
+	 * milliseconds. Layouts that take less time do not display intermediate
+	 * results. Default is 100.
+	 */
+	public static int FRAME_DELAY = 100;
+
+	/**
+	 * Specifies the delay between updates of the progress monitors in
+	 * milliseconds. Default is 250.
+	 */
+	public static int MONITOR_DELAY = 250;
+
+	/**
+	 * Shared singleton instance.
+	 */
+	protected static JGraphpadLayoutExecutor sharedInstance = new JGraphpadLayoutExecutor();
+
+	/**
+	 * Holds the worker thread. The queue holds at most one request to run the
+	 * next task, further requests are discarded since the worker always runs
+	 * the most recent task.
+	 */
+	protected ThreadPoolExecutor executor;
+
+	/**
+	 * Holds the task that is waiting to be executed and the task that is
+	 * running.
+	 */
+	protected Task queued, current;
+
+	/**
+	 * Runs the next task in the worker thread.
+	 */
+	protected Runnable worker = new Runnable() {
+		public void run() {
+			runNext();
+		}
+	};
+
+	/**
+	 * Constructs a new layout executor with a daemon worker thread.
+	 */
+	public JGraphpadLayoutExecutor() {
+		executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue(1), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "JGraphpadLayoutExecutor");
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new ThreadPoolExecutor.DiscardPolicy());
+	}
+
+	/**
+	 * Returns the shared instance.
+	 *
+	 * @return Returns the shared layout executor.
+	 */
+	public static JGraphpadLayoutExecutor getSharedInstance() {
+		return sharedInstance;
+	}
+
+	/**
+	 * Submits the specified task to be executed after the running task. This
+	 * replaces the task that is waiting to be executed, if any. Returns false
+	 * if the task is ignored because an equivalent task is running.
+	 *
+	 * @param task
+	 *            The task to be executed.
+	 * @return Returns true if the task will be executed.
+	 */
+	public synchronized boolean submit(Task task) {
+		if (current != null && !current.isCancelled()
+				&& current.isEquivalent(task))
+			return false;
+		queued = task;
+		executor.execute(worker);
+		return true;
+	}
+
+	/**
+	 * Cancels the running task and removes the waiting task.
+	 */
+	public synchronized void cancel() {
+		queued = null;
+		if (current != null)
+			current.cancel();
+	}
+
+	/**
+	 * Executes the waiting task in the calling thread.
+	 */
+	protected void runNext() {
+		Task task;
+		synchronized (this) {
+			task = queued;
+			queued = null;
+			current = task;
+		}
+		if (task != null) {
+			try {
+				task.execute();
+			} finally {
+				synchronized (this) {
+					current = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs a layout on a graph. The facade and progress monitor are created
+	 * on the event dispatch thread using {@link #createFacade()} and
+	 * {@link #createProgressMonitor(JGraphLayoutProgress)} before the layout
+	 * is executed in the worker thread. The nested map for the result is
+	 * created in the worker thread using {@link #createResult()} and passed
+	 * to {@link #apply(Map)} on the event dispatch thread. Intermediate
+	 * results are displayed by changing the bounds of the cell views, which
+	 * are restored if the task is cancelled.
+	 */
+	public static class Task {
+
+		/**
+		 * References the graph to execute the layout in.
+		 */
+		protected JGraph graph;
+
+		/**
+		 * References the layout to be executed.
+		 */
+		protected JGraphLayout layout;
+
+		/**
+		 * Holds the facade for the layout.
+		 */
+		protected SnapshotFacade facade;
+
+		/**
+		 * Holds the progress of the layout. For layouts that do not implement
+		 * {@link JGraphLayout.Stoppable} this never changes.
+		 */
+		protected JGraphLayoutProgress progress;
+
+		/**
+		 * Holds the progress monitor or null.
+		 */
+		protected ProgressMonitor monitor;
+
+		/**
+		 * Updates the progress monitor.
+		 */
+		protected Timer timer;
+
+		/**
+		 * Holds the time when the layout was started.
+		 */
+		protected long started;
+
+		/**
+		 * Holds the earliest time to publish the next intermediate result.
+		 * This is only accessed in the worker thread.
+		 */
+		protected long nextFrame;
+
+		/**
+		 * Specifies if the task has been cancelled.
+		 */
+		protected volatile boolean cancelled = false;
+
+		/**
+		 * Specifies if the result has been processed. This is only accessed
+		 * on the event dispatch thread.
+		 */
+		protected boolean finished = false;
+
+		/**
+		 * Holds the result of the layout.
+		 */
+		protected Map result;
+
+		/**
+		 * Holds the error that occurred while running the layout.
+		 */
+		protected Throwable error;
+
+		/**
+		 * Holds the intermediate result that has not yet been displayed.
+		 */
+		protected Map frame;
+
+		/**
+		 * Maps from cells to their bounds before the first intermediate
+		 * result was displayed.
+		 */
+		protected Map originalBounds = new Hashtable();
+
+		/**
+		 * Holds the edges connected to the cells of the intermediate results.
+		 */
+		protected CellView[] context;
+
+		/**
+		 * Holds the cells that have been removed from the model while the
+		 * layout was running.
+		 */
+		protected Set removed = new HashSet();
+
+		/**
+		 * Tracks the removed cells.
+		 */
+		protected GraphModelListener modelListener = new GraphModelListener() {
+			public void graphChanged(GraphModelEvent e) {
+				Object[] cells = e.getChange().getRemoved();
+				if (cells != null)
+					for (int i = 0; i < cells.length; i++)
+						removed.add(cells[i]);
+				cells = e.getChange().getInserted();
+				if (cells != null)
+					for (int i = 0; i < cells.length; i++)
+						removed.remove(cells[i]);
+			}
+		};
+
+		/**
+		 * Constructs a new task for the specified graph and layout.
+		 *
+		 * @param graph
+		 *            The graph to execute the layout in.
+		 * @param layout
+		 *            The layout to be executed.
+		 */
+		public Task(JGraph graph, JGraphLayout layout) {
+			this.graph = graph;
+			this.layout = layout;
+		}
+
+		/**
+		 * Returns true if the specified task executes the same layout in the
+		 * same graph.
+		 *
+		 * @param task
+		 *            The task to be compared.
+		 * @return Returns true if the tasks are equivalent.
+		 */
+		public boolean isEquivalent(Task task) {
+			return task != null && task.graph == graph
+					&& task.layout == layout;
+		}
+
+		/**
+		 * Hook for subclassers to create the facade for the layout. This is
+		 * invoked on the event dispatch thread. This implementation returns a
+		 * snapshot facade for the selection cells of the graph.
+		 *
+		 * @return Returns the facade to run the layout on.
+		 */
+		protected SnapshotFacade createFacade() {
+			return new SnapshotFacade(graph, graph.getSelectionCells());
+		}
+
+		/**
+		 * Hook for subclassers to create the progress monitor for the layout.
+		 * This is invoked on the event dispatch thread. This implementation
+		 * returns null.
+		 *
+		 * @param progress
+		 *            The progress of the layout.
+		 * @return Returns the progress monitor or null.
+		 */
+		protected ProgressMonitor createProgressMonitor(
+				JGraphLayoutProgress progress) {
+			return null;
+		}
+
+		/**
+		 * Hook for subclassers to create the nested map for the result of the
+		 * layout. This is invoked in the worker thread. This implementation
+		 * returns the nested map of the facade without snapping to the grid.
+		 *
+		 * @return Returns the nested map to be applied.
+		 */
+		protected Map createResult() {
+			return facade.createNestedMap(true, null);
+		}
+
+		/**
+		 * Hook for subclassers to apply the result of the layout. This is
+		 * invoked on the event dispatch thread. This implementation passes
+		 * the nested map to the edit method of the graph layout cache.
+		 *
+		 * @param nestedMap
+		 *            The nested map to be applied.
+		 */
+		protected void apply(Map nestedMap) {
+			restoreBounds();
+			graph.getGraphLayoutCache().edit(nestedMap, null, null, null);
+		}
+
+		/**
+		 * Executes the task in the calling thread, which must not be the event
+		 * dispatch thread.
+		 */
+		public void execute() {
+			try {
+				SwingUtilities.invokeAndWait(new Runnable() {
+					public void run() {
+						prepare();
+					}
+				});
+				if (!cancelled) {
+					started = System.currentTimeMillis();
+					nextFrame = started + FRAME_DELAY;
+					layout.run(facade);
+					if (!cancelled)
+						result = createResult();
+				}
+			} catch (CancellationException e) {
+				cancelled = true;
+			} catch (InterruptedException e) {
+				cancelled = true;
+			} catch (InvocationTargetException e) {
+				error = e.getCause();
+			} catch (Throwable e) {
+				error = e;
+			}
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					finish();
+				}
+			});
+		}
+
+		/**
+		 * Creates the facade and progress monitor. This is invoked on the
+		 * event dispatch thread.
+		 */
+		protected void prepare() {
+			graph.getModel().addGraphModelListener(modelListener);
+			facade = createFacade();
+			facade.setTask(this);
+			progress = (layout instanceof JGraphLayout.Stoppable) ? ((JGraphLayout.Stoppable) layout)
+					.getProgress()
+					: new JGraphLayoutProgress();
+			monitor = createProgressMonitor(progress);
+			if (monitor != null) {
+				final long start = System.currentTimeMillis();
+				timer = new Timer(MONITOR_DELAY, new ActionListener() {
+					public void actionPerformed(ActionEvent e) {
+						if (monitor.isCanceled())
+							cancel();
+
+						// Makes sure the monitor pops up for layouts that
+						// do not report their progress
+						else if (System.currentTimeMillis() - start >= monitor
+								.getMillisToPopup())
+							monitor.setProgress(progress.getProgress());
+					}
+				});
+				timer.start();
+			}
+		}
+
+		/**
+		 * Applies the result or restores the intermediate results and
+		 * displays errors. This is invoked on the event dispatch thread.
+		 */
+		protected void finish() {
+			finished = true;
+			graph.getModel().removeGraphModelListener(modelListener);
+			if (timer != null)
+				timer.stop();
+			if (monitor != null)
+				monitor.close();
+			if (facade != null)
+				facade.setTask(null);
+			if (!cancelled && result != null) {
+				Iterator it = removed.iterator();
+				while (it.hasNext())
+					result.remove(it.next());
+				apply(result);
+			} else {
+				restoreBounds();
+				if (!cancelled && error != null)
+					JGraphpadDialogs.getSharedInstance().errorDialog(graph,
+							error.getMessage());
+			}
+		}
+
+		/**
+		 * Cancels the task. The layout is stopped the next time it accesses
+		 * the facade or checks its progress.
+		 */
+		public void cancel() {
+			cancelled = true;
+			if (facade != null)
+				facade.cancel();
+			if (progress != null)
+				progress.setStopped(true);
+		}
+
+		/**
+		 * Returns true if the task has been cancelled.
+		 *
+		 * @return Returns true if the task was cancelled.
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Returns true if an intermediate result should be published. This is
+		 * invoked in the worker thread.
+		 *
+		 * @return Returns true if the next intermediate result is due.
+		 */
+		public boolean isFrameDue() {
+			return !cancelled && System.currentTimeMillis() >= nextFrame;
+		}
+
+		/**
+		 * Publishes the specified intermediate result. This is invoked in the
+		 * worker thread. Results are displayed on the event dispatch thread,
+		 * where results that are published before the previous result has
+		 * been displayed replace the previous result.
+		 *
+		 * @param bounds
+		 *            Maps from cells to their intermediate bounds.
+		 */
+		public void publish(Map bounds) {
+			nextFrame = System.currentTimeMillis() + FRAME_DELAY;
+			boolean schedule;
+			synchronized (this) {
+				schedule = frame == null;
+				frame = bounds;
+			}
+			if (schedule) {
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						Map bounds;
+						synchronized (Task.this) {
+							bounds = frame;
+							frame = null;
+						}
+						if (!finished && bounds != null)
+							updateBounds(bounds);
+					}
+				});
+			}
+		}
+
+		/**
+		 * Sets the bounds of the views for the specified intermediate result
+		 * and repaints the graph. The original bounds are stored for
+		 * {@link #restoreBounds()} and the cells are invalidated in the
+		 * spatial index of the cache.
+		 *
+		 * @param bounds
+		 *            Maps from cells to their intermediate bounds.
+		 */
+		protected void updateBounds(Map bounds) {
+			GraphLayoutCache cache = graph.getGraphLayoutCache();
+			Iterator it = bounds.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry entry = (Map.Entry) it.next();
+				Object cell = entry.getKey();
+				if (!removed.contains(cell)) {
+					CellView view = cache.getMapping(cell, false);
+					if (view != null && !originalBounds.containsKey(cell))
+						originalBounds.put(cell, view.getBounds().clone());
+					setBounds(view, (Rectangle2D) entry.getValue());
+				}
+			}
+			invalidateSpatialIndex(bounds.keySet().toArray());
+			if (context == null) {
+				Object[] edges = DefaultGraphModel.getEdges(graph.getModel(),
+						bounds.keySet().toArray()).toArray();
+				context = cache.getMapping(edges);
+			}
+			cache.update(context);
+			graph.repaint();
+		}
+
+		/**
+		 * Restores the bounds of the views that have been changed to display
+		 * intermediate results and invalidates the cells in the spatial index
+		 * of the cache.
+		 */
+		protected void restoreBounds() {
+			if (!originalBounds.isEmpty()) {
+				GraphLayoutCache cache = graph.getGraphLayoutCache();
+				Iterator it = originalBounds.entrySet().iterator();
+				while (it.hasNext()) {
+					Map.Entry entry = (Map.Entry) it.next();
+					setBounds(cache.getMapping(entry.getKey(), false),
+							(Rectangle2D) entry.getValue());
+				}
+				invalidateSpatialIndex(originalBounds.keySet().toArray());
+				originalBounds.clear();
+				if (context != null)
+					cache.update(context);
+				graph.repaint();
+			}
+		}
+
+		/**
+		 * Sets the bounds of the specified view and updates the view.
+		 *
+		 * @param view
+		 *            The view to change the bounds for.
+		 * @param bounds
+		 *            The new bounds of the view.
+		 */
+		protected void setBounds(CellView view, Rectangle2D bounds) {
+			if (view != null && bounds != null && view.getBounds() != null) {
+				view.getBounds().setFrame(bounds.getX(), bounds.getY(),
+						bounds.getWidth(), bounds.getHeight());
+				view.update(graph.getGraphLayoutCache());
+			}
+		}
+
+		/**
+		 * Marks the specified cells as dirty in the spatial index of the
+		 * cache of the graph. The views are changed in place and not via the
+		 * cache, so the index is not notified otherwise.
+		 *
+		 * @param cells
+		 *            The cells whose bounds have changed.
+		 */
+		protected void invalidateSpatialIndex(Object[] cells) {
+			GraphLayoutCache cache = graph.getGraphLayoutCache();
+			if (cache instanceof JGraphpadGraphLayoutCache)
+				((JGraphpadGraphLayoutCache) cache).getSpatialIndex()
+						.invalidate(cells);
+		}
+
+	}
+
+	/**
+	 * Facade that takes a snapshot of the cells and their structure on
+	 * construction, so that layouts may run in a background thread while the
+	 * graph is being changed. If the graph layout cache can be copied using
+	 * {@link JGraphpadSaveManager#createSnapshot(GraphLayoutCache, Object[], Map)}
+	 * then the layout runs on the copy, and the cells of the copy are mapped
+	 * back to the original cells in the results of the facade. Otherwise the
+	 * attributes are copied in the same way as the parent class copies them
+	 * on the first access and the cell structure is read from the model.
+	 * After {@link #cancel()} has been called, accessing the attributes or
+	 * neighbours of a cell throws a {@link CancellationException}, which stops
+	 * any layout.
+	 */
+	public static class SnapshotFacade extends JGraphFacade {
+
+		/**
+		 * Holds all cells of the model.
+		 */
+		protected List cells;
+
+		/**
+		 * Maps from cells to the copies of their attributes if the graph
+		 * layout cache could not be copied.
+		 */
+		protected Map snapshot;
+
+		/**
+		 * Maps from the original cells to their copies and back, or null if
+		 * the graph layout cache could not be copied.
+		 */
+		protected Map clones, originals;
+
+		/**
+		 * References the task to publish intermediate results to.
+		 */
+		protected transient Task task;
+
+		/**
+		 * Specifies if the layout has been cancelled.
+		 */
+		protected volatile boolean cancelled = false;
+
+		/**
+		 * Constructs a new snapshot facade for the specified graph and roots.
+		 * This must be called on the event dispatch thread.
+		 *
+		 * @param graph
+		 *            The graph to create the facade for.
+		 * @param roots
+		 *            The array of roots to use in the facade.
+		 */
+		public SnapshotFacade(JGraph graph, Object[] roots) {
+			this(graph, roots, new Hashtable());
+		}
+
+		/**
+		 * Constructs a new snapshot facade for the specified graph and roots
+		 * which puts the mapping from the original cells to their copies into
+		 * the specified map.
+		 */
+		protected SnapshotFacade(JGraph graph, Object[] roots, Map clones) {
+			this(graph, roots, clones, JGraphpadSaveManager.createSnapshot(
+					graph.getGraphLayoutCache(), null, clones));
+		}
+
+		/**
+		 * Constructs a new snapshot facade for the specified graph and roots
+		 * using the specified copy of the graph layout cache or the graph
+		 * layout cache of the graph if the copy is null.
+		 */
+		protected SnapshotFacade(JGraph graph, Object[] roots, Map clones,
+				GraphLayoutCache copy) {
+			super((copy != null) ? copy : graph.getGraphLayoutCache(),
+					(copy != null) ? getValues(clones, roots) : roots, true,
+					false, true, true, new JGraphDistanceCostFunction(
+							(copy != null) ? copy : graph
+									.getGraphLayoutCache()), JGraphAlgebra
+							.getSharedInstance());
+			this.graph = graph;
+			GraphModel model = getGraphLayoutCache().getModel();
+			cells = DefaultGraphModel.getDescendants(model, DefaultGraphModel
+					.getRoots(model));
+			if (copy != null) {
+				this.clones = clones;
+				originals = new Hashtable(clones.size());
+				Iterator it = clones.entrySet().iterator();
+				while (it.hasNext()) {
+					Map.Entry entry = (Map.Entry) it.next();
+					originals.put(entry.getValue(), entry.getKey());
+				}
+			} else {
+				GraphLayoutCache cache = graph.getGraphLayoutCache();
+				snapshot = new HashMap();
+				for (int i = 0; i < cells.size(); i++) {
+					Object cell = cells.get(i);
+					CellView view = cache.getMapping(cell, false);
+					AttributeMap attributes = (view != null) ? view
+							.getAllAttributes() : model.getAttributes(cell);
+					if (attributes != null) {
+						attributes = (AttributeMap) attributes.clone();
+						if (view != null && view.getBounds() != null)
+							GraphConstants.setBounds(attributes,
+									(Rectangle2D) view.getBounds().clone());
+						snapshot.put(cell, attributes);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns the values for the specified keys in the specified map. Keys
+		 * without a value are omitted.
+		 */
+		protected static Object[] getValues(Map map, Object[] keys) {
+			List values = new ArrayList();
+			for (int i = 0; keys != null && i < keys.length; i++) {
+				Object value = map.get(keys[i]);
+				if (value != null)
+					values.add(value);
+			}
+			return values.toArray();
+		}
+
+		/**
+		 * Returns the graph layout cache that the layout runs on, which is a
+		 * copy of the graph layout cache of the graph if it could be copied.
+		 *
+		 * @return Returns the graph layout cache of the facade.
+		 */
+		public GraphLayoutCache getGraphLayoutCache() {
+			return graphLayoutCache;
+		}
+
+		/**
+		 * Returns the original cell for the specified cell of the facade.
+		 *
+		 * @param cell
+		 *            The cell of the facade.
+		 * @return Returns the original cell of <code>cell</code>.
+		 */
+		public Object getOriginal(Object cell) {
+			Object original = (originals != null) ? originals.get(cell) : null;
+			return (original != null) ? original : cell;
+		}
+
+		/**
+		 * Returns the cell of the facade for the specified original cell.
+		 *
+		 * @param cell
+		 *            The original cell.
+		 * @return Returns the cell of the facade for <code>cell</code>.
+		 */
+		public Object getClone(Object cell) {
+			Object clone = (clones != null) ? clones.get(cell) : null;
+			return (clone != null) ? clone : cell;
+		}
+
+		/**
+		 * Returns the nested map of the parent's implementation with the
+		 * cells of the facade replaced by the original cells.
+		 */
+		public Map createNestedMap(boolean ignoreGrid, Point2D flushOrigin) {
+			Map nested = super.createNestedMap(ignoreGrid, flushOrigin);
+			if (originals == null || nested == null)
+				return nested;
+			Map result = new Hashtable(nested.size());
+			Iterator it = nested.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry entry = (Map.Entry) it.next();
+				result.put(getOriginal(entry.getKey()), entry.getValue());
+			}
+			return result;
+		}
+
+		/**
+		 * Returns the cells of the snapshot.
+		 */
+		protected List getAll() {
+			return (cells != null) ? new ArrayList(cells) : super.getAll();
+		}
+
+		/**
+		 * Returns the attributes of the specified cell from the snapshot.
+		 *
+		 * @param cell
+		 *            The cell to return the attributes for.
+		 * @return Returns the attributes of <code>cell</code>.
+		 */
+		public Map getAttributes(Object cell) {
+			checkCancelled();
+			Map attributes = (Map) getAttributes().get(cell);
+			if (attributes == null && snapshot != null) {
+				attributes = (Map) snapshot.get(cell);
+				if (attributes != null)
+					getAttributes().put(cell, attributes);
+			}
+			return (attributes != null) ? attributes : super
+					.getAttributes(cell);
+		}
+
+		/**
+		 * Overrides the parent's implementation to check if the layout has
+		 * been cancelled.
+		 */
+		public List getNeighbours(Object cell, Set exclude, boolean ordered) {
+			checkCancelled();
+			return super.getNeighbours(cell, exclude, ordered);
+		}
+
+		/**
+		 * Throws a {@link CancellationException} if the layout has been
+		 * cancelled.
+		 */
+		protected void checkCancelled() {
+			if (cancelled)
+				throw new CancellationException();
+		}
+
+		/**
+		 * Cancels the layout.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * Returns true if the layout has been cancelled.
+		 *
+		 * @return Returns true if the layout was cancelled.
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Sets the task to publish intermediate results to.
+		 *
+		 * @param task
+		 *            The task to publish the results to.
+		 */
+		public void setTask(Task task) {
+			this.task = task;
+		}
+
+		/**
+		 * Returns the task to publish intermediate results to.
+		 *
+		 * @return Returns the task.
+		 */
+		public Task getTask() {
+			return task;
+		}
+
+		/**
+		 * Returns true if an intermediate result should be published.
+		 *
+		 * @return Returns true if the next intermediate result is due.
+		 */
+		public boolean isFrameDue() {
+			Task task = this.task;
+			return task != null && task.isFrameDue();
+		}
+
+		/**
+		 * Publishes the specified locations of the specified cells as an
+		 * intermediate result. The locations have the same format as in
+		 * {@link #setLocations(Object[], double[][])}, the cells keep their
+		 * sizes.
+		 *
+		 * @param cells
+		 *            The cells to publish the locations for.
+		 * @param locations
+		 *            The upper left corners of the cells.
+		 */
+		public void publish(Object[] cells, double[][] locations) {
+			Task task = this.task;
+			if (task != null) {
+				Map bounds = new Hashtable();
+				for (int i = 0; i < cells.length; i++) {
+					Rectangle2D rect = getBounds(cells[i]);
+					if (rect != null)
+						bounds.put(getOriginal(cells[i]), new Rectangle2D.Double(
+								locations[i][0], locations[i][1], rect
+										.getWidth(), rect.getHeight()));
+				}
+				task.publish(bounds);
+			}
+		}
+
+	}
+
+}
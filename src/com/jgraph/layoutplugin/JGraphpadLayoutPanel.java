@@ -23,7 +23,10 @@ import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -33,6 +36,7 @@ import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTabbedPane;
 import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
 
 import org.jgraph.JGraph;
 import org.w3c.dom.Node;
@@ -53,7 +57,6 @@ import com.jgraph.layout.organic.JGraphSelfOrganizingOrganicLayout;
 import com.jgraph.layout.tree.JGraphCompactTreeLayout;
 import com.jgraph.layout.tree.JGraphRadialTreeLayout;
 import com.jgraph.layout.tree.JGraphTreeLayout;
-import com.jgraph.pad.dialog.JGraphpadDialogs;
 import com.jgraph.pad.util.JGraphpadFocusManager;
 import com.jgraph.pad.util.JGraphpadMorphingManager;
 import com.l2fprod.common.propertysheet.PropertySheetPanel;
@@ -86,6 +89,12 @@ public class JGraphpadLayoutPanel extends JPanel
 	 */
 	protected JGraphpadMorphingManager morpher = new JGraphpadMorphingManager();
 
+	/**
+	 * References the executor to run the layouts in.
+	 */
+	protected JGraphpadLayoutExecutor executor = JGraphpadLayoutExecutor
+			.getSharedInstance();
+
 	/**
 	 * Checkboxes to control the global settings.
 	 */
@@ -132,7 +141,7 @@ public class JGraphpadLayoutPanel extends JPanel
 	protected JGraphLayout[] createChoosableLayouts()
 	{
 		// Creates a sample compound layout
-		JGraphFastOrganicLayout organicLayout = new JGraphFastOrganicLayout();
+		JGraphFastOrganicLayout organicLayout = new JGraphpadFastOrganicLayout();
 		organicLayout.setForceConstant(100);
 		JGraphCompoundLayout compound = new JGraphCompoundLayout(
 				new JGraphLayout[] { organicLayout, new JGraphOrganicLayout() })
@@ -149,7 +158,7 @@ public class JGraphpadLayoutPanel extends JPanel
 				new JGraphTreeLayout(),
 				new JGraphRadialTreeLayout(),
 				new JGraphHierarchicalLayout(),
-				new JGraphFastOrganicLayout(),
+				new JGraphpadFastOrganicLayout(),
 				new JGraphSelfOrganizingOrganicLayout(),
 				new JGraphOrganicLayout(),
 				new JGraphSimpleLayout(JGraphSimpleLayout.TYPE_CIRCLE),
@@ -182,87 +191,29 @@ public class JGraphpadLayoutPanel extends JPanel
 
 	/**
 	 * Executes the layout returned by {@link #getSelectionLayout()} on the
-	 * graph returned by {@link #getFocusedGraph()} by creating a facade and
-	 * progress monitor for the layout and invoking it's run method in a
-	 * separate thread so this method call returns immediately. To display the
-	 * result of the layout algorithm a {@link JGraphpadMorphingManager} is
-	 * used.
+	 * graph returned by {@link #getFocusedGraph()} by submitting a
+	 * {@link LayoutTask} to the {@link #executor} so this method call returns
+	 * immediately. The layout runs on a snapshot of the graph in a background
+	 * thread and may be cancelled using its progress monitor. Repeated calls
+	 * while the same layout is running in the same graph are ignored. To
+	 * display the result of the layout algorithm a
+	 * {@link JGraphpadMorphingManager} is used.
 	 */
 	public void execute()
 	{
-		final JGraphLayout layout = getSelectionLayout();
-		final JGraph graph = getFocusedGraph();
+		JGraphLayout layout = getSelectionLayout();
+		JGraph graph = getFocusedGraph();
 
 		if (graph != null && graph.isEnabled() && graph.isMoveable()
 				&& layout != null)
-		{
-			final JGraphFacade facade = createFacade(graph, layout);
-
-			final ProgressMonitor progressMonitor = (layout instanceof JGraphLayout.Stoppable) ? createProgressMonitor(
-					graph, (JGraphLayout.Stoppable) layout)
-					: null;
-			new Thread()
-			{
-				public void run()
-				{
-					synchronized (this)
-					{
-						try
-						{
-							// Executes the layout and checks if the user has
-							// clicked
-							// on cancel during the layout run. If no progress
-							// monitor
-							// has been displayed or cancel has not been pressed
-							// then
-							// the result of the layout algorithm is processed.
-							layout.run(facade);
-							boolean ignoreResult = false;
-							if (progressMonitor != null)
-							{
-								ignoreResult = progressMonitor.isCanceled();
-								progressMonitor.close();
-							}
-							if (!ignoreResult)
-							{
-
-								// Processes the result of the layout algorithm
-								// by creating a nested map based on the global
-								// settings and passing the map to a morpher
-								// for the graph that should be changed.
-								// The morpher will animate the change and then
-								// invoke the edit method on the graph layout
-								// cache.
-								Map map = facade
-										.createNestedMap(!applyGridCheckBox
-												.isSelected(),
-												(flushOriginCheckBox
-														.isSelected()) ? facade
-														.getGraphOrigin()
-														: null);
-
-								morpher.morph(graph, map);
-								graph.requestFocus();
-							}
-						}
-						catch (Exception e)
-						{
-							JGraphpadDialogs.getSharedInstance()
-									.errorDialog(
-											JGraphEditorAction
-													.getPermanentFocusOwner(),
-											e.getMessage());
-						}
-					}
-				}
-			}.start(); // fork
-		}
+			executor.submit(new LayoutTask(graph, layout));
 	}
 
 	/**
 	 * Creates a {@link LockedSelectionFacade} and makes sure it contains a
 	 * valid set of root cells if the specified layout is a tree layout. A root
-	 * cell in this context is one that has no incoming edges.
+	 * cell in this context is one that has no incoming edges. This must be
+	 * called on the event dispatch thread.
 	 * 
 	 * @param graph
 	 *            The graph to use for the facade.
@@ -300,8 +251,22 @@ public class JGraphpadLayoutPanel extends JPanel
 	protected ProgressMonitor createProgressMonitor(JGraph graph,
 			JGraphLayout.Stoppable layout)
 	{
-		ProgressMonitor monitor = new LayoutProgressMonitor(graph,
-				((JGraphLayout.Stoppable) layout).getProgress(),
+		return createProgressMonitor(graph, layout.getProgress());
+	}
+
+	/**
+	 * Creates a {@link LayoutProgressMonitor} for the specified progress.
+	 * 
+	 * @param graph
+	 *            The graph to use as the parent component.
+	 * @param progress
+	 *            The progress to create the progress monitor for.
+	 * @return Returns a new progress monitor.
+	 */
+	protected ProgressMonitor createProgressMonitor(JGraph graph,
+			JGraphLayoutProgress progress)
+	{
+		ProgressMonitor monitor = new LayoutProgressMonitor(graph, progress,
 				JGraphEditorResources.getString("PerformingLayout"));
 		monitor.setMillisToDecideToPopup(100);
 		monitor.setMillisToPopup(500);
@@ -528,9 +493,11 @@ public class JGraphpadLayoutPanel extends JPanel
 
 	/**
 	 * Utility facade to lock selection cells if the
-	 * {@link JGraphpadLayoutPanel#lockSelectionCellsCheckBox} is selected.
+	 * {@link JGraphpadLayoutPanel#lockSelectionCellsCheckBox} is selected. The
+	 * locked cells are determined on construction.
 	 */
-	public class LockedSelectionFacade extends JGraphFacade
+	public class LockedSelectionFacade extends
+			JGraphpadLayoutExecutor.SnapshotFacade
 	{
 
 		/**
@@ -538,6 +505,11 @@ public class JGraphpadLayoutPanel extends JPanel
 		 */
 		protected JGraph graph;
 
+		/**
+		 * Holds the locked cells or null if no cells are locked.
+		 */
+		protected Set locked;
+
 		/**
 		 * Constructs a locked selection facade for the specified graph and
 		 * roots.
@@ -551,12 +523,14 @@ public class JGraphpadLayoutPanel extends JPanel
 		{
 			super(graph, roots);
 			this.graph = graph;
+			if (lockSelectionCellsCheckBox.isSelected())
+				locked = new HashSet(Arrays.asList(graph.getSelectionCells()));
 		}
 
 		/**
 		 * Returns false if the
-		 * {@link JGraphpadLayoutPanel#lockSelectionCellsCheckBox} and the cell
-		 * are selected.
+		 * {@link JGraphpadLayoutPanel#lockSelectionCellsCheckBox} and the
+		 * original of the cell were selected when the facade was created.
 		 * 
 		 * @param cell
 		 *            The cell to be checked.
@@ -564,13 +538,89 @@ public class JGraphpadLayoutPanel extends JPanel
 		 */
 		public boolean isMoveable(Object cell)
 		{
-			return (!lockSelectionCellsCheckBox.isSelected() || !graph
-					.isCellSelected(cell))
+			return (locked == null || !locked.contains(getOriginal(cell)))
 					&& super.isMoveable(cell);
 		}
 
 	}
 
+	/**
+	 * Task to execute a layout using the settings of the panel at the time the
+	 * task was created. The result is displayed using the {@link #morpher}.
+	 */
+	public class LayoutTask extends JGraphpadLayoutExecutor.Task
+	{
+
+		/**
+		 * Specifies if the result should be snapped to the grid and moved to
+		 * the origin.
+		 */
+		protected boolean applyGrid, flushOrigin;
+
+		/**
+		 * Constructs a new task for the specified graph and layout. This must
+		 * be called on the event dispatch thread.
+		 * 
+		 * @param graph
+		 *            The graph to execute the layout in.
+		 * @param layout
+		 *            The layout to be executed.
+		 */
+		public LayoutTask(JGraph graph, JGraphLayout layout)
+		{
+			super(graph, layout);
+			applyGrid = applyGridCheckBox.isSelected();
+			flushOrigin = flushOriginCheckBox.isSelected();
+		}
+
+		/**
+		 * Returns a facade created using
+		 * {@link JGraphpadLayoutPanel#createFacade(JGraph, JGraphLayout)}.
+		 */
+		protected JGraphpadLayoutExecutor.SnapshotFacade createFacade()
+		{
+			return (JGraphpadLayoutExecutor.SnapshotFacade) JGraphpadLayoutPanel.this
+					.createFacade(graph, layout);
+		}
+
+		/**
+		 * Returns a progress monitor created using
+		 * {@link JGraphpadLayoutPanel#createProgressMonitor(JGraph, JGraphLayoutProgress)}.
+		 */
+		protected ProgressMonitor createProgressMonitor(
+				JGraphLayoutProgress progress)
+		{
+			return JGraphpadLayoutPanel.this.createProgressMonitor(graph,
+					progress);
+		}
+
+		/**
+		 * Creates the nested map for the result of the layout based on the
+		 * global settings.
+		 */
+		protected Map createResult()
+		{
+			return facade.createNestedMap(!applyGrid,
+					(flushOrigin) ? facade.getGraphOrigin() : null);
+		}
+
+		/**
+		 * Passes the nested map to the morpher, which animates the change and
+		 * then invokes the edit method on the graph layout cache. A running
+		 * animation of a previous result is completed first so that it does
+		 * not overwrite the new result. If the morpher is still busy then the
+		 * change is applied without animation.
+		 */
+		protected void apply(Map nestedMap)
+		{
+			morpher.finish();
+			if (!morpher.morph(graph, nestedMap))
+				super.apply(nestedMap);
+			graph.requestFocus();
+		}
+
+	}
+
 	/**
 	 * Utility progress monitor for a layout progress object. Implements a
 	 * property change listener to update itself based on the running layout.
@@ -605,11 +655,22 @@ public class JGraphpadLayoutPanel extends JPanel
 			progress.addPropertyChangeListener(this);
 		}
 
-		/*
-		 * (non-Javadoc)
+		/**
+		 * Updates the progress monitor on the event dispatch thread.
 		 */
-		public void propertyChange(PropertyChangeEvent evt)
+		public void propertyChange(final PropertyChangeEvent evt)
 		{
+			if (!SwingUtilities.isEventDispatchThread())
+			{
+				SwingUtilities.invokeLater(new Runnable()
+				{
+					public void run()
+					{
+						propertyChange(evt);
+					}
+				});
+				return;
+			}
 			if (evt.getPropertyName().equals(
 					JGraphLayoutProgress.PROGRESS_PROPERTY))
 			{
@@ -36,6 +36,7 @@ import org.jgraph.graph.PortView;
 import com.jgraph.JGraphEditor;
 import com.jgraph.JGraphpad;
 import com.jgraph.editor.JGraphEditorAction;
+import com.jgraph.editor.JGraphEditorKit;
 import com.jgraph.pad.dialog.JGraphpadDialogs;
 import com.jgraph.pad.factory.JGraphpadLibraryPane;
 import com.jgraph.pad.graph.JGraphpadBusinessObject;
@@ -683,7 +684,7 @@ public class JGraphpadCellAction extends JGraphpadFormatAction {
 	/**
 	 * Bundle of all actions in this class.
 	 */
-	public static class AllActions implements Bundle {
+	public static class AllActions implements DependentBundle {
 
 		/**
 		 * Holds the actions. The actionGroup and actionConnect are assigned the
@@ -764,6 +765,14 @@ public class JGraphpadCellAction extends JGraphpadFormatAction {
 					actionAddProperty, actionRemoveProperty, actionInvert };
 		}
 
+		/**
+		 * Returns the kinds of changes that require an update.
+		 */
+		public int getDependencies() {
+			return JGraphEditorKit.CHANGE_FOCUS | JGraphEditorKit.CHANGE_SELECTION
+					| JGraphEditorKit.CHANGE_MODEL | JGraphEditorKit.CHANGE_LAYOUT;
+		}
+
 		/*
 		 * (non-Javadoc)
 		 */
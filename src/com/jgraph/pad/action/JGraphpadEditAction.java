@@ -13,9 +13,6 @@ import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 import javax.swing.Action;
 import javax.swing.TransferHandler;
@@ -27,10 +24,13 @@ import org.jgraph.graph.GraphLayoutCache;
 import org.jgraph.graph.GraphUndoManager;
 
 import com.jgraph.editor.JGraphEditorAction;
+import com.jgraph.editor.JGraphEditorKit;
 import com.jgraph.editor.JGraphEditorResources;
 import com.jgraph.editor.factory.JGraphEditorDiagramPane;
 import com.jgraph.pad.dialog.JGraphpadDialogs;
+import com.jgraph.pad.factory.JGraphpadFindPanel;
 import com.jgraph.pad.factory.JGraphpadLibraryPane;
+import com.jgraph.pad.graph.JGraphpadTextIndex;
 
 /**
  * Implements all actions of the edit menu. The selectPath and selectTree
@@ -42,7 +42,7 @@ public class JGraphpadEditAction extends JGraphEditorAction {
 	 * Holds the last search expression. Note: In a multi application
 	 * environment you may have to put this into the application instance.
 	 */
-	protected static Pattern lastSearchPattern = null;
+	protected static String lastSearchString = null;
 
 	/**
 	 * Holds the last found cell for a search.
@@ -191,11 +191,23 @@ public class JGraphpadEditAction extends JGraphEditorAction {
 				graph.getGraphLayoutCache().remove(
 						graph.getDescendants(graph.getSelectionCells()));
 			else if (getName().equals(NAME_FIND)) {
-				lastSearchPattern = null;
-				lastFoundCell = null;
-				doFindAgain(graph);
-			} else if (getName().equals(NAME_FINDAGAIN))
-				doFindAgain(graph);
+				JGraphpadFindPanel findPanel = JGraphpadFindPanel
+						.getFindPanel(graph);
+				if (findPanel != null)
+					findPanel.showPanel();
+				else {
+					lastSearchString = null;
+					lastFoundCell = null;
+					doFindAgain(graph);
+				}
+			} else if (getName().equals(NAME_FINDAGAIN)) {
+				JGraphpadFindPanel findPanel = JGraphpadFindPanel
+						.getFindPanel(graph);
+				if (findPanel != null && findPanel.isSearching())
+					findPanel.findNext(true);
+				else
+					doFindAgain(graph);
+			}
 			else if (getName().equals(NAME_EDIT))
 				doEdit(graph);
 			else if (getName().equals(NAME_SELECTALL))
@@ -337,50 +349,43 @@ public class JGraphpadEditAction extends JGraphEditorAction {
 	}
 
 	/**
-	 * Displays a dialog for {@link #lastSearchPattern} if it is null and
-	 * performs a search using regular expression matching starting at
-	 * {@link #lastFoundCell}. The found cell is selected and scrolled to. If
-	 * no cell is found an error message is displayed.
+	 * Displays a dialog for {@link #lastSearchString} if it is null and
+	 * searches the text index of the graph for the next visible cell after
+	 * {@link #lastFoundCell} that contains all words of the search string. The
+	 * search wraps around at the last match. The found cell is selected and
+	 * scrolled to. If no cell is found an error message is displayed.
 	 * 
 	 * @param graph
 	 *            The graph to perform the operation in.
+	 * 
+	 * @see JGraphpadTextIndex#find(String, boolean)
 	 */
 	public void doFindAgain(JGraph graph) {
-		if (lastSearchPattern == null) {
+		if (lastSearchString == null) {
 			String exp = JGraphpadDialogs.getSharedInstance().valueDialog(
 					getString("EnterSearchPattern"), "");
-			if (exp != null && exp.length() > 0) {
-				try {
-					lastSearchPattern = Pattern.compile(".*" + exp + ".*");
-				} catch (PatternSyntaxException e) {
-					JGraphpadDialogs.getSharedInstance().errorDialog(graph,
-							e.getLocalizedMessage());
-				}
-			}
+			if (exp != null && exp.trim().length() > 0)
+				lastSearchString = exp;
 		}
-		if (lastSearchPattern != null) {
-			Object[] cells = graph.getRoots();
-			boolean active = (lastFoundCell == null);
+		if (lastSearchString != null) {
+			Object[] cells = JGraphpadTextIndex.getTextIndex(graph).find(
+					lastSearchString, false);
+			GraphLayoutCache cache = graph.getGraphLayoutCache();
+			Object first = null;
 			Object match = null;
-			if (cells != null && cells.length > 0) {
-
-				// Searches for the regular expression in cells
-				for (int i = 0; i < cells.length; i++) {
-					if (active || match == null) {
-						String s = String.valueOf(
-								graph.getModel().getValue(cells[i]))
-								.replaceAll("\n", "");
-						Matcher m = lastSearchPattern.matcher(s);
-						if (m.matches()) {
-							match = cells[i];
-							if (active)
-								break;
-						}
-					}
-					active = active || cells[i] == lastFoundCell;
+			boolean active = (lastFoundCell == null);
+
+			// Finds the first visible match after the last found cell
+			for (int i = 0; i < cells.length && match == null; i++) {
+				if (cache.isVisible(cells[i])) {
+					if (active)
+						match = cells[i];
+					else if (first == null)
+						first = cells[i];
 				}
+				active = active || cells[i] == lastFoundCell;
 			}
-			lastFoundCell = match;
+			lastFoundCell = (match != null) ? match : first;
 			if (lastFoundCell != null) {
 				graph.scrollCellToVisible(lastFoundCell);
 				graph.setSelectionCell(lastFoundCell);
@@ -388,7 +393,7 @@ public class JGraphpadEditAction extends JGraphEditorAction {
 				JGraphpadDialogs.getSharedInstance().errorDialog(
 						getActiveFrame(),
 						JGraphEditorResources.getString("NotFound",
-								lastSearchPattern.toString()));
+								lastSearchString));
 			}
 		}
 	}
@@ -405,7 +410,7 @@ public class JGraphpadEditAction extends JGraphEditorAction {
 	/**
 	 * Bundle of all actions in this class.
 	 */
-	public static class AllActions implements Bundle {
+	public static class AllActions implements DependentBundle {
 
 		/**
 		 * Holds the actions.
@@ -445,6 +450,17 @@ public class JGraphpadEditAction extends JGraphEditorAction {
 					actionCopy, actionPaste, actionDelete };
 		}
 
+		/**
+		 * Returns the kinds of changes that require an update. Undo and redo
+		 * only notify model and layout changes, which change the state of the
+		 * undo manager.
+		 */
+		public int getDependencies() {
+			return JGraphEditorKit.CHANGE_FOCUS | JGraphEditorKit.CHANGE_SELECTION
+					| JGraphEditorKit.CHANGE_MODEL | JGraphEditorKit.CHANGE_LAYOUT
+					| JGraphEditorKit.CHANGE_UNDO | JGraphEditorKit.CHANGE_PROPERTY;
+		}
+
 		/*
 		 * (non-Javadoc)
 		 */
@@ -472,8 +488,11 @@ public class JGraphpadEditAction extends JGraphEditorAction {
 
 			actionEdit.setEnabled(isGraphEditable);
 			actionFind.setEnabled(isGraphFocused);
+			JGraphpadFindPanel findPanel = JGraphpadFindPanel
+					.getFindPanel(graph);
 			actionFindAgain.setEnabled(isGraphFocused
-					&& lastSearchPattern != null);
+					&& (lastSearchString != null || (findPanel != null && findPanel
+							.isSearching())));
 			actionCut.setEnabled(!isSelectionEmpty || isEntrySelected);
 			actionCopy.setEnabled(!isSelectionEmpty || isEntrySelected);
 			actionPaste.setEnabled(isGraphFocused || libraryPane != null);
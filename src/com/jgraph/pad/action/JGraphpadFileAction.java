@@ -20,12 +20,12 @@ import java.awt.print.PrinterException;
 import java.awt.print.PrinterJob;
 import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -33,18 +33,20 @@ import java.net.URLConnection;
 import java.net.UnknownServiceException;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
-import java.util.Set;
-import java.util.StringTokenizer;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 import javax.swing.Action;
+import javax.swing.ProgressMonitorInputStream;
+import javax.swing.SwingUtilities;
 import javax.swing.tree.TreeModel;
 
 import org.jgraph.JGraph;
-import org.jgraph.graph.ConnectionSet;
 import org.jgraph.graph.DefaultGraphModel;
 import org.jgraph.graph.GraphConstants;
 import org.jgraph.graph.GraphLayoutCache;
@@ -53,6 +55,7 @@ import org.jgraph.graph.GraphModel;
 import com.jgraph.JGraphEditor;
 import com.jgraph.JGraphpad;
 import com.jgraph.editor.JGraphEditorAction;
+import com.jgraph.editor.JGraphEditorKit;
 import com.jgraph.editor.JGraphEditorDiagram;
 import com.jgraph.editor.JGraphEditorFile;
 import com.jgraph.editor.JGraphEditorModel;
@@ -66,7 +69,10 @@ import com.jgraph.pad.dialog.JGraphpadDialogs;
 import com.jgraph.pad.factory.JGraphpadLibraryPane;
 import com.jgraph.pad.factory.JGraphpadOpenRecentMenu;
 import com.jgraph.pad.graph.JGraphpadRichTextValue;
+import com.jgraph.pad.util.JGraphpadBinaryCodec;
+import com.jgraph.pad.util.JGraphpadCSVImporter;
 import com.jgraph.pad.util.JGraphpadImageEncoder;
+import com.jgraph.pad.util.JGraphpadSaveManager;
 
 /**
  * Implements all actions of the file menu. The openRecent menu is implemented
@@ -230,6 +236,13 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 	 */
 	protected File lastDirectory = null;
 
+	/**
+	 * Maps from files to the lists of their pending background saves. This is
+	 * shared by all file actions so that closing a file waits for the saves
+	 * started by the save actions.
+	 */
+	protected static Map saveTasks = new Hashtable();
+
 	/**
 	 * Constructs a new file action for the specified name and editor.
 	 * 
@@ -356,7 +369,9 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 	 * <li>If filename is an URL it tries to upload the data to that URL.</li>
 	 * </ul>
 	 * Furthermore, this implementation updates the isNew and modified state of
-	 * the file if it has successfully been saved.
+	 * the file if it has successfully been saved. The file is written in the
+	 * background using {@link JGraphpadSaveManager} so that the user can
+	 * continue working while it is being saved.
 	 * 
 	 * @param file
 	 *            The file to be saved.
@@ -367,8 +382,7 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 	 * @throws IOException
 	 *             If the file cannot be saved.
 	 * 
-	 * @see JGraphEditorModel#getOutputStream(String)
-	 * @see #postPlain(URL, String, OutputStream)
+	 * @see #doWriteFile(JGraphEditorFile, String)
 	 */
 	protected void doSaveFile(JGraphEditorFile file,
 			boolean forceFilenameDialog, boolean urlDialog) throws IOException {
@@ -391,6 +405,10 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 					filename = filename.substring(0, filename.length() - 7);
 				else if (filename.toLowerCase().endsWith(".xml"))
 					filename = filename.substring(0, filename.length() - 4);
+				else if (filename.toLowerCase().endsWith(
+						JGraphpadBinaryCodec.EXTENSION))
+					filename = filename.substring(0, filename.length()
+							- JGraphpadBinaryCodec.EXTENSION.length());
 
 				filename = dlgs.editorFileDialog(
 						getPermanentFocusOwnerOrParent(),
@@ -406,25 +424,124 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 				dlgs.errorDialog(getPermanentFocusOwner(),
 						getString("FileAlreadyOpen"));
 			} else {
-				OutputStream out = editor.getModel().getOutputStream(filename);
-				model.writeObject(file, out);
-				out.flush();
-				out.close();
-				if (JGraphEditor.isURL(filename)) {
-					URL url = new URL(filename);
-					postPlain(url, url.getFile(), out);
-				} else
-					lastDirectory = new File(filename).getParentFile();
-				if (file.getFilename() == null
-						|| !file.getFilename().equals(filename))
-					model.setFilename(file, filename);
-				file.setNew(false);
-				model.setModified(file, false);
-				editor.getSettings().pushListEntryProperty(
-						JGraphpad.NAME_USERSETTINGS, KEY_RECENTFILES, filename,
-						MAX_RECENTFILES);
+				final long revision = model.getRevision(file);
+				final JGraphEditorFile snapshot = JGraphpadSaveManager
+						.createSnapshot(file);
+				if (snapshot != null) {
+					SaveTask task = new SaveTask(file, snapshot, filename,
+							revision);
+					synchronized (saveTasks) {
+						List tasks = (List) saveTasks.get(file);
+						if (tasks == null) {
+							tasks = new ArrayList();
+							saveTasks.put(file, tasks);
+						}
+						tasks.add(task);
+					}
+					task.future = JGraphpadSaveManager.getSharedInstance()
+							.submit(filename, task);
+				} else {
+					doWriteFile(file, filename);
+					fileSaved(file, filename, revision);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for the pending background saves of the specified file and
+	 * completes them using {@link SaveTask#run()}, which resets the modified
+	 * state of the file or displays an error. This must be called on the
+	 * event dispatch thread.
+	 * 
+	 * @param file
+	 *            The file to wait for.
+	 * @return Returns true if all pending saves of the file have succeeded.
+	 * @throws InterruptedIOException
+	 *             If the thread was interrupted while waiting.
+	 */
+	protected boolean waitForSaves(JGraphEditorFile file)
+			throws InterruptedIOException {
+		Object[] tasks;
+		synchronized (saveTasks) {
+			List list = (List) saveTasks.get(file);
+			if (list == null)
+				return true;
+			tasks = list.toArray();
+		}
+		boolean success = true;
+		for (int i = 0; i < tasks.length; i++) {
+			SaveTask task = (SaveTask) tasks[i];
+			try {
+				task.future.get();
+			} catch (ExecutionException e) {
+				// handled in task.run
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(e.getMessage());
 			}
+			task.run();
+			success = success && task.error == null;
 		}
+		return success;
+	}
+
+	/**
+	 * Writes the specified file to the specified filename or URL. This is
+	 * invoked from a worker thread of the {@link JGraphpadSaveManager} with a
+	 * snapshot of the file, or from the event dispatch thread if no snapshot
+	 * could be created.
+	 * 
+	 * @param file
+	 *            The file to be written.
+	 * @param filename
+	 *            The filename or URL to write the file to.
+	 * @throws IOException
+	 *             If the file cannot be written.
+	 * 
+	 * @see JGraphEditorModel#writeFile(Object, String)
+	 * @see #postPlain(URL, String, OutputStream)
+	 */
+	protected void doWriteFile(JGraphEditorFile file, String filename)
+			throws IOException {
+		JGraphEditorModel model = editor.getModel();
+		if (JGraphEditor.isURL(filename)) {
+			OutputStream out = model.getOutputStream(filename);
+			model.writeObject(file, out, filename);
+			out.flush();
+			out.close();
+			URL url = new URL(filename);
+			postPlain(url, url.getFile(), out);
+		} else
+			model.writeFile(file, filename);
+	}
+
+	/**
+	 * Invoked on the event dispatch thread after the specified file has been
+	 * written successfully. This implementation binds the file to the
+	 * filename, updates the last directory and recent files and resets the
+	 * modified state of the file unless it has been modified since the save
+	 * was started.
+	 * 
+	 * @param file
+	 *            The file that has been written.
+	 * @param filename
+	 *            The filename or URL the file has been written to.
+	 * @param revision
+	 *            The revision of the file that has been written.
+	 */
+	protected void fileSaved(JGraphEditorFile file, String filename,
+			long revision) {
+		JGraphEditorModel model = editor.getModel();
+		if (!JGraphEditor.isURL(filename))
+			lastDirectory = new File(filename).getParentFile();
+		if (file.getFilename() == null || !file.getFilename().equals(filename))
+			model.setFilename(file, filename);
+		file.setNew(false);
+		editor.getSettings().pushListEntryProperty(JGraphpad.NAME_USERSETTINGS,
+				KEY_RECENTFILES, filename, MAX_RECENTFILES);
+		if (model.getRevision(file) == revision)
+			model.setModified(file, false);
 	}
 
 	/**
@@ -445,7 +562,8 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 	 * @throws IllegalArgumentException
 	 *             If the graph contains no cells.
 	 * 
-	 * @see JGraph#getImage(Color, int)
+	 * @see JGraphEditorDiagramPane#getImage(Color, int)
+	 * @see JGraphEditorDiagramPane#getTiledImage(Color, int)
 	 * @see ImageIO#write(java.awt.image.RenderedImage, java.lang.String,
 	 *      java.io.OutputStream)
 	 * @see JGraphEditorModel#getOutputStream(String)
@@ -464,12 +582,18 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 								.getParentScrollPane(graph),
 								getString("MakeTransparent"), true, false))
 					bg = graph.getBackground();
-				BufferedImage img = diagramPane.getImage(bg, inset);
 				OutputStream out = editor.getModel().getOutputStream(filename);
 				if (ext.equals("gif"))
-					JGraphpadImageEncoder.writeGIF(img, out);
+					JGraphpadImageEncoder.writeGIF(diagramPane.getImage(bg,
+							inset), out);
+
+				// Formats that are written row by row are rendered in tiles
+				else if (ext.equals("png") || ext.equals("tif")
+						|| ext.equals("tiff") || ext.equals("bmp"))
+					ImageIO.write(diagramPane.getTiledImage(bg, inset), ext,
+							out);
 				else
-					ImageIO.write(img, ext, out);
+					ImageIO.write(diagramPane.getImage(bg, inset), ext, out);
 				out.flush();
 				out.close();
 				if (JGraphEditor.isURL(filename)) {
@@ -508,26 +632,48 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 
 	/**
 	 * Displays a file- or URL-dialog and loads the selected file or URL into
-	 * the specified diagram as a comma separated value file (CSV) using
-	 * {@link #importCSVFile(GraphLayoutCache, InputStream, String, Object, Object, String)}.
+	 * the specified diagram as a comma separated value file (CSV) using a
+	 * {@link JGraphpadCSVImporter}. The file is read in a background thread
+	 * and a progress monitor is displayed which allows to cancel the import.
+	 * Errors are displayed in an error dialog.
 	 * 
 	 * @param cache
 	 *            The graph layout cache to import into.
 	 * @param filename
 	 *            The filename to import from.
 	 * @throws IOException
-	 *             If the file cannot be read.
+	 *             If the file cannot be opened.
 	 * 
 	 * @see JGraphEditorModel#getInputStream(String)
 	 */
-	protected void doImportCSV(GraphLayoutCache cache, String filename)
+	protected void doImportCSV(final GraphLayoutCache cache, String filename)
 			throws IOException {
 		if (filename != null) {
-			InputStream in = editor.getModel().getInputStream(filename);
-			Object vertexPrototype = getValue(KEY_VERTEXPROTOTYPE);
-			Object edgePrototype = getValue(KEY_EDGEPROTOTYPE);
-			importCSVFile(cache, in, ",", vertexPrototype, edgePrototype, "");
-			in.close();
+			final InputStream in = new ProgressMonitorInputStream(
+					getActiveFrame(), JGraphEditorResources.getString("Importing",
+							filename), editor
+							.getModel().getInputStream(filename));
+			final JGraphpadCSVImporter importer = new JGraphpadCSVImporter(
+					cache, ",", getValue(KEY_VERTEXPROTOTYPE),
+					getValue(KEY_EDGEPROTOTYPE), "");
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					try {
+						importer.importStream(in);
+					} catch (InterruptedIOException e) {
+						// cancelled
+					} catch (final Exception e) {
+						SwingUtilities.invokeLater(new Runnable() {
+							public void run() {
+								dlgs.errorDialog(getActiveFrame(), e
+										.getLocalizedMessage());
+							}
+						});
+					}
+				}
+			}, "JGraphpadCSVImporter");
+			thread.setDaemon(true);
+			thread.start();
 			lastDirectory = new File(filename).getParentFile();
 		}
 	}
@@ -619,10 +765,12 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 	}
 
 	/**
-	 * Closes all open files using {@link #doCloseAll()}, saves the user
-	 * settings and terminates the program using {@link System#exit(int)}. This
-	 * implementation allows the {@link JGraphpad#PATH_USERSETTINGS} to be a
-	 * URL.
+	 * Closes all open files using
+	 * {@link #doCloseFile(JGraphEditorFile, boolean)}, waits for pending
+	 * background saves, saves the user settings and terminates the program
+	 * using {@link System#exit(int)}. The program is not terminated if a file
+	 * could not be saved. This implementation allows the
+	 * {@link JGraphpad#PATH_USERSETTINGS} to be a URL.
 	 * 
 	 * @throws IOException
 	 *             If there was an error saving unsaved changes.
@@ -631,9 +779,11 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 		Enumeration files = editor.getModel().roots();
 		while (files.hasMoreElements()) {
 			Object obj = files.nextElement();
-			if (obj instanceof JGraphEditorFile)
-				doCloseFile((JGraphEditorFile) obj, false);
+			if (obj instanceof JGraphEditorFile
+					&& !doCloseFile((JGraphEditorFile) obj, false))
+				return;
 		}
+		JGraphpadSaveManager.getSharedInstance().waitForAll();
 		editor.exit(1);
 	}
 
@@ -655,35 +805,47 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 			files[i] = model.getChild(model.getRoot(), i);
 
 		// Then closes all files, thereby removing them
-		// from the childset of the root.
+		// from the childset of the root. Stops at the
+		// first file that could not be saved.
 		for (int i = 0; i < files.length; i++)
-			if (files[i] instanceof JGraphEditorFile)
-				doCloseFile((JGraphEditorFile) files[i], true);
+			if (files[i] instanceof JGraphEditorFile
+					&& !doCloseFile((JGraphEditorFile) files[i], true))
+				return;
 	}
 
 	/**
 	 * Closes the specified file by removing it from the parent. This
-	 * implementation displays a dialog if there are unsaved changes and calls
+	 * implementation waits for pending background saves of the file, displays
+	 * a dialog if there are unsaved changes and calls
 	 * {@link #doSaveFile(JGraphEditorFile, boolean, boolean)} if the user
-	 * chooses to save the changes.
+	 * chooses to save the changes. The file is not closed if one of the saves
+	 * has failed.
 	 * 
 	 * @param file
 	 *            The file to be closed.
 	 * @param remove
 	 *            Whether the file should be removed from the model.
+	 * @return Returns true if the file has been closed.
 	 * @throws IOException
 	 *             If the unsaved changes can not be saved.
+	 * 
+	 * @see #waitForSaves(JGraphEditorFile)
 	 */
-	protected void doCloseFile(JGraphEditorFile file, boolean remove)
+	protected boolean doCloseFile(JGraphEditorFile file, boolean remove)
 			throws IOException {
+		if (!waitForSaves(file))
+			return false;
 		if (file.isModified()
 				&& dlgs.confirmDialog(getPermanentFocusOwnerOrParent(),
 						JGraphEditorResources.getString("SaveChanges", file),
 						true, true)) {
 			doSaveFile(file, false, false);
+			if (!waitForSaves(file))
+				return false;
 		}
 		if (remove)
 			editor.getModel().removeNodeFromParent(file);
+		return true;
 	}
 
 	/**
@@ -883,6 +1045,7 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 	 * a,b,ab<br>
 	 * b,c,bc<br>
 	 * c,a,ca<br>
+	 * The cells are inserted in batches using {@link JGraphpadCSVImporter}.
 	 * 
 	 * @param cache
 	 *            The layout cache to import the file into.
@@ -901,84 +1064,8 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 	public static void importCSVFile(GraphLayoutCache cache,
 			InputStream fstream, String delim, Object vertexPrototype,
 			Object edgePrototype, String defaultEdgeLabel) throws IOException {
-		GraphModel model = cache.getModel();
-
-		// Convert our input stream to a
-		// DataInputStream
-		DataInputStream in = new DataInputStream(fstream);
-
-		// Continue to read lines while
-		// there are still some left to read
-		// Map from keys to vertices
-		Hashtable map = new Hashtable();
-
-		// Adds the existing vertices from the graph layout cache
-		// into the vertex map for reference by the keys in the file.
-		Object[] items = DefaultGraphModel.getAll(model);
-		if (items != null) {
-			for (int i = 0; i < items.length; i++)
-				if (items[i] != null && items[i].toString() != null
-						&& !model.isPort(items[i]) && !model.isEdge(items[i])) {
-					map.put(items[i].toString(), items[i]);
-				}
-		}
-
-		// Geometry of the import matrix
-		int cols = 8;
-		int offset = 40;
-		int w = 100;
-		int h = 100;
-
-		// Vertices and Edges to insert
-		Hashtable adj = new Hashtable();
-		// Make space for a minimum of 4 bytes per entry
-		List insert = new ArrayList(in.available() / 4);
-		ConnectionSet cs = new ConnectionSet();
-		while (in.available() != 0) {
-			String s = in.readLine();
-			StringTokenizer st = new StringTokenizer(s, delim);
-			if (st.hasMoreTokens()) {
-				String srckey = st.nextToken().trim();
-
-				// Get or create source vertex
-				Object source = getCellForKey(model, vertexPrototype, map,
-						srckey, cols, w, h, offset, false);
-				if (!model.contains(source) && !insert.contains(source))
-					insert.add(source);
-				if (st.hasMoreTokens()) {
-					String tgtkey = st.nextToken().trim();
-
-					// Get or create source vertex
-					Object target = getCellForKey(model, vertexPrototype, map,
-							tgtkey, cols, w, h, offset, false);
-					if (!model.contains(target) && !insert.contains(target))
-						insert.add(target);
-
-					// Create and insert Edge
-					Set neighbours = (Set) adj.get(srckey);
-					if (neighbours == null) {
-						neighbours = new HashSet();
-						adj.put(srckey, neighbours);
-					}
-					String label = (st.hasMoreTokens()) ? st.nextToken().trim()
-							: defaultEdgeLabel;
-					if (!(neighbours.contains(tgtkey))) {
-						Object edge = DefaultGraphModel.cloneCell(model,
-								edgePrototype);
-						model.valueForCellChanged(edge, label);
-						Object sourcePort = model.getChild(source, 0);
-						Object targetPort = model.getChild(target, 0);
-						if (sourcePort != null && targetPort != null) {
-							cs.connect(edge, sourcePort, targetPort);
-							insert.add(edge);
-							neighbours.add(tgtkey);
-						}
-					}
-				}
-			}
-		}
-		in.close();
-		cache.insert(insert.toArray(), null, cs, null, null);
+		new JGraphpadCSVImporter(cache, delim, vertexPrototype, edgePrototype,
+				defaultEdgeLabel).importStream(fstream);
 	}
 
 	/**
@@ -1189,10 +1276,107 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 		return JGraphpadLibraryPane.getParentLibraryPane(component);
 	}
 
+	/**
+	 * Writes a snapshot of a file in a worker thread of the
+	 * {@link JGraphpadSaveManager} and completes the save on the event
+	 * dispatch thread.
+	 */
+	protected class SaveTask implements Callable, Runnable {
+
+		/**
+		 * References the file that is being saved and its snapshot.
+		 */
+		protected JGraphEditorFile file, snapshot;
+
+		/**
+		 * Holds the filename or URL to write the snapshot to.
+		 */
+		protected String filename;
+
+		/**
+		 * Holds the revision of the file when the snapshot was taken.
+		 */
+		protected long revision;
+
+		/**
+		 * References the future of this task in the save manager.
+		 */
+		protected Future future;
+
+		/**
+		 * Holds the exception that occurred while writing the snapshot or null
+		 * if the snapshot has been written.
+		 */
+		protected Exception error;
+
+		/**
+		 * Specifies if the save has been completed on the event dispatch
+		 * thread.
+		 */
+		protected boolean completed = false;
+
+		/**
+		 * Constructs a new task to write the specified snapshot of the
+		 * specified file to the specified filename.
+		 */
+		protected SaveTask(JGraphEditorFile file, JGraphEditorFile snapshot,
+				String filename, long revision) {
+			this.file = file;
+			this.snapshot = snapshot;
+			this.filename = filename;
+			this.revision = revision;
+		}
+
+		/**
+		 * Writes the snapshot using
+		 * {@link JGraphpadFileAction#doWriteFile(JGraphEditorFile, String)}
+		 * and schedules {@link #run()} on the event dispatch thread. Throws
+		 * the exception of the write so that the future of this task reports
+		 * the failure.
+		 */
+		public Object call() throws Exception {
+			try {
+				doWriteFile(snapshot, filename);
+			} catch (Exception e) {
+				e.printStackTrace();
+				error = e;
+			}
+			SwingUtilities.invokeLater(this);
+			if (error != null)
+				throw error;
+			return null;
+		}
+
+		/**
+		 * Completes the save on the event dispatch thread, by calling
+		 * {@link JGraphpadFileAction#fileSaved(JGraphEditorFile, String, long)}
+		 * or displaying the error, unless it has already been completed.
+		 */
+		public void run() {
+			if (!completed) {
+				completed = true;
+				synchronized (saveTasks) {
+					List tasks = (List) saveTasks.get(file);
+					if (tasks != null) {
+						tasks.remove(this);
+						if (tasks.isEmpty())
+							saveTasks.remove(file);
+					}
+				}
+				if (error == null)
+					fileSaved(file, filename, revision);
+				else
+					dlgs.errorDialog(getPermanentFocusOwner(), error
+							.getMessage());
+			}
+		}
+
+	}
+
 	/**
 	 * Bundle of all actions in this class.
 	 */
-	public static class AllActions implements Bundle {
+	public static class AllActions implements DependentBundle {
 
 		/**
 		 * Holds the actions. All actions require an editor reference and are
@@ -1253,6 +1437,14 @@ public class JGraphpadFileAction extends JGraphEditorAction {
 					actionSaveImage, actionImportCSV, actionExit };
 		}
 
+		/**
+		 * Returns the kinds of changes that require an update.
+		 */
+		public int getDependencies() {
+			return JGraphEditorKit.CHANGE_FOCUS | JGraphEditorKit.CHANGE_MODEL
+					| JGraphEditorKit.CHANGE_LAYOUT | JGraphEditorKit.CHANGE_UNDO;
+		}
+
 		/*
 		 * (non-Javadoc)
 		 */
@@ -38,6 +38,7 @@ import org.jgraph.graph.GraphModel;
 
 import com.jgraph.JGraphEditor;
 import com.jgraph.editor.JGraphEditorAction;
+import com.jgraph.editor.JGraphEditorKit;
 import com.jgraph.pad.dialog.JGraphpadDialogs;
 import com.jgraph.pad.graph.JGraphpadBusinessObject;
 import com.jgraph.pad.graph.JGraphpadGraphConstants;
@@ -1098,7 +1099,7 @@ public class JGraphpadFormatAction extends JGraphEditorAction {
 	/**
 	 * Bundle of all actions in this class.
 	 */
-	public static class AllActions implements Bundle {
+	public static class AllActions implements DependentBundle {
 
 		/**
 		 * Holds the actions.
@@ -1256,6 +1257,14 @@ public class JGraphpadFormatAction extends JGraphEditorAction {
 					actionToggleConnectable, actionToggleDisconnectable };
 		}
 
+		/**
+		 * Returns the kinds of changes that require an update.
+		 */
+		public int getDependencies() {
+			return JGraphEditorKit.CHANGE_FOCUS | JGraphEditorKit.CHANGE_SELECTION
+					| JGraphEditorKit.CHANGE_MODEL | JGraphEditorKit.CHANGE_LAYOUT;
+		}
+
 		/*
 		 * (non-Javadoc)
 		 */
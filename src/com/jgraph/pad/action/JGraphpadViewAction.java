@@ -23,6 +23,7 @@ import org.jgraph.graph.PortView;
 
 import com.jgraph.JGraphEditor;
 import com.jgraph.editor.JGraphEditorAction;
+import com.jgraph.editor.JGraphEditorKit;
 import com.jgraph.editor.factory.JGraphEditorDiagramPane;
 import com.jgraph.pad.dialog.JGraphpadDialogs;
 import com.jgraph.pad.factory.JGraphpadLibraryPane;
@@ -645,7 +646,7 @@ public class JGraphpadViewAction extends JGraphEditorAction {
 	/**
 	 * Bundle of all actions in this class.
 	 */
-	public static class AllActions implements Bundle {
+	public static class AllActions implements DependentBundle {
 
 		/**
 		 * Holds the actions.
@@ -779,6 +780,13 @@ public class JGraphpadViewAction extends JGraphEditorAction {
 					actionLibrarySmaller };
 		}
 
+		/**
+		 * Returns the kinds of changes that require an update.
+		 */
+		public int getDependencies() {
+			return JGraphEditorKit.CHANGE_FOCUS | JGraphEditorKit.CHANGE_PROPERTY;
+		}
+
 		/*
 		 * (non-Javadoc)
 		 */
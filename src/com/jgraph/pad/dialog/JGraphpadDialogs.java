@@ -33,6 +33,7 @@ import javax.swing.filechooser.FileFilter;
 import com.jgraph.JGraphEditor;
 import com.jgraph.JGraphpad;
 import com.jgraph.editor.JGraphEditorResources;
+import com.jgraph.pad.util.JGraphpadBinaryCodec;
 import com.jgraph.pad.util.JGraphpadFileFilter;
 import com.jgraph.pad.util.JGraphpadFileFilter.EditorFileFilter;
 
@@ -47,9 +48,10 @@ public class JGraphpadDialogs {
 	protected static JGraphpadDialogs sharedInstance = new JGraphpadDialogs();
 
 	/**
-	 * Shared simple font dialog.
+	 * Shared simple font dialog. This is created on first use so that the
+	 * class may be loaded in a headless environment.
 	 */
-	protected static FontDialog fontDialog = new FontDialog();
+	protected static FontDialog fontDialog;
 
 	/**
 	 * Holds the various file choosers to preserve their states between uses.
@@ -72,11 +74,15 @@ public class JGraphpadDialogs {
 			FileFilter uncompressedEdiorFilter = new JGraphpadFileFilter(
 					".xml", JGraphEditorResources
 							.getString("JGraphpadFileDescription"));
+			FileFilter binaryEditorFilter = new JGraphpadFileFilter(
+					JGraphpadBinaryCodec.EXTENSION, JGraphEditorResources
+							.getString("JGraphpadBinaryFileDescription"));
 
 			// Constructs the save editor file chooser
 			saveEditorChooser = new JFileChooser();
 			saveEditorChooser.addChoosableFileFilter(compressedEditorFilter);
 			saveEditorChooser.addChoosableFileFilter(uncompressedEdiorFilter);
+			saveEditorChooser.addChoosableFileFilter(binaryEditorFilter);
 			saveEditorChooser.setFileFilter(compressedEditorFilter);
 
 			// Constructs the open editor file chooser
@@ -84,6 +90,7 @@ public class JGraphpadDialogs {
 			openEditorChooser.addChoosableFileFilter(allEditorFilter);
 			openEditorChooser.addChoosableFileFilter(compressedEditorFilter);
 			openEditorChooser.addChoosableFileFilter(uncompressedEdiorFilter);
+			openEditorChooser.addChoosableFileFilter(binaryEditorFilter);
 			openEditorChooser.setFileFilter(allEditorFilter);
 
 			// Defines the filter for image files
@@ -154,6 +161,8 @@ public class JGraphpadDialogs {
 	 * @return Returns the selected font.
 	 */
 	public Font fontDialog(Component component, String title) {
+		if (fontDialog == null)
+			fontDialog = new FontDialog();
 		fontDialog.setVisible(true);
 		return fontDialog.getFont();
 	}
@@ -380,6 +389,26 @@ public class JGraphpadDialogs {
 		return showFileChooser(component, fc, open);
 	}
 
+	/**
+	 * Displays a {@link JFileChooser} to select a directory using
+	 * {@link #showFileChooser(Component, JFileChooser, boolean)}.
+	 *
+	 * @param component
+	 *            The parent component for the dialog to be displayed.
+	 * @param title
+	 *            The title of the dialog to be displayed.
+	 * @param directory
+	 *            The default directory to use for the dialog.
+	 * @return Returns the selected directory.
+	 */
+	public String directoryDialog(Component component, String title,
+			File directory) {
+		JFileChooser fc = new JFileChooser(directory);
+		fc.setDialogTitle(title);
+		fc.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+		return showFileChooser(component, fc, true);
+	}
+
 	/**
 	 * Displays a {@link JFileChooser} using
 	 * {@link #showFileChooser(Component, JFileChooser, boolean)}. This
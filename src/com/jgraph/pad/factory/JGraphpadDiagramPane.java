@@ -0,0 +1,60 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.factory;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.RenderedImage;
+
+import org.jgraph.JGraph;
+
+import com.jgraph.editor.JGraphEditorDiagram;
+import com.jgraph.editor.factory.JGraphEditorDiagramPane;
+import com.jgraph.pad.util.JGraphpadRenderService;
+import com.jgraph.pad.util.JGraphpadTiledImage;
+
+/**
+ * Diagram pane that paints its images using the
+ * {@link JGraphpadRenderService} instead of the graph, so that the images
+ * contain no selection or grid and the global repaint manager is never
+ * changed. Tiled images are rendered using {@link JGraphpadTiledImage}.
+ */
+public class JGraphpadDiagramPane extends JGraphEditorDiagramPane {
+
+	/**
+	 * Constructs a new diagram pane for the specified diagram and graph.
+	 */
+	public JGraphpadDiagramPane(JGraphEditorDiagram diagram, JGraph graph) {
+		super(diagram, graph);
+	}
+
+	/**
+	 * Paints the cells of the graph using the shared render service.
+	 */
+	protected void paintImage(Graphics2D graphics) {
+		JGraphpadRenderService.getSharedInstance().paint(graphics,
+				graph.getGraphLayoutCache(), graph);
+	}
+
+	/**
+	 * Returns a {@link JGraphpadTiledImage} of the graph. The tiles are
+	 * rendered in the worker threads of the shared render service, so the
+	 * image must be written while the graph is not changed, eg. on the event
+	 * dispatch thread.
+	 */
+	public RenderedImage getTiledImage(Color bg, int inset) {
+		if (JGraphpadRenderService.getBounds(graph.getGraphLayoutCache(), 1) != null)
+			return new JGraphpadTiledImage(graph.getGraphLayoutCache(), graph,
+					bg, (backgroundImage != null) ? backgroundImage.getImage()
+							: null, inset);
+		return null;
+	}
+
+}
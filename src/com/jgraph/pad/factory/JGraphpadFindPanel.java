@@ -0,0 +1,351 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.factory;
+
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.RootPaneContainer;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import org.jgraph.JGraph;
+import org.jgraph.graph.GraphLayoutCache;
+import org.w3c.dom.Node;
+
+import com.jgraph.editor.JGraphEditorResources;
+import com.jgraph.editor.factory.JGraphEditorFactoryMethod;
+import com.jgraph.pad.graph.JGraphpadTextIndex;
+import com.jgraph.pad.util.JGraphpadFocusManager;
+
+/**
+ * Panel to find cells in the focused graph as the user types. The cells are
+ * found using the {@link JGraphpadTextIndex} of the graph and the number of
+ * matches is displayed next to the text field. The current match is selected
+ * and scrolled to, or all matches are selected if highlight all is checked.
+ * Enter moves to the next match, shift-enter to the previous match and escape
+ * hides the panel.<br>
+ * The panel is hidden by default. The find action shows the panel of the
+ * frame that contains the focused graph, which is registered as the
+ * {@link #CLIENTPROPERTY_FINDPANEL} client property of the root pane of the
+ * frame.
+ */
+public class JGraphpadFindPanel extends JPanel {
+
+	/**
+	 * Client property for the root pane of a frame to reference the find panel
+	 * of the frame.
+	 */
+	public static String CLIENTPROPERTY_FINDPANEL = "findPanel";
+
+	/**
+	 * Holds the text field for the query.
+	 */
+	protected JTextField textField = new JTextField(20);
+
+	/**
+	 * Holds the checkboxes for the search options.
+	 */
+	protected JCheckBox wholeWordsCheckBox = new JCheckBox(
+			getString("WholeWords")), highlightAllCheckBox = new JCheckBox(
+			getString("HighlightAll"));
+
+	/**
+	 * Displays the number of matches.
+	 */
+	protected JLabel countLabel = new JLabel(" ");
+
+	/**
+	 * References the current match or null.
+	 */
+	protected Object currentMatch = null;
+
+	/**
+	 * Constructs a new find panel.
+	 */
+	public JGraphpadFindPanel() {
+		super(new FlowLayout(FlowLayout.LEFT, 4, 0));
+		setBorder(BorderFactory.createEmptyBorder(4, 5, 0, 4));
+		add(new JLabel(getString("Find")));
+		add(textField);
+
+		JButton previousButton = new JButton(getString("Previous"));
+		previousButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				findNext(false);
+			}
+		});
+		add(previousButton);
+
+		JButton nextButton = new JButton(getString("Next"));
+		nextButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				findNext(true);
+			}
+		});
+		add(nextButton);
+
+		ActionListener optionListener = new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				search();
+			}
+		};
+		wholeWordsCheckBox.addActionListener(optionListener);
+		highlightAllCheckBox.addActionListener(optionListener);
+		add(wholeWordsCheckBox);
+		add(highlightAllCheckBox);
+		add(countLabel);
+
+		JButton closeButton = new JButton(getString("Close"));
+		closeButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				hidePanel();
+			}
+		});
+		add(closeButton);
+
+		// Searches as the user types
+		textField.getDocument().addDocumentListener(new DocumentListener() {
+
+			/*
+			 * (non-Javadoc)
+			 */
+			public void insertUpdate(DocumentEvent e) {
+				search();
+			}
+
+			/*
+			 * (non-Javadoc)
+			 */
+			public void removeUpdate(DocumentEvent e) {
+				search();
+			}
+
+			/*
+			 * (non-Javadoc)
+			 */
+			public void changedUpdate(DocumentEvent e) {
+				// ignore
+			}
+		});
+		textField.addKeyListener(new KeyAdapter() {
+			public void keyPressed(KeyEvent e) {
+				if (e.getKeyCode() == KeyEvent.VK_ENTER) {
+					findNext(!e.isShiftDown());
+					e.consume();
+				} else if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+					hidePanel();
+					e.consume();
+				}
+			}
+		});
+		setVisible(false);
+	}
+
+	/**
+	 * Shortcut method to {@link JGraphEditorResources#getString(String)}.
+	 *
+	 * @param key
+	 *            The key to return the resource string for.
+	 */
+	public static String getString(String key) {
+		return JGraphEditorResources.getString(key);
+	}
+
+	/**
+	 * Returns the find panel of the frame that contains the specified
+	 * component or null if the frame has no find panel.
+	 *
+	 * @param component
+	 *            The component to return the find panel for.
+	 * @return Returns the find panel for <code>component</code>.
+	 */
+	public static JGraphpadFindPanel getFindPanel(Component component) {
+		Window wnd = (component != null) ? SwingUtilities
+				.getWindowAncestor(component) : null;
+		if (wnd instanceof RootPaneContainer) {
+			Object panel = ((RootPaneContainer) wnd).getRootPane()
+					.getClientProperty(CLIENTPROPERTY_FINDPANEL);
+			if (panel instanceof JGraphpadFindPanel)
+				return (JGraphpadFindPanel) panel;
+		}
+		return null;
+	}
+
+	/**
+	 * Shows the panel and moves the focus to the text field.
+	 */
+	public void showPanel() {
+		setVisible(true);
+		revalidate();
+		textField.selectAll();
+		textField.requestFocus();
+	}
+
+	/**
+	 * Hides the panel and moves the focus back to the focused graph.
+	 */
+	public void hidePanel() {
+		setVisible(false);
+		revalidate();
+		JGraph graph = getGraph();
+		if (graph != null)
+			graph.requestFocus();
+	}
+
+	/**
+	 * Returns true if the panel is visible and contains a query.
+	 *
+	 * @return Returns true if there is an active search.
+	 */
+	public boolean isSearching() {
+		return isVisible() && textField.getText().trim().length() > 0;
+	}
+
+	/**
+	 * Returns the graph to search in. This implementation returns the focused
+	 * graph of {@link JGraphpadFocusManager}, which is the last focused graph
+	 * while the text field has the focus.
+	 *
+	 * @return Returns the graph to search in.
+	 */
+	protected JGraph getGraph() {
+		return JGraphpadFocusManager.getCurrentGraphFocusManager()
+				.getFocusedGraph();
+	}
+
+	/**
+	 * Returns the visible cells in the specified graph that match the current
+	 * query.
+	 *
+	 * @param graph
+	 *            The graph to search in.
+	 * @return Returns the matching cells.
+	 */
+	protected Object[] getMatches(JGraph graph) {
+		Object[] cells = JGraphpadTextIndex.getTextIndex(graph).find(
+				textField.getText(), wholeWordsCheckBox.isSelected());
+		GraphLayoutCache cache = graph.getGraphLayoutCache();
+		List result = new ArrayList(cells.length);
+		for (int i = 0; i < cells.length; i++)
+			if (cache.isVisible(cells[i]))
+				result.add(cells[i]);
+		return result.toArray();
+	}
+
+	/**
+	 * Searches for the query in the focused graph and keeps the current match
+	 * if it still matches, otherwise the first match becomes the current
+	 * match.
+	 */
+	protected void search() {
+		JGraph graph = getGraph();
+		if (graph != null) {
+			Object[] matches = getMatches(graph);
+			int index = Arrays.asList(matches).indexOf(currentMatch);
+			show(graph, matches, Math.max(0, index));
+		}
+	}
+
+	/**
+	 * Moves to the next or previous match in the focused graph. The search
+	 * wraps around at the end of the matches.
+	 *
+	 * @param forward
+	 *            Whether to move to the next or the previous match.
+	 */
+	public void findNext(boolean forward) {
+		JGraph graph = getGraph();
+		if (graph != null) {
+			Object[] matches = getMatches(graph);
+			int index = Arrays.asList(matches).indexOf(currentMatch);
+			if (index < 0)
+				index = (forward) ? 0 : matches.length - 1;
+			else if (matches.length > 0)
+				index = (index + ((forward) ? 1 : matches.length - 1))
+						% matches.length;
+			show(graph, matches, index);
+		}
+	}
+
+	/**
+	 * Selects the match at the specified index and updates the count label. If
+	 * highlight all is checked then all matches are selected.
+	 *
+	 * @param graph
+	 *            The graph that contains the matches.
+	 * @param matches
+	 *            The matching cells.
+	 * @param index
+	 *            The index of the current match.
+	 */
+	protected void show(JGraph graph, Object[] matches, int index) {
+		if (matches.length == 0) {
+			currentMatch = null;
+			countLabel.setText((textField.getText().trim().length() > 0) ? JGraphEditorResources
+					.getString("NotFound", textField.getText())
+					: " ");
+			if (highlightAllCheckBox.isSelected())
+				graph.clearSelection();
+		} else {
+			currentMatch = matches[index];
+			countLabel.setText(JGraphEditorResources.getString("MatchCount",
+					new Object[] { new Integer(index + 1),
+							new Integer(matches.length) }));
+			if (highlightAllCheckBox.isSelected())
+				graph.setSelectionCells(matches);
+			else
+				graph.setSelectionCell(currentMatch);
+			graph.scrollCellToVisible(currentMatch);
+		}
+	}
+
+	/**
+	 * Provides a factory method to construct a find panel.
+	 */
+	public static class FactoryMethod extends JGraphEditorFactoryMethod {
+
+		/**
+		 * Defines the default name for factory methods of this kind.
+		 */
+		public static String NAME = "createFindPanel";
+
+		/**
+		 * Constructs a new factory method using {@link #NAME}.
+		 */
+		public FactoryMethod() {
+			super(NAME);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 */
+		public Component createInstance(Node configuration) {
+			return new JGraphpadFindPanel();
+		}
+
+	}
+
+}
@@ -13,17 +13,20 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Image;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.Shape;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.swing.CellRendererPane;
 import javax.swing.JComponent;
@@ -36,11 +39,14 @@ import javax.swing.event.TreeModelEvent;
 import org.jgraph.JGraph;
 import org.jgraph.event.GraphModelEvent;
 import org.jgraph.event.GraphModelListener;
+import org.jgraph.event.GraphModelEvent.GraphModelChange;
 import org.jgraph.event.GraphSelectionEvent;
 import org.jgraph.event.GraphSelectionListener;
+import org.jgraph.graph.AbstractCellView;
 import org.jgraph.graph.CellView;
 import org.jgraph.graph.ConnectionSet;
 import org.jgraph.graph.DefaultGraphCell;
+import org.jgraph.graph.GraphLayoutCache;
 import org.jgraph.graph.GraphModel;
 import org.jgraph.graph.GraphTransferHandler;
 import org.jgraph.graph.ParentMap;
@@ -52,13 +58,21 @@ import com.jgraph.editor.JGraphEditorAction;
 import com.jgraph.editor.JGraphEditorFactory;
 import com.jgraph.editor.factory.JGraphEditorFactoryMethod;
 import com.jgraph.pad.JGraphpadLibrary;
+import com.jgraph.pad.graph.JGraphpadLevelOfDetail;
 import com.jgraph.pad.graph.JGraphpadVertexRenderer;
 import com.jgraph.pad.util.JGraphpadMouseAdapter;
+import com.jgraph.pad.util.JGraphpadRenderService;
+import com.jgraph.pad.util.JGraphpadSaveManager;
 import com.jgraph.pad.util.JGraphpadTreeModelAdapter;
 
 /**
  * Displays groups in a {@link JGraphpadLibrary} as a list of entries. Allows to
- * drag and drop entries to/from {@link JGraph}.
+ * drag and drop entries to/from {@link JGraph}. The entries are rendered once
+ * into thumbnails by the worker threads of the shared
+ * {@link JGraphpadRenderService} and a placeholder is painted until the
+ * thumbnail of an entry is available. The worker threads render a copy of the
+ * entry that is created on the event dispatch thread. The thumbnail of an
+ * entry is rendered again if the entry is changed.
  */
 public class JGraphpadLibraryPane extends JComponent {
 
@@ -124,6 +138,24 @@ public class JGraphpadLibraryPane extends JComponent {
 	 */
 	protected transient boolean dragging = false;
 
+	/**
+	 * Maps from entries to their thumbnails. The thumbnails include a border
+	 * of 2 pixels around the bounds of the entries.
+	 */
+	protected transient Map thumbnails = new Hashtable();
+
+	/**
+	 * Maps from the entries whose thumbnails are being rendered to the
+	 * Integer stamps of the renderings. A thumbnail is discarded if the stamp
+	 * of its entry has changed or has been removed when the rendering ends.
+	 */
+	protected transient Map pendingThumbnails = new HashMap();
+
+	/**
+	 * Counts the renderings of thumbnails to create unique stamps.
+	 */
+	protected transient int generation = 0;
+
 	/**
 	 * Constructs a new repository pane for the specified library.
 	 * 
@@ -142,6 +174,12 @@ public class JGraphpadLibraryPane extends JComponent {
 				JGraphpadVertexRenderer.CLIENTPROPERTY_SHOWFOLDINGICONS,
 				new Boolean(false));
 
+		// Sets the level of detail policy explicitly, as the thumbnails are
+		// painted by the render service which paints all details otherwise
+		backingGraph.putClientProperty(
+				JGraphpadLevelOfDetail.CLIENTPROPERTY_LEVELOFDETAIL,
+				JGraphpadLevelOfDetail.getSharedInstance());
+
 		// Configures the backing graph
 		GraphTransferHandler transferHandler = new LibraryGraphTransferHandler();
 		transferHandler.setAlwaysReceiveAsCopyAction(true);
@@ -190,6 +228,7 @@ public class JGraphpadLibraryPane extends JComponent {
 		// Repaints and revalidates on model changes
 		backingGraph.getModel().addGraphModelListener(new GraphModelListener() {
 			public void graphChanged(GraphModelEvent e) {
+				invalidateThumbnails(e.getChange());
 				revalidate();
 				repaint();
 			}
@@ -292,42 +331,42 @@ public class JGraphpadLibraryPane extends JComponent {
 	}
 
 	/**
-	 * Paints the library pane.
+	 * Paints the library pane. Only the entries that intersect the clip are
+	 * painted using their thumbnails.
 	 * 
 	 * @param g
 	 *            The graphics to paint the library pane to.
 	 */
 	public void paint(Graphics g) {
 		super.paint(g);
-		Graphics2D g2 = (Graphics2D) g;
-		if (antiAliased)
-			g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-					RenderingHints.VALUE_ANTIALIAS_ON);
-		Shape clip = g.getClip();
-		CellView[] entries = backingGraph.getGraphLayoutCache().getRoots();
-		for (int i = 0; i < entries.length; i++) {
-
-			// Computes the scale to draw the entry width
-			Rectangle2D bounds = entries[i].getBounds();
-			double scale = Math.min(entrywidth / bounds.getWidth(), entryheight
-					/ bounds.getHeight());
+		Rectangle clip = g.getClipBounds();
+		GraphModel model = backingGraph.getModel();
+		int first = 0, last = model.getRootCount() - 1;
+
+		// Finds the range of rows that intersect the clip
+		if (clip != null) {
+			int cols = Math.max(getWidth() / (entrywidth + hgap), 1);
+			int rowHeight = entryheight + vgap;
+			first = Math.max(0, (clip.y - vgap - entryheight - 2) / rowHeight)
+					* cols;
+			last = Math.min(last, ((clip.y + clip.height - vgap + 2)
+					/ rowHeight + 1)
+					* cols - 1);
+		}
+		for (int i = first; i <= last; i++) {
 			Rectangle rect = getBounds(i);
 			Rectangle frame = new Rectangle((int) rect.getX() - 2, (int) rect
 					.getY() - 2, entrywidth + 4, entryheight + 4);
-
-			// Translates and renders the entry using the backing graph
-			if (clip.intersects(frame)) {
-				g2.scale(scale, scale);
-				g.translate((int) (rect.getX() / scale - bounds.getX()),
-						(int) (rect.getY() / scale - bounds.getY()));
-
-				// Since the backing graph has not been added to a component
-				// hierarchy we have to use our own cell renderer pane here.
-				paintView(g, entries[i]);
-				g.translate(-(int) (rect.getX() / scale - bounds.getX()),
-						-(int) (rect.getY() / scale - bounds.getY()));
-				g2.scale(1 / scale, 1 / scale);
-				if (getBackingGraph().isCellSelected(entries[i].getCell())) {
+			if (clip == null || clip.intersects(frame)) {
+				Object cell = model.getRootAt(i);
+				Image thumbnail = getThumbnail(cell);
+				if (thumbnail != null) {
+					g.drawImage(thumbnail, frame.x, frame.y, this);
+				} else {
+					g.setColor(JGraphpadLevelOfDetail.PLACEHOLDER_COLOR);
+					g.fillRect(rect.x, rect.y, rect.width, rect.height);
+				}
+				if (getBackingGraph().isCellSelected(cell)) {
 					g.setColor(backingGraph.getHandleColor());
 					g.drawRect(frame.x, frame.y, frame.width, frame.height);
 				}
@@ -335,6 +374,161 @@ public class JGraphpadLibraryPane extends JComponent {
 		}
 	}
 
+	/**
+	 * Returns the thumbnail of the specified entry or null if the thumbnail is
+	 * not yet available. If there is no thumbnail then this creates a copy of
+	 * the entry using
+	 * {@link JGraphpadSaveManager#createSnapshot(GraphLayoutCache, Object[])},
+	 * starts rendering the copy in a worker thread of the shared render
+	 * service and repaints the entry when the thumbnail is ready. If the entry
+	 * cannot be copied then the thumbnail is rendered in the calling thread.
+	 * 
+	 * @param cell
+	 *            The entry to return the thumbnail for.
+	 * @return Returns the thumbnail of <code>cell</code> or null.
+	 */
+	protected Image getThumbnail(final Object cell) {
+		Image thumbnail = (Image) thumbnails.get(cell);
+		if (thumbnail == null && !pendingThumbnails.containsKey(cell)) {
+			GraphLayoutCache cache = backingGraph.getGraphLayoutCache();
+			CellView view = cache.getMapping(cell, false);
+			if (view != null && view.getBounds() != null) {
+				final Integer stamp = new Integer(++generation);
+				pendingThumbnails.put(cell, stamp);
+				final GraphLayoutCache snapshot = JGraphpadSaveManager
+						.createSnapshot(cache, new Object[] { cell });
+				if (snapshot == null) {
+					try {
+						thumbnail = createThumbnail(cache,
+								new CellView[] { view });
+					} catch (RuntimeException e) {
+						// keeps the placeholder
+					}
+					if (thumbnail != null) {
+						pendingThumbnails.remove(cell);
+						thumbnails.put(cell, thumbnail);
+					}
+				} else {
+					JGraphpadRenderService.getSharedInstance().submit(
+							new Callable() {
+								public Object call() throws Exception {
+									BufferedImage image = null;
+									try {
+										image = createThumbnail(snapshot,
+												snapshot.getRoots());
+									} catch (RuntimeException e) {
+										// keeps the placeholder
+									}
+									final BufferedImage result = image;
+									SwingUtilities.invokeLater(new Runnable() {
+										public void run() {
+											thumbnailCreated(cell, result,
+													stamp);
+										}
+									});
+									return result;
+								}
+							});
+				}
+			}
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * Invoked on the event dispatch thread when the thumbnail of the
+	 * specified entry has been rendered. The thumbnail is discarded if the
+	 * entry has changed since the rendering was started, that is, if the
+	 * entry no longer has the specified stamp in {@link #pendingThumbnails}.
+	 * If the rendering failed then the placeholder is painted until the entry
+	 * is changed.
+	 * 
+	 * @param cell
+	 *            The entry that has been rendered.
+	 * @param thumbnail
+	 *            The thumbnail of the entry or null.
+	 * @param stamp
+	 *            The stamp of the rendering.
+	 */
+	protected void thumbnailCreated(Object cell, Image thumbnail, Integer stamp) {
+		if (pendingThumbnails.get(cell) != stamp)
+			return;
+		if (thumbnail != null) {
+			pendingThumbnails.remove(cell);
+			thumbnails.put(cell, thumbnail);
+		}
+		int index = backingGraph.getModel().getIndexOfRoot(cell);
+		if (index >= 0) {
+			Rectangle rect = getBounds(index);
+			repaint(rect.x - 2, rect.y - 2, rect.width + 5, rect.height + 5);
+		}
+	}
+
+	/**
+	 * Returns a new thumbnail for the specified views of the specified cache.
+	 * The views are scaled to fit the size of the entries. This is invoked
+	 * from a worker thread with the views of a copy of the entry.
+	 * 
+	 * @param cache
+	 *            The cache that contains the views.
+	 * @param views
+	 *            The views to render the thumbnail for.
+	 * @return Returns a new thumbnail.
+	 */
+	protected BufferedImage createThumbnail(GraphLayoutCache cache,
+			CellView[] views) {
+		Rectangle2D bounds = AbstractCellView.getBounds(views);
+		double scale = Math.min(entrywidth / bounds.getWidth(), entryheight
+				/ bounds.getHeight());
+		BufferedImage image = new BufferedImage(entrywidth + 4,
+				entryheight + 4, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = image.createGraphics();
+		try {
+			if (antiAliased)
+				g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+						RenderingHints.VALUE_ANTIALIAS_ON);
+			g2.translate(2, 2);
+			g2.scale(scale, scale);
+			g2.translate(-bounds.getX(), -bounds.getY());
+			JGraphpadRenderService.getSharedInstance().paint(g2, cache, views,
+					backingGraph);
+		} finally {
+			g2.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * Removes the thumbnails of the entries that contain the cells of the
+	 * specified change.
+	 * 
+	 * @param change
+	 *            The change of the library model.
+	 */
+	protected void invalidateThumbnails(GraphModelChange change) {
+		GraphModel model = backingGraph.getModel();
+		Object[][] cells = new Object[][] { change.getChanged(),
+				change.getInserted(), change.getRemoved(), change.getContext() };
+		for (int i = 0; i < cells.length; i++) {
+			for (int j = 0; cells[i] != null && j < cells[i].length; j++) {
+				Object cell = cells[i][j];
+				while (model.getParent(cell) != null)
+					cell = model.getParent(cell);
+				thumbnails.remove(cell);
+				pendingThumbnails.remove(cell);
+			}
+		}
+	}
+
+	/**
+	 * Removes all thumbnails so that all entries are rendered again.
+	 */
+	public void clearThumbnails() {
+		thumbnails.clear();
+		pendingThumbnails.clear();
+		repaint();
+	}
+
 	/**
 	 * Paints the specified cell view on the local cell renderer pane.
 	 * 
@@ -456,6 +650,7 @@ public class JGraphpadLibraryPane extends JComponent {
 	 */
 	public void setEntryheight(int entryheight) {
 		this.entryheight = entryheight;
+		clearThumbnails();
 	}
 
 	/**
@@ -475,6 +670,7 @@ public class JGraphpadLibraryPane extends JComponent {
 	 */
 	public void setEntrywidth(int entrywidth) {
 		this.entrywidth = entrywidth;
+		clearThumbnails();
 	}
 
 	/**
@@ -532,6 +728,7 @@ public class JGraphpadLibraryPane extends JComponent {
 	 */
 	public void setAntiAliased(boolean antiAliased) {
 		this.antiAliased = antiAliased;
+		clearThumbnails();
 	}
 
 	/**
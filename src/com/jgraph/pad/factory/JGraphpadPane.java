@@ -832,11 +832,22 @@ public class JGraphpadPane extends JPanel {
 			editor.getModel().addTreeModelListener(
 					new DocumentTracker(editorPane));
 
-			// Adds the status bar using its factory method
+			// Adds the find panel and the status bar using their factory
+			// methods and registers the find panel with the frame so that
+			// the find action can show it.
+			JPanel south = new JPanel(new BorderLayout());
+			frame.getContentPane().add(south, BorderLayout.SOUTH);
+			Component findPanel = editor.getFactory().executeMethod(
+					JGraphpadFindPanel.FactoryMethod.NAME);
+			if (findPanel != null) {
+				south.add(findPanel, BorderLayout.NORTH);
+				frame.getRootPane().putClientProperty(
+						JGraphpadFindPanel.CLIENTPROPERTY_FINDPANEL, findPanel);
+			}
 			Component statusBar = editor.getFactory().executeMethod(
 					JGraphpadStatusBar.FactoryMethod.NAME);
 			if (statusBar != null)
-				frame.getContentPane().add(statusBar, BorderLayout.SOUTH);
+				south.add(statusBar, BorderLayout.CENTER);
 
 			// Updates the frame title on focus traversal and various
 			// other changes (selection, model, cache, properties...)
@@ -21,6 +21,7 @@ import java.text.NumberFormat;
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.event.TreeModelEvent;
 
 import org.jgraph.JGraph;
@@ -33,6 +34,7 @@ import com.jgraph.editor.JGraphEditorResources;
 import com.jgraph.editor.factory.JGraphEditorDiagramPane;
 import com.jgraph.editor.factory.JGraphEditorFactoryMethod;
 import com.jgraph.pad.util.JGraphpadFocusManager;
+import com.jgraph.pad.util.JGraphpadSaveManager;
 import com.jgraph.pad.util.JGraphpadTreeModelAdapter;
 
 /**
@@ -55,6 +57,13 @@ public class JGraphpadStatusBar extends JPanel {
 			zoomLabel = new JLabel(" "), mouseLabel = new JLabel(" "),
 			spareLabel = new JLabel(" ");
 
+	/**
+	 * Indicates pending background saves.
+	 * 
+	 * @see JGraphpadSaveManager
+	 */
+	protected JProgressBar saveProgress = new JProgressBar();
+
 	/**
 	 * Constructs a new repository panel for the specified editor.
 	 */
@@ -96,6 +105,28 @@ public class JGraphpadStatusBar extends JPanel {
 		c.weightx = 3;
 		add(spareLabel, c);
 
+		c.gridx = 6;
+		c.weightx = 1;
+		saveProgress.setIndeterminate(true);
+		saveProgress.setStringPainted(true);
+		saveProgress.setString(getString("Saving"));
+		saveProgress.setVisible(false);
+		add(saveProgress, c);
+
+		// Installs a listener to show the pending background saves
+		JGraphpadSaveManager.getSharedInstance().addPropertyChangeListener(
+				new PropertyChangeListener() {
+
+					/*
+					 * (non-Javadoc)
+					 */
+					public void propertyChange(PropertyChangeEvent e) {
+						saveProgress.setVisible(JGraphpadSaveManager
+								.getSharedInstance().getPending() > 0);
+						revalidate();
+					}
+				});
+
 		// Installs a listener to update the mouse location
 		JGraphpadFocusManager.getCurrentGraphFocusManager()
 				.addMouseMotionListener(new MouseMotionListener() {
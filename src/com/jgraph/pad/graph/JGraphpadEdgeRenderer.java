@@ -11,8 +11,10 @@
  */
 package com.jgraph.pad.graph;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.GradientPaint;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.geom.Point2D;
@@ -24,9 +26,7 @@ import javax.swing.JLabel;
 import javax.swing.JTextPane;
 import javax.swing.SwingConstants;
 import javax.swing.border.Border;
-import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
-import javax.swing.text.StyledDocument;
 
 import org.jgraph.JGraph;
 import org.jgraph.graph.CellView;
@@ -38,9 +38,10 @@ import org.jgraph.graph.GraphModel;
 public class JGraphpadEdgeRenderer extends EdgeRenderer {
 
 	/**
-	 * Holds the text pane to be used for rich text rendering.
+	 * Holds the text pane to be used for rich text rendering. Each renderer
+	 * has its own text pane so that renderers may be used in parallel.
 	 */
-	public static JTextPane textPane = new JTextPane();
+	protected JTextPane textPane = new JTextPane();
 
 	/**
 	 * An angular tolerance (actually a proportionality scalar) below which the
@@ -78,6 +79,37 @@ public class JGraphpadEdgeRenderer extends EdgeRenderer {
 	 */
 	protected Object userObject = null;
 
+	/**
+	 * Holds the rich text value of the current view and the key of its label
+	 * in the {@link JGraphpadLabelCache}. The value is only inserted into the
+	 * text pane if the label is not in the cache.
+	 */
+	protected JGraphpadRichTextValue richTextValue = null;
+
+	protected Object richTextKey = null;
+
+	/**
+	 * Specifies if the rich text value has been inserted into the text pane.
+	 */
+	protected boolean richTextLoaded = false;
+
+	/**
+	 * Holds the attributes of the current view for configuring the text pane.
+	 */
+	protected Map richTextAttributes = null;
+
+	/**
+	 * Paints the rich text content for the label cache.
+	 */
+	protected JGraphpadLabelCache.Painter richTextPainter = new JGraphpadLabelCache.Painter() {
+		public void paint(Graphics g) {
+			loadRichText();
+			Dimension d = getRichTextSize();
+			textPane.setSize(d.width, d.height - 14);
+			textPane.paint(g);
+		}
+	};
+
 	public JGraphpadEdgeRenderer() {
 		super();
 	}
@@ -92,10 +124,37 @@ public class JGraphpadEdgeRenderer extends EdgeRenderer {
 	 */
 	protected void paintRichText(Graphics g, int x, int y) {
 		g.translate(-x, -y);
-		textPane.paint(g);
+		if (JGraphpadLabelCache.isCacheable(g)) {
+			Dimension d = getRichTextSize();
+			JGraphpadLabelCache.getSharedInstance().paint(g, richTextKey,
+					d.width, d.height - 14, richTextPainter);
+		} else {
+			loadRichText();
+			textPane.paint(g);
+		}
 		g.translate(x, y);
 	}
 
+	/**
+	 * Returns the preferred size of the rich text of the current view. The
+	 * size is taken from the {@link JGraphpadLabelCache} if possible.
+	 * 
+	 * @return Returns a copy of the preferred size of the rich text.
+	 */
+	protected Dimension getRichTextSize() {
+		JGraphpadLabelCache cache = JGraphpadLabelCache.getSharedInstance();
+		Dimension d = cache.getSize(richTextKey);
+		if (d == null) {
+			loadRichText();
+			Dimension size = textPane.getSize();
+			textPane.setSize(JGraphpadVertexRenderer.ZERO_DIMENSION);
+			d = textPane.getPreferredSize();
+			textPane.setSize(size);
+			cache.putSize(richTextKey, d);
+		}
+		return d;
+	}
+
 	/**
 	 * Paint the specified label for the current edgeview.
 	 */
@@ -108,11 +167,13 @@ public class JGraphpadEdgeRenderer extends EdgeRenderer {
 
 		if (p != null && label != null && label.toString().length() > 0
 				&& metrics != null) {
-			textPane.setSize(JGraphpadVertexRenderer.ZERO_DIMENSION);
-			Dimension d = textPane.getPreferredSize();
-			textPane.setSize(d.width, d.height - 14);
-			int sw = textPane.getWidth();
-			int sh = textPane.getHeight();
+			Dimension d = getRichTextSize();
+			int sw = d.width;
+			int sh = d.height - 14;
+			if (!JGraphpadLabelCache.isCacheable(g)) {
+				loadRichText();
+				textPane.setSize(sw, sh);
+			}
 			Graphics2D g2 = (Graphics2D) g;
 			boolean applyTransform = isLabelTransform(label);
 			double angle = 0;
@@ -139,6 +200,71 @@ public class JGraphpadEdgeRenderer extends EdgeRenderer {
 		}
 	}
 
+	/**
+	 * Overrides the parent's implementation to skip the labels if the scale
+	 * of the graphics is below the threshold of the level of detail policy.
+	 * 
+	 * @param g
+	 *            The graphics to paint the labels to.
+	 */
+	protected void paintLabels(Graphics g) {
+		JGraph graph = (this.graph != null) ? (JGraph) this.graph.get() : null;
+		if (JGraphpadLevelOfDetail.isVisible(graph, g,
+				JGraphpadLevelOfDetail.EDGELABELS))
+			super.paintLabels(g);
+	}
+
+	/**
+	 * Overrides the parent's implementation to paint the edge without
+	 * decorations or without a gradient if the scale of the graphics is below
+	 * the thresholds of the level of detail policy. The decorations of the
+	 * view are skipped rather than removed since the view may be painted by
+	 * other renderers at the same time.
+	 * 
+	 * @param g
+	 *            The graphics to paint the edge to.
+	 */
+	protected void paintEdge(Graphics g) {
+		JGraph graph = (this.graph != null) ? (JGraph) this.graph.get() : null;
+		JGraphpadLevelOfDetail lod = JGraphpadLevelOfDetail.getLevelOfDetail(
+				graph, g);
+		double scale = JGraphpadLevelOfDetail.getScale(g);
+		boolean isDecorationVisible = lod == null
+				|| lod.isVisible(JGraphpadLevelOfDetail.EDGEDECORATIONS, scale);
+		boolean isGradientVisible = lod == null
+				|| lod.isVisible(JGraphpadLevelOfDetail.GRADIENTS, scale);
+		if (isDecorationVisible && isGradientVisible) {
+			super.paintEdge(g);
+			return;
+		}
+		g.setColor(getForeground());
+		if (lineWidth > 0) {
+			Graphics2D g2 = (Graphics2D) g;
+			g2.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_BUTT,
+					BasicStroke.JOIN_MITER));
+			if (gradientColor != null && !preview && isGradientVisible)
+				g2.setPaint(new GradientPaint(0, 0, getBackground(),
+						getWidth(), getHeight(), gradientColor, true));
+			if (isDecorationVisible) {
+				if (view.beginShape != null) {
+					if (beginFill)
+						g2.fill(view.beginShape);
+					g2.draw(view.beginShape);
+				}
+				if (view.endShape != null) {
+					if (endFill)
+						g2.fill(view.endShape);
+					g2.draw(view.endShape);
+				}
+			}
+			if (lineDash != null)
+				g2.setStroke(new BasicStroke(lineWidth, BasicStroke.CAP_BUTT,
+						BasicStroke.JOIN_MITER, 10.0f, lineDash, dashOffset));
+			if (view.lineShape != null)
+				g2.draw(view.lineShape);
+		}
+	}
+
 	/**
 	 * Calculates the angle at which graphics should be rotated to paint label
 	 * along the edge. Before calling this method always check that transform
@@ -151,7 +277,7 @@ public class JGraphpadEdgeRenderer extends EdgeRenderer {
 		Point2D p = getLabelPosition(view);
 		double angle = 0;
 		if (p != null && label != null && label.length() > 0) {
-			int sw = (int) textPane.getPreferredSize().getWidth();
+			int sw = getRichTextSize().width;
 			// Note: For control points you may want to choose other
 			// points depending on the segment the label is in.
 			Point2D p1 = view.getPoint(0);
@@ -191,7 +317,7 @@ public class JGraphpadEdgeRenderer extends EdgeRenderer {
 		}
 		Point2D p = getLabelPosition(view);
 		if (p != null && label != null && label.length() > 0) {
-			int sw = (int) textPane.getPreferredSize().getWidth();
+			int sw = getRichTextSize().width;
 			Point2D p1 = view.getPoint(0);
 			Point2D p2 = view.getPoint(view.getPointCount() - 1);
 			x_buff = p2.getX() - p1.getX();
@@ -214,7 +340,7 @@ public class JGraphpadEdgeRenderer extends EdgeRenderer {
 	public Dimension getLabelSize(EdgeView view, String label) {
 		Dimension d = super.getLabelSize(view, label);
 		if (isRichText) {
-			d = textPane.getPreferredSize();
+			d = getRichTextSize();
 			d.height *= 2; // worst case verical alignment
 		}
 		return d;
@@ -288,48 +414,64 @@ public class JGraphpadEdgeRenderer extends EdgeRenderer {
 			isRichText = false;
 		}
 		verticalAlignment = getVerticalAlignment(view.getAllAttributes());
-		// Configures the rich text box for rendering the rich text
+		// Stores the rich text configuration. The rich text is inserted into
+		// the text pane in loadRichText if it is not in the label cache.
+		richTextValue = null;
+		richTextLoaded = false;
 		if (userObject != null && isRichText) {
-			StyledDocument document = (StyledDocument) textPane.getDocument();
-			((JGraphpadRichTextValue) ((JGraphpadBusinessObject) userObject)
-					.getValue()).insertInto(document);
-
-			textPane.setBorder(GraphConstants
-					.getBorder(view.getAllAttributes()));
-			Color bordercolor = GraphConstants.getBorderColor(view
-					.getAllAttributes());
-			int borderWidth = Math.max(1, Math.round(GraphConstants
-					.getLineWidth(view.getAllAttributes())));
-			if (textPane.getBorder() == null && bordercolor != null) {
-				textPane.setBorder(BorderFactory.createLineBorder(bordercolor,
-						borderWidth));
-			}
-			Border insetBorder = BorderFactory.createEmptyBorder(INSET, INSET,
-					INSET, INSET);
-			textPane.setBorder(BorderFactory.createCompoundBorder(textPane
-					.getBorder(), insetBorder));
-			Color background = GraphConstants.getBackground(view
-					.getAllAttributes());
-			if (background != null) {
-				textPane.setBackground(background);
-				textPane.setOpaque(true);
-			} else {
-				textPane.setOpaque(false);
-			}
+			Map map = view.getAllAttributes();
+			richTextValue = (JGraphpadRichTextValue) ((JGraphpadBusinessObject) userObject)
+					.getValue();
+			richTextAttributes = map;
+			richTextKey = JGraphpadLabelCache.createKey(new Object[] {
+					richTextValue.getRichText(), GraphConstants.getBorder(map),
+					GraphConstants.getBorderColor(map),
+					new Float(GraphConstants.getLineWidth(map)),
+					GraphConstants.getBackground(map),
+					new Integer(GraphConstants.getHorizontalAlignment(map)) });
+		}
+	}
 
-			// Uses the label's alignment and sets it on the text pane to work
-			// around the problem of the text pane alignments not being stored.
-			// Note: As a consequence a text pane can only have one alignment
-			// for all text it contains. It is not possible to align the
-			// paragraphs individually.
-			int align = GraphConstants.getHorizontalAlignment(view
-					.getAllAttributes());
-			SimpleAttributeSet sas = new SimpleAttributeSet();
-			align = (align == JLabel.CENTER) ? StyleConstants.ALIGN_CENTER
-					: (align == JLabel.RIGHT) ? StyleConstants.ALIGN_RIGHT
-							: StyleConstants.ALIGN_LEFT;
-			StyleConstants.setAlignment(sas, align);
-			document.setParagraphAttributes(0, document.getLength(), sas, true);
+	/**
+	 * Sets the shared document of the rich text value of the current view on
+	 * the text pane and configures the border and background of the text pane
+	 * if the document has not been set yet.
+	 */
+	protected void loadRichText() {
+		if (richTextLoaded || richTextValue == null)
+			return;
+		richTextLoaded = true;
+		Map map = richTextAttributes;
+
+		// Uses the label's alignment for the shared document to work around
+		// the problem of the text pane alignments not being stored.
+		// Note: As a consequence a text pane can only have one alignment
+		// for all text it contains. It is not possible to align the
+		// paragraphs individually.
+		int align = GraphConstants.getHorizontalAlignment(map);
+		align = (align == JLabel.CENTER) ? StyleConstants.ALIGN_CENTER
+				: (align == JLabel.RIGHT) ? StyleConstants.ALIGN_RIGHT
+						: StyleConstants.ALIGN_LEFT;
+		textPane.setDocument(richTextValue.getSharedDocument(align));
+
+		textPane.setBorder(GraphConstants.getBorder(map));
+		Color bordercolor = GraphConstants.getBorderColor(map);
+		int borderWidth = Math.max(1, Math.round(GraphConstants
+				.getLineWidth(map)));
+		if (textPane.getBorder() == null && bordercolor != null) {
+			textPane.setBorder(BorderFactory.createLineBorder(bordercolor,
+					borderWidth));
+		}
+		Border insetBorder = BorderFactory.createEmptyBorder(INSET, INSET,
+				INSET, INSET);
+		textPane.setBorder(BorderFactory.createCompoundBorder(textPane
+				.getBorder(), insetBorder));
+		Color background = GraphConstants.getBackground(map);
+		if (background != null) {
+			textPane.setBackground(background);
+			textPane.setOpaque(true);
+		} else {
+			textPane.setOpaque(false);
 		}
 	}
 
@@ -10,15 +10,20 @@
 package com.jgraph.pad.graph;
 
 import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
 
 import org.jgraph.JGraph;
+import org.jgraph.graph.AbstractCellView;
+import org.jgraph.graph.CellView;
 import org.jgraph.graph.DefaultGraphModel;
 import org.jgraph.graph.GraphLayoutCache;
+import org.jgraph.graph.PortView;
 
 import com.jgraph.editor.JGraphEditorResources;
 
 /**
- * Graph that provides tooltips.
+ * Graph that provides tooltips and uses the spatial index of
+ * {@link JGraphpadGraphLayoutCache} for painting and hit testing.
  */
 public class JGraphpadGraph extends JGraph {
 
@@ -32,6 +37,49 @@ public class JGraphpadGraph extends JGraph {
 		super(cache);
 	}
 
+	/**
+	 * Installs a {@link JGraphpadGraphUI}.
+	 */
+	public void updateUI() {
+		setUI(new JGraphpadGraphUI());
+		invalidate();
+	}
+
+	/**
+	 * Returns the next view at the specified location wrt. <code>current</code>
+	 * checking only the descendants of the root views that are near the
+	 * location according to the spatial index of the cache. The result is the
+	 * same as checking all views.
+	 * 
+	 * @param current
+	 *            The view to start the search from or null.
+	 * @param x
+	 *            The horizontal coordinate in screen coordinates.
+	 * @param y
+	 *            The vertical coordinate in screen coordinates.
+	 * @param leafsOnly
+	 *            Whether only leaf views should be returned.
+	 * @return Returns the next view at the location.
+	 */
+	public CellView getNextViewAt(CellView current, double x, double y,
+			boolean leafsOnly) {
+		GraphLayoutCache cache = getGraphLayoutCache();
+		if (cache instanceof JGraphpadGraphLayoutCache) {
+			// Adds the size of the ports, which may exceed the bounds of
+			// their vertices, to the tolerance used by the superclass
+			double size = tolerance + 1;
+			Rectangle2D r = fromScreen(new Rectangle2D.Double(x - size, y
+					- size, 2 * size, 2 * size));
+			r.setFrame(r.getX() - PortView.SIZE, r.getY() - PortView.SIZE, r
+					.getWidth()
+					+ 2 * PortView.SIZE, r.getHeight() + 2 * PortView.SIZE);
+			CellView[] roots = cache.getRoots(r);
+			return getNextViewAt(AbstractCellView.getDescendantViews(roots),
+					current, x, y, leafsOnly);
+		}
+		return super.getNextViewAt(current, x, y, leafsOnly);
+	}
+
 	/**
 	 * Overrides <code>JComponent</code> <code>getToolTipText</code> method
 	 * in order to allow the graph to return a tooltip for the topmost cell
@@ -9,19 +9,40 @@
  */
 package com.jgraph.pad.graph;
 
+import java.awt.geom.Rectangle2D;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
+import org.jgraph.event.GraphLayoutCacheEvent.GraphLayoutCacheChange;
+import org.jgraph.event.GraphModelEvent.GraphModelChange;
 import org.jgraph.graph.CellView;
 import org.jgraph.graph.CellViewFactory;
+import org.jgraph.graph.ConnectionSet;
 import org.jgraph.graph.GraphLayoutCache;
 import org.jgraph.graph.GraphModel;
 
 /**
  * GraphLayoutCache to be used in JGraphpad files. Generally, due to the
  * collapse/expand feature present in JGraphpad, all layout caches are partial.
+ * The cache keeps a {@link JGraphpadSpatialIndex} of its root views which is
+ * used by {@link #getRoots(Rectangle2D)} and is updated from the changes of
+ * the model and the cache. The {@link JGraphpadTextIndex} of the model is
+ * used to find cells by their text.
  */
 public class JGraphpadGraphLayoutCache extends GraphLayoutCache {
 
+	/**
+	 * Holds the spatial index of the root views. The index is created lazily
+	 * and is not persisted.
+	 */
+	protected transient JGraphpadSpatialIndex spatialIndex;
+
+	/**
+	 * Holds the text index of the model. The index is created lazily and is
+	 * not persisted.
+	 */
+	protected transient JGraphpadTextIndex textIndex;
+
 	/**
 	 * Constructs a new graph layout cache with a {@link JGraphpadGraphModel}
 	 * and partial set to true.
@@ -80,4 +101,158 @@ public class JGraphpadGraphLayoutCache extends GraphLayoutCache {
 		return isPartial();
 	}
 
+	/**
+	 * Returns the spatial index of the root views of this cache. Plugins may
+	 * use the index to find the cells in a region of the graph.
+	 * 
+	 * @return Returns the spatial index of this cache.
+	 */
+	public synchronized JGraphpadSpatialIndex getSpatialIndex() {
+		if (spatialIndex == null)
+			spatialIndex = new JGraphpadSpatialIndex(this);
+		return spatialIndex;
+	}
+
+	/**
+	 * Returns the text index of the model of this cache. The index is added as
+	 * a listener to the model when it is created and is replaced if the model
+	 * of this cache has changed.
+	 * 
+	 * @return Returns the text index of the model.
+	 */
+	public synchronized JGraphpadTextIndex getTextIndex() {
+		if (textIndex == null || textIndex.getModel() != getModel()) {
+			if (textIndex != null)
+				textIndex.getModel().removeGraphModelListener(textIndex);
+			textIndex = new JGraphpadTextIndex(getModel());
+			getModel().addGraphModelListener(textIndex);
+		}
+		return textIndex;
+	}
+
+	/**
+	 * Returns the root views that intersect the specified rectangle using the
+	 * spatial index of this cache.
+	 * 
+	 * @param clip
+	 *            The rectangle in graph coordinates.
+	 * @return Returns the root views that intersect <code>clip</code>.
+	 */
+	public CellView[] getRoots(Rectangle2D clip) {
+		return getSpatialIndex().getRoots(clip);
+	}
+
+	/**
+	 * Invalidates the spatial index for the cells of the change and then
+	 * invokes the superclass implementation.
+	 */
+	public void graphChanged(GraphModelChange change) {
+		invalidateSpatialIndex(change.getChanged());
+		invalidateSpatialIndex(change.getInserted());
+		invalidateSpatialIndex(change.getContext());
+		super.graphChanged(change);
+	}
+
+	/**
+	 * Shows the inserted cells and the edges with changed connections whose
+	 * source and target are visible, like the superclass implementation, but
+	 * shows all such edges at once. The superclass shows each edge separately,
+	 * which rebuilds the roots for each edge when edges are inserted between
+	 * existing vertices, eg. by an import.
+	 */
+	protected void showCellsForChange(GraphModelChange change) {
+		Set edges = new LinkedHashSet();
+		Object[] inserted = change.getInserted();
+		if (inserted != null && showsInsertedConnections)
+			addConnectedEdges(inserted, edges);
+		ConnectionSet cs = change.getConnectionSet();
+		if (cs != null && cs.getChangedEdges() != null
+				&& showsChangedConnections)
+			addConnectedEdges(cs.getChangedEdges().toArray(), edges);
+		if (!edges.isEmpty())
+			setVisibleImpl(edges.toArray(), true);
+	}
+
+	/**
+	 * Adds the specified cells which are not visible and have a visible
+	 * source and target to the specified set.
+	 */
+	protected void addConnectedEdges(Object[] cells, Set edges) {
+		for (int i = 0; i < cells.length; i++) {
+			if (!isVisible(cells[i])) {
+				Object source = graphModel.getSource(cells[i]);
+				Object target = graphModel.getTarget(cells[i]);
+				if ((source != null || target != null) && isVisible(source)
+						&& isVisible(target))
+					edges.add(cells[i]);
+			}
+		}
+	}
+
+	/**
+	 * Invalidates the spatial index for the cells of the change and then
+	 * invokes the superclass implementation.
+	 */
+	protected void fireGraphLayoutCacheChanged(Object source,
+			GraphLayoutCacheChange edit) {
+		invalidateSpatialIndex(edit.getChanged());
+		invalidateSpatialIndex(edit.getInserted());
+		invalidateSpatialIndex(edit.getContext());
+		if (spatialIndex != null)
+			spatialIndex.invalidateOrder();
+		super.fireGraphLayoutCacheChanged(source, edit);
+	}
+
+	/**
+	 * Invalidates the spatial index for the specified view and then invokes
+	 * the superclass implementation.
+	 */
+	public void update(CellView view) {
+		if (view != null)
+			invalidateSpatialIndex(new Object[] { view });
+		super.update(view);
+	}
+
+	/**
+	 * Invalidates the spatial index for the specified view and then invokes
+	 * the superclass implementation.
+	 */
+	public void refresh(CellView view, boolean create) {
+		if (view != null)
+			invalidateSpatialIndex(new Object[] { view });
+		super.refresh(view, create);
+	}
+
+	/**
+	 * Invokes the superclass implementation and invalidates the order of the
+	 * spatial index.
+	 */
+	protected void reloadRoots() {
+		super.reloadRoots();
+		if (spatialIndex != null)
+			spatialIndex.invalidateOrder();
+	}
+
+	/**
+	 * Invokes the superclass implementation and clears the spatial index.
+	 */
+	public synchronized void reload() {
+		super.reload();
+		if (spatialIndex != null)
+			spatialIndex.clear();
+	}
+
+	/**
+	 * Marks the specified cells or views as dirty in the spatial index. This
+	 * does nothing if the index has not been created yet, which is the case
+	 * while the superclass constructor runs.
+	 * 
+	 * @param cells
+	 *            The cells or views whose bounds may have changed.
+	 */
+	protected void invalidateSpatialIndex(Object[] cells) {
+		if (spatialIndex != null && cells != null)
+			spatialIndex.invalidate(cells);
+	}
+
 }
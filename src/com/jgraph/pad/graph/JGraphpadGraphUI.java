@@ -0,0 +1,48 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.graph;
+
+import java.awt.Graphics;
+import java.awt.geom.Rectangle2D;
+
+import org.jgraph.graph.CellView;
+import org.jgraph.plaf.basic.BasicGraphUI;
+
+/**
+ * Graph UI that paints only the root views which intersect the clip. The views
+ * are obtained from {@link org.jgraph.graph.GraphLayoutCache#getRoots(Rectangle2D)},
+ * which uses the spatial index of {@link JGraphpadGraphLayoutCache}, so that
+ * repainting a small region of a large diagram does not check all cells.
+ */
+public class JGraphpadGraphUI extends BasicGraphUI {
+
+	/**
+	 * Paints the root views that intersect the specified clip. If the clip is
+	 * null then all root views are painted.
+	 *
+	 * @param g
+	 *            The graphics to paint the cells to.
+	 * @param realClipBounds
+	 *            The clip in graph coordinates.
+	 */
+	protected void paintCells(Graphics g, Rectangle2D realClipBounds) {
+		if (realClipBounds == null) {
+			super.paintCells(g, realClipBounds);
+		} else {
+			CellView[] views = graphLayoutCache.getRoots(realClipBounds);
+			for (int i = 0; i < views.length; i++) {
+				Rectangle2D bounds = views[i].getBounds();
+				if (bounds != null)
+					paintCell(g, views[i], bounds, false);
+			}
+		}
+	}
+
+}
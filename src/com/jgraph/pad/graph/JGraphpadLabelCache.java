@@ -0,0 +1,234 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.graph;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache for the rich text labels of the vertex and edge renderers.
+ * The cache holds the preferred sizes of the labels and images of the labels
+ * at the scale of the graphics they are painted to, so that repaints do not
+ * need to parse the RTF encoded text and layout the text again. Keys are
+ * lists of the values that affect the label, such as the RTF encoded text,
+ * the alignment and the insets, so that changed values use new entries. The
+ * least recently used entries are removed if the images in the cache exceed
+ * {@link #MAXIMUM_SIZE} bytes.<br>
+ * Images are only used for graphics of the screen with a transform that does
+ * not rotate, so that printing and vector exports paint the text directly.
+ * Offscreen images never use the cached images because some vector graphics,
+ * such as the PDF graphics, use an offscreen image as their device.
+ * The cache may be used by several threads at the same time.
+ */
+public class JGraphpadLabelCache {
+
+	/**
+	 * Specifies the maximum number of bytes of the cached images. Default is
+	 * 16 MB.
+	 */
+	public static int MAXIMUM_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * Shared singleton instance.
+	 */
+	protected static JGraphpadLabelCache sharedInstance = new JGraphpadLabelCache();
+
+	/**
+	 * Maps from keys to the cached sizes and images in access order.
+	 */
+	protected Map entries = new LinkedHashMap(16, 0.75f, true);
+
+	/**
+	 * Holds the number of bytes of the cached images.
+	 */
+	protected long size = 0;
+
+	/**
+	 * Paints a label into a graphics. Used to create the cached images.
+	 */
+	public interface Painter {
+
+		/**
+		 * Paints the label into the specified graphics.
+		 *
+		 * @param g
+		 *            The graphics to paint the label to.
+		 */
+		public void paint(Graphics g);
+
+	}
+
+	/**
+	 * Returns the shared instance.
+	 *
+	 * @return Returns the shared label cache.
+	 */
+	public static JGraphpadLabelCache getSharedInstance() {
+		return sharedInstance;
+	}
+
+	/**
+	 * Returns a key for the specified values.
+	 *
+	 * @param values
+	 *            The values that affect a label.
+	 * @return Returns a key for <code>values</code>.
+	 */
+	public static Object createKey(Object[] values) {
+		return Arrays.asList(values);
+	}
+
+	/**
+	 * Returns true if labels that are painted to the specified graphics may be
+	 * painted using cached images.
+	 *
+	 * @param g
+	 *            The graphics to check.
+	 * @return Returns true if <code>g</code> may use cached images.
+	 */
+	public static boolean isCacheable(Graphics g) {
+		if (g instanceof Graphics2D) {
+			Graphics2D g2 = (Graphics2D) g;
+			int type = g2.getTransform().getType();
+			if ((type & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_MASK_SCALE)) != 0)
+				return false;
+			GraphicsConfiguration gc = g2.getDeviceConfiguration();
+			GraphicsDevice device = (gc != null) ? gc.getDevice() : null;
+			if (device != null)
+				return device.getType() == GraphicsDevice.TYPE_RASTER_SCREEN;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the cached preferred size for the specified key or null if no
+	 * size is cached.
+	 *
+	 * @param key
+	 *            The key of the label.
+	 * @return Returns a copy of the cached size or null.
+	 */
+	public Dimension getSize(Object key) {
+		Dimension d = (Dimension) get(createKey(new Object[] { key,
+				Dimension.class }));
+		return (d != null) ? new Dimension(d) : null;
+	}
+
+	/**
+	 * Caches the preferred size for the specified key.
+	 *
+	 * @param key
+	 *            The key of the label.
+	 * @param d
+	 *            The preferred size of the label.
+	 */
+	public void putSize(Object key, Dimension d) {
+		put(createKey(new Object[] { key, Dimension.class }), new Dimension(d),
+				0);
+	}
+
+	/**
+	 * Paints the label for the specified key into the specified graphics
+	 * using a cached image, which is created using the specified painter if
+	 * it is not in the cache. The image has the size of the label at the
+	 * scale of the graphics. Labels that are larger than a quarter of the
+	 * cache are painted directly.
+	 *
+	 * @param g
+	 *            The graphics to paint the label to.
+	 * @param key
+	 *            The key of the label.
+	 * @param width
+	 *            The width of the label.
+	 * @param height
+	 *            The height of the label.
+	 * @param painter
+	 *            The painter to create the image with.
+	 */
+	public void paint(Graphics g, Object key, int width, int height,
+			Painter painter) {
+		Graphics2D g2 = (Graphics2D) g;
+		AffineTransform transform = g2.getTransform();
+		double sx = transform.getScaleX();
+		double sy = transform.getScaleY();
+		int w = (int) Math.ceil(width * sx);
+		int h = (int) Math.ceil(height * sy);
+		if (w <= 0 || h <= 0 || (long) w * h * 4 > MAXIMUM_SIZE / 4) {
+			painter.paint(g);
+			return;
+		}
+		Object imageKey = createKey(new Object[] { key, new Integer(width),
+				new Integer(height), new Double(sx), new Double(sy),
+				g2.getRenderingHint(RenderingHints.KEY_ANTIALIASING),
+				g2.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING) });
+		BufferedImage image = (BufferedImage) get(imageKey);
+		if (image == null) {
+			image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+			Graphics2D ig = image.createGraphics();
+			ig.setRenderingHints(g2.getRenderingHints());
+			ig.scale(sx, sy);
+			ig.setFont(g2.getFont());
+			ig.setColor(g2.getColor());
+			painter.paint(ig);
+			ig.dispose();
+			put(imageKey, image, w * h * 4);
+		}
+		Graphics2D tmp = (Graphics2D) g2.create();
+		tmp.scale(1 / sx, 1 / sy);
+		tmp.drawImage(image, 0, 0, null);
+		tmp.dispose();
+	}
+
+	/**
+	 * Returns the cached value for the specified key or null.
+	 */
+	protected synchronized Object get(Object key) {
+		Object[] entry = (Object[]) entries.get(key);
+		return (entry != null) ? entry[0] : null;
+	}
+
+	/**
+	 * Caches the specified value with the specified number of bytes and
+	 * removes the least recently used entries if the cache is too large.
+	 */
+	protected synchronized void put(Object key, Object value, int bytes) {
+		Object[] previous = (Object[]) entries.put(key, new Object[] { value,
+				new Integer(bytes) });
+		if (previous != null)
+			size -= ((Integer) previous[1]).intValue();
+		size += bytes;
+		Iterator it = entries.values().iterator();
+		while (it.hasNext()
+				&& (size > MAXIMUM_SIZE || entries.size() > MAXIMUM_SIZE / 64)) {
+			Object[] entry = (Object[]) it.next();
+			size -= ((Integer) entry[1]).intValue();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+}
@@ -0,0 +1,242 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.graph;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+import org.jgraph.JGraph;
+
+/**
+ * Level of detail policy for the vertex and edge renderers. The policy holds a
+ * scale threshold for each detail below which the detail is replaced by a
+ * cheaper representation: Labels become greeked bars, gradients become flat
+ * fills, images become placeholders, heavyweight components become boxes,
+ * folding icons are omitted and edges are painted without decorations and
+ * labels. The scale is taken from the transform of the graphics, so that the
+ * policy also applies to the navigator and the library pane, which paint
+ * scaled graphics.
+ * <br>
+ * Graphs use the shared instance unless the
+ * {@link #CLIENTPROPERTY_LEVELOFDETAIL} client property is set. Printers
+ * always paint all details, and so does the render service unless its
+ * template graph sets the client property, which is why the library pane
+ * sets the shared instance on its backing graph.
+ */
+public class JGraphpadLevelOfDetail {
+
+	/**
+	 * Client property for JGraph to set the level of detail policy for the
+	 * graph. The value is either a level of detail policy or
+	 * {@link Boolean#FALSE} to paint all details regardless of the scale.
+	 * If the property is missing then the shared instance is used, eg:
+	 *
+	 * <PRE>
+	 *
+	 * graph.putClientProperty(
+	 * JGraphpadLevelOfDetail.CLIENTPROPERTY_LEVELOFDETAIL, Boolean.FALSE);
+	 *
+	 * </PRE>
+	 */
+	public static String CLIENTPROPERTY_LEVELOFDETAIL = "levelOfDetail";
+
+	/**
+	 * Defines the prefix of the keys for the thresholds in the user settings,
+	 * eg. levelOfDetail.text=0.35.
+	 */
+	public static String KEY_PREFIX = "levelOfDetail.";
+
+	/**
+	 * Defines the names of the details that are controlled by this policy.
+	 */
+	public static final String TEXT = "text", GRADIENTS = "gradients",
+			IMAGES = "images", COMPONENTS = "components",
+			FOLDINGICONS = "foldingIcons", EDGEDECORATIONS = "edgeDecorations",
+			EDGELABELS = "edgeLabels";
+
+	/**
+	 * Defines the color of the placeholders for images. Default is light gray.
+	 */
+	public static Color PLACEHOLDER_COLOR = Color.lightGray;
+
+	/**
+	 * Shared singleton instance.
+	 */
+	protected static JGraphpadLevelOfDetail sharedInstance = new JGraphpadLevelOfDetail();
+
+	/**
+	 * Maps from detail names to the minimum scales as doubles.
+	 */
+	protected Map thresholds = new Hashtable();
+
+	/**
+	 * Constructs a new level of detail policy with the default thresholds.
+	 */
+	public JGraphpadLevelOfDetail() {
+		setThreshold(TEXT, 0.35);
+		setThreshold(GRADIENTS, 0.25);
+		setThreshold(IMAGES, 0.3);
+		setThreshold(COMPONENTS, 0.5);
+		setThreshold(FOLDINGICONS, 0.5);
+		setThreshold(EDGEDECORATIONS, 0.3);
+		setThreshold(EDGELABELS, 0.35);
+	}
+
+	/**
+	 * Returns the shared instance.
+	 *
+	 * @return Returns the shared level of detail policy.
+	 */
+	public static JGraphpadLevelOfDetail getSharedInstance() {
+		return sharedInstance;
+	}
+
+	/**
+	 * Returns the level of detail policy to paint the cells of the specified
+	 * graph into the specified graphics or null if all details should be
+	 * painted.
+	 *
+	 * @param graph
+	 *            The graph that contains the cells.
+	 * @param g
+	 *            The graphics to paint the cells to.
+	 * @return Returns the policy or null.
+	 */
+	public static JGraphpadLevelOfDetail getLevelOfDetail(JGraph graph,
+			Graphics g) {
+		if (g instanceof Graphics2D) {
+			GraphicsConfiguration gc = ((Graphics2D) g)
+					.getDeviceConfiguration();
+			if (gc != null
+					&& gc.getDevice().getType() == GraphicsDevice.TYPE_PRINTER)
+				return null;
+		}
+		Object value = (graph != null) ? graph
+				.getClientProperty(CLIENTPROPERTY_LEVELOFDETAIL) : null;
+		if (value instanceof JGraphpadLevelOfDetail)
+			return (JGraphpadLevelOfDetail) value;
+		return (value == null) ? sharedInstance : null;
+	}
+
+	/**
+	 * Returns true if the specified detail should be painted into the
+	 * specified graphics of the specified graph.
+	 *
+	 * @param graph
+	 *            The graph that contains the cell.
+	 * @param g
+	 *            The graphics to paint the cell to.
+	 * @param detail
+	 *            The name of the detail.
+	 * @return Returns true if <code>detail</code> should be painted.
+	 */
+	public static boolean isVisible(JGraph graph, Graphics g, String detail) {
+		JGraphpadLevelOfDetail lod = getLevelOfDetail(graph, g);
+		return lod == null || lod.isVisible(detail, getScale(g));
+	}
+
+	/**
+	 * Returns the scale of the transform of the specified graphics, which is
+	 * 1 if the graphics has no transform. For transforms that rotate or shear
+	 * this returns the mean scale.
+	 *
+	 * @param g
+	 *            The graphics to return the scale for.
+	 * @return Returns the scale of <code>g</code>.
+	 */
+	public static double getScale(Graphics g) {
+		if (g instanceof Graphics2D) {
+			AffineTransform t = ((Graphics2D) g).getTransform();
+			if (t.getShearX() == 0 && t.getShearY() == 0)
+				return Math.max(Math.abs(t.getScaleX()), Math.abs(t
+						.getScaleY()));
+			return Math.sqrt(Math.abs(t.getDeterminant()));
+		}
+		return 1;
+	}
+
+	/**
+	 * Returns true if the specified detail should be painted at the specified
+	 * scale.
+	 *
+	 * @param detail
+	 *            The name of the detail.
+	 * @param scale
+	 *            The scale to paint the detail at.
+	 * @return Returns true if <code>detail</code> should be painted.
+	 */
+	public boolean isVisible(String detail, double scale) {
+		return scale >= getThreshold(detail);
+	}
+
+	/**
+	 * Returns the minimum scale for the specified detail or 0 if no threshold
+	 * has been set.
+	 *
+	 * @param detail
+	 *            The name of the detail.
+	 * @return Returns the minimum scale for <code>detail</code>.
+	 */
+	public double getThreshold(String detail) {
+		Double threshold = (Double) thresholds.get(detail);
+		return (threshold != null) ? threshold.doubleValue() : 0;
+	}
+
+	/**
+	 * Sets the minimum scale for the specified detail. A threshold of 0
+	 * always paints the detail.
+	 *
+	 * @param detail
+	 *            The name of the detail.
+	 * @param threshold
+	 *            The minimum scale for <code>detail</code>.
+	 */
+	public void setThreshold(String detail, double threshold) {
+		thresholds.put(detail, new Double(threshold));
+	}
+
+	/**
+	 * Sets the thresholds from the {@link #KEY_PREFIX} entries in the
+	 * specified properties and adds the missing entries to the properties so
+	 * that they are stored with the user settings. Entries which are not
+	 * numbers are ignored.
+	 *
+	 * @param props
+	 *            The properties to read the thresholds from.
+	 */
+	public void configure(Properties props) {
+		if (props != null) {
+			Iterator it = new ArrayList(thresholds.keySet()).iterator();
+			while (it.hasNext()) {
+				String detail = (String) it.next();
+				String value = props.getProperty(KEY_PREFIX + detail);
+				if (value != null) {
+					try {
+						setThreshold(detail, Double.parseDouble(value));
+					} catch (NumberFormatException e) {
+						// ignore
+					}
+				} else
+					props.setProperty(KEY_PREFIX + detail, String
+							.valueOf(getThreshold(detail)));
+			}
+		}
+	}
+
+}
@@ -18,6 +18,7 @@ import javax.swing.JPopupMenu;
 import javax.swing.SwingUtilities;
 
 import org.jgraph.JGraph;
+import org.jgraph.graph.AbstractCellView;
 import org.jgraph.graph.BasicMarqueeHandler;
 import org.jgraph.graph.CellView;
 import org.jgraph.graph.DefaultGraphModel;
@@ -203,8 +204,12 @@ public class JGraphpadMarqueeHandler extends BasicMarqueeHandler {
 	 *         mouse pointer.
 	 */
 	protected CellView getGroupByFoldingHandle(JGraph graph, Point2D pt) {
-		CellView[] views = graph.getGraphLayoutCache().getCellViews();
-		for (int i = 0; i < views.length; i++) {
+		if (pt == null)
+			return null;
+		CellView[] views = AbstractCellView.getDescendantViews(graph
+				.getGraphLayoutCache().getRoots(
+						new Rectangle2D.Double(pt.getX(), pt.getY(), 1, 1)));
+		for (int i = views.length - 1; i >= 0; i--) {
 			Rectangle2D rectBounds = views[i].getBounds();
 			if (rectBounds != null && pt != null) {
 				if (rectBounds.contains(pt.getX(), pt.getY())) {
@@ -12,11 +12,25 @@ package com.jgraph.pad.graph;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.Style;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyleContext;
+import javax.swing.text.StyledDocument;
 import javax.swing.text.rtf.RTFEditorKit;
 
+import com.jgraph.pad.util.JGraphpadRTFScanner;
+
 /**
  * Rich text replacement for string values in {@link JGraphpadBusinessObject}.
  * This requirs the {@link JGraphpadVertexView} to provide a rich text editor
@@ -33,14 +47,58 @@ public class JGraphpadRichTextValue implements Serializable, Cloneable {
 	 */
 	public static RTFEditorKit editorKit = new RTFEditorKit();
 
+	/**
+	 * Specifies the maximum number of parsed documents to be cached. Default
+	 * is 512.
+	 */
+	public static int DOCUMENT_CACHE_SIZE = 512;
+
+	/**
+	 * Maps from RTF encoded strings to the documents parsed by
+	 * {@link #editorKit} in access order. The documents are never changed
+	 * after they have been parsed and are shared by all values with the same
+	 * rich text. Strings that have only been inserted once map to
+	 * {@link #NOT_PARSED} and strings whose documents can not be copied map
+	 * to {@link #NOT_COPYABLE}.
+	 */
+	protected static Map documents = new LinkedHashMap(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > DOCUMENT_CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Marks rich texts in {@link #documents} which must be parsed for each
+	 * insert because the parsed document uses styles or properties.
+	 */
+	protected static final Object NOT_COPYABLE = new Object();
+
+	/**
+	 * Marks rich texts in {@link #documents} which have been inserted once.
+	 * The shared document is only parsed on the second insert so that rich
+	 * texts which are only inserted once are not parsed twice.
+	 */
+	protected static final Object NOT_PARSED = new Object();
+
+	/**
+	 * Maps from lists of RTF encoded strings and paragraph alignments to the
+	 * documents returned by {@link #getSharedDocument(int)} in access order.
+	 */
+	protected static Map sharedDocuments = new LinkedHashMap(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > DOCUMENT_CACHE_SIZE;
+		}
+	};
+
 	/**
 	 * Holds the rich text as an RTF encoded text.
 	 */
 	protected String richText;
 
 	/**
-	 * A plain-text representation of the rich text is always keps along with
-	 * the rich text value to speedup the {@link #toString()} method.
+	 * A plain-text representation of the rich text is created on demand and
+	 * kept along with the rich text value to speedup the {@link #toString()}
+	 * method.
 	 */
 	protected String plainText;
 
@@ -79,16 +137,184 @@ public class JGraphpadRichTextValue implements Serializable, Cloneable {
 	 *            The document to insert the rich text into.
 	 */
 	public void insertInto(Document document) {
-		ByteArrayInputStream bin = new ByteArrayInputStream(richText.getBytes());
 		try {
 			document.remove(0, document.getLength());
-			editorKit.read(bin, document, 0);
-			bin.close();
+			Object parsed = (document instanceof StyledDocument) ? getDocument(richText)
+					: null;
+			if (parsed instanceof StyledDocument)
+				copyDocument((StyledDocument) parsed, (StyledDocument) document);
+			else
+				read(richText, document);
 		} catch (Exception e) {
 			// ignore
 		}
 	}
 
+	/**
+	 * Returns a document which contains this rich text where the attributes
+	 * of all paragraphs are replaced with the specified alignment. The document is shared by all values with
+	 * the same rich text and must not be changed. This is used by renderers
+	 * to display the rich text without inserting it into their own documents.
+	 * 
+	 * @param alignment
+	 *            The paragraph alignment as defined in {@link StyleConstants}.
+	 * @return Returns a shared document for this rich text.
+	 */
+	public StyledDocument getSharedDocument(int alignment) {
+		Object key = Arrays.asList(new Object[] { richText,
+				new Integer(alignment) });
+		StyledDocument document;
+		synchronized (sharedDocuments) {
+			document = (StyledDocument) sharedDocuments.get(key);
+		}
+		if (document == null) {
+			document = (StyledDocument) editorKit.createDefaultDocument();
+			insertInto(document);
+			SimpleAttributeSet sas = new SimpleAttributeSet();
+			StyleConstants.setAlignment(sas, alignment);
+			document.setParagraphAttributes(0, document.getLength(), sas,
+					true);
+			synchronized (sharedDocuments) {
+				sharedDocuments.put(key, document);
+			}
+		}
+		return document;
+	}
+
+	/**
+	 * Parses the specified RTF encoded string into the specified document
+	 * using {@link #editorKit}.
+	 * 
+	 * @param richText
+	 *            The RTF encoded string to be parsed.
+	 * @param document
+	 *            The document to insert the rich text into.
+	 */
+	protected static void read(String richText, Document document)
+			throws Exception {
+		ByteArrayInputStream bin = new ByteArrayInputStream(richText.getBytes());
+		editorKit.read(bin, document, 0);
+		bin.close();
+	}
+
+	/**
+	 * Returns the shared parsed document for the specified RTF encoded string
+	 * from {@link #documents}. Returns {@link #NOT_PARSED} for the first
+	 * request of a rich text and {@link #NOT_COPYABLE} if the document can not
+	 * be copied. The document is parsed and added to the cache on the second
+	 * request.
+	 * 
+	 * @param richText
+	 *            The RTF encoded string to return the document for.
+	 * @return Returns the parsed document or a marker object.
+	 */
+	protected static Object getDocument(String richText) throws Exception {
+		Object parsed;
+		synchronized (documents) {
+			parsed = documents.get(richText);
+			if (parsed == null) {
+				documents.put(richText, NOT_PARSED);
+				return NOT_PARSED;
+			}
+		}
+		if (parsed == NOT_PARSED) {
+			StyledDocument document = (StyledDocument) editorKit
+					.createDefaultDocument();
+			int properties = getPropertyCount(document);
+			read(richText, document);
+			parsed = (isCopyable(document.getDefaultRootElement(), document
+					.getStyle(StyleContext.DEFAULT_STYLE)) && properties == getPropertyCount(document)) ? (Object) document
+					: NOT_COPYABLE;
+			synchronized (documents) {
+				documents.put(richText, parsed);
+			}
+		}
+		return parsed;
+	}
+
+	/**
+	 * Returns the number of document properties of the specified document or
+	 * -1 if the number is unknown.
+	 */
+	protected static int getPropertyCount(Document document) {
+		return (document instanceof AbstractDocument) ? ((AbstractDocument) document)
+				.getDocumentProperties().size()
+				: -1;
+	}
+
+	/**
+	 * Returns true if the specified element and all its children resolve
+	 * to no style or the specified default style.
+	 */
+	protected static boolean isCopyable(Element element, Style defaultStyle) {
+		AttributeSet parent = (AttributeSet) element.getAttributes()
+				.getAttribute(AttributeSet.ResolveAttribute);
+		if (parent != null && parent != defaultStyle)
+			return false;
+		for (int i = 0; i < element.getElementCount(); i++)
+			if (!isCopyable(element.getElement(i), defaultStyle))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Copies the text, character and paragraph attributes of the specified
+	 * parsed document into the specified empty target document. References
+	 * to the default style of the parsed document are replaced with the
+	 * default style of the target document.
+	 * 
+	 * @param parsed
+	 *            The document to copy the content from.
+	 * @param target
+	 *            The empty document to copy the content to.
+	 */
+	protected static void copyDocument(StyledDocument parsed,
+			StyledDocument target) throws BadLocationException {
+		Style defaultStyle = parsed.getStyle(StyleContext.DEFAULT_STYLE);
+		Style targetStyle = target.getStyle(StyleContext.DEFAULT_STYLE);
+		Element root = parsed.getDefaultRootElement();
+		int length = parsed.getLength();
+		for (int i = 0; i < root.getElementCount(); i++) {
+			Element paragraph = root.getElement(i);
+			for (int j = 0; j < paragraph.getElementCount(); j++) {
+				Element run = paragraph.getElement(j);
+				int start = run.getStartOffset();
+				int end = Math.min(run.getEndOffset(), length);
+				if (end > start)
+					target.insertString(start, parsed.getText(start, end
+							- start), copyAttributes(run.getAttributes(),
+							defaultStyle, targetStyle));
+			}
+		}
+		for (int i = 0; i < root.getElementCount(); i++) {
+			Element paragraph = root.getElement(i);
+			target.setParagraphAttributes(paragraph.getStartOffset(), Math
+					.max(0, paragraph.getEndOffset() - 1
+							- paragraph.getStartOffset()), copyAttributes(
+					paragraph.getAttributes(), defaultStyle, targetStyle),
+					true);
+		}
+	}
+
+	/**
+	 * Returns a copy of the specified attributes where the resolve parent
+	 * <code>from</code> is replaced with <code>to</code>.
+	 */
+	protected static AttributeSet copyAttributes(AttributeSet attributes,
+			Style from, Style to) {
+		SimpleAttributeSet copy = new SimpleAttributeSet();
+		Enumeration names = attributes.getAttributeNames();
+		while (names.hasMoreElements()) {
+			Object name = names.nextElement();
+			Object value = attributes.getAttribute(name);
+			if (name == AttributeSet.ResolveAttribute && value == from)
+				value = to;
+			if (value != null)
+				copy.addAttribute(name, value);
+		}
+		return copy;
+	}
+
 	/**
 	 * Returns the richt text value as an RTF encoded string.
 	 * 
@@ -107,19 +333,39 @@ public class JGraphpadRichTextValue implements Serializable, Cloneable {
 	 */
 	public void setRichText(String richText) {
 		this.richText = richText;
-		// Updates the plain text version of the rich text.
-		plainText = getPlainText(this);
+		// Resets the plain text version of the rich text.
+		plainText = null;
 	}
 
 	/**
-	 * Returns the plain text representation of this rich text value.
+	 * Returns the plain text representation of this rich text value. The
+	 * plain text is created on the first call.
 	 * 
 	 * @return Returns {@link #plainText}.
 	 */
 	public String toString() {
+		if (plainText == null && richText != null)
+			plainText = getPlainText(this);
 		return plainText;
 	}
 
+	/**
+	 * Returns a clone of this value which shares the rich text and the plain
+	 * text.
+	 * 
+	 * @return Returns a clone of this value.
+	 */
+	public Object clone() {
+		try {
+			return super.clone();
+		} catch (CloneNotSupportedException e) {
+			JGraphpadRichTextValue clone = new JGraphpadRichTextValue();
+			clone.richText = richText;
+			clone.plainText = plainText;
+			return clone;
+		}
+	}
+
 	/**
 	 * Returns the rich text encoded RTF string from the specified document.
 	 * 
@@ -139,15 +385,20 @@ public class JGraphpadRichTextValue implements Serializable, Cloneable {
 	}
 
 	/**
-	 * Returns a plain text representation of the specified rich text value. If
-	 * an exception occurs during conversion then the RTF encoded string is
-	 * returned instead.
+	 * Returns a plain text representation of the specified rich text value.
+	 * This uses {@link JGraphpadRTFScanner} and falls back to inserting the
+	 * value into a new document if the scanner does not support the rich
+	 * text. If an exception occurs during conversion then the RTF encoded
+	 * string is returned instead.
 	 * 
 	 * @param richText
 	 *            The rich text value to be converted.
 	 * @return Returns the plain text representation.
 	 */
 	public static String getPlainText(JGraphpadRichTextValue richText) {
+		String text = JGraphpadRTFScanner.getText(richText.getRichText());
+		if (text != null)
+			return text.trim();
 		Document doc = createDefaultDocument();
 		richText.insertInto(doc);
 		try {
@@ -0,0 +1,146 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.graph;
+
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache for the geometries of the non-rectangular vertex shapes of
+ * {@link JGraphpadVertexRenderer}. The geometries are keyed on the shape, the
+ * size and the border width of the vertex, so that all vertices of the same
+ * size share the same diamond and triangle polygons and the same cylinder
+ * area, which is expensive to construct. The least recently used geometries
+ * are removed if the cache holds more than {@link #MAXIMUM_ENTRIES}
+ * geometries.<br>
+ * The returned geometries are shared and must not be modified by the caller.
+ * The cache may be used by several threads at the same time.
+ */
+public class JGraphpadShapeCache {
+
+	/**
+	 * Specifies the maximum number of cached geometries. Default is 512.
+	 */
+	public static int MAXIMUM_ENTRIES = 512;
+
+	/**
+	 * Shared singleton instance.
+	 */
+	protected static JGraphpadShapeCache sharedInstance = new JGraphpadShapeCache();
+
+	/**
+	 * Maps from keys to the cached geometries in access order.
+	 */
+	protected Map entries = new LinkedHashMap(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > MAXIMUM_ENTRIES;
+		}
+	};
+
+	/**
+	 * Returns the shared instance.
+	 *
+	 * @return Returns the shared shape cache.
+	 */
+	public static JGraphpadShapeCache getSharedInstance() {
+		return sharedInstance;
+	}
+
+	/**
+	 * Returns the geometry of the specified shape for the specified size and
+	 * border width. The geometry is used to fill the background and to crop
+	 * the content of the vertex. This returns a polygon for diamonds and
+	 * triangles, an area for cylinders and an ellipse for circles. For all
+	 * other shapes this returns null.
+	 *
+	 * @param shape
+	 *            The shape of the vertex.
+	 * @param width
+	 *            The width of the vertex.
+	 * @param height
+	 *            The height of the vertex.
+	 * @param borderWidth
+	 *            The border width of the vertex.
+	 * @return Returns the shared geometry or null.
+	 */
+	public Shape getShape(int shape, int width, int height, int borderWidth) {
+		if (shape != JGraphpadVertexRenderer.SHAPE_DIAMOND
+				&& shape != JGraphpadVertexRenderer.SHAPE_TRIANGLE
+				&& shape != JGraphpadVertexRenderer.SHAPE_CYLINDER
+				&& shape != JGraphpadVertexRenderer.SHAPE_CIRCLE)
+			return null;
+		Object key = Arrays.asList(new Object[] { new Integer(shape),
+				new Integer(width), new Integer(height),
+				new Integer(borderWidth) });
+		Shape geometry;
+		synchronized (this) {
+			geometry = (Shape) entries.get(key);
+		}
+		if (geometry == null) {
+			geometry = createShape(shape, width, height, borderWidth);
+			synchronized (this) {
+				entries.put(key, geometry);
+			}
+		}
+		return geometry;
+	}
+
+	/**
+	 * Returns a new geometry of the specified shape for the specified size and
+	 * border width.
+	 *
+	 * @param shape
+	 *            The shape of the vertex.
+	 * @param width
+	 *            The width of the vertex.
+	 * @param height
+	 *            The height of the vertex.
+	 * @param b
+	 *            The border width of the vertex.
+	 * @return Returns a new geometry.
+	 */
+	protected Shape createShape(int shape, int width, int height, int b) {
+		if (shape == JGraphpadVertexRenderer.SHAPE_DIAMOND) {
+			int halfWidth = (width - b) / 2;
+			int halfHeight = (height - b) / 2;
+			int[] xpoints = { halfWidth, width - b, halfWidth, 0 };
+			int[] ypoints = { 0, halfHeight, height - b, halfHeight };
+			return new Polygon(xpoints, ypoints, 4);
+		} else if (shape == JGraphpadVertexRenderer.SHAPE_TRIANGLE) {
+			int halfHeight = (height - b) / 2;
+			int[] xpoints = { 0, width - b, 0 };
+			int[] ypoints = { 0, halfHeight, height - b };
+			return new Polygon(xpoints, ypoints, 3);
+		} else if (shape == JGraphpadVertexRenderer.SHAPE_CYLINDER) {
+			int h4 = height / 4;
+			int r = width - b - 1;
+			Area area = new Area(new Rectangle(b, (h4 - b) / 2 + b, r, height
+					- h4 - b));
+			area.add(new Area(new Ellipse2D.Double(b, b, r, h4 - b)));
+			area.add(new Area(new Ellipse2D.Double(b, height - h4 - b, r, h4)));
+			return area;
+		}
+		return new Ellipse2D.Float(-b, -b, width + b, height + b);
+	}
+
+	/**
+	 * Removes all geometries from the cache.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+}
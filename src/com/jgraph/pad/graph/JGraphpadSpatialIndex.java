@@ -0,0 +1,341 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.graph;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgraph.graph.CellView;
+import org.jgraph.graph.GraphLayoutCache;
+
+/**
+ * Spatial index for the root views of a graph layout cache. The index is a
+ * uniform grid of {@link #GRID_SIZE} square buckets, each of which holds the
+ * root views whose bounds intersect the bucket. Views which span more than
+ * {@link #MAXIMUM_BUCKETS} buckets or have no bounds are kept in a separate
+ * list that is checked for every query.<br>
+ * The index is updated lazily: The cache marks the cells of each change as
+ * dirty and the next query only moves the root views of the dirty cells to
+ * their new buckets. If the roots of the cache have changed, eg. because cells
+ * were inserted, removed, grouped or moved to the front, then the order of the
+ * root views is rebuilt before the next query. The index may be used by
+ * several threads at the same time.
+ */
+public class JGraphpadSpatialIndex {
+
+	/**
+	 * Specifies the width and height of the buckets. Default is 256.
+	 */
+	public static int GRID_SIZE = 256;
+
+	/**
+	 * Specifies the maximum number of buckets a view may be stored in. Views
+	 * that span more buckets are checked for every query. Default is 64.
+	 */
+	public static int MAXIMUM_BUCKETS = 64;
+
+	/**
+	 * References the cache whose root views are indexed.
+	 */
+	protected GraphLayoutCache cache;
+
+	/**
+	 * Maps from bucket keys to the lists of views in the bucket.
+	 */
+	protected Map buckets = new HashMap();
+
+	/**
+	 * Maps from the indexed views to the bounds they were indexed with. Null if
+	 * the index must be rebuilt.
+	 */
+	protected Map entries = null;
+
+	/**
+	 * Maps from the root views to their position in the roots of the cache.
+	 */
+	protected Map order = new HashMap();
+
+	/**
+	 * Holds the views which are checked for every query.
+	 */
+	protected List oversized = new ArrayList();
+
+	/**
+	 * Holds the cells whose views must be reindexed.
+	 */
+	protected Set dirty = new HashSet();
+
+	/**
+	 * Specifies if the order of the root views must be rebuilt.
+	 */
+	protected boolean orderChanged = true;
+
+	/**
+	 * Compares root views by their position in the roots of the cache.
+	 */
+	protected Comparator orderComparator = new Comparator() {
+		public int compare(Object o1, Object o2) {
+			return getOrder(o1) - getOrder(o2);
+		}
+	};
+
+	/**
+	 * Constructs a new spatial index for the root views of the specified
+	 * cache.
+	 *
+	 * @param cache
+	 *            The cache whose root views should be indexed.
+	 */
+	public JGraphpadSpatialIndex(GraphLayoutCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Returns the root views of the cache whose bounds intersect the specified
+	 * rectangle in the order of the roots of the cache, ie. the topmost view is
+	 * the last in the array. This returns the same views as
+	 * {@link GraphLayoutCache#getRoots(Rectangle2D)} without checking all root
+	 * views.
+	 *
+	 * @param rect
+	 *            The rectangle in graph coordinates.
+	 * @return Returns the root views that intersect <code>rect</code>.
+	 */
+	public synchronized CellView[] getRoots(Rectangle2D rect) {
+		validate();
+		Set candidates = new HashSet(oversized);
+		int x0 = getBucket(rect.getX()), x1 = getBucket(rect.getMaxX());
+		int y0 = getBucket(rect.getY()), y1 = getBucket(rect.getMaxY());
+		if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > buckets.size()) {
+			Iterator it = buckets.values().iterator();
+			while (it.hasNext())
+				candidates.addAll((List) it.next());
+		} else {
+			for (int x = x0; x <= x1; x++) {
+				for (int y = y0; y <= y1; y++) {
+					List bucket = (List) buckets.get(getKey(x, y));
+					if (bucket != null)
+						candidates.addAll(bucket);
+				}
+			}
+		}
+		List result = new ArrayList(candidates.size());
+		Iterator it = candidates.iterator();
+		while (it.hasNext()) {
+			CellView view = (CellView) it.next();
+			Rectangle2D bounds = view.getBounds();
+			if (bounds != null && bounds.intersects(rect))
+				result.add(view);
+		}
+		Collections.sort(result, orderComparator);
+		CellView[] views = new CellView[result.size()];
+		result.toArray(views);
+		return views;
+	}
+
+	/**
+	 * Marks the views of the specified cells as dirty so that they are
+	 * reindexed before the next query. The cells may be contained in groups,
+	 * in which case the root views of the groups are reindexed.
+	 *
+	 * @param cells
+	 *            The cells whose bounds have changed.
+	 */
+	public synchronized void invalidate(Object[] cells) {
+		if (cells != null && entries != null)
+			for (int i = 0; i < cells.length; i++)
+				if (cells[i] != null)
+					dirty.add((cells[i] instanceof CellView) ? ((CellView) cells[i])
+							.getCell()
+							: cells[i]);
+	}
+
+	/**
+	 * Marks the order of the root views as invalid so that the order and the
+	 * set of indexed views is updated before the next query.
+	 */
+	public synchronized void invalidateOrder() {
+		orderChanged = true;
+	}
+
+	/**
+	 * Removes all views from the index so that it is rebuilt before the next
+	 * query.
+	 */
+	public synchronized void clear() {
+		entries = null;
+		dirty.clear();
+	}
+
+	/**
+	 * Updates the index for all changes since the last query.
+	 */
+	protected void validate() {
+		if (entries != null && dirty.size() > order.size() / 2)
+			entries = null;
+		if (entries == null) {
+			rebuild();
+			return;
+		}
+		if (orderChanged) {
+			orderChanged = false;
+			CellView[] roots = cache.getRoots();
+			order = new HashMap(roots.length * 2);
+			for (int i = 0; i < roots.length; i++) {
+				order.put(roots[i], new Integer(i));
+				if (!entries.containsKey(roots[i]))
+					insert(roots[i]);
+			}
+			Iterator it = new ArrayList(entries.keySet()).iterator();
+			while (it.hasNext()) {
+				Object view = it.next();
+				if (!order.containsKey(view))
+					remove((CellView) view);
+			}
+		}
+		if (!dirty.isEmpty()) {
+			Set views = new HashSet();
+			Iterator it = dirty.iterator();
+			while (it.hasNext()) {
+				CellView view = cache.getMapping(it.next(), false);
+				while (view != null && view.getParentView() != null)
+					view = view.getParentView();
+				if (view != null && entries.containsKey(view))
+					views.add(view);
+			}
+			dirty.clear();
+			it = views.iterator();
+			while (it.hasNext()) {
+				CellView view = (CellView) it.next();
+				remove(view);
+				insert(view);
+			}
+		}
+	}
+
+	/**
+	 * Rebuilds the index from the root views of the cache.
+	 */
+	protected void rebuild() {
+		buckets.clear();
+		oversized.clear();
+		dirty.clear();
+		orderChanged = false;
+		CellView[] roots = cache.getRoots();
+		entries = new HashMap(roots.length * 2);
+		order = new HashMap(roots.length * 2);
+		for (int i = 0; i < roots.length; i++) {
+			order.put(roots[i], new Integer(i));
+			insert(roots[i]);
+		}
+	}
+
+	/**
+	 * Adds the specified view to the buckets that intersect its bounds.
+	 *
+	 * @param view
+	 *            The view to be added.
+	 */
+	protected void insert(CellView view) {
+		Rectangle2D bounds = view.getBounds();
+		if (bounds != null)
+			bounds = (Rectangle2D) bounds.clone();
+		entries.put(view, bounds);
+		if (isOversized(bounds)) {
+			oversized.add(view);
+		} else {
+			int x0 = getBucket(bounds.getX()), x1 = getBucket(bounds.getMaxX());
+			int y0 = getBucket(bounds.getY()), y1 = getBucket(bounds.getMaxY());
+			for (int x = x0; x <= x1; x++) {
+				for (int y = y0; y <= y1; y++) {
+					Object key = getKey(x, y);
+					List bucket = (List) buckets.get(key);
+					if (bucket == null) {
+						bucket = new ArrayList(4);
+						buckets.put(key, bucket);
+					}
+					bucket.add(view);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes the specified view from the buckets it was added to.
+	 *
+	 * @param view
+	 *            The view to be removed.
+	 */
+	protected void remove(CellView view) {
+		if (!entries.containsKey(view))
+			return;
+		Rectangle2D bounds = (Rectangle2D) entries.remove(view);
+		if (isOversized(bounds)) {
+			oversized.remove(view);
+		} else {
+			int x0 = getBucket(bounds.getX()), x1 = getBucket(bounds.getMaxX());
+			int y0 = getBucket(bounds.getY()), y1 = getBucket(bounds.getMaxY());
+			for (int x = x0; x <= x1; x++) {
+				for (int y = y0; y <= y1; y++) {
+					Object key = getKey(x, y);
+					List bucket = (List) buckets.get(key);
+					if (bucket != null) {
+						bucket.remove(view);
+						if (bucket.isEmpty())
+							buckets.remove(key);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if a view with the specified bounds should be checked for
+	 * every query rather than being added to the buckets.
+	 */
+	protected boolean isOversized(Rectangle2D bounds) {
+		if (bounds == null)
+			return true;
+		long width = getBucket(bounds.getMaxX()) - getBucket(bounds.getX()) + 1;
+		long height = getBucket(bounds.getMaxY()) - getBucket(bounds.getY()) + 1;
+		return width * height > MAXIMUM_BUCKETS;
+	}
+
+	/**
+	 * Returns the position of the specified view in the roots of the cache.
+	 */
+	protected int getOrder(Object view) {
+		Integer index = (Integer) order.get(view);
+		return (index != null) ? index.intValue() : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the column or row of the bucket for the specified coordinate.
+	 */
+	protected static int getBucket(double coord) {
+		return (int) Math.floor(coord / GRID_SIZE);
+	}
+
+	/**
+	 * Returns the key of the bucket in the specified column and row.
+	 */
+	protected static Object getKey(int x, int y) {
+		return new Long(((long) x << 32) | (y & 0xffffffffL));
+	}
+
+}
@@ -0,0 +1,279 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.graph;
+
+import java.awt.Component;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+import javax.swing.Icon;
+
+import org.jgraph.JGraph;
+import org.jgraph.event.GraphModelEvent;
+import org.jgraph.event.GraphModelListener;
+import org.jgraph.event.GraphModelEvent.GraphModelChange;
+import org.jgraph.graph.DefaultGraphModel;
+import org.jgraph.graph.GraphLayoutCache;
+import org.jgraph.graph.GraphModel;
+
+/**
+ * Text index for the cells of a graph model. The index holds the lowercase
+ * text of all cells except ports, including the children of groups and the
+ * labels of edges. For cells whose user object is a
+ * {@link JGraphpadBusinessObject} the text also contains the values of all
+ * properties that are not components or icons.<br>
+ * The index is a model listener and updates the text of the inserted, removed
+ * and changed cells of each change, so that a search does not have to convert
+ * the values of all cells. Searches match each token of the query as a
+ * substring or as a whole word, regardless of case. A query that extends the
+ * previous query is only matched against the results of the previous query,
+ * which makes the index suitable for searching as the user types. The index
+ * may be used by several threads at the same time.
+ */
+public class JGraphpadTextIndex implements GraphModelListener {
+
+	/**
+	 * References the model whose cells are indexed.
+	 */
+	protected GraphModel model;
+
+	/**
+	 * Maps from the indexed cells to their text in the order of the model.
+	 * Null if the index must be rebuilt.
+	 */
+	protected Map texts = null;
+
+	/**
+	 * Holds the query of the last search.
+	 */
+	protected String lastQuery = null;
+
+	/**
+	 * Holds the mode of the last search.
+	 */
+	protected boolean lastWholeWords = false;
+
+	/**
+	 * Holds the result of the last search.
+	 */
+	protected List lastResult = null;
+
+	/**
+	 * Constructs a new text index for the specified model. The index must be
+	 * added as a listener to the model in order to be updated.
+	 *
+	 * @param model
+	 *            The model whose cells should be indexed.
+	 */
+	public JGraphpadTextIndex(GraphModel model) {
+		this.model = model;
+	}
+
+	/**
+	 * Returns the text index for the cells in the specified graph. If the
+	 * layout cache of the graph is a {@link JGraphpadGraphLayoutCache} then
+	 * its index is returned, otherwise a new index is returned which is not
+	 * updated.
+	 *
+	 * @param graph
+	 *            The graph to return the text index for.
+	 * @return Returns the text index for <code>graph</code>.
+	 */
+	public static JGraphpadTextIndex getTextIndex(JGraph graph) {
+		GraphLayoutCache cache = graph.getGraphLayoutCache();
+		if (cache instanceof JGraphpadGraphLayoutCache)
+			return ((JGraphpadGraphLayoutCache) cache).getTextIndex();
+		return new JGraphpadTextIndex(graph.getModel());
+	}
+
+	/**
+	 * Returns the model whose cells are indexed.
+	 *
+	 * @return Returns the model.
+	 */
+	public GraphModel getModel() {
+		return model;
+	}
+
+	/**
+	 * Returns the cells whose text contains all tokens of the specified query
+	 * in the order of the model. The tokens are separated by whitespace.
+	 *
+	 * @param query
+	 *            The text to search for.
+	 * @param wholeWords
+	 *            Whether the tokens must match whole words.
+	 * @return Returns the matching cells.
+	 */
+	public synchronized Object[] find(String query, boolean wholeWords) {
+		query = (query != null) ? query.trim().toLowerCase() : "";
+		List tokens = new ArrayList();
+		StringTokenizer tokenizer = new StringTokenizer(query);
+		while (tokenizer.hasMoreTokens())
+			tokens.add(tokenizer.nextToken());
+		if (tokens.isEmpty())
+			return new Object[0];
+		validate();
+
+		// Narrows down the previous result if the query extends the
+		// previous query, otherwise checks all cells
+		Iterator it = (lastResult != null && wholeWords == lastWholeWords
+				&& (wholeWords ? query.equals(lastQuery) : query
+						.startsWith(lastQuery))) ? lastResult.iterator()
+				: texts.keySet().iterator();
+		List result = new ArrayList();
+		while (it.hasNext()) {
+			Object cell = it.next();
+			String text = (String) texts.get(cell);
+			if (text != null && matches(text, tokens, wholeWords))
+				result.add(cell);
+		}
+		lastQuery = query;
+		lastWholeWords = wholeWords;
+		lastResult = result;
+		return result.toArray();
+	}
+
+	/**
+	 * Returns true if the specified text contains all specified tokens.
+	 *
+	 * @param text
+	 *            The lowercase text of the cell.
+	 * @param tokens
+	 *            The lowercase tokens of the query.
+	 * @param wholeWords
+	 *            Whether the tokens must match whole words.
+	 * @return Returns true if <code>text</code> matches.
+	 */
+	protected boolean matches(String text, List tokens, boolean wholeWords) {
+		for (int i = 0; i < tokens.size(); i++)
+			if (!contains(text, (String) tokens.get(i), wholeWords))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns true if the specified text contains the specified token. If
+	 * <code>wholeWords</code> is true then the token must not be preceded or
+	 * followed by a letter or digit.
+	 */
+	protected boolean contains(String text, String token, boolean wholeWords) {
+		int index = text.indexOf(token);
+		while (wholeWords && index >= 0) {
+			int end = index + token.length();
+			if ((index == 0 || !Character.isLetterOrDigit(text
+					.charAt(index - 1)))
+					&& (end == text.length() || !Character.isLetterOrDigit(text
+							.charAt(end))))
+				return true;
+			index = text.indexOf(token, index + 1);
+		}
+		return index >= 0;
+	}
+
+	/**
+	 * Updates the text of the inserted, removed and changed cells.
+	 */
+	public synchronized void graphChanged(GraphModelEvent e) {
+		lastResult = null;
+		if (texts != null) {
+			GraphModelChange change = e.getChange();
+			Set removed = new HashSet();
+			if (change.getRemoved() != null) {
+				removed.addAll(DefaultGraphModel.getDescendants(model, change
+						.getRemoved()));
+				Iterator it = removed.iterator();
+				while (it.hasNext())
+					texts.remove(it.next());
+			}
+			update(change.getInserted(), removed);
+			update(change.getChanged(), removed);
+		}
+	}
+
+	/**
+	 * Removes all cells from the index so that it is rebuilt before the next
+	 * search.
+	 */
+	public synchronized void clear() {
+		texts = null;
+		lastResult = null;
+	}
+
+	/**
+	 * Builds the index if it does not exist.
+	 */
+	protected void validate() {
+		if (texts == null) {
+			texts = new LinkedHashMap();
+			update(DefaultGraphModel.getRoots(model), null);
+		}
+	}
+
+	/**
+	 * Updates the text of the specified cells and their descendants.
+	 *
+	 * @param cells
+	 *            The cells to be updated.
+	 * @param removed
+	 *            The cells which have been removed from the model or null.
+	 */
+	protected void update(Object[] cells, Set removed) {
+		if (cells != null) {
+			Iterator it = DefaultGraphModel.getDescendants(model, cells)
+					.iterator();
+			while (it.hasNext()) {
+				Object cell = it.next();
+				if (!model.isPort(cell)
+						&& (removed == null || !removed.contains(cell)))
+					texts.put(cell, getText(cell));
+			}
+		}
+	}
+
+	/**
+	 * Returns the lowercase text for the specified cell. Line breaks are
+	 * replaced by spaces and the values of the properties of business objects
+	 * are appended to the value.
+	 *
+	 * @param cell
+	 *            The cell to return the text for.
+	 * @return Returns the text for <code>cell</code>.
+	 */
+	protected String getText(Object cell) {
+		Object value = model.getValue(cell);
+		StringBuffer text = new StringBuffer();
+		if (value != null)
+			text.append(String.valueOf(value));
+		if (value instanceof JGraphpadBusinessObject) {
+			Iterator it = ((JGraphpadBusinessObject) value).getProperties()
+					.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry entry = (Map.Entry) it.next();
+				Object property = entry.getValue();
+				if (!JGraphpadBusinessObject.valueKey.equals(entry.getKey())
+						&& !(property instanceof Component)
+						&& !(property instanceof Icon)) {
+					text.append(' ');
+					text.append(String.valueOf(property));
+				}
+			}
+		}
+		return text.toString().replace('\n', ' ').replace('\r', ' ')
+				.toLowerCase();
+	}
+
+}
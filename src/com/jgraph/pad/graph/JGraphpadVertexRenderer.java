@@ -15,17 +15,18 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.FontMetrics;
 import java.awt.GradientPaint;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.Insets;
 import java.awt.Point;
 import java.awt.Polygon;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.Area;
-import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.Map;
@@ -36,10 +37,9 @@ import javax.swing.ImageIcon;
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
 import javax.swing.border.Border;
-import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
-import javax.swing.text.StyledDocument;
 
 import org.jgraph.JGraph;
 import org.jgraph.graph.AbstractCellView;
@@ -101,14 +101,43 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 			SHAPE_TRIANGLE = 5;
 
 	/**
-	 * Holds the text pane to be used for rich text rendering.
+	 * Holds the text pane to be used for rich text rendering. Each renderer
+	 * has its own text pane so that renderers may be used in parallel.
 	 */
-	public static JTextPane textPane = new JTextPane();
+	protected JTextPane textPane = new JTextPane();
+
+	/**
+	 * Holds the rich text value of the current view and the key of its label
+	 * in the {@link JGraphpadLabelCache}. The value is only inserted into the
+	 * text pane if the label is not in the cache.
+	 */
+	protected JGraphpadRichTextValue richTextValue = null;
+
+	protected Object richTextKey = null;
+
+	/**
+	 * Specifies if the rich text value has been inserted into the text pane.
+	 */
+	protected boolean richTextLoaded = false;
+
+	/**
+	 * Holds the inset and the alignment of the rich text.
+	 */
+	protected int richTextInset = 0, richTextAlignment = 0;
+
+	/**
+	 * Paints the rich text content for the label cache.
+	 */
+	protected JGraphpadLabelCache.Painter richTextPainter = new JGraphpadLabelCache.Painter() {
+		public void paint(Graphics g) {
+			paintRichTextContent(g);
+		}
+	};
 
 	/**
 	 * Holds the wrapper renderer used for heavyweights.
 	 */
-	protected static JComponent wrapperRenderer;
+	protected JComponent wrapperRenderer;
 
 	/**
 	 * Holds the user object of the current cell.
@@ -139,12 +168,14 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 	protected Component valueComponent;
 
 	/**
-	 * Holds the area to be painted for the cylinder shape.
+	 * Holds the area to be painted for the cylinder shape. The area is shared
+	 * with other renderers and must not be modified.
 	 */
 	protected Area cylinderArea = null;
 
 	/**
-	 * Holds the shape to be painted for diamond cells.
+	 * Holds the shape to be painted for diamond cells. The polygon is shared
+	 * with other renderers and must not be modified.
 	 */
 	protected Polygon diamond = null;
 
@@ -170,7 +201,13 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 		// so that the real component is never touched directly.
 		wrapperRenderer = new JComponent() {
 			public void paint(Graphics g) {
-				if (showHeavyweight) {
+				if (!JGraphpadLevelOfDetail.isVisible(graph, g,
+						JGraphpadLevelOfDetail.COMPONENTS)) {
+					g.setColor(valueComponent.getBackground());
+					g.fillRect(0, 0, getWidth() - 1, getHeight() - 1);
+					g.setColor(graphForeground);
+					g.drawRect(0, 0, getWidth() - 1, getHeight() - 1);
+				} else if (showHeavyweight) {
 					valueComponent.setSize(getSize());
 					if (!isEditing)
 						valueComponent.paint(g);
@@ -226,9 +263,16 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 				// Workaround for locking problem in windows
 				comp.setDoubleBuffered(false);
 
-				// Do not wrap component hierachies
-				if (comp.getComponentCount() > 0 && !isEditing
-						&& showHeavyweight) {
+				// Do not wrap component hierachies unless the wrapper
+				// paints a box for the level of detail at this scale
+				JGraphpadLevelOfDetail lod = JGraphpadLevelOfDetail
+						.getLevelOfDetail(graph, null);
+				if (comp.getComponentCount() > 0
+						&& !isEditing
+						&& showHeavyweight
+						&& (lod == null || lod.isVisible(
+								JGraphpadLevelOfDetail.COMPONENTS, graph
+										.getScale()))) {
 					return comp;
 				}
 			}
@@ -260,6 +304,16 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 		int b = borderWidth;
 		Shape previousShape = cropToShape(g);
 
+		// Checks which details should be painted at the scale of the
+		// graphics according to the level of detail policy.
+		JGraphpadLevelOfDetail lod = JGraphpadLevelOfDetail.getLevelOfDetail(
+				graph, g);
+		double scale = JGraphpadLevelOfDetail.getScale(g);
+		boolean isTextVisible = lod == null
+				|| lod.isVisible(JGraphpadLevelOfDetail.TEXT, scale);
+		boolean isImageVisible = lod == null
+				|| lod.isVisible(JGraphpadLevelOfDetail.IMAGES, scale);
+
 		// Stretched images appear in the background of the cell. This sets
 		// the icon to null after painting and takes over all image painting
 		// in the case of stretched images as the superclass does not support
@@ -269,8 +323,13 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 			Icon icon = getIcon();
 			if (icon != null)
 				img = ((ImageIcon) icon).getImage();
-			if (img != null && !preview)
-				g.drawImage(img, 0, 0, d.width - 1, d.height - 1, this);
+			if (img != null && !preview) {
+				if (isImageVisible)
+					g.drawImage(img, 0, 0, d.width - 1, d.height - 1, this);
+				else
+					paintPlaceholder(g, new Rectangle(0, 0, d.width - 1,
+							d.height - 1));
+			}
 			setIcon(null);
 		}
 
@@ -291,12 +350,51 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 		if (isRichText)
 			setText("");
 
-		// Calls the superclass paint method and restores the previous border
-		// and selection state.
+		// Replaces the label and icon with greeked bars and a placeholder if
+		// they are too small to be read. The bounds of the label and icon are
+		// computed before they are removed for the superclass' paint method.
+		Rectangle textBounds = null, iconBounds = null;
+		String text = getText();
+		if ((!isTextVisible && text != null && text.length() > 0)
+				|| (!isImageVisible && getIcon() != null)) {
+			Insets insets = getInsets();
+			Rectangle viewR = new Rectangle(insets.left, insets.top, d.width
+					- insets.left - insets.right, d.height - insets.top
+					- insets.bottom);
+			Rectangle iconR = new Rectangle();
+			Rectangle textR = new Rectangle();
+			SwingUtilities.layoutCompoundLabel(this, getFontMetrics(getFont()),
+					text, getIcon(), getVerticalAlignment(),
+					getHorizontalAlignment(), getVerticalTextPosition(),
+					getHorizontalTextPosition(), viewR, iconR, textR,
+					getIconTextGap());
+			if (!isTextVisible && text != null && text.length() > 0) {
+				textBounds = textR;
+				setText("");
+			}
+			if (!isImageVisible && getIcon() != null) {
+				iconBounds = iconR;
+				setIcon(null);
+			}
+		}
+
+		// Calls the superclass paint method and restores the previous border,
+		// selection state and gradient. The gradient of rectangles, which is
+		// painted by the superclass, is removed if the scale is below the
+		// threshold for gradients.
+		Color previousGradient = gradientColor;
+		if (lod != null
+				&& !lod.isVisible(JGraphpadLevelOfDetail.GRADIENTS, scale))
+			gradientColor = null;
 		super.paint(g);
+		if (iconBounds != null)
+			paintPlaceholder(g, iconBounds);
+		if (textBounds != null)
+			paintGreekedText(g, text, textBounds);
 		setBorder(previousBorder);
 		setOpaque(wasOpaque);
 		selected = wasSelected;
+		gradientColor = previousGradient;
 
 		// Paints the rich text foreground which is not painted by the
 		// superclass. The code below applies the vertical aligment of
@@ -334,7 +432,9 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 
 		// Restores the previous stroke and paints the folding icon
 		g2.setStroke(previousStroke);
-		if (showFoldingIcons)
+		if (showFoldingIcons
+				&& (lod == null || lod.isVisible(
+						JGraphpadLevelOfDetail.FOLDINGICONS, scale)))
 			paintFoldingIcon(g);
 	}
 	/**
@@ -349,22 +449,22 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 	protected Shape cropToShape(Graphics g) {
 		Shape previousShape = g.getClip();
 		Dimension d = getSize();
-		int b = borderWidth;
-		if (shape == SHAPE_DIAMOND || shape == SHAPE_TRIANGLE) {
-			Area clip = new Area(diamond);
-			clip.intersect(new Area(previousShape));
-			g.setClip(clip);
-		} else if (shape == SHAPE_CYLINDER) {
-			Area clip = new Area(cylinderArea);
-			cylinderArea.intersect(new Area(previousShape));
-			g.setClip(clip);
-		} else if (shape == SHAPE_CIRCLE) {
-			Area clip = new Area(new java.awt.geom.Ellipse2D.Float(-b, -b,
-					d.width + b, d.height + b));
-			clip.intersect(new Area(previousShape));
-			g.setClip(clip);
+		Shape clip = JGraphpadShapeCache.getSharedInstance().getShape(shape,
+				d.width, d.height, borderWidth);
+		if (clip != null) {
+
+			// Uses the shape as the clip if it is inside the clipping region,
+			// which is the case for all but partially repainted cells, and
+			// intersects the shape with the clipping region otherwise.
+			if (previousShape == null
+					|| previousShape.contains(clip.getBounds2D()))
+				g.setClip(clip);
+			else {
+				Area area = new Area(clip);
+				area.intersect(new Area(previousShape));
+				g.setClip(area);
+			}
 		}
-
 		return previousShape;
 	}
 	
@@ -382,39 +482,15 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 		// Rectangles are handled by the superclass' paint method.
 		if (shape != SHAPE_RECTANGLE) {
 
-			// Prepares the shapes geometries for painting the background
-			// and border. This does not do any actual painting but
-			// constructs the mathematical diamond shape.
-			if (shape == SHAPE_DIAMOND) {
-				int width = d.width - b;
-				int height = d.height - b;
-				int halfWidth = (d.width - b) / 2;
-				int halfHeight = (d.height - b) / 2;
-				int[] xpoints = { halfWidth, width, halfWidth, 0 };
-				int[] ypoints = { 0, halfHeight, height, halfHeight };
-				diamond = new Polygon(xpoints, ypoints, 4);
-			}
-
-			if (shape == SHAPE_TRIANGLE) {
-				int width = d.width - b;
-				int height = d.height - b;
-				int halfHeight = (d.height - b) / 2;
-				int[] xpoints = { 0, width, 0 };
-				int[] ypoints = { 0, halfHeight, height };
-				diamond = new Polygon(xpoints, ypoints, 3);
-			}
-			
-			// Computes the area for the cylinder (db-style)
-			else if (shape == SHAPE_CYLINDER) {
-				int h4 = (int) (d.getHeight() / 4);
-				int r = d.width - b - 1;
-				cylinderArea = new Area(new Rectangle(b, (h4 - b) / 2 + b, r,
-						d.height - h4 - b));
-				cylinderArea
-						.add(new Area(new Ellipse2D.Double(b, b, r, h4 - b)));
-				cylinderArea.add(new Area(new Ellipse2D.Double(b, d.height - h4
-						- b, r, h4)));
-			}
+			// Fetches the shared shape geometries for painting the background
+			// and border from the shape cache. The geometries are constructed
+			// only once for all cells of the same shape, size and border.
+			if (shape == SHAPE_DIAMOND || shape == SHAPE_TRIANGLE)
+				diamond = (Polygon) JGraphpadShapeCache.getSharedInstance()
+						.getShape(shape, d.width, d.height, b);
+			else if (shape == SHAPE_CYLINDER)
+				cylinderArea = (Area) JGraphpadShapeCache.getSharedInstance()
+						.getShape(shape, d.width, d.height, b);
 
 			// Computes the rounded rect arc for rounded rectangles. This
 			// is expensive sothe result is cached.
@@ -429,7 +505,10 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 
 				// Paints the gradient background only if we're not in
 				// preview mode to speedup the previews.
-				if (gradientColor != null && !preview)
+				if (gradientColor != null
+						&& !preview
+						&& JGraphpadLevelOfDetail.isVisible(graph, g,
+								JGraphpadLevelOfDetail.GRADIENTS))
 					((Graphics2D) g).setPaint(new GradientPaint(0, 0,
 							getBackground(), getWidth(), getHeight(),
 							gradientColor, true));
@@ -453,13 +532,39 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 
 	/**
 	 * Utility method to paint the rich text content for rich text values. This
-	 * implementation simulates rich text vertical alignment by translating the
-	 * graphics before painting the textPane.
+	 * implementation uses a cached image of the content from the shared
+	 * {@link JGraphpadLabelCache} if the graphics allows it and paints the
+	 * content using {@link #paintRichTextContent(Graphics)} otherwise.
 	 * 
 	 * @param g
 	 *            The graphics to paint the rich text content to.
 	 */
 	protected void paintRichText(Graphics g) {
+		if (!JGraphpadLevelOfDetail.isVisible(graph, g,
+				JGraphpadLevelOfDetail.TEXT))
+			paintGreekedText(g, richTextValue.toString(), new Rectangle(
+					richTextInset, richTextInset, getWidth() - 2
+							* richTextInset, getHeight() - 2 * richTextInset));
+		else if (JGraphpadLabelCache.isCacheable(g))
+			JGraphpadLabelCache.getSharedInstance().paint(
+					g,
+					JGraphpadLabelCache.createKey(new Object[] { richTextKey,
+							new Integer(getVerticalAlignment()) }), getWidth(),
+					getHeight(), richTextPainter);
+		else
+			paintRichTextContent(g);
+	}
+
+	/**
+	 * Paints the rich text content using the text pane. This implementation
+	 * simulates rich text vertical alignment by translating the graphics
+	 * before painting the textPane.
+	 * 
+	 * @param g
+	 *            The graphics to paint the rich text content to.
+	 */
+	protected void paintRichTextContent(Graphics g) {
+		loadRichText();
 		textPane.setSize(getSize());
 		int yoffset = 0;
 
@@ -476,6 +581,54 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 		g.translate(0, -yoffset);
 	}
 
+	/**
+	 * Paints the specified text as greeked bars, one bar for each line, into
+	 * the specified bounds using the alignments of this renderer. This is used
+	 * to paint labels that are too small to be read.
+	 * 
+	 * @param g
+	 *            The graphics to paint the bars to.
+	 * @param text
+	 *            The text to be greeked.
+	 * @param bounds
+	 *            The bounds of the text.
+	 */
+	protected void paintGreekedText(Graphics g, String text, Rectangle bounds) {
+		FontMetrics metrics = getFontMetrics(getFont());
+		String[] lines = text.split("\n");
+		int lineHeight = metrics.getHeight();
+		int y = bounds.y;
+		if (getVerticalAlignment() == CENTER)
+			y += (bounds.height - lines.length * lineHeight) / 2;
+		else if (getVerticalAlignment() == BOTTOM)
+			y += bounds.height - lines.length * lineHeight;
+		g.setColor(getForeground());
+		for (int i = 0; i < lines.length; i++) {
+			int w = Math.min(metrics.stringWidth(lines[i]), bounds.width);
+			int x = bounds.x;
+			if (getHorizontalAlignment() == CENTER)
+				x += (bounds.width - w) / 2;
+			else if (getHorizontalAlignment() == RIGHT)
+				x += bounds.width - w;
+			g.fillRect(x, y + lineHeight / 4, w, lineHeight / 2);
+			y += lineHeight;
+		}
+	}
+
+	/**
+	 * Paints a placeholder for an image that is too small to be recognized
+	 * into the specified bounds.
+	 * 
+	 * @param g
+	 *            The graphics to paint the placeholder to.
+	 * @param bounds
+	 *            The bounds of the image.
+	 */
+	protected void paintPlaceholder(Graphics g, Rectangle bounds) {
+		g.setColor(JGraphpadLevelOfDetail.PLACEHOLDER_COLOR);
+		g.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
+	}
+
 	/**
 	 * Utility method to paint the border for all non-rectangular shapes.
 	 * 
@@ -792,8 +945,15 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 		} else if (shape == SHAPE_ROUNDED)
 			d.width += d.height / 5;
 		else if (isRichText) {
-			textPane.setSize(ZERO_DIMENSION);
-			return textPane.getPreferredSize();
+			JGraphpadLabelCache cache = JGraphpadLabelCache.getSharedInstance();
+			d = cache.getSize(richTextKey);
+			if (d == null) {
+				loadRichText();
+				textPane.setSize(ZERO_DIMENSION);
+				d = textPane.getPreferredSize();
+				cache.putSize(richTextKey, d);
+			}
+			return d;
 		} else if (valueComponent != null)
 			return valueComponent.getPreferredSize();
 		return d;
@@ -809,6 +969,7 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 		super.resetAttributes();
 		shape = JGraphpadGraphConstants.getVertexShape(view.getAllAttributes());
 		isRichText = false;
+		richTextValue = null;
 		valueComponent = null;
 	}
 
@@ -849,34 +1010,46 @@ public class JGraphpadVertexRenderer extends VertexRenderer {
 			valueComponent = null;
 		}
 
-		// Configures the rich text box for rendering the rich text
+		// Stores the rich text configuration. The rich text is inserted into
+		// the text pane in loadRichText if it is not in the label cache.
+		richTextValue = null;
+		richTextLoaded = false;
 		if (isRichText) {
-			StyledDocument document = (StyledDocument) textPane.getDocument();
-			((JGraphpadRichTextValue) ((JGraphpadBusinessObject) userObject)
-					.getValue()).insertInto(document);
-
-			// Applies the inset to the rich text renderer
-			if (insetBorder != null)
-				textPane.setBorder(insetBorder);
-			else
-				textPane.setBorder(BorderFactory.createEmptyBorder(INSET,
-						INSET, INSET, INSET));
-
-			// Uses the label's alignment and sets it on the text pane to work
-			// around the problem of the text pane alignments not being stored.
-			// Note: As a consequence a text pane can only have one alignment
-			// for all text it contains. It is not possible to align the
-			// paragraphs individually.
-			int align = getHorizontalAlignment();
-			SimpleAttributeSet sas = new SimpleAttributeSet();
-			align = (align == JLabel.CENTER) ? StyleConstants.ALIGN_CENTER
-					: (align == JLabel.RIGHT) ? StyleConstants.ALIGN_RIGHT
-							: StyleConstants.ALIGN_LEFT;
-			StyleConstants.setAlignment(sas, align);
-			document.setParagraphAttributes(0, document.getLength(), sas, true);
+			richTextValue = (JGraphpadRichTextValue) ((JGraphpadBusinessObject) userObject)
+					.getValue();
+			richTextInset = (insetBorder != null) ? i : INSET;
+			richTextAlignment = getHorizontalAlignment();
+			richTextKey = JGraphpadLabelCache.createKey(new Object[] {
+					richTextValue.getRichText(), new Integer(richTextInset),
+					new Integer(richTextAlignment) });
 		}
 	}
 
+	/**
+	 * Sets the shared document of the rich text value of the current view on
+	 * the text pane and applies the inset if it has not been set yet.
+	 */
+	protected void loadRichText() {
+		if (richTextLoaded || richTextValue == null)
+			return;
+		richTextLoaded = true;
+
+		// Uses the label's alignment for the shared document to work around
+		// the problem of the text pane alignments not being stored.
+		// Note: As a consequence a text pane can only have one alignment
+		// for all text it contains. It is not possible to align the
+		// paragraphs individually.
+		int align = richTextAlignment;
+		align = (align == JLabel.CENTER) ? StyleConstants.ALIGN_CENTER
+				: (align == JLabel.RIGHT) ? StyleConstants.ALIGN_RIGHT
+						: StyleConstants.ALIGN_LEFT;
+		textPane.setDocument(richTextValue.getSharedDocument(align));
+
+		// Applies the inset to the rich text renderer
+		textPane.setBorder(BorderFactory.createEmptyBorder(richTextInset,
+				richTextInset, richTextInset, richTextInset));
+	}
+
 	/**
 	 * Detects whether or not a point has hit the folding icon. This
 	 * implementation never returns true if the
@@ -0,0 +1,838 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.util;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.MutableTreeNode;
+
+import org.jgraph.graph.AttributeMap;
+import org.jgraph.graph.ConnectionSet;
+import org.jgraph.graph.DefaultEdge;
+import org.jgraph.graph.DefaultGraphCell;
+import org.jgraph.graph.DefaultGraphModel;
+import org.jgraph.graph.DefaultPort;
+import org.jgraph.graph.Edge;
+import org.jgraph.graph.GraphConstants;
+import org.jgraph.graph.GraphModel;
+import org.jgraph.util.ParallelEdgeRouter;
+
+import com.jgraph.editor.JGraphEditorModel;
+import com.jgraph.pad.JGraphpadDiagram;
+import com.jgraph.pad.JGraphpadFile;
+import com.jgraph.pad.JGraphpadLibrary;
+import com.jgraph.pad.graph.JGraphpadBusinessObject;
+import com.jgraph.pad.graph.JGraphpadGraphConstants;
+import com.jgraph.pad.graph.JGraphpadGraphLayoutCache;
+import com.jgraph.pad.graph.JGraphpadGraphModel;
+import com.jgraph.pad.graph.JGraphpadRichTextValue;
+
+/**
+ * Codec for the binary JGraphpad file format. The codec writes files,
+ * diagrams, libraries, graph models, cells, attribute maps, business objects
+ * and rich text values in a single pass using a tagged binary stream, without
+ * building a document tree or using reflection for the known classes. Object
+ * identity is preserved through a reference table so that cells may be
+ * referenced from the connection set and the visible set of the layout cache.
+ * Values of unknown classes are embedded as XML fragments using
+ * {@link JGraphEditorModel#writeObject(Object, java.io.OutputStream)} so that
+ * any file that can be written as XML is also written losslessly by this
+ * codec. <br>
+ * Note: The codec itself is stateless, all state is kept in a
+ * {@link Writer} or {@link Reader} for the duration of a single call.
+ *
+ * @see JGraphEditorModel#addCodec(String, JGraphEditorModel.Codec)
+ */
+public class JGraphpadBinaryCodec implements JGraphEditorModel.Codec {
+
+	/**
+	 * Defines the default extension for binary files.
+	 */
+	public static final String EXTENSION = ".jgpb";
+
+	/**
+	 * Defines the magic number at the start of each binary file ("JGPB").
+	 */
+	public static final int MAGIC = 0x4A475042;
+
+	/**
+	 * Defines the version of the binary file format.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Defines the type tags used in the binary stream.
+	 */
+	protected static final byte TYPE_NULL = 0, TYPE_REFERENCE = 1,
+			TYPE_SYMBOL = 2, TYPE_STRING = 3, TYPE_BOOLEAN = 4,
+			TYPE_INTEGER = 5, TYPE_LONG = 6, TYPE_FLOAT = 7, TYPE_DOUBLE = 8,
+			TYPE_COLOR = 9, TYPE_FONT = 10, TYPE_POINT = 11,
+			TYPE_RECTANGLE = 12, TYPE_FLOATARRAY = 13, TYPE_LIST = 14,
+			TYPE_SET = 15, TYPE_MAP = 16, TYPE_CELL = 17,
+			TYPE_BUSINESSOBJECT = 18, TYPE_RICHTEXT = 19, TYPE_ROUTING = 20,
+			TYPE_SHADOWBORDER = 21, TYPE_IMAGEICON = 22, TYPE_FILE = 23,
+			TYPE_LIBRARY = 24, TYPE_DIAGRAM = 25, TYPE_GRAPHMODEL = 26,
+			TYPE_LAYOUTCACHE = 27, TYPE_XML = 28;
+
+	/**
+	 * Defines the implementation classes for points, rectangles, lists, sets
+	 * and maps, eg. Point2D.Double, AttributeMap.SerializablePoint2D and
+	 * Point or ArrayList, LinkedList and Vector.
+	 */
+	protected static final byte KIND_DEFAULT = 0, KIND_ALTERNATIVE = 1,
+			KIND_LEGACY = 2;
+
+	/**
+	 * Defines the shared routing instances and the stateless
+	 * {@link JGraphpadParallelEdgeRouter}. Other routings are written as XML
+	 * fragments.
+	 */
+	protected static final byte ROUTING_SIMPLE = 0, ROUTING_DEFAULT = 1,
+			ROUTING_PARALLEL = 2, ROUTING_PARALLELSPLINE = 3,
+			ROUTING_PADPARALLEL = 4;
+
+	/**
+	 * Writes the specified object to the output stream.
+	 *
+	 * @param model
+	 *            The document model used for XML fragments.
+	 * @param object
+	 *            The object to be written.
+	 * @param out
+	 *            The output stream to write to.
+	 */
+	public void writeObject(JGraphEditorModel model, Object object,
+			OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+				out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		new Writer(model, data).writeObject(object);
+		data.flush();
+	}
+
+	/**
+	 * Returns a new object from the specified input stream.
+	 *
+	 * @param model
+	 *            The document model used for XML fragments.
+	 * @param in
+	 *            The input stream to read from.
+	 * @return Returns the object that was read.
+	 * @throws IOException
+	 *             If the stream is not a binary JGraphpad file.
+	 */
+	public Object readObject(JGraphEditorModel model, InputStream in)
+			throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a binary JGraphpad file");
+		int version = data.readInt();
+		if (version > VERSION)
+			throw new IOException("Unsupported file version " + version);
+		return new Reader(model, data).readObject();
+	}
+
+	/**
+	 * Writes objects to a data output stream. Holds the reference and symbol
+	 * tables for a single invocation of the codec.
+	 */
+	public static class Writer {
+
+		/**
+		 * References the model used for XML fragments.
+		 */
+		protected JGraphEditorModel model;
+
+		/**
+		 * References the stream to write to.
+		 */
+		protected DataOutputStream out;
+
+		/**
+		 * Maps from objects that have been written to their ids.
+		 */
+		protected Map ids = new IdentityHashMap();
+
+		/**
+		 * Maps from symbols that have been written to their ids.
+		 */
+		protected Map symbols = new HashMap();
+
+		/**
+		 * Constructs a new writer for the specified model and stream.
+		 *
+		 * @param model
+		 *            The model to use for XML fragments.
+		 * @param out
+		 *            The stream to write to.
+		 */
+		public Writer(JGraphEditorModel model, DataOutputStream out) {
+			this.model = model;
+			this.out = out;
+		}
+
+		/**
+		 * Writes the specified object, which may be <code>null</code>.
+		 *
+		 * @param obj
+		 *            The object to be written.
+		 */
+		public void writeObject(Object obj) throws IOException {
+			if (obj == null) {
+				out.writeByte(TYPE_NULL);
+			} else if (obj instanceof String) {
+				out.writeByte(TYPE_STRING);
+				writeString((String) obj);
+			} else if (obj instanceof Boolean) {
+				out.writeByte(TYPE_BOOLEAN);
+				out.writeBoolean(((Boolean) obj).booleanValue());
+			} else if (obj instanceof Integer) {
+				out.writeByte(TYPE_INTEGER);
+				out.writeInt(((Integer) obj).intValue());
+			} else if (obj instanceof Long) {
+				out.writeByte(TYPE_LONG);
+				out.writeLong(((Long) obj).longValue());
+			} else if (obj instanceof Float) {
+				out.writeByte(TYPE_FLOAT);
+				out.writeFloat(((Float) obj).floatValue());
+			} else if (obj instanceof Double) {
+				out.writeByte(TYPE_DOUBLE);
+				out.writeDouble(((Double) obj).doubleValue());
+			} else if (obj.getClass() == Color.class) {
+				out.writeByte(TYPE_COLOR);
+				out.writeInt(((Color) obj).getRGB());
+			} else if (obj.getClass() == Font.class && isPlainFont((Font) obj)) {
+				Font font = (Font) obj;
+				out.writeByte(TYPE_FONT);
+				writeSymbol(font.getName());
+				out.writeInt(font.getStyle());
+				out.writeFloat(font.getSize2D());
+			} else if (obj instanceof Edge.Routing && getRoutingKind(obj) >= 0) {
+				out.writeByte(TYPE_ROUTING);
+				out.writeByte(getRoutingKind(obj));
+			} else if (obj instanceof JGraphpadShadowBorder) {
+				out.writeByte(TYPE_SHADOWBORDER);
+			} else {
+				Integer id = (Integer) ids.get(obj);
+				if (id != null) {
+					out.writeByte(TYPE_REFERENCE);
+					out.writeInt(id.intValue());
+				} else {
+					ids.put(obj, new Integer(ids.size()));
+					writeComposite(obj);
+				}
+			}
+		}
+
+		/**
+		 * Writes the specified object, which has not been written before.
+		 *
+		 * @param obj
+		 *            The object to be written.
+		 */
+		protected void writeComposite(Object obj) throws IOException {
+			Class clazz = obj.getClass();
+			if (clazz == Point2D.Double.class
+					|| clazz == AttributeMap.SerializablePoint2D.class
+					|| clazz == Point.class) {
+				Point2D pt = (Point2D) obj;
+				out.writeByte(TYPE_POINT);
+				out.writeByte((clazz == Point2D.Double.class) ? KIND_DEFAULT
+						: (clazz == Point.class) ? KIND_LEGACY : KIND_ALTERNATIVE);
+				out.writeDouble(pt.getX());
+				out.writeDouble(pt.getY());
+			} else if (clazz == Rectangle2D.Double.class
+					|| clazz == AttributeMap.SerializableRectangle2D.class
+					|| clazz == Rectangle.class) {
+				Rectangle2D rect = (Rectangle2D) obj;
+				out.writeByte(TYPE_RECTANGLE);
+				out.writeByte((clazz == Rectangle2D.Double.class) ? KIND_DEFAULT
+						: (clazz == Rectangle.class) ? KIND_LEGACY
+								: KIND_ALTERNATIVE);
+				out.writeDouble(rect.getX());
+				out.writeDouble(rect.getY());
+				out.writeDouble(rect.getWidth());
+				out.writeDouble(rect.getHeight());
+			} else if (clazz == float[].class) {
+				float[] values = (float[]) obj;
+				out.writeByte(TYPE_FLOATARRAY);
+				out.writeInt(values.length);
+				for (int i = 0; i < values.length; i++)
+					out.writeFloat(values[i]);
+			} else if (clazz == ArrayList.class || clazz == LinkedList.class
+					|| clazz == Vector.class) {
+				out.writeByte(TYPE_LIST);
+				out.writeByte((clazz == ArrayList.class) ? KIND_DEFAULT
+						: (clazz == LinkedList.class) ? KIND_ALTERNATIVE
+								: KIND_LEGACY);
+				writeCollection((List) obj);
+			} else if (clazz == HashSet.class || clazz == LinkedHashSet.class) {
+				out.writeByte(TYPE_SET);
+				out.writeByte((clazz == HashSet.class) ? KIND_DEFAULT
+						: KIND_ALTERNATIVE);
+				writeCollection((Set) obj);
+			} else if (clazz == Hashtable.class || clazz == AttributeMap.class
+					|| clazz == HashMap.class) {
+				out.writeByte(TYPE_MAP);
+				out.writeByte((clazz == Hashtable.class) ? KIND_DEFAULT
+						: (clazz == AttributeMap.class) ? KIND_ALTERNATIVE
+								: KIND_LEGACY);
+				writeMap((Map) obj);
+			} else if (isDefaultCell(obj)) {
+				DefaultGraphCell cell = (DefaultGraphCell) obj;
+				out.writeByte(TYPE_CELL);
+				writeSymbol(clazz.getName());
+				writeObject(cell.getUserObject());
+				writeObject(cell.getAttributes());
+				writeChildren(cell);
+			} else if (clazz == JGraphpadBusinessObject.class) {
+				out.writeByte(TYPE_BUSINESSOBJECT);
+				writeObject(((JGraphpadBusinessObject) obj).getProperties());
+			} else if (clazz == JGraphpadRichTextValue.class) {
+				out.writeByte(TYPE_RICHTEXT);
+				writeObject(((JGraphpadRichTextValue) obj).getRichText());
+			} else if (clazz == JGraphpadImageIcon.class) {
+				JGraphpadImageIcon icon = (JGraphpadImageIcon) obj;
+				out.writeByte(TYPE_IMAGEICON);
+				writeObject(icon.getFileName());
+				writeObject(icon.getDescription());
+			} else if (clazz == JGraphpadFile.class) {
+				out.writeByte(TYPE_FILE);
+				writeChildren((JGraphpadFile) obj);
+			} else if (clazz == JGraphpadLibrary.class) {
+				JGraphpadLibrary library = (JGraphpadLibrary) obj;
+				out.writeByte(TYPE_LIBRARY);
+				writeObject(library.getFilename());
+				out.writeBoolean(library.isReadOnly());
+				writeObject(library.getGraphLayoutCache());
+				writeChildren(library);
+			} else if (clazz == JGraphpadDiagram.class) {
+				JGraphpadDiagram diagram = (JGraphpadDiagram) obj;
+				out.writeByte(TYPE_DIAGRAM);
+				writeObject(diagram.getName());
+				writeObject(diagram.getProperties());
+				writeObject(diagram.getGraphLayoutCache());
+				writeChildren(diagram);
+			} else if (clazz == JGraphpadGraphModel.class
+					&& isEncodable((GraphModel) obj)) {
+				JGraphpadGraphModel graphModel = (JGraphpadGraphModel) obj;
+				out.writeByte(TYPE_GRAPHMODEL);
+				writeObject(graphModel.getRoots());
+				writeObject(graphModel.getAttributes());
+				writeConnections(graphModel.getConnectionSet());
+			} else if (clazz == JGraphpadGraphLayoutCache.class
+					&& isEncodable(((JGraphpadGraphLayoutCache) obj)
+							.getModel())) {
+				JGraphpadGraphLayoutCache cache = (JGraphpadGraphLayoutCache) obj;
+				out.writeByte(TYPE_LAYOUTCACHE);
+				writeObject(cache.getModel());
+				writeObject(cache.getVisibleSet());
+				out.writeBoolean(cache.isPartial());
+			} else {
+				ByteArrayOutputStream bos = new ByteArrayOutputStream();
+				model.writeObject(obj, bos);
+				out.writeByte(TYPE_XML);
+				out.writeInt(bos.size());
+				bos.writeTo(out);
+			}
+		}
+
+		/**
+		 * Writes the size and elements of the specified collection.
+		 */
+		protected void writeCollection(java.util.Collection collection)
+				throws IOException {
+			out.writeInt(collection.size());
+			Iterator it = collection.iterator();
+			while (it.hasNext())
+				writeObject(it.next());
+		}
+
+		/**
+		 * Writes the size and entries of the specified map. String keys are
+		 * written as symbols.
+		 */
+		protected void writeMap(Map map) throws IOException {
+			out.writeInt(map.size());
+			Iterator it = map.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry entry = (Map.Entry) it.next();
+				Object key = entry.getKey();
+				if (key instanceof String) {
+					out.writeByte(TYPE_SYMBOL);
+					writeSymbol((String) key);
+				} else
+					writeObject(key);
+				writeObject(entry.getValue());
+			}
+		}
+
+		/**
+		 * Writes the child count and children of the specified node.
+		 */
+		protected void writeChildren(DefaultMutableTreeNode node)
+				throws IOException {
+			int childCount = node.getChildCount();
+			out.writeInt(childCount);
+			for (int i = 0; i < childCount; i++)
+				writeObject(node.getChildAt(i));
+		}
+
+		/**
+		 * Writes the connections of the specified connection set.
+		 */
+		protected void writeConnections(ConnectionSet cs) throws IOException {
+			Set connections = (cs != null) ? cs.getConnections() : null;
+			if (connections != null) {
+				out.writeInt(connections.size());
+				Iterator it = connections.iterator();
+				while (it.hasNext()) {
+					ConnectionSet.Connection conn = (ConnectionSet.Connection) it
+							.next();
+					writeObject(conn.getEdge());
+					writeObject(conn.getPort());
+					out.writeBoolean(conn.isSource());
+				}
+			} else
+				out.writeInt(0);
+		}
+
+		/**
+		 * Writes the specified string using its id in the symbol table. The
+		 * string is only written if it is not in the symbol table.
+		 */
+		protected void writeSymbol(String symbol) throws IOException {
+			Integer id = (Integer) symbols.get(symbol);
+			if (id != null) {
+				out.writeInt(id.intValue());
+			} else {
+				int index = symbols.size();
+				symbols.put(symbol, new Integer(index));
+				out.writeInt(index);
+				writeString(symbol);
+			}
+		}
+
+		/**
+		 * Writes the UTF-8 encoded bytes of the specified string. Unlike
+		 * {@link DataOutputStream#writeUTF(String)} this has no length limit.
+		 */
+		protected void writeString(String value) throws IOException {
+			byte[] bytes = value.getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+	}
+
+	/**
+	 * Reads objects from a data input stream. Holds the reference and symbol
+	 * tables for a single invocation of the codec.
+	 */
+	public static class Reader {
+
+		/**
+		 * References the model used for XML fragments.
+		 */
+		protected JGraphEditorModel model;
+
+		/**
+		 * References the stream to read from.
+		 */
+		protected DataInputStream in;
+
+		/**
+		 * Holds the objects that have been read in the order of their ids.
+		 */
+		protected List objects = new ArrayList();
+
+		/**
+		 * Holds the symbols that have been read in the order of their ids.
+		 */
+		protected List symbols = new ArrayList();
+
+		/**
+		 * Constructs a new reader for the specified model and stream.
+		 *
+		 * @param model
+		 *            The model to use for XML fragments.
+		 * @param in
+		 *            The stream to read from.
+		 */
+		public Reader(JGraphEditorModel model, DataInputStream in) {
+			this.model = model;
+			this.in = in;
+		}
+
+		/**
+		 * Reads the next object from the stream.
+		 *
+		 * @return Returns the object that was read.
+		 */
+		public Object readObject() throws IOException {
+			byte type = in.readByte();
+			switch (type) {
+			case TYPE_NULL:
+				return null;
+			case TYPE_REFERENCE:
+				return objects.get(in.readInt());
+			case TYPE_SYMBOL:
+				return readSymbol();
+			case TYPE_STRING:
+				return readString();
+			case TYPE_BOOLEAN:
+				return Boolean.valueOf(in.readBoolean());
+			case TYPE_INTEGER:
+				return new Integer(in.readInt());
+			case TYPE_LONG:
+				return new Long(in.readLong());
+			case TYPE_FLOAT:
+				return new Float(in.readFloat());
+			case TYPE_DOUBLE:
+				return new Double(in.readDouble());
+			case TYPE_COLOR:
+				return new Color(in.readInt(), true);
+			case TYPE_FONT:
+				String name = readSymbol();
+				int style = in.readInt();
+				float size = in.readFloat();
+				Font font = new Font(name, style, (int) size);
+				return (font.getSize2D() != size) ? font.deriveFont(size)
+						: font;
+			case TYPE_ROUTING:
+				return getRouting(in.readByte());
+			case TYPE_SHADOWBORDER:
+				return JGraphpadShadowBorder.getSharedInstance();
+			}
+			return readComposite(type);
+		}
+
+		/**
+		 * Reads the composite object of the specified type and registers it
+		 * in the reference table before its contents are read.
+		 *
+		 * @param type
+		 *            The type tag of the object to be read.
+		 * @return Returns the object that was read.
+		 */
+		protected Object readComposite(byte type) throws IOException {
+			int id = objects.size();
+			objects.add(null);
+			Object result = null;
+			switch (type) {
+			case TYPE_POINT:
+				byte pointKind = in.readByte();
+				double px = in.readDouble();
+				double py = in.readDouble();
+				if (pointKind == KIND_LEGACY)
+					result = new Point((int) px, (int) py);
+				else if (pointKind == KIND_ALTERNATIVE)
+					result = new AttributeMap.SerializablePoint2D(px, py);
+				else
+					result = new Point2D.Double(px, py);
+				break;
+			case TYPE_RECTANGLE:
+				byte rectKind = in.readByte();
+				double x = in.readDouble();
+				double y = in.readDouble();
+				double w = in.readDouble();
+				double h = in.readDouble();
+				if (rectKind == KIND_LEGACY)
+					result = new Rectangle((int) x, (int) y, (int) w, (int) h);
+				else if (rectKind == KIND_ALTERNATIVE)
+					result = new AttributeMap.SerializableRectangle2D(x, y, w,
+							h);
+				else
+					result = new Rectangle2D.Double(x, y, w, h);
+				break;
+			case TYPE_FLOATARRAY:
+				float[] values = new float[in.readInt()];
+				for (int i = 0; i < values.length; i++)
+					values[i] = in.readFloat();
+				result = values;
+				break;
+			case TYPE_LIST:
+				byte listKind = in.readByte();
+				int listSize = in.readInt();
+				List list = (listKind == KIND_ALTERNATIVE) ? new LinkedList()
+						: (listKind == KIND_LEGACY) ? (List) new Vector(listSize)
+								: new ArrayList(listSize);
+				objects.set(id, list);
+				for (int i = 0; i < listSize; i++)
+					list.add(readObject());
+				result = list;
+				break;
+			case TYPE_SET:
+				byte setKind = in.readByte();
+				int setSize = in.readInt();
+				Set set = (setKind == KIND_ALTERNATIVE) ? new LinkedHashSet(
+						setSize * 2) : new HashSet(setSize * 2);
+				objects.set(id, set);
+				for (int i = 0; i < setSize; i++)
+					set.add(readObject());
+				result = set;
+				break;
+			case TYPE_MAP:
+				byte mapKind = in.readByte();
+				int mapSize = in.readInt();
+				int capacity = Math.max(11, mapSize * 2);
+				Map map = (mapKind == KIND_ALTERNATIVE) ? new AttributeMap(
+						capacity) : (mapKind == KIND_LEGACY) ? (Map) new HashMap(
+						capacity) : new Hashtable(capacity);
+				objects.set(id, map);
+				for (int i = 0; i < mapSize; i++) {
+					Object key = readObject();
+					map.put(key, readObject());
+				}
+				result = map;
+				break;
+			case TYPE_CELL:
+				DefaultGraphCell cell = createCell(readSymbol());
+				objects.set(id, cell);
+				cell.setUserObject(readObject());
+				cell.setAttributes((AttributeMap) readObject());
+				readChildren(cell);
+				result = cell;
+				break;
+			case TYPE_BUSINESSOBJECT:
+				JGraphpadBusinessObject bo = new JGraphpadBusinessObject();
+				objects.set(id, bo);
+				bo.setProperties((Map) readObject());
+				result = bo;
+				break;
+			case TYPE_RICHTEXT:
+				JGraphpadRichTextValue richText = new JGraphpadRichTextValue();
+				objects.set(id, richText);
+				richText.setRichText((String) readObject());
+				result = richText;
+				break;
+			case TYPE_IMAGEICON:
+				JGraphpadImageIcon icon = new JGraphpadImageIcon();
+				objects.set(id, icon);
+				String filename = (String) readObject();
+				icon.setDescription((String) readObject());
+				if (filename != null)
+					icon.setFileName(filename);
+				result = icon;
+				break;
+			case TYPE_FILE:
+				JGraphpadFile file = new JGraphpadFile();
+				objects.set(id, file);
+				readChildren(file);
+				result = file;
+				break;
+			case TYPE_LIBRARY:
+				JGraphpadLibrary library = new JGraphpadLibrary(
+						(String) readObject(), null);
+				objects.set(id, library);
+				library.setReadOnly(in.readBoolean());
+				library
+						.setGraphLayoutCache((JGraphpadGraphLayoutCache) readObject());
+				readChildren(library);
+				result = library;
+				break;
+			case TYPE_DIAGRAM:
+				String diagramName = (String) readObject();
+				Map properties = (Map) readObject();
+				JGraphpadDiagram diagram = new JGraphpadDiagram(diagramName,
+						(JGraphpadGraphLayoutCache) readObject(), properties);
+				objects.set(id, diagram);
+				readChildren(diagram);
+				result = diagram;
+				break;
+			case TYPE_GRAPHMODEL:
+				List roots = (List) readObject();
+				AttributeMap attributes = (AttributeMap) readObject();
+				result = new JGraphpadGraphModel(roots, attributes,
+						readConnections());
+				break;
+			case TYPE_LAYOUTCACHE:
+				GraphModel graphModel = (GraphModel) readObject();
+				Set visibleSet = (Set) readObject();
+				result = new JGraphpadGraphLayoutCache(graphModel, visibleSet,
+						in.readBoolean());
+				break;
+			case TYPE_XML:
+				byte[] xml = new byte[in.readInt()];
+				in.readFully(xml);
+				result = model.readObject(new ByteArrayInputStream(xml));
+				break;
+			default:
+				throw new IOException("Unknown type " + type);
+			}
+			objects.set(id, result);
+			return result;
+		}
+
+		/**
+		 * Reads the children of the specified node and adds them to the node.
+		 */
+		protected void readChildren(DefaultMutableTreeNode node)
+				throws IOException {
+			int childCount = in.readInt();
+			for (int i = 0; i < childCount; i++)
+				node.add((MutableTreeNode) readObject());
+		}
+
+		/**
+		 * Reads a connection set from the stream.
+		 */
+		protected ConnectionSet readConnections() throws IOException {
+			ConnectionSet cs = new ConnectionSet();
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				Object edge = readObject();
+				Object port = readObject();
+				cs.connect(edge, port, in.readBoolean());
+			}
+			return cs;
+		}
+
+		/**
+		 * Reads a symbol from the stream. If the symbol is not in the symbol
+		 * table then the string follows the id in the stream.
+		 */
+		protected String readSymbol() throws IOException {
+			int index = in.readInt();
+			if (index == symbols.size())
+				symbols.add(readString());
+			return (String) symbols.get(index);
+		}
+
+		/**
+		 * Reads a UTF-8 encoded string from the stream.
+		 */
+		protected String readString() throws IOException {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, "UTF-8");
+		}
+
+		/**
+		 * Returns a new cell for the specified class name, which is one of
+		 * DefaultGraphCell, DefaultEdge and DefaultPort.
+		 */
+		protected DefaultGraphCell createCell(String className)
+				throws IOException {
+			if (className.equals(DefaultGraphCell.class.getName()))
+				return new DefaultGraphCell();
+			else if (className.equals(DefaultEdge.class.getName()))
+				return new DefaultEdge();
+			else if (className.equals(DefaultPort.class.getName()))
+				return new DefaultPort();
+			throw new IOException("Unknown cell class " + className);
+		}
+
+	}
+
+	/**
+	 * Returns true if the specified font can be restored from its name, style
+	 * and size.
+	 */
+	protected static boolean isPlainFont(Font font) {
+		return !font.isTransformed() && !font.hasLayoutAttributes();
+	}
+
+	/**
+	 * Returns true if the specified object is a DefaultGraphCell, DefaultEdge
+	 * or DefaultPort, but not a subclass of these.
+	 */
+	protected static boolean isDefaultCell(Object cell) {
+		Class clazz = cell.getClass();
+		return clazz == DefaultGraphCell.class || clazz == DefaultEdge.class
+				|| clazz == DefaultPort.class;
+	}
+
+	/**
+	 * Returns true if the specified model is a JGraphpadGraphModel that only
+	 * contains default cells. Other models are written as XML fragments
+	 * together with their layout cache so that the cells in the connection
+	 * set and visible set keep their identity.
+	 */
+	protected static boolean isEncodable(GraphModel model) {
+		if (model == null || model.getClass() != JGraphpadGraphModel.class)
+			return false;
+		Object[] cells = DefaultGraphModel.getAll(model);
+		for (int i = 0; i < cells.length; i++)
+			if (!isDefaultCell(cells[i]))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the kind of the specified shared routing instance or -1 if the
+	 * routing is not a shared instance.
+	 */
+	protected static int getRoutingKind(Object routing) {
+		Class clazz = routing.getClass();
+		if (clazz == DefaultEdge.DefaultRouting.class)
+			return ROUTING_SIMPLE;
+		else if (clazz == DefaultEdge.LoopRouting.class)
+			return ROUTING_DEFAULT;
+		else if (clazz == JGraphpadParallelSplineRouter.class)
+			return ROUTING_PARALLELSPLINE;
+		else if (clazz == ParallelEdgeRouter.class)
+			return ROUTING_PARALLEL;
+		else if (clazz == JGraphpadParallelEdgeRouter.class)
+			return ROUTING_PADPARALLEL;
+		return -1;
+	}
+
+	/**
+	 * Returns the shared routing instance for the specified kind or a new
+	 * JGraphpadParallelEdgeRouter, which has no shared instance.
+	 *
+	 * @throws IOException
+	 *             If the kind is not a known routing kind.
+	 */
+	protected static Object getRouting(int kind) throws IOException {
+		switch (kind) {
+		case ROUTING_SIMPLE:
+			return GraphConstants.getROUTING_SIMPLE();
+		case ROUTING_DEFAULT:
+			return GraphConstants.getROUTING_DEFAULT();
+		case ROUTING_PARALLEL:
+			return JGraphpadGraphConstants.getParallelEdgeRouting();
+		case ROUTING_PARALLELSPLINE:
+			return JGraphpadGraphConstants.getParallelSplineRouting();
+		case ROUTING_PADPARALLEL:
+			return new JGraphpadParallelEdgeRouter();
+		}
+		throw new IOException("Unknown routing " + kind);
+	}
+
+}
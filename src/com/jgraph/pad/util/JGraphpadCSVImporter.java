@@ -0,0 +1,446 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.util;
+
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.undo.CompoundEdit;
+
+import org.jgraph.graph.ConnectionSet;
+import org.jgraph.graph.DefaultGraphModel;
+import org.jgraph.graph.GraphConstants;
+import org.jgraph.graph.GraphLayoutCache;
+import org.jgraph.graph.GraphModel;
+
+import com.jgraph.pad.graph.JGraphpadRichTextValue;
+
+/**
+ * Streaming importer for comma-delimeted edge lists. Each line has the format
+ * a,b[,c] where a and b are the keys of vertices and c is the label of the
+ * edge to be inserted between a and b. Lines with a single key insert a
+ * vertex. Vertices are looked up by key among the existing vertices of the
+ * model and the vertices created by the importer, and only one edge is
+ * inserted for each ordered pair of keys.<br>
+ * The importer reads the input line by line and inserts the cells into the
+ * layout cache in batches, so that the text of the input is never held in
+ * memory and large files can be imported. The batches hold at least
+ * {@link #BATCH_SIZE} cells and half as many cells as have been inserted
+ * before, because the layout cache reloads all its roots for each insert. The
+ * cells created so far are tracked in hash maps, which makes the import time
+ * linear in the number of lines. Each batch is inserted on the event dispatch
+ * thread, so the import may run in a background thread and may be cancelled
+ * between the batches, in which case the batches that have been inserted
+ * remain in the model. The background thread never reads the model: the
+ * edges are connected to the ports of their vertices when the batch is
+ * inserted, and edges whose vertices have been removed from the model in
+ * the meantime are dropped.<br>
+ * If the model is a {@link DefaultGraphModel} then the undoable edit
+ * listeners of the model are notified of a single edit when the import ends,
+ * so that the import, including a cancelled import, is undone in one step.
+ * Edits made by the user while the import is running come before the import
+ * in the undo history. For other models the listeners are notified of each
+ * batch.
+ */
+public class JGraphpadCSVImporter {
+
+	/**
+	 * Specifies the minimum number of cells to insert at once. Default is
+	 * 5000.
+	 */
+	public static int BATCH_SIZE = 5000;
+
+	/**
+	 * Defines the geometry of the matrix for new vertices.
+	 */
+	public static int COLUMNS = 8, OFFSET = 40, WIDTH = 100, HEIGHT = 100;
+
+	/**
+	 * References the layout cache to import the cells into.
+	 */
+	protected GraphLayoutCache cache;
+
+	/**
+	 * Holds the delimeter of the tokens.
+	 */
+	protected String delim;
+
+	/**
+	 * References the prototypes to create new vertices and edges with.
+	 */
+	protected Object vertexPrototype, edgePrototype;
+
+	/**
+	 * Holds the label for edges that do not specify a label.
+	 */
+	protected String defaultEdgeLabel;
+
+	/**
+	 * Maps from keys to vertices.
+	 */
+	protected Map vertices = new HashMap();
+
+	/**
+	 * Maps from source keys to the sets of target keys that have an edge.
+	 */
+	protected Map neighbours = new HashMap();
+
+	/**
+	 * Holds the cells of the current batch.
+	 */
+	protected List batch = new ArrayList();
+
+	/**
+	 * Holds the edges of the current batch with their source and target
+	 * vertices as arrays of the form { edge, source, target }.
+	 */
+	protected List connections = new ArrayList();
+
+	/**
+	 * Holds the edits of the batches that have been inserted by the current
+	 * import. This is only accessed on the event dispatch thread.
+	 */
+	protected CompoundEdit edit;
+
+	/**
+	 * Holds the number of lines that have been read.
+	 */
+	protected int lineCount = 0;
+
+	/**
+	 * Holds the number of cells that have been inserted.
+	 */
+	protected int insertCount = 0;
+
+	/**
+	 * Specifies if the import has been cancelled.
+	 */
+	protected volatile boolean cancelled = false;
+
+	/**
+	 * Constructs a new importer for the specified layout cache. The existing
+	 * vertices of the model of the cache may be referenced by their string
+	 * representation as keys. This must be invoked on the event dispatch
+	 * thread.
+	 *
+	 * @param cache
+	 *            The layout cache to import into.
+	 * @param delim
+	 *            The delimeter to parse the tokens.
+	 * @param vertexPrototype
+	 *            The prototype to create new vertices with.
+	 * @param edgePrototype
+	 *            The prototype to create new edges with.
+	 * @param defaultEdgeLabel
+	 *            The default label to use for edges if none is specified.
+	 */
+	public JGraphpadCSVImporter(GraphLayoutCache cache, String delim,
+			Object vertexPrototype, Object edgePrototype,
+			String defaultEdgeLabel) {
+		this.cache = cache;
+		this.delim = delim;
+		this.vertexPrototype = vertexPrototype;
+		this.edgePrototype = edgePrototype;
+		this.defaultEdgeLabel = defaultEdgeLabel;
+
+		// Adds the existing vertices from the graph layout cache
+		// into the vertex map for reference by the keys in the file.
+		GraphModel model = cache.getModel();
+		Object[] items = DefaultGraphModel.getAll(model);
+		if (items != null) {
+			for (int i = 0; i < items.length; i++)
+				if (items[i] != null && items[i].toString() != null
+						&& !model.isPort(items[i]) && !model.isEdge(items[i]))
+					vertices.put(items[i].toString(), items[i]);
+		}
+	}
+
+	/**
+	 * Reads the specified stream and inserts the cells into the layout cache.
+	 * The stream is closed when this returns. If the import is cancelled then
+	 * this throws an {@link InterruptedIOException} after inserting the cells
+	 * of the current line.
+	 *
+	 * @param in
+	 *            The stream to import the cells from.
+	 * @throws IOException
+	 *             If the stream cannot be read or the import was cancelled.
+	 */
+	public void importStream(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+		edit = new CompoundEdit();
+		try {
+			String line = reader.readLine();
+			while (line != null && !cancelled) {
+				lineCount++;
+				importLine(line);
+				if (batch.size() >= Math.max(BATCH_SIZE, insertCount / 2))
+					flush();
+				line = reader.readLine();
+			}
+		} finally {
+			flush();
+			invoke(new Runnable() {
+				public void run() {
+					postEdit();
+				}
+			});
+			reader.close();
+		}
+		if (cancelled)
+			throw new InterruptedIOException();
+	}
+
+	/**
+	 * Adds the cells for the specified line to the current batch.
+	 *
+	 * @param line
+	 *            The line to be imported.
+	 */
+	protected void importLine(String line) {
+		StringTokenizer st = new StringTokenizer(line, delim);
+		if (st.hasMoreTokens()) {
+			String srckey = st.nextToken().trim();
+			Object source = getVertex(srckey);
+			if (st.hasMoreTokens()) {
+				String tgtkey = st.nextToken().trim();
+				Object target = getVertex(tgtkey);
+				Set targets = (Set) neighbours.get(srckey);
+				if (targets == null) {
+					targets = new HashSet();
+					neighbours.put(srckey, targets);
+				}
+				if (!targets.contains(tgtkey)) {
+					String label = (st.hasMoreTokens()) ? st.nextToken().trim()
+							: defaultEdgeLabel;
+					GraphModel model = cache.getModel();
+					Object edge = DefaultGraphModel.cloneCell(model,
+							edgePrototype);
+					model.valueForCellChanged(edge, label);
+					connections.add(new Object[] { edge, source, target });
+					batch.add(edge);
+					targets.add(tgtkey);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the vertex for the specified key. If no vertex exists for the
+	 * key then a new vertex is created from the prototype, positioned in the
+	 * import matrix and added to the current batch.
+	 *
+	 * @param key
+	 *            The key to return the vertex for.
+	 * @return Returns the vertex for <code>key</code>.
+	 */
+	protected Object getVertex(String key) {
+		Object cell = vertices.get(key);
+		if (cell == null) {
+			GraphModel model = cache.getModel();
+			cell = DefaultGraphModel.cloneCell(model, vertexPrototype);
+			model.valueForCellChanged(cell, new JGraphpadRichTextValue(key));
+			GraphConstants.setResize(model.getAttributes(cell), true);
+
+			// Sets the initial location
+			int col = vertices.size() / COLUMNS;
+			int row = vertices.size() % COLUMNS;
+			Rectangle2D bounds = new Rectangle2D.Double(row * WIDTH + OFFSET,
+					col * HEIGHT + OFFSET, 10, 10);
+			GraphConstants.setBounds(model.getAttributes(cell), bounds);
+			vertices.put(key, cell);
+			batch.add(cell);
+		}
+		return cell;
+	}
+
+	/**
+	 * Inserts the cells of the current batch into the layout cache and starts
+	 * a new batch. The edges are connected using {@link #connect(List, List)}
+	 * and the cells are inserted on the event dispatch thread using
+	 * {@link #insert(Object[], ConnectionSet)}.
+	 */
+	protected void flush() {
+		if (!batch.isEmpty()) {
+			final List cells = batch;
+			final List edges = connections;
+			insertCount += cells.size();
+			batch = new ArrayList();
+			connections = new ArrayList();
+			invoke(new Runnable() {
+				public void run() {
+					ConnectionSet cs = connect(cells, edges);
+					insert(cells.toArray(), cs);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs the specified runnable on the event dispatch thread and waits for
+	 * it to finish. If the current thread is interrupted then the import is
+	 * cancelled.
+	 */
+	protected void invoke(Runnable runnable) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			runnable.run();
+		} else {
+			try {
+				SwingUtilities.invokeAndWait(runnable);
+			} catch (InterruptedException e) {
+				cancelled = true;
+			} catch (InvocationTargetException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Inserts the specified cells into the layout cache. If the model is a
+	 * DefaultGraphModel then its undoable edit listeners are replaced during
+	 * the insert, so that the edit is added to {@link #edit} instead. This is
+	 * invoked on the event dispatch thread.
+	 *
+	 * @param cells
+	 *            The cells to be inserted.
+	 * @param cs
+	 *            The connections of the cells.
+	 */
+	protected void insert(Object[] cells, ConnectionSet cs) {
+		GraphModel model = cache.getModel();
+		if (model instanceof DefaultGraphModel) {
+			DefaultGraphModel graphModel = (DefaultGraphModel) model;
+			UndoableEditListener[] listeners = graphModel
+					.getUndoableEditListeners();
+			for (int i = 0; i < listeners.length; i++)
+				graphModel.removeUndoableEditListener(listeners[i]);
+			UndoableEditListener collector = new UndoableEditListener() {
+				public void undoableEditHappened(UndoableEditEvent e) {
+					edit.addEdit(e.getEdit());
+				}
+			};
+			graphModel.addUndoableEditListener(collector);
+			try {
+				cache.insert(cells, null, cs, null, null);
+			} finally {
+				graphModel.removeUndoableEditListener(collector);
+				for (int i = 0; i < listeners.length; i++)
+					graphModel.addUndoableEditListener(listeners[i]);
+			}
+		} else
+			cache.insert(cells, null, cs, null, null);
+	}
+
+	/**
+	 * Ends {@link #edit} and notifies the undoable edit listeners of the model
+	 * if any batches have been inserted. This is invoked on the event dispatch
+	 * thread.
+	 */
+	protected void postEdit() {
+		edit.end();
+		if (edit.isSignificant())
+			((DefaultGraphModel) cache.getModel()).postEdit(edit);
+	}
+
+	/**
+	 * Returns the connections for the specified edges, which connect each edge
+	 * to the first ports of its source and target vertices. Edges whose
+	 * vertices have no ports or are neither in the specified cells nor in the
+	 * model are removed from the cells in a single pass. This is invoked on the event dispatch
+	 * thread.
+	 *
+	 * @param cells
+	 *            The cells of the batch to be inserted.
+	 * @param edges
+	 *            The edges of the batch with their source and target vertices.
+	 * @return Returns the connections of the edges.
+	 */
+	protected ConnectionSet connect(List cells, List edges) {
+		ConnectionSet cs = new ConnectionSet();
+		if (!edges.isEmpty()) {
+			GraphModel model = cache.getModel();
+			Set inserted = new HashSet(cells);
+			Set roots = new HashSet(Arrays.asList(DefaultGraphModel
+					.getRoots(model)));
+			Set dropped = new HashSet();
+			for (int i = 0; i < edges.size(); i++) {
+				Object[] edge = (Object[]) edges.get(i);
+				Object sourcePort = getPort(edge[1], inserted, roots);
+				Object targetPort = getPort(edge[2], inserted, roots);
+				if (sourcePort != null && targetPort != null)
+					cs.connect(edge[0], sourcePort, targetPort);
+				else
+					dropped.add(edge[0]);
+			}
+			if (!dropped.isEmpty())
+				cells.removeAll(dropped);
+		}
+		return cs;
+	}
+
+	/**
+	 * Returns the first port of the specified vertex or null if the vertex has
+	 * no children or if its topmost ancestor is neither in the specified
+	 * cells nor in the specified roots.
+	 */
+	protected Object getPort(Object vertex, Set cells, Set roots) {
+		GraphModel model = cache.getModel();
+		Object top = vertex;
+		while (model.getParent(top) != null)
+			top = model.getParent(top);
+		if ((cells.contains(top) || roots.contains(top))
+				&& model.getChildCount(vertex) > 0)
+			return model.getChild(vertex, 0);
+		return null;
+	}
+
+	/**
+	 * Cancels the import. The cells of the lines that have been read so far
+	 * are inserted into the layout cache.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Returns true if the import has been cancelled.
+	 *
+	 * @return Returns true if the import was cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns the number of lines that have been read.
+	 *
+	 * @return Returns the number of lines.
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+}
@@ -174,7 +174,9 @@ public class JGraphpadFileFilter extends javax.swing.filechooser.FileFilter {
 			if (file.isDirectory())
 				return true;
 			String filename = file.getName().toLowerCase();
-			return filename.endsWith(".xml") || filename.endsWith(".xml.gz");
+			return filename.endsWith(".xml") || filename.endsWith(".xml.gz")
+					|| filename.endsWith(JGraphpadBinaryCodec.EXTENSION)
+					|| filename.endsWith(JGraphpadBinaryCodec.EXTENSION + ".gz");
 		}
 
 		/**
@@ -0,0 +1,797 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes single and animated GIF images. The pixels are read row by row from
+ * the raster of the image and the colors are counted in a primitive open
+ * addressing hash table. If an image has more than 256 colors then the colors
+ * are reduced using the median cut algorithm on a 15 bit histogram, optionally
+ * with Floyd-Steinberg dithering. Pixels with an alpha value below 128 are
+ * written using a transparent color index. The LZW compression and the output
+ * use buffers that are reused for all rows and frames.<br>
+ * To write an animation, add the frames using {@link #addFrame(BufferedImage,
+ * int)} and call {@link #finish()} after the last frame. The size of the first
+ * frame is used as the size of the animation.<br>
+ * Note: This class is not thread-safe.
+ */
+public class JGraphpadGifWriter {
+
+	/**
+	 * Specifies the maximum number of bits of the LZW codes.
+	 */
+	protected static final int BITS = 12;
+
+	/**
+	 * Specifies the size of the LZW hash table (80% occupancy).
+	 */
+	protected static final int HSIZE = 5003;
+
+	/**
+	 * Specifies the size of the color tables. Must be a power of two larger
+	 * than 2 * 257.
+	 */
+	protected static final int COLORTABLE_SIZE = 1024;
+
+	/**
+	 * Holds the output stream to write the image to.
+	 */
+	protected OutputStream out;
+
+	/**
+	 * Specifies if the colors should be dithered if the image has more than 256
+	 * colors. Default is false.
+	 */
+	protected boolean dither = false;
+
+	/**
+	 * Specifies the number of times an animation is repeated. 0 means forever
+	 * and -1 means the animation is played once. Default is -1.
+	 */
+	protected int repeat = -1;
+
+	/**
+	 * Holds the size of the animation.
+	 */
+	protected int width = -1, height = -1;
+
+	/**
+	 * Holds the pixels of the current row and the color indices of the
+	 * current row.
+	 */
+	protected transient int[] row = new int[0];
+
+	protected transient byte[] indices = new byte[0];
+
+	/**
+	 * Holds the hash table of the exact colors. Keys are the RGB values with
+	 * bit 24 set, 0 marks an empty slot.
+	 */
+	protected transient int[] colorKeys = new int[COLORTABLE_SIZE],
+			colorValues = new int[COLORTABLE_SIZE];
+
+	/**
+	 * Holds the 15 bit color histogram and the mapping from histogram entries
+	 * to color indices for quantized images.
+	 */
+	protected transient int[] histogram = new int[32768],
+			inverseMap = new int[32768];
+
+	/**
+	 * Holds the colors of the current frame as RGB values.
+	 */
+	protected transient int[] palette = new int[256];
+
+	/**
+	 * Holds the number of colors of the current frame and the index of the
+	 * transparent color or -1.
+	 */
+	protected transient int colorCount, transparentIndex;
+
+	/**
+	 * Holds the dithering errors of the current and the next row.
+	 */
+	protected transient int[] thisError = new int[0], nextError = new int[0];
+
+	/**
+	 * Holds the LZW hash table and codes.
+	 */
+	protected transient int[] htab = new int[HSIZE], codetab = new int[HSIZE];
+
+	/**
+	 * Holds the state of the LZW compression.
+	 */
+	protected transient int initBits, nBits, maxCode, freeEnt, clearCode,
+			eofCode, ent, accum, accumBits;
+
+	protected transient boolean clearFlag;
+
+	/**
+	 * Holds the current data sub-block.
+	 */
+	protected transient byte[] block = new byte[256];
+
+	protected transient int blockCount;
+
+	/**
+	 * Buffers the output.
+	 */
+	protected transient byte[] buffer = new byte[8192];
+
+	protected transient int bufferCount;
+
+	/**
+	 * Constructs a new GIF writer for the specified output stream.
+	 *
+	 * @param out
+	 *            The output stream to write the image to.
+	 */
+	public JGraphpadGifWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Writes the specified image as a GIF image to the specified stream.
+	 *
+	 * @param image
+	 *            The image to be written.
+	 * @param out
+	 *            The stream to write the image to.
+	 * @throws IOException
+	 *             If the image cannot be written.
+	 */
+	public static void write(BufferedImage image, OutputStream out)
+			throws IOException {
+		JGraphpadGifWriter writer = new JGraphpadGifWriter(out);
+		writer.addFrame(image, 0);
+		writer.finish();
+	}
+
+	/**
+	 * Writes the specified images as an animated GIF image to the specified
+	 * stream.
+	 *
+	 * @param frames
+	 *            The images to be written.
+	 * @param delay
+	 *            The delay between frames in milliseconds.
+	 * @param repeat
+	 *            The number of repetitions, 0 for forever.
+	 * @param out
+	 *            The stream to write the image to.
+	 * @throws IOException
+	 *             If the image cannot be written.
+	 */
+	public static void write(BufferedImage[] frames, int delay, int repeat,
+			OutputStream out) throws IOException {
+		JGraphpadGifWriter writer = new JGraphpadGifWriter(out);
+		writer.setRepeat(repeat);
+		for (int i = 0; i < frames.length; i++)
+			writer.addFrame(frames[i], delay);
+		writer.finish();
+	}
+
+	/**
+	 * Writes the specified image as the next frame. The header of the GIF
+	 * image is written with the first frame.
+	 *
+	 * @param image
+	 *            The image to be written.
+	 * @param delay
+	 *            The time to display the frame in milliseconds.
+	 * @throws IOException
+	 *             If the image cannot be written.
+	 */
+	public void addFrame(BufferedImage image, int delay) throws IOException {
+		int w = image.getWidth();
+		int h = image.getHeight();
+		if (width < 0) {
+			width = w;
+			height = h;
+			writeHeader();
+		}
+		if (row.length < w) {
+			row = new int[w];
+			indices = new byte[w];
+		}
+		boolean exact = countColors(image);
+		if (!exact)
+			quantize();
+		int bits = 1;
+		while ((1 << bits) < colorCount)
+			bits++;
+
+		// Graphic control extension with the delay, disposal and transparency
+		write(0x21);
+		write(0xf9);
+		write(4);
+		write(((transparentIndex >= 0) ? 2 << 2 : 1 << 2)
+				| ((transparentIndex >= 0) ? 1 : 0));
+		writeShort(Math.round(delay / 10f));
+		write(Math.max(0, transparentIndex));
+		write(0);
+
+		// Image descriptor with local color table
+		write(0x2c);
+		writeShort(0);
+		writeShort(0);
+		writeShort(Math.min(w, width));
+		writeShort(Math.min(h, height));
+		write(0x80 | (bits - 1));
+		for (int i = 0; i < (1 << bits); i++) {
+			int rgb = (i < colorCount) ? palette[i] : 0;
+			write((rgb >> 16) & 0xff);
+			write((rgb >> 8) & 0xff);
+			write(rgb & 0xff);
+		}
+
+		// Image data
+		startCompression(Math.max(2, bits));
+		w = Math.min(w, width);
+		h = Math.min(h, height);
+		if (!exact && dither) {
+			if (thisError.length < 3 * (w + 2)) {
+				thisError = new int[3 * (w + 2)];
+				nextError = new int[3 * (w + 2)];
+			}
+			Arrays.fill(thisError, 0);
+			Arrays.fill(nextError, 0);
+		}
+		for (int y = 0; y < h; y++) {
+			getRow(image, y, row);
+			if (exact)
+				mapExact(w);
+			else if (dither)
+				mapDithered(w);
+			else
+				mapQuantized(w);
+			compress(indices, w);
+		}
+		finishCompression();
+	}
+
+	/**
+	 * Writes the trailer of the GIF image and flushes the output stream. The
+	 * stream is not closed.
+	 *
+	 * @throws IOException
+	 *             If the trailer cannot be written.
+	 */
+	public void finish() throws IOException {
+		if (width < 0)
+			throw new IOException("no frames");
+		write(0x3b);
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Writes the header, the logical screen descriptor and, for repeated
+	 * animations, the loop extension.
+	 */
+	protected void writeHeader() throws IOException {
+		write('G');
+		write('I');
+		write('F');
+		write('8');
+		write('9');
+		write('a');
+		writeShort(width);
+		writeShort(height);
+		write(0x70); // no global color table, 8 bit color resolution
+		write(0);
+		write(0);
+		if (repeat >= 0) {
+			write(0x21);
+			write(0xff);
+			write(11);
+			byte[] id = "NETSCAPE2.0".getBytes("ISO-8859-1");
+			for (int i = 0; i < id.length; i++)
+				write(id[i]);
+			write(3);
+			write(1);
+			writeShort(repeat);
+			write(0);
+		}
+	}
+
+	/**
+	 * Reads the specified row of the image as RGB values with alpha into the
+	 * specified array. Reads the data buffer directly for images of type
+	 * <code>TYPE_INT_RGB</code> and <code>TYPE_INT_ARGB</code>.
+	 */
+	protected void getRow(BufferedImage image, int y, int[] row) {
+		int type = image.getType();
+		int w = image.getWidth();
+		Raster raster = image.getRaster();
+		if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+				&& raster.getDataBuffer() instanceof DataBufferInt
+				&& raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+			SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster
+					.getSampleModel();
+			int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+			int offset = raster.getDataBuffer().getOffset()
+					+ sm.getOffset(-raster.getSampleModelTranslateX(), y
+							- raster.getSampleModelTranslateY());
+			System.arraycopy(data, offset, row, 0, w);
+			if (type == BufferedImage.TYPE_INT_RGB)
+				for (int x = 0; x < w; x++)
+					row[x] |= 0xff000000;
+		} else
+			image.getRGB(0, y, w, 1, row, 0, w);
+	}
+
+	/**
+	 * Counts the colors of the specified image. Returns true if the image has
+	 * at most 256 colors including the transparent color, in which case the
+	 * palette and the color table are set up to map the exact colors. Fills
+	 * the histogram in any case.
+	 */
+	protected boolean countColors(BufferedImage image) {
+		Arrays.fill(colorKeys, 0);
+		Arrays.fill(histogram, 0);
+		int w = Math.min(image.getWidth(), width);
+		int h = Math.min(image.getHeight(), height);
+		int count = 0;
+		boolean transparent = false;
+		for (int y = 0; y < h; y++) {
+			getRow(image, y, row);
+			for (int x = 0; x < w; x++) {
+				int argb = row[x];
+				if ((argb >>> 24) < 0x80) {
+					transparent = true;
+				} else {
+					histogram[((argb >> 9) & 0x7c00) | ((argb >> 6) & 0x03e0)
+							| ((argb >> 3) & 0x001f)]++;
+					if (count <= 256) {
+						int key = (argb & 0xffffff) | 0x1000000;
+						int i = slot(key);
+						if (colorKeys[i] == 0) {
+							colorKeys[i] = key;
+							colorValues[i] = count++;
+						}
+					}
+				}
+			}
+		}
+		transparentIndex = -1;
+		if (count + ((transparent) ? 1 : 0) > 256) {
+			transparentIndex = (transparent) ? 255 : -1;
+			return false;
+		}
+		for (int i = 0; i < COLORTABLE_SIZE; i++)
+			if (colorKeys[i] != 0)
+				palette[colorValues[i]] = colorKeys[i] & 0xffffff;
+		colorCount = count;
+		if (transparent)
+			transparentIndex = colorCount++;
+		colorCount = Math.max(2, colorCount);
+		return true;
+	}
+
+	/**
+	 * Returns the slot of the specified key in the color table using linear
+	 * probing.
+	 */
+	protected int slot(int key) {
+		int i = (key * 0x9e3779b1) >>> 22 & (COLORTABLE_SIZE - 1);
+		while (colorKeys[i] != 0 && colorKeys[i] != key)
+			i = (i + 1) & (COLORTABLE_SIZE - 1);
+		return i;
+	}
+
+	/**
+	 * Reduces the colors in the histogram to at most 256 colors, or 255 if
+	 * the image has transparent pixels, using the median cut algorithm.
+	 */
+	protected void quantize() {
+		int maxColors = (transparentIndex >= 0) ? 255 : 256;
+		List boxes = new ArrayList(maxColors);
+		int[] box = new int[] { 0, 31, 0, 31, 0, 31, 0 };
+		shrink(box);
+		boxes.add(box);
+		while (boxes.size() < maxColors) {
+			int[] largest = null;
+			for (int i = 0; i < boxes.size(); i++) {
+				int[] tmp = (int[]) boxes.get(i);
+				if ((tmp[1] > tmp[0] || tmp[3] > tmp[2] || tmp[5] > tmp[4])
+						&& (largest == null || tmp[6] > largest[6]))
+					largest = tmp;
+			}
+			if (largest == null)
+				break;
+			boxes.add(split(largest));
+		}
+		Arrays.fill(inverseMap, -1);
+		for (int i = 0; i < boxes.size(); i++) {
+			box = (int[]) boxes.get(i);
+			long r = 0, g = 0, b = 0, n = 0;
+			for (int ri = box[0]; ri <= box[1]; ri++)
+				for (int gi = box[2]; gi <= box[3]; gi++)
+					for (int bi = box[4]; bi <= box[5]; bi++) {
+						int bin = (ri << 10) | (gi << 5) | bi;
+						int c = histogram[bin];
+						if (c > 0) {
+							r += c * ((ri << 3) | 4);
+							g += c * ((gi << 3) | 4);
+							b += c * ((bi << 3) | 4);
+							n += c;
+							inverseMap[bin] = i;
+						}
+					}
+			if (n > 0)
+				palette[i] = (int) (r / n) << 16 | (int) (g / n) << 8
+						| (int) (b / n);
+		}
+		colorCount = boxes.size();
+		if (transparentIndex >= 0)
+			transparentIndex = colorCount++;
+		colorCount = Math.max(2, colorCount);
+	}
+
+	/**
+	 * Shrinks the specified box to the populated entries of the histogram
+	 * and updates the pixel count of the box. A box is an array of the
+	 * minimum and maximum red, green and blue values and the pixel count.
+	 */
+	protected void shrink(int[] box) {
+		int[] min = new int[] { 31, 31, 31 };
+		int[] max = new int[] { 0, 0, 0 };
+		int count = 0;
+		for (int r = box[0]; r <= box[1]; r++)
+			for (int g = box[2]; g <= box[3]; g++)
+				for (int b = box[4]; b <= box[5]; b++) {
+					int c = histogram[(r << 10) | (g << 5) | b];
+					if (c > 0) {
+						count += c;
+						min[0] = Math.min(min[0], r);
+						max[0] = Math.max(max[0], r);
+						min[1] = Math.min(min[1], g);
+						max[1] = Math.max(max[1], g);
+						min[2] = Math.min(min[2], b);
+						max[2] = Math.max(max[2], b);
+					}
+				}
+		if (count > 0)
+			for (int i = 0; i < 3; i++) {
+				box[2 * i] = min[i];
+				box[2 * i + 1] = max[i];
+			}
+		box[6] = count;
+	}
+
+	/**
+	 * Splits the specified box at the median of its longest side and returns
+	 * the upper half. The specified box is changed to the lower half.
+	 */
+	protected int[] split(int[] box) {
+		int axis = 0;
+		for (int i = 1; i < 3; i++)
+			if (box[2 * i + 1] - box[2 * i] > box[2 * axis + 1] - box[2 * axis])
+				axis = i;
+		int lo = box[2 * axis], hi = box[2 * axis + 1];
+		int[] slices = new int[32];
+		for (int r = box[0]; r <= box[1]; r++)
+			for (int g = box[2]; g <= box[3]; g++)
+				for (int b = box[4]; b <= box[5]; b++)
+					slices[(axis == 0) ? r : (axis == 1) ? g : b] += histogram[(r << 10)
+							| (g << 5) | b];
+		int cut = lo, sum = slices[lo];
+		while (cut < hi - 1 && sum + slices[cut + 1] <= box[6] / 2)
+			sum += slices[++cut];
+		int[] upper = (int[]) box.clone();
+		box[2 * axis + 1] = cut;
+		upper[2 * axis] = cut + 1;
+		shrink(box);
+		shrink(upper);
+		return upper;
+	}
+
+	/**
+	 * Maps the current row to the indices of the exact colors.
+	 */
+	protected void mapExact(int w) {
+		for (int x = 0; x < w; x++) {
+			int argb = row[x];
+			if ((argb >>> 24) < 0x80)
+				indices[x] = (byte) transparentIndex;
+			else
+				indices[x] = (byte) colorValues[slot((argb & 0xffffff) | 0x1000000)];
+		}
+	}
+
+	/**
+	 * Maps the current row to the indices of the quantized colors.
+	 */
+	protected void mapQuantized(int w) {
+		for (int x = 0; x < w; x++) {
+			int argb = row[x];
+			if ((argb >>> 24) < 0x80)
+				indices[x] = (byte) transparentIndex;
+			else
+				indices[x] = (byte) lookup((argb >> 16) & 0xff,
+						(argb >> 8) & 0xff, argb & 0xff);
+		}
+	}
+
+	/**
+	 * Maps the current row to the indices of the quantized colors using
+	 * Floyd-Steinberg dithering.
+	 */
+	protected void mapDithered(int w) {
+		int[] tmp = thisError;
+		thisError = nextError;
+		nextError = tmp;
+		Arrays.fill(nextError, 0);
+		for (int x = 0; x < w; x++) {
+			int argb = row[x];
+			if ((argb >>> 24) < 0x80) {
+				indices[x] = (byte) transparentIndex;
+				continue;
+			}
+			int e = 3 * (x + 1);
+			int r = clamp(((argb >> 16) & 0xff) + thisError[e] / 16);
+			int g = clamp(((argb >> 8) & 0xff) + thisError[e + 1] / 16);
+			int b = clamp((argb & 0xff) + thisError[e + 2] / 16);
+			int index = lookup(r, g, b);
+			indices[x] = (byte) index;
+			int rgb = palette[index];
+			diffuse(e, r - ((rgb >> 16) & 0xff));
+			diffuse(e + 1, g - ((rgb >> 8) & 0xff));
+			diffuse(e + 2, b - (rgb & 0xff));
+		}
+	}
+
+	/**
+	 * Distributes the specified error of a color component to the neighbours
+	 * of a pixel using the Floyd-Steinberg weights.
+	 */
+	protected void diffuse(int e, int error) {
+		thisError[e + 3] += error * 7;
+		nextError[e - 3] += error * 3;
+		nextError[e] += error * 5;
+		nextError[e + 3] += error;
+	}
+
+	/**
+	 * Returns the index of the quantized color for the specified color. Colors
+	 * that are not in the histogram are mapped to the nearest color of the
+	 * palette, the result is stored in the inverse map.
+	 */
+	protected int lookup(int r, int g, int b) {
+		int bin = ((r & 0xf8) << 7) | ((g & 0xf8) << 2) | (b >> 3);
+		int index = inverseMap[bin];
+		if (index < 0) {
+			int best = Integer.MAX_VALUE;
+			int n = (transparentIndex >= 0) ? transparentIndex : colorCount;
+			int cr = (r & 0xf8) | 4, cg = (g & 0xf8) | 4, cb = (b & 0xf8) | 4;
+			for (int i = 0; i < n; i++) {
+				int rgb = palette[i];
+				int dr = ((rgb >> 16) & 0xff) - cr;
+				int dg = ((rgb >> 8) & 0xff) - cg;
+				int db = (rgb & 0xff) - cb;
+				int d = dr * dr + dg * dg + db * db;
+				if (d < best) {
+					best = d;
+					index = i;
+				}
+			}
+			inverseMap[bin] = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Clamps the specified value to 0..255.
+	 */
+	protected static int clamp(int value) {
+		return (value < 0) ? 0 : (value > 255) ? 255 : value;
+	}
+
+	/**
+	 * Starts the LZW compression of an image with the specified code size.
+	 */
+	protected void startCompression(int codeSize) throws IOException {
+		write(codeSize);
+		initBits = codeSize + 1;
+		nBits = initBits;
+		maxCode = (1 << nBits) - 1;
+		clearCode = 1 << codeSize;
+		eofCode = clearCode + 1;
+		freeEnt = clearCode + 2;
+		clearFlag = false;
+		accum = 0;
+		accumBits = 0;
+		blockCount = 0;
+		ent = -1;
+		Arrays.fill(htab, -1);
+		output(clearCode);
+	}
+
+	/**
+	 * Compresses the specified color indices. This uses the hashing scheme of
+	 * the legacy encoder in {@link JGraphpadImageEncoder}.
+	 */
+	protected void compress(byte[] data, int length) throws IOException {
+		int start = 0;
+		if (ent < 0 && length > 0) {
+			ent = data[0] & 0xff;
+			start = 1;
+		}
+		outer: for (int k = start; k < length; k++) {
+			int c = data[k] & 0xff;
+			int fcode = (c << BITS) + ent;
+			int i = (c << 4) ^ ent;
+			if (htab[i] == fcode) {
+				ent = codetab[i];
+				continue;
+			} else if (htab[i] >= 0) {
+				int disp = (i == 0) ? 1 : HSIZE - i;
+				do {
+					if ((i -= disp) < 0)
+						i += HSIZE;
+					if (htab[i] == fcode) {
+						ent = codetab[i];
+						continue outer;
+					}
+				} while (htab[i] >= 0);
+			}
+			output(ent);
+			ent = c;
+			if (freeEnt < 1 << BITS) {
+				codetab[i] = freeEnt++;
+				htab[i] = fcode;
+			} else {
+				Arrays.fill(htab, -1);
+				freeEnt = clearCode + 2;
+				clearFlag = true;
+				output(clearCode);
+			}
+		}
+	}
+
+	/**
+	 * Writes the final codes and the block terminator of the image data.
+	 */
+	protected void finishCompression() throws IOException {
+		if (ent >= 0)
+			output(ent);
+		output(eofCode);
+		while (accumBits > 0) {
+			blockOut(accum & 0xff);
+			accum >>= 8;
+			accumBits -= 8;
+		}
+		flushBlock();
+		write(0);
+	}
+
+	/**
+	 * Writes the specified code using the current number of bits.
+	 */
+	protected void output(int code) throws IOException {
+		accum &= (1 << accumBits) - 1;
+		accum |= code << accumBits;
+		accumBits += nBits;
+		while (accumBits >= 8) {
+			blockOut(accum & 0xff);
+			accum >>= 8;
+			accumBits -= 8;
+		}
+		if (freeEnt > maxCode || clearFlag) {
+			if (clearFlag) {
+				nBits = initBits;
+				maxCode = (1 << nBits) - 1;
+				clearFlag = false;
+			} else {
+				nBits++;
+				maxCode = (nBits == BITS) ? 1 << BITS : (1 << nBits) - 1;
+			}
+		}
+	}
+
+	/**
+	 * Adds the specified byte to the current data sub-block.
+	 */
+	protected void blockOut(int b) throws IOException {
+		block[blockCount++] = (byte) b;
+		if (blockCount >= 254)
+			flushBlock();
+	}
+
+	/**
+	 * Writes the current data sub-block.
+	 */
+	protected void flushBlock() throws IOException {
+		if (blockCount > 0) {
+			write(blockCount);
+			for (int i = 0; i < blockCount; i++)
+				write(block[i]);
+			blockCount = 0;
+		}
+	}
+
+	/**
+	 * Writes the specified byte to the output buffer.
+	 */
+	protected void write(int b) throws IOException {
+		if (bufferCount == buffer.length)
+			flushBuffer();
+		buffer[bufferCount++] = (byte) b;
+	}
+
+	/**
+	 * Writes the specified value as a little-endian 16 bit word.
+	 */
+	protected void writeShort(int value) throws IOException {
+		write(value & 0xff);
+		write((value >> 8) & 0xff);
+	}
+
+	/**
+	 * Writes the output buffer to the output stream.
+	 */
+	protected void flushBuffer() throws IOException {
+		if (bufferCount > 0) {
+			out.write(buffer, 0, bufferCount);
+			bufferCount = 0;
+		}
+	}
+
+	/**
+	 * Returns true if the colors are dithered.
+	 *
+	 * @return Returns the dither.
+	 */
+	public boolean isDither() {
+		return dither;
+	}
+
+	/**
+	 * Sets if the colors should be dithered.
+	 *
+	 * @param dither
+	 *            The dither to set.
+	 */
+	public void setDither(boolean dither) {
+		this.dither = dither;
+	}
+
+	/**
+	 * Returns the number of repetitions of the animation.
+	 *
+	 * @return Returns the repeat.
+	 */
+	public int getRepeat() {
+		return repeat;
+	}
+
+	/**
+	 * Sets the number of repetitions of the animation. This must be set before
+	 * the first frame is added.
+	 *
+	 * @param repeat
+	 *            The repeat to set.
+	 */
+	public void setRepeat(int repeat) {
+		this.repeat = repeat;
+	}
+
+}
@@ -30,6 +30,7 @@
 package com.jgraph.pad.util;
 
 import java.awt.Image;
+import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.ImageConsumer;
 import java.awt.image.ImageProducer;
@@ -99,13 +100,18 @@ public abstract class JGraphpadImageEncoder implements ImageConsumer {
 
 	/**
 	 * Public GIF Encoding method. Use this method for GIF encoding in JGraph
-	 * editors.
+	 * editors. Buffered images are written using {@link JGraphpadGifWriter},
+	 * which reduces the colors of images with more than 256 colors. All other
+	 * images are written using the legacy {@link GifEncoder}.
 	 * 
 	 * @throws IOException
 	 */
 	public static void writeGIF(Image image, OutputStream out)
 			throws IOException {
-		new GifEncoder(image, out).encode();
+		if (image instanceof BufferedImage)
+			JGraphpadGifWriter.write((BufferedImage) image, out);
+		else
+			new GifEncoder(image, out).encode();
 	}
 
 	// Methods that subclasses implement.
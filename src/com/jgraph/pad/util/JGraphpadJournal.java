@@ -0,0 +1,1889 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.tree.DefaultMutableTreeNode;
+
+import org.jgraph.event.GraphLayoutCacheEvent;
+import org.jgraph.event.GraphModelEvent;
+import org.jgraph.graph.AttributeMap;
+import org.jgraph.graph.ConnectionSet;
+import org.jgraph.graph.DefaultGraphCell;
+import org.jgraph.graph.DefaultGraphModel;
+import org.jgraph.graph.DefaultPort;
+import org.jgraph.graph.Edge;
+import org.jgraph.graph.GraphLayoutCache;
+import org.jgraph.graph.GraphModel;
+
+import com.jgraph.JGraphEditor;
+import com.jgraph.editor.JGraphEditorDiagram;
+import com.jgraph.editor.JGraphEditorFile;
+import com.jgraph.editor.JGraphEditorModel;
+import com.jgraph.pad.JGraphpadDiagram;
+import com.jgraph.pad.JGraphpadFile;
+import com.jgraph.pad.JGraphpadLibrary;
+import com.jgraph.pad.graph.JGraphpadBusinessObject;
+import com.jgraph.pad.graph.JGraphpadGraphLayoutCache;
+import com.jgraph.pad.graph.JGraphpadGraphModel;
+
+/**
+ * Records the changes of all modified files in per-file journals so that
+ * unsaved changes can be recovered after the application terminated
+ * unexpectedly. A journal starts with a snapshot of the file in the binary
+ * file format, followed by compact records that describe the changes of each
+ * graph model event, eg. the removed cells and the parent, position, user
+ * object, attributes and connections of the inserted and changed cells. <br>
+ * The snapshot itself only contains the structure of the file, eg. its
+ * diagrams with empty models, the cells are copied into records in slices of
+ * {@link #SNAPSHOT_SLICE} cells so that large files do not block the event
+ * dispatch thread. After {@link #COMPACT_THRESHOLD} records the journal is
+ * compacted in the background by replaying it into a new snapshot. <br>
+ * The records are captured on the event dispatch thread, but encoded and
+ * appended to the journal in a background thread in batches of all records
+ * that arrived within {@link #FLUSH_DELAY} milliseconds. The journal of a file
+ * is discarded when the file has been saved successfully, which is when its
+ * modified state is reset, or when it is closed. <br>
+ * Each instance holds a lock on a session file in the journal directory while
+ * it is running, and the names of its journals start with the name of the
+ * session. Journals of sessions that are still running are not returned by
+ * {@link #getJournals()}, and a journal must be claimed using
+ * {@link #claim(File)} before it is recovered, so that several instances can
+ * share the journal directory.
+ *
+ * @see JGraphEditorModel#setJournal(JGraphEditorModel.Journal)
+ * @see JGraphpadBinaryCodec
+ */
+public class JGraphpadJournal extends JGraphpadTreeModelAdapter implements
+		JGraphEditorModel.Journal {
+
+	/**
+	 * Defines the extension for journal files.
+	 */
+	public static final String EXTENSION = ".jgpj";
+
+	/**
+	 * Defines the prefix and extension for session lock files.
+	 */
+	public static final String SESSION_PREFIX = "session",
+			SESSION_EXTENSION = ".lock";
+
+	/**
+	 * Defines the magic number at the start of each journal ("JGPJ").
+	 */
+	public static final int MAGIC = 0x4A47504A;
+
+	/**
+	 * Defines the version of the journal format.
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * Defines the block types in the journal.
+	 */
+	protected static final byte BLOCK_SNAPSHOT = 1, BLOCK_CHANGES = 2,
+			BLOCK_IDS = 3;
+
+	/**
+	 * Marks the position in the queue of an entry where the journal should
+	 * be compacted.
+	 */
+	protected static final Object COMPACT = new Object();
+
+	/**
+	 * Specifies the number of records after which the journal of a file is
+	 * compacted into a new snapshot. Default is 2000.
+	 */
+	public static int COMPACT_THRESHOLD = 2000;
+
+	/**
+	 * Specifies the number of cells that are copied into the journal per
+	 * event after a new snapshot has been started. Default is 500.
+	 */
+	public static int SNAPSHOT_SLICE = 500;
+
+	/**
+	 * Specifies the number of milliseconds to collect records before they are
+	 * appended to the journal. Default is 500.
+	 */
+	public static long FLUSH_DELAY = 500;
+
+	/**
+	 * References the document model whose files are journaled.
+	 */
+	protected JGraphEditorModel model;
+
+	/**
+	 * Holds the directory that contains the journal files.
+	 */
+	protected File directory;
+
+	/**
+	 * Maps from files to their journal entries.
+	 */
+	protected Map entries = new Hashtable();
+
+	/**
+	 * Holds the session lock file of this instance which is created by
+	 * {@link #getSession()}.
+	 */
+	protected File sessionFile;
+
+	/**
+	 * Holds the lock on the session lock file while this instance is running.
+	 */
+	protected FileLock sessionLock;
+
+	/**
+	 * Holds the thread that writes the journal files.
+	 */
+	protected ScheduledExecutorService executor = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "JGraphpadJournal");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * Constructs a new journal for the specified model that keeps its files
+	 * in the specified directory.
+	 *
+	 * @param model
+	 *            The document model whose files should be journaled.
+	 * @param directory
+	 *            The directory to keep the journal files in.
+	 */
+	public JGraphpadJournal(JGraphEditorModel model, File directory) {
+		this.model = model;
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the directory that contains the journal files.
+	 *
+	 * @return Returns the journal directory.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Appends a record for the specified event to the journal of the
+	 * specified file. Creates a snapshot of the file instead if the file has
+	 * no journal yet.
+	 */
+	public void graphChanged(JGraphEditorFile file,
+			JGraphEditorDiagram diagram, GraphModelEvent event) {
+		Entry entry = (Entry) entries.get(file);
+		int index = (entry != null) ? entry.diagrams.indexOf(diagram) : -1;
+		if (index < 0)
+			snapshot(file);
+		else
+			append(entry, createRecord(entry, index, diagram
+					.getGraphLayoutCache(), event.getChange()));
+	}
+
+	/**
+	 * Appends a record for the cells that have been shown or hidden in the
+	 * specified event if the graph layout cache of the diagram is partial, as
+	 * the visible set is stored in the file.
+	 */
+	public void graphLayoutCacheChanged(JGraphEditorFile file,
+			JGraphEditorDiagram diagram, GraphLayoutCacheEvent event) {
+		GraphLayoutCache cache = diagram.getGraphLayoutCache();
+		if (cache.isPartial()) {
+			Entry entry = (Entry) entries.get(file);
+			int index = (entry != null) ? entry.diagrams.indexOf(diagram) : -1;
+			if (index < 0)
+				snapshot(file);
+			else
+				append(entry, createRecord(entry, index, cache, event
+						.getChange()));
+		}
+	}
+
+	/**
+	 * Adds the specified record to the queue of the specified entry and
+	 * schedules a compaction of the journal after
+	 * {@link #COMPACT_THRESHOLD} records. The journal is not compacted while
+	 * cells are being copied, as the records may refer to cells which are not
+	 * yet in the journal.
+	 *
+	 * @param entry
+	 *            The entry to append the record to.
+	 * @param record
+	 *            The record to be appended.
+	 */
+	protected void append(Entry entry, Record record) {
+		if (entry.pending != null)
+			entry.reorder = true;
+		entry.enqueue(record, FLUSH_DELAY);
+		if (++entry.records >= COMPACT_THRESHOLD && entry.pending == null) {
+			entry.records = 0;
+			entry.enqueue(COMPACT, FLUSH_DELAY);
+		}
+	}
+
+	/**
+	 * Discards the journals of files which have been saved and creates new
+	 * snapshots for files whose diagrams have been renamed.
+	 */
+	public void treeNodesChanged(TreeModelEvent e) {
+		Object parent = e.getTreePath().getLastPathComponent();
+		Object[] children = e.getChildren();
+		if (children == null)
+			children = new Object[] { parent };
+		for (int i = 0; i < children.length; i++) {
+			if (children[i] instanceof JGraphEditorFile
+					&& !((JGraphEditorFile) children[i]).isModified())
+				discard((JGraphEditorFile) children[i]);
+			else if (children[i] instanceof JGraphEditorDiagram
+					&& entries.containsKey(parent))
+				snapshot((JGraphEditorFile) parent);
+		}
+	}
+
+	/**
+	 * Creates a new snapshot for files that have new diagrams.
+	 */
+	public void treeNodesInserted(TreeModelEvent e) {
+		Object parent = e.getTreePath().getLastPathComponent();
+		if (entries.containsKey(parent))
+			snapshot((JGraphEditorFile) parent);
+	}
+
+	/**
+	 * Discards the journals of files which have been closed and creates new
+	 * snapshots for files whose diagrams have been removed.
+	 */
+	public void treeNodesRemoved(TreeModelEvent e) {
+		Object parent = e.getTreePath().getLastPathComponent();
+		Object[] children = e.getChildren();
+		for (int i = 0; children != null && i < children.length; i++)
+			if (children[i] instanceof JGraphEditorFile)
+				discard((JGraphEditorFile) children[i]);
+		if (entries.containsKey(parent))
+			snapshot((JGraphEditorFile) parent);
+	}
+
+	/**
+	 * Starts a new journal for the specified file with a snapshot of its
+	 * current state. The snapshot is a copy of the file with empty models
+	 * which is created using {@link #createSkeleton(JGraphEditorFile)}, the
+	 * cells are then copied into records by {@link #copyCells(Entry)} in
+	 * slices of {@link #SNAPSHOT_SLICE} cells. Files which cannot be copied
+	 * are not journaled. This must be called on the event dispatch thread.
+	 *
+	 * @param file
+	 *            The file to create the snapshot for.
+	 */
+	public void snapshot(JGraphEditorFile file) {
+		JGraphEditorFile skeleton = createSkeleton(file);
+		if (skeleton == null) {
+			discard(file);
+		} else {
+			Entry entry = (Entry) entries.get(file);
+			try {
+				if (entry == null) {
+					directory.mkdirs();
+					entry = new Entry(File.createTempFile(getSession() + "-",
+							EXTENSION, directory));
+					entries.put(file, entry);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+			entry.ids.clear();
+			entry.nextId = 0;
+			entry.records = 0;
+			entry.reorder = false;
+			entry.diagrams = getDiagrams(file);
+			entry.pending = new ArrayList(entry.diagrams.size());
+			Iterator it = entry.diagrams.iterator();
+			while (it.hasNext()) {
+				List cells = getCells(((JGraphEditorDiagram) it.next())
+						.getGraphLayoutCache().getModel());
+				for (int i = 0; i < cells.size(); i++)
+					entry.getId(cells.get(i));
+				entry.pending.add(new LinkedHashSet(cells));
+			}
+			entry.enqueue(new Snapshot(skeleton, file.getFilename(), file
+					.isNew()), 0);
+			copyCells(entry);
+		}
+	}
+
+	/**
+	 * Appends a record with the next {@link #SNAPSHOT_SLICE} cells that have
+	 * not been copied since the last snapshot of the specified entry and
+	 * schedules the next slice using {@link SwingUtilities#invokeLater}.
+	 * Cells which have been removed in the meantime are skipped, cells which
+	 * have been changed have already been copied with the change. If records
+	 * have been appended before all cells were copied, then the order of the
+	 * children of all cells is appended after the last slice, as the indices
+	 * of these records refer to siblings that were not yet copied. This must
+	 * be called on the event dispatch thread.
+	 *
+	 * @param entry
+	 *            The entry to copy the cells for.
+	 */
+	protected void copyCells(final Entry entry) {
+		final List pending = entry.pending;
+		if (pending == null || entry.discarded)
+			return;
+		int count = 0;
+		for (int i = 0; i < pending.size() && count < SNAPSHOT_SLICE; i++) {
+			Set cells = (Set) pending.get(i);
+			if (!cells.isEmpty()) {
+				GraphLayoutCache cache = ((JGraphEditorDiagram) entry.diagrams
+						.get(i)).getGraphLayoutCache();
+				Indexes indexes = new Indexes(cache.getModel());
+				Record record = new Record(i);
+				while (!cells.isEmpty() && count < SNAPSHOT_SLICE) {
+					Object cell = cells.iterator().next();
+					cells.remove(cell);
+					if (cell instanceof DefaultGraphCell
+							&& indexes.contains(cell))
+						addUpsert(entry, record, cache, cell, indexes);
+					count++;
+				}
+				entry.enqueue(record, FLUSH_DELAY);
+			}
+		}
+		if (count < SNAPSHOT_SLICE) {
+			entry.pending = null;
+			if (entry.reorder) {
+				entry.reorder = false;
+				for (int i = 0; i < entry.diagrams.size(); i++) {
+					Record record = new Record(i);
+					addOrder(entry, record, ((JGraphEditorDiagram) entry.diagrams
+							.get(i)).getGraphLayoutCache().getModel());
+					entry.enqueue(record, FLUSH_DELAY);
+				}
+			}
+		} else {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					if (entry.pending == pending)
+						copyCells(entry);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Adds the ids of the roots and of the children of all cells of the
+	 * specified model in their order to the specified record.
+	 *
+	 * @param entry
+	 *            The journal entry that assigns ids to cells.
+	 * @param record
+	 *            The record to add the order to.
+	 * @param graphModel
+	 *            The model to add the order for.
+	 */
+	protected void addOrder(Entry entry, Record record, GraphModel graphModel) {
+		int[] roots = new int[graphModel.getRootCount() + 1];
+		roots[0] = -1;
+		for (int i = 1; i < roots.length; i++)
+			roots[i] = entry.getId(graphModel.getRootAt(i - 1));
+		record.order.add(roots);
+		Iterator it = getCells(graphModel).iterator();
+		while (it.hasNext()) {
+			Object cell = it.next();
+			int childCount = graphModel.getChildCount(cell);
+			if (childCount > 0) {
+				int[] children = new int[childCount + 1];
+				children[0] = entry.getId(cell);
+				for (int i = 1; i < children.length; i++)
+					children[i] = entry.getId(graphModel.getChild(cell, i - 1));
+				record.order.add(children);
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of the specified file whose diagrams have empty models,
+	 * or null if the file is not a {@link JGraphpadFile} with
+	 * {@link JGraphpadDiagram}s or a {@link JGraphpadLibrary} that can be
+	 * copied using {@link JGraphpadSaveManager}.
+	 *
+	 * @param file
+	 *            The file to create the skeleton for.
+	 * @return Returns a copy of <code>file</code> without cells.
+	 */
+	protected JGraphEditorFile createSkeleton(JGraphEditorFile file) {
+		if (file instanceof JGraphpadLibrary) {
+			JGraphpadLibrary library = (JGraphpadLibrary) file;
+			GraphLayoutCache cache = createSkeleton(library
+					.getGraphLayoutCache());
+			if (cache != null) {
+				JGraphpadLibrary clone = new JGraphpadLibrary(library
+						.getFilename(), cache);
+				clone.setReadOnly(library.isReadOnly());
+				return clone;
+			}
+		} else if (file != null && file.getClass() == JGraphpadFile.class) {
+			JGraphpadFile clone = new JGraphpadFile(file.getFilename());
+			Enumeration children = ((JGraphpadFile) file).children();
+			while (children.hasMoreElements()) {
+				Object child = children.nextElement();
+				if (child == null || child.getClass() != JGraphpadDiagram.class)
+					return null;
+				JGraphpadDiagram diagram = (JGraphpadDiagram) child;
+				GraphLayoutCache cache = createSkeleton(diagram
+						.getGraphLayoutCache());
+				if (cache == null)
+					return null;
+				Map properties = (diagram.getProperties() != null) ? new Hashtable(
+						diagram.getProperties())
+						: null;
+				clone.add(new JGraphpadDiagram(diagram.getName(), cache,
+						properties));
+			}
+			return clone;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns an empty graph layout cache with a copy of the attributes of
+	 * the model of the specified cache, or null if the cache cannot be copied
+	 * using {@link JGraphpadSaveManager#createSnapshot(GraphLayoutCache)}.
+	 *
+	 * @param cache
+	 *            The graph layout cache to create the skeleton for.
+	 * @return Returns an empty copy of <code>cache</code>.
+	 */
+	protected GraphLayoutCache createSkeleton(GraphLayoutCache cache) {
+		if (cache == null || cache.getClass() != JGraphpadGraphLayoutCache.class
+				|| cache.getModel() == null
+				|| cache.getModel().getClass() != JGraphpadGraphModel.class)
+			return null;
+		Map attributes = ((DefaultGraphModel) cache.getModel())
+				.getAttributes();
+		JGraphpadGraphModel graphModel = new JGraphpadGraphModel(
+				new ArrayList(), (attributes != null) ? new AttributeMap(
+						attributes) : null, new ConnectionSet());
+		return new JGraphpadGraphLayoutCache(graphModel,
+				(cache.isPartial()) ? new HashSet() : null, cache.isPartial());
+	}
+
+	/**
+	 * Discards the journal of the specified file. The journal file is deleted
+	 * after all pending writes have completed.
+	 *
+	 * @param file
+	 *            The file whose journal should be discarded.
+	 */
+	public void discard(JGraphEditorFile file) {
+		final Entry entry = (Entry) entries.remove(file);
+		if (entry != null) {
+			synchronized (entry) {
+				entry.discarded = true;
+				entry.queue.clear();
+			}
+			executor.execute(new Runnable() {
+				public void run() {
+					entry.journal.delete();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Discards all journals, waits for the background thread to terminate and
+	 * releases the session lock. This should be called when the application
+	 * terminates normally.
+	 */
+	public void shutdown() {
+		Object[] files = entries.keySet().toArray();
+		for (int i = 0; i < files.length; i++)
+			discard((JGraphEditorFile) files[i]);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			if (sessionLock != null) {
+				release(sessionLock);
+				sessionFile.delete();
+				sessionLock = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the name of the session of this instance. On the first call
+	 * this creates a new session lock file in the journal directory and locks
+	 * it until {@link #shutdown()} is called. The lock file is recreated if
+	 * it has been deleted by another instance before it was locked.
+	 *
+	 * @return Returns the name of the session.
+	 * @throws IOException
+	 *             If the session lock file cannot be created or locked.
+	 */
+	protected synchronized String getSession() throws IOException {
+		while (sessionLock == null) {
+			directory.mkdirs();
+			File file = File.createTempFile(SESSION_PREFIX, SESSION_EXTENSION,
+					directory);
+			FileLock lock = tryLock(file);
+			if (lock != null && file.exists()) {
+				sessionFile = file;
+				sessionLock = lock;
+			} else if (lock != null) {
+				release(lock);
+			}
+		}
+		String name = sessionFile.getName();
+		return name.substring(0, name.length() - SESSION_EXTENSION.length());
+	}
+
+	/**
+	 * Returns the session lock file of the specified journal or null if the
+	 * journal was not written by a session.
+	 *
+	 * @param journal
+	 *            The journal to return the session file for.
+	 * @return Returns the session lock file of <code>journal</code>.
+	 */
+	protected File getSessionFile(File journal) {
+		String name = journal.getName();
+		int index = name.indexOf('-');
+		return (name.startsWith(SESSION_PREFIX) && index > 0) ? new File(
+				journal.getParentFile(), name.substring(0, index)
+						+ SESSION_EXTENSION) : null;
+	}
+
+	/**
+	 * Returns true if the specified session lock file is locked by another
+	 * running instance or by this instance. Session files that are not locked
+	 * are deleted.
+	 *
+	 * @param file
+	 *            The session lock file to be checked.
+	 * @return Returns true if the session is running.
+	 */
+	protected boolean isRunning(File file) {
+		synchronized (this) {
+			if (file.equals(sessionFile))
+				return true;
+		}
+		if (file.exists()) {
+			FileLock lock = tryLock(file);
+			if (lock == null)
+				return true;
+			release(lock);
+			file.delete();
+		}
+		return false;
+	}
+
+	/**
+	 * Returns an exclusive lock for the specified file or null if the file is
+	 * locked by another process or cannot be locked.
+	 */
+	protected static FileLock tryLock(File file) {
+		FileChannel channel = null;
+		try {
+			channel = new RandomAccessFile(file, "rw").getChannel();
+			FileLock lock = channel.tryLock();
+			if (lock != null)
+				return lock;
+		} catch (OverlappingFileLockException e) {
+			// locked by this process
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Releases the specified lock and closes its channel.
+	 */
+	protected static void release(FileLock lock) {
+		try {
+			lock.release();
+			lock.channel().close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns the journal files in the journal directory that have been left
+	 * behind by sessions which are no longer running, eg. after the
+	 * application terminated unexpectedly. The journals must be claimed using
+	 * {@link #claim(File)} before they are read or deleted.
+	 *
+	 * @return Returns the orphaned journal files in the directory.
+	 */
+	public File[] getJournals() {
+		File[] journals = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.toLowerCase().endsWith(EXTENSION);
+			}
+		});
+		List orphans = new ArrayList();
+		Set running = new HashSet();
+		for (int i = 0; journals != null && i < journals.length; i++) {
+			File session = getSessionFile(journals[i]);
+			if (session == null || !running.contains(session)) {
+				if (session != null && isRunning(session))
+					running.add(session);
+				else
+					orphans.add(journals[i]);
+			}
+		}
+		return (File[]) orphans.toArray(new File[orphans.size()]);
+	}
+
+	/**
+	 * Claims the specified orphaned journal for this session by renaming it,
+	 * so that no other instance recovers or deletes it. Returns null if the
+	 * journal belongs to a running session or has already been claimed by
+	 * another instance.
+	 *
+	 * @param journal
+	 *            The journal to be claimed.
+	 * @return Returns the claimed journal file or null.
+	 * @throws IOException
+	 *             If the session of this instance cannot be created.
+	 */
+	public File claim(File journal) throws IOException {
+		File session = getSessionFile(journal);
+		if (session != null && isRunning(session))
+			return null;
+		String name = journal.getName();
+		if (session != null)
+			name = name.substring(name.indexOf('-') + 1);
+		File claimed = new File(journal.getParentFile(), getSession() + "-"
+				+ name);
+		return (journal.renameTo(claimed)) ? claimed : null;
+	}
+
+	/**
+	 * Renames the specified journal so that it is no longer returned by
+	 * {@link #getJournals()}, eg. if it could not be recovered, and returns
+	 * the renamed file. Returns the journal itself if it cannot be renamed.
+	 *
+	 * @param journal
+	 *            The journal file to be kept.
+	 * @return Returns the renamed journal file.
+	 */
+	public File keep(File journal) {
+		File kept = new File(journal.getPath() + ".failed");
+		return (journal.renameTo(kept)) ? kept : journal;
+	}
+
+	/**
+	 * Returns the name of the journaled file for display, which is the
+	 * filename or the name of the file if it has never been saved.
+	 *
+	 * @param journal
+	 *            The journal file to read the name from.
+	 * @return Returns the name of the journaled file.
+	 */
+	public String getName(File journal) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(journal)));
+		try {
+			return String.valueOf(readHeader(in)[0]);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the name of the file that the specified journal belongs to, or
+	 * null if the file has never been saved.
+	 *
+	 * @param journal
+	 *            The journal file to read the filename from.
+	 * @return Returns the filename of the journaled file.
+	 */
+	public String getFilename(File journal) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(journal)));
+		try {
+			Object[] header = readHeader(in);
+			return (Boolean.TRUE.equals(header[1])) ? null
+					: (String) header[0];
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns true if the specified journal contains changes which have not
+	 * been saved to its file, that is if the file has never been saved, does
+	 * not exist or is older than the journal.
+	 *
+	 * @param journal
+	 *            The journal file to be checked.
+	 * @return Returns true if the journal should be recovered.
+	 * @throws IOException
+	 *             If the journal cannot be read.
+	 */
+	public boolean isRecoverable(File journal) throws IOException {
+		String filename = getFilename(journal);
+		if (filename == null || JGraphEditor.isURL(filename))
+			return true;
+		File file = new File(filename);
+		return !file.exists() || file.lastModified() < journal.lastModified();
+	}
+
+	/**
+	 * Reads the specified journal and returns the journaled file in the state
+	 * of the last complete record. An incomplete record at the end of the
+	 * journal, eg. if the application terminated while it was written, is
+	 * ignored. The returned file has not been added to the model.
+	 *
+	 * @param journal
+	 *            The journal to be replayed.
+	 * @return Returns the recovered file.
+	 * @throws IOException
+	 *             If the journal does not contain a snapshot.
+	 */
+	public JGraphEditorFile recover(File journal) throws IOException {
+		Replay replay = read(journal);
+		JGraphEditorFile file = replay.build();
+		file.setFilename(replay.filename);
+		file.setNew(replay.isNew);
+		return file;
+	}
+
+	/**
+	 * Reads the specified journal and returns the replay of the last snapshot
+	 * and all complete records that follow it.
+	 *
+	 * @param journal
+	 *            The journal to be read.
+	 * @return Returns the replay of <code>journal</code>.
+	 * @throws IOException
+	 *             If the journal does not contain a snapshot.
+	 */
+	protected Replay read(File journal) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(journal)));
+		Replay replay = null;
+		try {
+			Object[] header = readHeader(in);
+			while (true) {
+				byte type;
+				byte[] block;
+				try {
+					type = in.readByte();
+					block = new byte[in.readInt()];
+					in.readFully(block);
+				} catch (EOFException e) {
+					break;
+				}
+				JGraphpadBinaryCodec.Reader reader = new JGraphpadBinaryCodec.Reader(
+						model, new DataInputStream(new ByteArrayInputStream(
+								block)));
+				if (type == BLOCK_SNAPSHOT) {
+					replay = new Replay((JGraphEditorFile) reader.readObject());
+					replay.version = ((Integer) header[2]).intValue();
+				} else if (type == BLOCK_IDS && replay != null) {
+					int[] ids = new int[reader.in.readInt()];
+					for (int i = 0; i < ids.length; i++)
+						ids[i] = reader.in.readInt();
+					replay.setIds(ids);
+				} else if (type == BLOCK_CHANGES && replay != null) {
+					int count = reader.in.readInt();
+					for (int i = 0; i < count; i++)
+						replay.apply(reader);
+				}
+			}
+			if (replay == null)
+				throw new IOException("No snapshot in " + journal);
+			replay.filename = (String) header[0];
+			replay.isNew = Boolean.TRUE.equals(header[1]);
+			return replay;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the header of a journal and returns an array of the filename, the
+	 * isNew state of the journaled file and the version of the journal.
+	 */
+	protected Object[] readHeader(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a JGraphpad journal");
+		int version = in.readInt();
+		if (version > VERSION)
+			throw new IOException("Unsupported journal version " + version);
+		JGraphpadBinaryCodec.Reader reader = new JGraphpadBinaryCodec.Reader(
+				model, in);
+		Object filename = reader.readObject();
+		return new Object[] { filename, Boolean.valueOf(in.readBoolean()),
+				new Integer(version) };
+	}
+
+	/**
+	 * Returns the diagrams of the specified file in the order used to assign
+	 * ids to their cells.
+	 *
+	 * @param file
+	 *            The file to return the diagrams for.
+	 * @return Returns the diagrams of <code>file</code>.
+	 */
+	protected static List getDiagrams(JGraphEditorFile file) {
+		List diagrams = new ArrayList();
+		if (file instanceof JGraphEditorDiagram)
+			diagrams.add(file);
+		else
+			for (int i = 0; i < file.getChildCount(); i++)
+				if (file.getChildAt(i) instanceof JGraphEditorDiagram)
+					diagrams.add(file.getChildAt(i));
+		return diagrams;
+	}
+
+	/**
+	 * Returns all cells of the specified model in the order used to assign
+	 * ids to the cells.
+	 *
+	 * @param graphModel
+	 *            The model to return the cells for.
+	 * @return Returns all cells of <code>graphModel</code>.
+	 */
+	protected static List getCells(GraphModel graphModel) {
+		return DefaultGraphModel.getDescendants(graphModel, DefaultGraphModel
+				.getRoots(graphModel));
+	}
+
+	/**
+	 * Returns a new record that describes the specified change of the model
+	 * of the specified graph layout cache. The record contains copies of the
+	 * user objects and attributes so that it may be encoded in the
+	 * background. The membership and positions of the cells are looked up in
+	 * {@link Indexes} which are built once per change.
+	 *
+	 * @param entry
+	 *            The journal entry that assigns ids to cells.
+	 * @param diagram
+	 *            The index of the diagram that has changed.
+	 * @param cache
+	 *            The graph layout cache whose model has changed.
+	 * @param change
+	 *            The change to create the record for.
+	 * @return Returns a new record for <code>change</code>.
+	 */
+	protected Record createRecord(Entry entry, int diagram,
+			GraphLayoutCache cache, GraphModelEvent.GraphModelChange change) {
+		GraphModel graphModel = cache.getModel();
+		Indexes indexes = new Indexes(graphModel);
+		Record record = new Record(diagram);
+
+		// Collects the ids of removed cells. The inserted and removed cells
+		// are checked against the model as they are swapped for undo.
+		Set cells = new LinkedHashSet();
+		addAll(cells, change.getInserted());
+		addAll(cells, change.getRemoved());
+		List removedIds = new ArrayList();
+		Iterator it = cells.iterator();
+		while (it.hasNext()) {
+			Object cell = it.next();
+			if (!indexes.contains(cell)) {
+				Integer id = (Integer) entry.ids.remove(cell);
+				if (id != null)
+					removedIds.add(id);
+				it.remove();
+			}
+		}
+		record.removed = toArray(removedIds);
+
+		// Collects the inserted, changed and moved cells and the edges
+		// whose connections have changed
+		cells = new LinkedHashSet(DefaultGraphModel.getDescendants(graphModel,
+				cells.toArray()));
+		addAll(cells, change.getChanged());
+		if (change.getParentMap() != null)
+			cells.addAll(change.getParentMap().getChangedNodes());
+		if (change.getConnectionSet() != null)
+			cells.addAll(change.getConnectionSet().getChangedEdges());
+
+		// Sorts the cells so that parents precede their children and
+		// siblings are inserted in ascending order
+		List list = new ArrayList(cells.size());
+		it = cells.iterator();
+		while (it.hasNext()) {
+			Object cell = it.next();
+			if (cell instanceof DefaultGraphCell && indexes.contains(cell))
+				list.add(cell);
+		}
+		final Map depths = new IdentityHashMap();
+		final Map indices = new IdentityHashMap();
+		it = list.iterator();
+		while (it.hasNext()) {
+			Object cell = it.next();
+			depths.put(cell, new Integer(((DefaultMutableTreeNode) cell)
+					.getLevel()));
+			indices.put(cell, new Integer(indexes.indexOf(cell)));
+		}
+		Collections.sort(list, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				int d = ((Integer) depths.get(o1)).intValue()
+						- ((Integer) depths.get(o2)).intValue();
+				return (d != 0) ? d : ((Integer) indices.get(o1)).intValue()
+						- ((Integer) indices.get(o2)).intValue();
+			}
+		});
+
+		// Creates the upsert records
+		for (int i = 0; i < list.size(); i++)
+			addUpsert(entry, record, cache, list.get(i), indexes);
+		return record;
+	}
+
+	/**
+	 * Adds an upsert with a copy of the user object and attributes of the
+	 * specified cell to the specified record. If the parent of the cell has
+	 * not been copied since the last snapshot, then the parent is added
+	 * first. If the cache is partial, the visible state of the cell is added
+	 * to the record, as the graph layout cache event that shows new cells
+	 * may be dispatched before the graph model event.
+	 *
+	 * @param entry
+	 *            The journal entry that assigns ids to cells.
+	 * @param record
+	 *            The record to add the upsert to.
+	 * @param cache
+	 *            The graph layout cache that contains the cell.
+	 * @param cell
+	 *            The cell to add the upsert for.
+	 * @param indexes
+	 *            The indexes of the cells in the model of the cache.
+	 */
+	protected void addUpsert(Entry entry, Record record,
+			GraphLayoutCache cache, Object cell, Indexes indexes) {
+		GraphModel graphModel = cache.getModel();
+		Object parent = graphModel.getParent(cell);
+		if (entry.pending != null) {
+			Set pending = (Set) entry.pending.get(record.diagram);
+			pending.remove(cell);
+			if (parent instanceof DefaultGraphCell && pending.contains(parent))
+				addUpsert(entry, record, cache, parent, indexes);
+		}
+		DefaultGraphCell graphCell = (DefaultGraphCell) cell;
+		Upsert upsert = new Upsert();
+		upsert.id = entry.getId(cell);
+		upsert.type = cell.getClass().getName();
+		upsert.parent = (parent != null) ? entry.getId(parent) : -1;
+		upsert.index = indexes.indexOf(cell);
+		Object userObject = graphCell.getUserObject();
+		upsert.userObject = (userObject instanceof JGraphpadBusinessObject) ? ((JGraphpadBusinessObject) userObject)
+				.clone()
+				: userObject;
+		upsert.attributes = (AttributeMap) graphCell.getAttributes().clone();
+		if (cell instanceof Edge) {
+			Object source = graphModel.getSource(cell);
+			Object target = graphModel.getTarget(cell);
+			upsert.source = (source != null) ? entry.getId(source) : -1;
+			upsert.target = (target != null) ? entry.getId(target) : -1;
+		}
+		record.upserts.add(upsert);
+		if (cache.isPartial())
+			((cache.isVisible(cell)) ? record.visible : record.hidden)
+					.add(new Integer(upsert.id));
+	}
+
+	/**
+	 * Returns a new record that describes the cells that have been shown or
+	 * hidden in the specified change of a partial graph layout cache.
+	 *
+	 * @param entry
+	 *            The journal entry that assigns ids to cells.
+	 * @param diagram
+	 *            The index of the diagram that has changed.
+	 * @param cache
+	 *            The graph layout cache that has changed.
+	 * @param change
+	 *            The change to create the record for.
+	 * @return Returns a new record for <code>change</code>.
+	 */
+	protected Record createRecord(Entry entry, int diagram,
+			GraphLayoutCache cache, GraphLayoutCacheEvent.GraphLayoutCacheChange change) {
+		Record record = new Record(diagram);
+		Set cells = new LinkedHashSet();
+		addAll(cells, change.getInserted());
+		addAll(cells, change.getRemoved());
+		Iterator it = cells.iterator();
+		while (it.hasNext()) {
+			Object cell = it.next();
+			Integer id = new Integer(entry.getId(cell));
+			if (cache.isVisible(cell))
+				record.visible.add(id);
+			else
+				record.hidden.add(id);
+		}
+		return record;
+	}
+
+	/**
+	 * Returns an array of the integers in the specified list.
+	 */
+	protected static int[] toArray(List list) {
+		int[] result = new int[list.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = ((Integer) list.get(i)).intValue();
+		return result;
+	}
+
+	/**
+	 * Adds the specified cells to the specified set.
+	 */
+	protected static void addAll(Set set, Object[] cells) {
+		if (cells != null)
+			set.addAll(Arrays.asList(cells));
+	}
+
+	/**
+	 * Writes the pending blocks of the specified entry to its journal file.
+	 * This is invoked in the background thread.
+	 *
+	 * @param entry
+	 *            The entry whose blocks should be written.
+	 */
+	protected void flush(Entry entry) throws IOException {
+		List blocks;
+		synchronized (entry) {
+			entry.scheduled = false;
+			if (entry.discarded || entry.queue.isEmpty())
+				return;
+			blocks = entry.queue;
+			entry.queue = new ArrayList();
+		}
+
+		// Replaces the journal for snapshots and compactions and appends
+		// all consecutive records as a single block
+		int i = 0;
+		while (i < blocks.size()) {
+			Object block = blocks.get(i);
+			if (block instanceof Snapshot) {
+				writeSnapshot(entry, (Snapshot) block, null);
+				i++;
+			} else if (block == COMPACT) {
+				try {
+					compact(entry);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				i++;
+			} else {
+				int start = i;
+				while (i < blocks.size() && blocks.get(i) instanceof Record)
+					i++;
+				appendRecords(entry, blocks.subList(start, i));
+			}
+		}
+	}
+
+	/**
+	 * Replaces the journal of the specified entry with the specified snapshot.
+	 * If ids are specified, then they are written after the snapshot to
+	 * assign the ids to the cells of the snapshot in the order of
+	 * {@link #getCells(GraphModel)}.
+	 *
+	 * @param entry
+	 *            The entry whose journal should be replaced.
+	 * @param snapshot
+	 *            The snapshot to be written.
+	 * @param ids
+	 *            The ids of the cells in the snapshot or null.
+	 */
+	protected void writeSnapshot(Entry entry, Snapshot snapshot, int[] ids)
+			throws IOException {
+		File tmp = new File(entry.journal.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			JGraphpadBinaryCodec.Writer writer = new JGraphpadBinaryCodec.Writer(
+					model, out);
+			writer.writeObject(snapshot.filename);
+			out.writeBoolean(snapshot.isNew);
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			DataOutputStream data = new DataOutputStream(bos);
+			new JGraphpadBinaryCodec.Writer(model, data)
+					.writeObject(snapshot.file);
+			data.flush();
+			writeBlock(out, BLOCK_SNAPSHOT, bos);
+			if (ids != null) {
+				bos = new ByteArrayOutputStream();
+				data = new DataOutputStream(bos);
+				data.writeInt(ids.length);
+				for (int i = 0; i < ids.length; i++)
+					data.writeInt(ids[i]);
+				data.flush();
+				writeBlock(out, BLOCK_IDS, bos);
+			}
+		} finally {
+			out.close();
+		}
+		try {
+			Files.move(tmp.toPath(), entry.journal.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp.toPath(), entry.journal.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Appends the specified records to the journal of the specified entry as
+	 * a single block.
+	 *
+	 * @param entry
+	 *            The entry whose journal should be appended to.
+	 * @param records
+	 *            The records to be appended.
+	 */
+	protected void appendRecords(Entry entry, List records) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(bos);
+		JGraphpadBinaryCodec.Writer writer = new JGraphpadBinaryCodec.Writer(
+				model, data);
+		data.writeInt(records.size());
+		for (int i = 0; i < records.size(); i++)
+			((Record) records.get(i)).write(writer, data);
+		data.flush();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(entry.journal, true)));
+		try {
+			writeBlock(out, BLOCK_CHANGES, bos);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Compacts the journal of the specified entry by replaying it and
+	 * replacing it with a snapshot of the result, followed by the ids of the
+	 * replayed cells so that the ids assigned by the entry remain valid. This
+	 * is invoked in the background thread and does not access the journaled
+	 * file.
+	 *
+	 * @param entry
+	 *            The entry whose journal should be compacted.
+	 */
+	protected void compact(Entry entry) throws IOException {
+		Replay replay = read(entry.journal);
+		JGraphEditorFile file = replay.build();
+		Map inverse = new IdentityHashMap();
+		Iterator it = replay.cells.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry cell = (Map.Entry) it.next();
+			inverse.put(cell.getValue(), cell.getKey());
+		}
+		List ids = new ArrayList();
+		it = getDiagrams(file).iterator();
+		while (it.hasNext()) {
+			Iterator cells = getCells(
+					((JGraphEditorDiagram) it.next()).getGraphLayoutCache()
+							.getModel()).iterator();
+			while (cells.hasNext()) {
+				Object id = inverse.get(cells.next());
+				if (id == null)
+					throw new IOException("Cannot compact " + entry.journal);
+				ids.add(id);
+			}
+		}
+		writeSnapshot(entry, new Snapshot(file, replay.filename,
+				replay.isNew), toArray(ids));
+	}
+
+	/**
+	 * Writes a block of the specified type with the contents of the specified
+	 * buffer.
+	 */
+	protected void writeBlock(DataOutputStream out, byte type,
+			ByteArrayOutputStream block) throws IOException {
+		out.writeByte(type);
+		out.writeInt(block.size());
+		block.writeTo(out);
+	}
+
+	/**
+	 * Holds the journal state of a single file. All fields except the queue
+	 * are accessed on the event dispatch thread only.
+	 */
+	protected class Entry implements Runnable {
+
+		/**
+		 * Holds the journal file.
+		 */
+		protected File journal;
+
+		/**
+		 * Holds the diagrams of the file in the order of the snapshot.
+		 */
+		protected List diagrams;
+
+		/**
+		 * Maps from cells to their ids.
+		 */
+		protected Map ids = new IdentityHashMap();
+
+		/**
+		 * Holds the next id to be assigned.
+		 */
+		protected int nextId = 0;
+
+		/**
+		 * Holds the number of records since the last snapshot.
+		 */
+		protected int records = 0;
+
+		/**
+		 * Holds the cells of each diagram that have not been copied since the
+		 * last snapshot, or null if all cells have been copied.
+		 */
+		protected List pending;
+
+		/**
+		 * Specifies if records have been appended while cells were copied.
+		 */
+		protected boolean reorder = false;
+
+		/**
+		 * Holds the snapshots and records that have not been written.
+		 */
+		protected List queue = new ArrayList();
+
+		/**
+		 * Specifies if a flush has been scheduled for this entry.
+		 */
+		protected boolean scheduled = false;
+
+		/**
+		 * Specifies if the journal has been discarded.
+		 */
+		protected boolean discarded = false;
+
+		/**
+		 * Constructs a new entry for the specified journal file.
+		 */
+		protected Entry(File journal) {
+			this.journal = journal;
+		}
+
+		/**
+		 * Returns the id of the specified cell, assigning a new id if the cell
+		 * has no id.
+		 */
+		protected int getId(Object cell) {
+			Integer id = (Integer) ids.get(cell);
+			if (id == null) {
+				id = new Integer(nextId++);
+				ids.put(cell, id);
+			}
+			return id.intValue();
+		}
+
+		/**
+		 * Adds the specified block to the queue and schedules a flush after
+		 * the specified delay. A snapshot replaces all pending blocks, a
+		 * compaction is ignored if there is a snapshot in the queue.
+		 */
+		protected synchronized void enqueue(Object block, long delay) {
+			if (block instanceof Snapshot)
+				queue.clear();
+			else if (block == COMPACT && !queue.isEmpty()
+					&& queue.get(0) instanceof Snapshot)
+				return;
+			queue.add(block);
+			if (!scheduled || delay == 0) {
+				scheduled = true;
+				executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		/**
+		 * Writes the pending blocks to the journal file.
+		 */
+		public void run() {
+			try {
+				flush(this);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+	}
+
+	/**
+	 * Holds a snapshot of a file to be written to the journal.
+	 */
+	protected static class Snapshot {
+
+		/**
+		 * Holds the copy of the file and its filename and isNew state.
+		 */
+		protected JGraphEditorFile file;
+
+		protected String filename;
+
+		protected boolean isNew;
+
+		/**
+		 * Constructs a new snapshot.
+		 */
+		protected Snapshot(JGraphEditorFile file, String filename, boolean isNew) {
+			this.file = file;
+			this.filename = filename;
+			this.isNew = isNew;
+		}
+
+	}
+
+	/**
+	 * Describes the changes of a single graph model event.
+	 */
+	protected static class Record {
+
+		/**
+		 * Holds the index of the changed diagram.
+		 */
+		protected int diagram;
+
+		/**
+		 * Holds the ids of the removed cells.
+		 */
+		protected int[] removed = new int[0];
+
+		/**
+		 * Holds the upserts for the inserted and changed cells.
+		 */
+		protected List upserts = new ArrayList();
+
+		/**
+		 * Holds the ids of the cells that have been shown or hidden in a
+		 * partial graph layout cache.
+		 */
+		protected List visible = new ArrayList(), hidden = new ArrayList();
+
+		/**
+		 * Holds arrays of the id of a parent, or -1 for the roots, followed
+		 * by the ids of its children in their order.
+		 */
+		protected List order = new ArrayList();
+
+		/**
+		 * Constructs a new empty record for the specified diagram.
+		 */
+		protected Record(int diagram) {
+			this.diagram = diagram;
+		}
+
+		/**
+		 * Writes the record using the specified writer.
+		 */
+		protected void write(JGraphpadBinaryCodec.Writer writer,
+				DataOutputStream out) throws IOException {
+			out.writeInt(diagram);
+			out.writeInt(removed.length);
+			for (int i = 0; i < removed.length; i++)
+				out.writeInt(removed[i]);
+			out.writeInt(upserts.size());
+			for (int i = 0; i < upserts.size(); i++) {
+				Upsert upsert = (Upsert) upserts.get(i);
+				out.writeInt(upsert.id);
+				writer.writeSymbol(upsert.type);
+				out.writeInt(upsert.parent);
+				out.writeInt(upsert.index);
+				writer.writeObject(upsert.userObject);
+				writer.writeObject(upsert.attributes);
+				out.writeInt(upsert.source);
+				out.writeInt(upsert.target);
+			}
+			write(out, visible);
+			write(out, hidden);
+			out.writeInt(order.size());
+			for (int i = 0; i < order.size(); i++) {
+				int[] ids = (int[]) order.get(i);
+				out.writeInt(ids.length);
+				for (int j = 0; j < ids.length; j++)
+					out.writeInt(ids[j]);
+			}
+		}
+
+		/**
+		 * Writes the length and elements of the specified list of ids.
+		 */
+		protected void write(DataOutputStream out, List ids)
+				throws IOException {
+			out.writeInt(ids.size());
+			for (int i = 0; i < ids.size(); i++)
+				out.writeInt(((Integer) ids.get(i)).intValue());
+		}
+
+	}
+
+	/**
+	 * Describes the state of an inserted or changed cell.
+	 */
+	protected static class Upsert {
+
+		/**
+		 * Holds the id, parent id and index in the parent or roots of the
+		 * cell.
+		 */
+		protected int id, parent, index;
+
+		/**
+		 * Holds the class name of the cell.
+		 */
+		protected String type;
+
+		/**
+		 * Holds a copy of the user object of the cell.
+		 */
+		protected Object userObject;
+
+		/**
+		 * Holds a copy of the attributes of the cell.
+		 */
+		protected AttributeMap attributes;
+
+		/**
+		 * Holds the ids of the source and target port of an edge or -1.
+		 */
+		protected int source = -1, target = -1;
+
+	}
+
+	/**
+	 * Looks up the membership of cells in a model and their indices in their
+	 * parents or the roots. The indices are built on demand for each parent
+	 * so that the lookups take constant time for a single change.
+	 */
+	protected static class Indexes {
+
+		/**
+		 * References the model to look up the cells in.
+		 */
+		protected GraphModel graphModel;
+
+		/**
+		 * Maps from the roots of the model to their indices.
+		 */
+		protected Map roots;
+
+		/**
+		 * Maps from parents to maps from their children to their indices.
+		 */
+		protected Map children = new IdentityHashMap();
+
+		/**
+		 * Constructs new indexes for the specified model.
+		 */
+		protected Indexes(GraphModel graphModel) {
+			this.graphModel = graphModel;
+		}
+
+		/**
+		 * Returns true if the specified cell is contained in the model.
+		 */
+		protected boolean contains(Object cell) {
+			Object parent = graphModel.getParent(cell);
+			while (parent != null) {
+				cell = parent;
+				parent = graphModel.getParent(cell);
+			}
+			return getIndices(null).containsKey(cell);
+		}
+
+		/**
+		 * Returns the index of the specified cell in its parent or the roots.
+		 */
+		protected int indexOf(Object cell) {
+			Integer index = (Integer) getIndices(graphModel.getParent(cell))
+					.get(cell);
+			return (index != null) ? index.intValue() : -1;
+		}
+
+		/**
+		 * Returns a map from the children of the specified parent, or the
+		 * roots if the parent is null, to their indices.
+		 */
+		protected Map getIndices(Object parent) {
+			Map indices = (parent != null) ? (Map) children.get(parent) : roots;
+			if (indices == null) {
+				indices = new IdentityHashMap();
+				int count = (parent != null) ? graphModel.getChildCount(parent)
+						: graphModel.getRootCount();
+				for (int i = 0; i < count; i++)
+					indices.put((parent != null) ? graphModel.getChild(parent,
+							i) : graphModel.getRootAt(i), new Integer(i));
+				if (parent != null)
+					children.put(parent, indices);
+				else
+					roots = indices;
+			}
+			return indices;
+		}
+
+	}
+
+	/**
+	 * Applies the records of a journal to the file of the last snapshot.
+	 */
+	protected static class Replay {
+
+		/**
+		 * Holds the file of the last snapshot.
+		 */
+		protected JGraphEditorFile file;
+
+		/**
+		 * Holds the filename and isNew state from the header of the journal.
+		 */
+		protected String filename;
+
+		protected boolean isNew;
+
+		/**
+		 * Holds the version of the journal.
+		 */
+		protected int version = VERSION;
+
+		/**
+		 * Holds the diagrams of the file and the roots of their models.
+		 */
+		protected List diagrams, roots = new ArrayList();
+
+		/**
+		 * Maps from ids to cells.
+		 */
+		protected Map cells = new Hashtable();
+
+		/**
+		 * Maps from edges to the ids of their source and target ports.
+		 */
+		protected Map connections = new IdentityHashMap();
+
+		/**
+		 * Holds the visible sets of the diagrams as sets of ids.
+		 */
+		protected List visibleIds = new ArrayList();
+
+		/**
+		 * Constructs a new replay for the specified snapshot.
+		 */
+		protected Replay(JGraphEditorFile file) {
+			this.file = file;
+			diagrams = getDiagrams(file);
+			int id = 0;
+			Iterator it = diagrams.iterator();
+			while (it.hasNext()) {
+				GraphLayoutCache cache = ((JGraphEditorDiagram) it.next())
+						.getGraphLayoutCache();
+				GraphModel graphModel = cache.getModel();
+				roots.add(new ArrayList(Arrays.asList(DefaultGraphModel
+						.getRoots(graphModel))));
+				Set visible = new HashSet();
+				Iterator cellIt = getCells(graphModel).iterator();
+				while (cellIt.hasNext()) {
+					Object cell = cellIt.next();
+					Integer cellId = new Integer(id++);
+					cells.put(cellId, cell);
+					if (cache.isPartial() && cache.getVisibleSet() != null
+							&& cache.getVisibleSet().contains(cell))
+						visible.add(cellId);
+				}
+				visibleIds.add(visible);
+			}
+		}
+
+		/**
+		 * Replaces the ids of the cells of the snapshot, which are assigned in
+		 * the order of {@link #getCells(GraphModel)}, with the specified ids.
+		 */
+		protected void setIds(int[] ids) {
+			Map remapped = new Hashtable();
+			for (int i = 0; i < ids.length; i++) {
+				Object cell = cells.get(new Integer(i));
+				if (cell != null)
+					remapped.put(new Integer(ids[i]), cell);
+			}
+			for (int i = 0; i < visibleIds.size(); i++) {
+				Set visible = new HashSet();
+				Iterator it = ((Set) visibleIds.get(i)).iterator();
+				while (it.hasNext()) {
+					int id = ((Integer) it.next()).intValue();
+					if (id < ids.length)
+						visible.add(new Integer(ids[id]));
+				}
+				visibleIds.set(i, visible);
+			}
+			cells = remapped;
+		}
+
+		/**
+		 * Reads and applies the next record.
+		 */
+		protected void apply(JGraphpadBinaryCodec.Reader reader)
+				throws IOException {
+			DataInputStream in = reader.in;
+			int diagram = in.readInt();
+			List diagramRoots = (List) roots.get(diagram);
+			int removed = in.readInt();
+			for (int i = 0; i < removed; i++)
+				detach(diagramRoots, cells.get(new Integer(in.readInt())));
+
+			// Reads all upserts and detaches the existing cells
+			int count = in.readInt();
+			Upsert[] upserts = new Upsert[count];
+			for (int i = 0; i < count; i++) {
+				Upsert upsert = new Upsert();
+				upsert.id = in.readInt();
+				upsert.type = reader.readSymbol();
+				upsert.parent = in.readInt();
+				upsert.index = in.readInt();
+				upsert.userObject = reader.readObject();
+				Map attributes = (Map) reader.readObject();
+				upsert.attributes = (attributes instanceof AttributeMap) ? (AttributeMap) attributes
+						: new AttributeMap(attributes);
+				upsert.source = in.readInt();
+				upsert.target = in.readInt();
+				upserts[i] = upsert;
+				detach(diagramRoots, cells.get(new Integer(upsert.id)));
+			}
+
+			// Updates and attaches the cells in order
+			for (int i = 0; i < count; i++) {
+				Upsert upsert = upserts[i];
+				Integer id = new Integer(upsert.id);
+				DefaultGraphCell cell = (DefaultGraphCell) cells.get(id);
+				if (cell == null) {
+					try {
+						cell = (DefaultGraphCell) Class.forName(upsert.type)
+								.newInstance();
+					} catch (Exception e) {
+						throw new IOException("Cannot create " + upsert.type);
+					}
+					cells.put(id, cell);
+				}
+				cell.setUserObject(upsert.userObject);
+				cell.setAttributes(upsert.attributes);
+				if (cell instanceof Edge)
+					connections.put(cell, new int[] { upsert.source,
+							upsert.target });
+				if (upsert.parent < 0) {
+					diagramRoots.add(Math.min(upsert.index, diagramRoots
+							.size()), cell);
+				} else {
+					DefaultMutableTreeNode parent = (DefaultMutableTreeNode) cells
+							.get(new Integer(upsert.parent));
+					if (parent != null)
+						parent.insert(cell, Math.min(upsert.index, parent
+								.getChildCount()));
+				}
+			}
+
+			// Updates the visible set
+			Set visible = (Set) visibleIds.get(diagram);
+			count = in.readInt();
+			for (int i = 0; i < count; i++)
+				visible.add(new Integer(in.readInt()));
+			count = in.readInt();
+			for (int i = 0; i < count; i++)
+				visible.remove(new Integer(in.readInt()));
+
+			// Restores the order of the children
+			count = (version > 1) ? in.readInt() : 0;
+			for (int i = 0; i < count; i++) {
+				int[] ids = new int[in.readInt()];
+				for (int j = 0; j < ids.length; j++)
+					ids[j] = in.readInt();
+				reorder(diagramRoots, ids);
+			}
+		}
+
+		/**
+		 * Orders the children of the parent with the first id in the
+		 * specified array, or the roots if the id is -1, using the remaining
+		 * ids. Children whose ids are not in the array keep their relative
+		 * order after the ordered children.
+		 */
+		protected void reorder(List diagramRoots, int[] ids) {
+			DefaultMutableTreeNode parent = null;
+			List children = diagramRoots;
+			if (ids[0] >= 0) {
+				Object cell = cells.get(new Integer(ids[0]));
+				if (!(cell instanceof DefaultMutableTreeNode))
+					return;
+				parent = (DefaultMutableTreeNode) cell;
+				children = Collections.list(parent.children());
+			}
+			Map present = new IdentityHashMap();
+			for (int i = 0; i < children.size(); i++)
+				present.put(children.get(i), children.get(i));
+			List ordered = new ArrayList(children.size());
+			for (int i = 1; i < ids.length; i++) {
+				Object cell = cells.get(new Integer(ids[i]));
+				if (cell != null && present.remove(cell) != null)
+					ordered.add(cell);
+			}
+			for (int i = 0; i < children.size(); i++)
+				if (present.containsKey(children.get(i)))
+					ordered.add(children.get(i));
+			if (parent == null) {
+				diagramRoots.clear();
+				diagramRoots.addAll(ordered);
+			} else {
+				parent.removeAllChildren();
+				for (int i = 0; i < ordered.size(); i++)
+					parent.add((DefaultMutableTreeNode) ordered.get(i));
+			}
+		}
+
+		/**
+		 * Removes the specified cell from its parent or the roots.
+		 */
+		protected void detach(List diagramRoots, Object cell) {
+			if (cell instanceof DefaultMutableTreeNode) {
+				DefaultMutableTreeNode node = (DefaultMutableTreeNode) cell;
+				if (node.getParent() != null)
+					node.removeFromParent();
+				else
+					diagramRoots.remove(cell);
+			}
+		}
+
+		/**
+		 * Replaces the graph layout caches of all diagrams with new caches
+		 * for the replayed cells and returns the file.
+		 */
+		protected JGraphEditorFile build() {
+			for (int i = 0; i < diagrams.size(); i++) {
+				JGraphEditorDiagram diagram = (JGraphEditorDiagram) diagrams
+						.get(i);
+				GraphLayoutCache cache = diagram.getGraphLayoutCache();
+				List diagramRoots = (List) roots.get(i);
+
+				// Collects all cells and resets the connections
+				Set all = new HashSet();
+				List edges = new ArrayList();
+				for (int j = 0; j < diagramRoots.size(); j++) {
+					Object root = diagramRoots.get(j);
+					if (root instanceof DefaultMutableTreeNode) {
+						Enumeration it = ((DefaultMutableTreeNode) root)
+								.preorderEnumeration();
+						while (it.hasMoreElements()) {
+							Object cell = it.nextElement();
+							all.add(cell);
+							if (cell instanceof DefaultPort)
+								((DefaultPort) cell).setEdges(new HashSet());
+							else if (cell instanceof Edge)
+								edges.add(cell);
+						}
+					}
+				}
+				ConnectionSet cs = new ConnectionSet();
+				for (int j = 0; j < edges.size(); j++) {
+					Edge edge = (Edge) edges.get(j);
+					Object source = edge.getSource();
+					Object target = edge.getTarget();
+					int[] ids = (int[]) connections.get(edge);
+					if (ids != null) {
+						source = cells.get(new Integer(ids[0]));
+						target = cells.get(new Integer(ids[1]));
+					}
+					edge.setSource(null);
+					edge.setTarget(null);
+					if (source != null && all.contains(source))
+						cs.connect(edge, source, true);
+					if (target != null && all.contains(target))
+						cs.connect(edge, target, false);
+				}
+
+				// Maps the visible set to the replayed cells
+				Set visibleSet = null;
+				if (cache.isPartial()) {
+					visibleSet = new HashSet();
+					Iterator it = ((Set) visibleIds.get(i)).iterator();
+					while (it.hasNext()) {
+						Object cell = cells.get(it.next());
+						if (all.contains(cell))
+							visibleSet.add(cell);
+					}
+				}
+				Map attributes = ((DefaultGraphModel) cache.getModel())
+						.getAttributes();
+				JGraphpadGraphModel graphModel = new JGraphpadGraphModel(
+						diagramRoots, (attributes != null) ? new AttributeMap(
+								attributes) : null, cs);
+				diagram.setGraphLayoutCache(new JGraphpadGraphLayoutCache(
+						graphModel, visibleSet, cache.isPartial()));
+			}
+			return file;
+		}
+
+	}
+
+}
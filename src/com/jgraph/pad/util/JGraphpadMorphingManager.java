@@ -11,13 +11,19 @@
  */
 package com.jgraph.pad.util;
 
-import java.awt.Shape;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import javax.swing.Timer;
@@ -26,42 +32,108 @@ import org.jgraph.JGraph;
 import org.jgraph.graph.CellView;
 import org.jgraph.graph.DefaultGraphModel;
 import org.jgraph.graph.GraphConstants;
+import org.jgraph.graph.GraphLayoutCache;
+
+import com.jgraph.pad.graph.JGraphpadGraphLayoutCache;
 
 /**
  * Animation for simple graph changes (moves). This takes a nested map and
  * animates the change visually so the vertices appear to float to their new
  * locations. This implementation only takes into account new positions of
  * vertices, sizes, colors etc are changed after the animation in a single step.<br>
+ * The animation is time-based: Each frame moves the cells to the location for
+ * the elapsed time and repaints the union of the areas covered by the animated
+ * cells and their connected edges in the previous and current frame. The
+ * locations are interpolated into buffers which are allocated once per
+ * animation. The change is applied without animation if the graph is not
+ * showing or more than {@link #maxCells} cells would have to be updated in
+ * each frame, and the animation is stopped if a frame takes longer than
+ * {@link #frameBudget} milliseconds.<br>
  * Note: This class is not thread-safe.
  */
 public class JGraphpadMorphingManager implements ActionListener {
 
 	/**
 	 * Specifies the delay between morphing steps in milliseconds. Default is
-	 * 30.
+	 * 30. The animation takes {@link #steps} times this delay.
 	 */
 	protected int delay = 30;
 
 	/**
-	 * Specifies the number of animation steps. Default is 10.
+	 * Specifies the number of animation steps. Default is 10. This is the
+	 * number of frames for animated GIF images, the number of frames on the
+	 * screen depends on the time it takes to paint each frame.
 	 */
 	protected int steps = 10;
 
+	/**
+	 * Specifies the maximum number of cells, including the connected edges,
+	 * to be animated. Default is 2000.
+	 */
+	protected int maxCells = 2000;
+
+	/**
+	 * Specifies the maximum time in milliseconds to update and paint a frame.
+	 * If a frame takes longer then the animation is stopped. Default is 30.
+	 */
+	protected int frameBudget = 30;
+
+	/**
+	 * Specifies the inset in pixels to be added to the repainted area for
+	 * borders and handles. Default is 8.
+	 */
+	protected int inset = 8;
+
 	/**
 	 * References the graph to be morphed.
 	 */
 	protected JGraph graph;
 
 	/**
-	 * Holds the current morhing step.
+	 * References the timer of the running animation.
+	 */
+	protected transient Timer timer;
+
+	/**
+	 * Holds the time when the animation was started.
+	 */
+	protected transient long start;
+
+	/**
+	 * Holds the number of frames that have been painted.
+	 */
+	protected transient int frames = 0;
+
+	/**
+	 * Holds the number of cells whose bounds are changed by the nested map.
+	 */
+	protected transient int count = 0;
+
+	/**
+	 * Holds the number of cells to be animated.
+	 */
+	protected transient int animatedCount = 0;
+
+	/**
+	 * Holds the cells whose bounds are changed and their views.
+	 */
+	protected transient Object[] cells;
+
+	/**
+	 * Holds the views of {@link #cells}.
+	 */
+	protected transient CellView[] views;
+
+	/**
+	 * Specifies which of the {@link #cells} are animated.
 	 */
-	protected transient int step = 0;
+	protected transient boolean[] animated;
 
 	/**
-	 * Holds the current and final bounds of the animation.
+	 * Holds the current x, y, width and height and the final x and y
+	 * coordinate for each of the {@link #cells}.
 	 */
-	protected transient Map oldBounds = new Hashtable(),
-			newBounds = new Hashtable();
+	protected transient double[] coords;
 
 	/**
 	 * Holds the context cells, eg the edges connected to the animated cells or
@@ -70,9 +142,11 @@ public class JGraphpadMorphingManager implements ActionListener {
 	protected transient CellView[] context;
 
 	/**
-	 * Holds the clipping shape to be used for repainting the graph.
+	 * Holds the area covered by the cells in the previous frame, the area
+	 * covered in the current frame and the area to be repainted.
 	 */
-	protected transient Shape clip;
+	protected transient Rectangle2D dirty = new Rectangle2D.Double(),
+			region = new Rectangle2D.Double(), clip = new Rectangle2D.Double();
 
 	/**
 	 * Holds the original nested map for the final execute step.
@@ -83,13 +157,14 @@ public class JGraphpadMorphingManager implements ActionListener {
 	 * Animates the graph so that all vertices move from their current location
 	 * to the new location stored in the nested map. This sets the
 	 * {@link #nestedMap} and {@link #graph} variable and spawns a timer
-	 * process. While the timer is running, further method calls are ignored.
-	 * The call will return immediately.
+	 * process. While the timer is running, further method calls are ignored
+	 * and return false. The call will return immediately.
 	 * 
 	 * @param nestedMap
 	 *            The nested map that defines the new locations.
+	 * @return Returns true if the change is being applied.
 	 */
-	public synchronized void morph(JGraph graph, Map nestedMap) {
+	public synchronized boolean morph(JGraph graph, Map nestedMap) {
 		if (this.graph == null && this.nestedMap == null && graph != null
 				&& nestedMap != null) {
 			this.graph = graph;
@@ -97,12 +172,110 @@ public class JGraphpadMorphingManager implements ActionListener {
 			initialize();
 			// Execute the morphing. This spawns a timer
 			// to not block the dispatcher thread (repaint).
-			if (!newBounds.isEmpty()) {
-				Timer timer = new Timer(delay, this);
+			if (animatedCount > 0 && graph.isShowing()
+					&& count + context.length <= maxCells) {
+				updateRegion();
+				dirty.setRect(region);
+				start = System.currentTimeMillis();
+				timer = new Timer(delay, this);
 				timer.start();
 			} else {
 				execute();
 			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Stops the running animation, if any, and applies its change at once
+	 * using {@link #execute()}. This should be called before a change is
+	 * applied to the graph while an animation may be running, as the
+	 * animation would otherwise apply its nested map over the change when it
+	 * completes. This must be called on the event dispatch thread.
+	 */
+	public synchronized void finish() {
+		if (timer != null) {
+			timer.stop();
+			execute();
+		}
+	}
+
+	/**
+	 * Writes the animation of the specified nested map as an animated GIF
+	 * image to the specified stream without changing the graph. Each step of
+	 * the animation is painted using the {@link JGraphpadRenderService} into
+	 * a frame that contains the cells at all steps. The last frame is shown
+	 * for the duration of the animation before it is repeated. This must be
+	 * called on the event dispatch thread. Returns false if an animation is
+	 * running or there is nothing to animate.
+	 * 
+	 * @param graph
+	 *            The graph to be animated.
+	 * @param nestedMap
+	 *            The nested map that defines the new locations.
+	 * @param bg
+	 *            The background color or null for a transparent background.
+	 * @param inset
+	 *            The empty border around the cells.
+	 * @param out
+	 *            The stream to write the image to.
+	 * @return Returns true if the image was written.
+	 * @throws IOException
+	 *             If the image cannot be written.
+	 */
+	public synchronized boolean writeGIF(JGraph graph, Map nestedMap,
+			Color bg, int inset, OutputStream out) throws IOException {
+		if (this.graph != null || this.nestedMap != null || graph == null
+				|| nestedMap == null)
+			return false;
+		this.graph = graph;
+		this.nestedMap = nestedMap;
+		try {
+			initialize();
+			GraphLayoutCache cache = graph.getGraphLayoutCache();
+
+			// Finds the area that contains the cells at all steps
+			Rectangle2D area = null;
+			for (int step = 0; step <= steps; step++) {
+				updateCells((double) step / steps);
+				Rectangle2D bounds = JGraphpadRenderService.getBounds(cache,
+						graph.getScale());
+				if (area == null)
+					area = bounds;
+				else if (bounds != null)
+					area.add(bounds);
+			}
+			if (area == null || animatedCount == 0)
+				return false;
+			BufferedImage frame = new BufferedImage((int) area.getWidth() + 2
+					* inset, (int) area.getHeight() + 2 * inset,
+					(bg != null) ? BufferedImage.TYPE_INT_RGB
+							: BufferedImage.TYPE_INT_ARGB);
+			JGraphpadGifWriter writer = new JGraphpadGifWriter(out);
+			writer.setRepeat(0);
+			for (int step = 0; step <= steps; step++) {
+				updateCells((double) step / steps);
+				Graphics2D g = frame.createGraphics();
+				if (bg != null)
+					g.setColor(bg);
+				else
+					g.setComposite(AlphaComposite.Clear);
+				g.fillRect(0, 0, frame.getWidth(), frame.getHeight());
+				g.setComposite(AlphaComposite.SrcOver);
+				g.translate(-area.getX() + inset, -area.getY() + inset);
+				JGraphpadRenderService.getSharedInstance().paint(g, cache,
+						graph);
+				g.dispose();
+				writer.addFrame(frame, (step < steps) ? delay : delay * steps);
+			}
+			writer.finish();
+			return true;
+		} finally {
+			restoreCells();
+			if (context != null)
+				graph.getGraphLayoutCache().update(context);
+			reset();
 		}
 	}
 
@@ -120,82 +293,103 @@ public class JGraphpadMorphingManager implements ActionListener {
 
 	/**
 	 * Initializes the datastructures required for the animation. This
-	 * implementation sets the current and final location for the cells to be
-	 * animated using the specified nestedMap to get the new locations. If a
-	 * cell is in the nested map but {@link #isAnimatable(Object)} returns false
-	 * then the cell is moved to it's final location in the first animation
-	 * step.
+	 * implementation stores the current and final location for the cells to
+	 * be animated using the specified nestedMap to get the new locations. If
+	 * a cell is in the nested map but {@link #isAnimatable(Object)} returns
+	 * false then the cell is moved to it's final location before the first
+	 * animation step.
 	 */
 	protected void initialize() {
-		// Initialize the old (current) and new (final) bounds
-		// hashtables if the bounds differ. For the non-animatable
-		// cells this will temporily apply the new bounds.
+		// Finds the cells whose bounds differ from the new bounds
+		GraphLayoutCache cache = graph.getGraphLayoutCache();
+		List changed = new ArrayList();
+		List changedViews = new ArrayList();
+		List changedBounds = new ArrayList();
 		Iterator it = nestedMap.entrySet().iterator();
 		while (it.hasNext()) {
 			Map.Entry entry = (Map.Entry) it.next();
 			Object cell = entry.getKey();
 			Rectangle2D rect = GraphConstants.getBounds((Map) entry.getValue());
 			if (rect != null) {
-				Rectangle2D old = graph.getCellBounds(cell);
+				CellView view = cache.getMapping(cell, false);
+				Rectangle2D old = (view != null) ? view.getBounds() : null;
 				if (old != null && !old.equals(rect)) {
-					oldBounds.put(cell, old.clone());
-					if (!isAnimatable(cell))
-						setCellBounds(cell, rect);
-					else
-						newBounds.put(cell, rect);
+					changed.add(cell);
+					changedViews.add(view);
+					changedBounds.add(rect);
 				}
 			}
 		}
 
-		// Finds the set of parents to determine the clipping region
-		// and context of the animation. To make sure the complete
-		// graph is painted including the non-animatable cells
-		// this uses the cells from the oldbounds map.
-		HashSet parents = new HashSet();
-		it = oldBounds.keySet().iterator();
-		while (it.hasNext()) {
-			Object cell = it.next();
+		// Initializes the buffers for the current and final locations. For
+		// the non-animatable cells this will temporily apply the new bounds.
+		count = changed.size();
+		cells = changed.toArray();
+		views = new CellView[count];
+		changedViews.toArray(views);
+		animated = new boolean[count];
+		coords = new double[count * 6];
+		animatedCount = 0;
+		for (int i = 0; i < count; i++) {
+			Rectangle2D old = views[i].getBounds();
+			Rectangle2D rect = (Rectangle2D) changedBounds.get(i);
+			int j = i * 6;
+			coords[j] = old.getX();
+			coords[j + 1] = old.getY();
+			coords[j + 2] = old.getWidth();
+			coords[j + 3] = old.getHeight();
+			coords[j + 4] = rect.getX();
+			coords[j + 5] = rect.getY();
+			animated[i] = isAnimatable(cells[i]);
+			if (animated[i])
+				animatedCount++;
+			else
+				setBounds(i, rect.getX(), rect.getY(), rect.getWidth(), rect
+						.getHeight());
+		}
+		invalidateSpatialIndex();
 
+		// Finds the set of parents to determine the context of the
+		// animation. The context consists of all cells connected to
+		// either a cell or one of its parents.
+		HashSet parents = new HashSet();
+		for (int i = 0; i < count; i++) {
 			// Fetches all parents of the cell and adds them to the parent set
-			Object parent = graph.getModel().getParent(cell);
+			Object parent = graph.getModel().getParent(cells[i]);
 			while (parent != null) {
 				parents.add(parent);
 				parent = graph.getModel().getParent(parent);
 			}
 		}
-		parents.addAll(oldBounds.keySet());
-		Object[] cells = parents.toArray();
-
-		// Initializes the clipping region
-		clip = graph.getCellBounds(cells);
-
-		// Initializes the context of the animation. The context consists
-		// of all cells connected to either a cell or one of its parents.
-		Object[] edges = DefaultGraphModel.getEdges(graph.getModel(), cells)
-				.toArray();
-		context = graph.getGraphLayoutCache().getMapping(edges);
+		parents.addAll(changed);
+		Object[] edges = DefaultGraphModel.getEdges(graph.getModel(),
+				parents.toArray()).toArray();
+		context = cache.getMapping(edges);
 	}
 
 	/**
-	 * Invoked to perform an animation step and stop the timer if all animation
-	 * steps have been performed.
+	 * Invoked to perform an animation step and stop the timer if the
+	 * animation has completed or the step took longer than
+	 * {@link #frameBudget}. The first step is not checked since it includes
+	 * the time to paint the cells at their initial locations.
 	 * 
 	 * @param event
 	 *            The object that describes the event.
 	 */
 	public void actionPerformed(ActionEvent event) {
-		if (step >= steps) {
-			Timer timer = (Timer) event.getSource();
+		if (timer == null || event.getSource() != timer)
+			return;
+		long now = System.currentTimeMillis();
+		double fraction = (double) (now - start) / Math.max(1, delay * steps);
+		if (fraction < 1) {
+			updateCells(fraction);
+			repaint();
+			frames++;
+		}
+		if (fraction >= 1
+				|| (frames > 1 && System.currentTimeMillis() - now > frameBudget)) {
 			timer.stop();
 			execute();
-		} else {
-			step++;
-			Iterator it = newBounds.keySet().iterator();
-			while (it.hasNext())
-				updateCell(it.next());
-			graph.getGraphLayoutCache().update(context);
-			graph.getGraphics().setClip(clip);
-			graph.repaint();
 		}
 	}
 
@@ -208,61 +402,193 @@ public class JGraphpadMorphingManager implements ActionListener {
 	 */
 	protected void execute() {
 		try {
-			Iterator it = oldBounds.entrySet().iterator();
-			while (it.hasNext()) {
-				Map.Entry entry = (Map.Entry) it.next();
-				setCellBounds(entry.getKey(), (Rectangle2D) entry.getValue());
-			}
+			restoreCells();
 			graph.getGraphLayoutCache().edit(nestedMap, null, null, null);
 		} finally {
-			graph = null;
-			nestedMap = null;
-			oldBounds.clear();
-			newBounds.clear();
-			context = null;
-			clip = null;
-			step = 0;
+			reset();
 		}
 	}
 
 	/**
-	 * Updates the specified cell for {@link #step}. This implementation moves
-	 * the cell by a single increment towards it's final location using
-	 * {@link #setCellBounds(Object, Rectangle2D)} to update the cell's bounds.
+	 * Clears the datastructures of the animation.
+	 */
+	protected void reset() {
+		graph = null;
+		nestedMap = null;
+		timer = null;
+		cells = null;
+		views = null;
+		animated = null;
+		coords = null;
+		context = null;
+		count = 0;
+		animatedCount = 0;
+		frames = 0;
+	}
+
+	/**
+	 * Updates all animated cells for the specified fraction of the animation
+	 * using {@link #updateCell(int, double)}, invalidates the cells in the
+	 * spatial index and updates the context of the animation.
 	 * 
-	 * @param cell
-	 *            The cell to be updated.
-	 */
-	protected void updateCell(Object cell) {
-		if (isAnimatable(cell)) {
-			Rectangle2D old = (Rectangle2D) oldBounds.get(cell);
-			Rectangle2D rect = (Rectangle2D) newBounds.get(cell);
-			double dx = (rect.getX() - old.getX()) * step / steps;
-			double dy = (rect.getY() - old.getY()) * step / steps;
-			Rectangle2D pos = new Rectangle2D.Double(old.getX() + dx, old
-					.getY()
-					+ dy, old.getWidth(), old.getHeight());
-			setCellBounds(cell, pos);
+	 * @param fraction
+	 *            The fraction of the animation between 0 and 1.
+	 */
+	protected void updateCells(double fraction) {
+		for (int i = 0; i < count; i++)
+			if (animated[i])
+				updateCell(i, fraction);
+		invalidateSpatialIndex();
+		graph.getGraphLayoutCache().update(context);
+	}
+
+	/**
+	 * Updates the specified cell for the specified fraction of the animation.
+	 * This implementation moves the cell towards it's final location without
+	 * changing its size.
+	 * 
+	 * @param index
+	 *            The index of the cell to be updated in {@link #cells}.
+	 * @param fraction
+	 *            The fraction of the animation between 0 and 1.
+	 */
+	protected void updateCell(int index, double fraction) {
+		int j = index * 6;
+		setBounds(index, coords[j] + (coords[j + 4] - coords[j]) * fraction,
+				coords[j + 1] + (coords[j + 5] - coords[j + 1]) * fraction,
+				coords[j + 2], coords[j + 3]);
+	}
+
+	/**
+	 * Restores the original bounds of all cells whose bounds have been
+	 * changed and invalidates the cells in the spatial index.
+	 */
+	protected void restoreCells() {
+		for (int i = 0; i < count; i++) {
+			int j = i * 6;
+			setBounds(i, coords[j], coords[j + 1], coords[j + 2],
+					coords[j + 3]);
 		}
+		invalidateSpatialIndex();
 	}
 
 	/**
-	 * Sets the bounds for the specified cell.
+	 * Marks the changed cells as dirty in the spatial index of the graph
+	 * layout cache. The views are changed in place by
+	 * {@link #setBounds(int, double, double, double, double)}, so the index
+	 * is not notified otherwise.
+	 */
+	protected void invalidateSpatialIndex() {
+		GraphLayoutCache cache = graph.getGraphLayoutCache();
+		if (cells != null && cache instanceof JGraphpadGraphLayoutCache)
+			((JGraphpadGraphLayoutCache) cache).getSpatialIndex().invalidate(
+					cells);
+	}
+
+	/**
+	 * Sets the bounds of the view of the specified cell and updates the view.
 	 * 
-	 * @param cell
-	 *            The cell whose bounds to set.
-	 * @param bounds
-	 *            The new bounds of the cell.
-	 */
-	protected void setCellBounds(Object cell, Rectangle2D bounds) {
-		Rectangle2D rect = graph.getCellBounds(cell);
-		if (rect != null && bounds != null) {
-			rect.setFrame(bounds.getX(), bounds.getY(), bounds.getWidth(),
-					bounds.getHeight());
-			CellView view = graph.getGraphLayoutCache().getMapping(cell, false);
-			if (view != null)
-				view.update(graph.getGraphLayoutCache());
+	 * @param index
+	 *            The index of the cell in {@link #cells}.
+	 * @param x
+	 *            The new x-coordinate of the cell.
+	 * @param y
+	 *            The new y-coordinate of the cell.
+	 * @param w
+	 *            The new width of the cell.
+	 * @param h
+	 *            The new height of the cell.
+	 */
+	protected void setBounds(int index, double x, double y, double w, double h) {
+		Rectangle2D rect = views[index].getBounds();
+		if (rect != null) {
+			rect.setFrame(x, y, w, h);
+			views[index].update(graph.getGraphLayoutCache());
 		}
 	}
 
+	/**
+	 * Sets {@link #region} to the area covered by the animated cells and
+	 * their context.
+	 */
+	protected void updateRegion() {
+		region.setRect(0, 0, -1, -1);
+		for (int i = 0; i < count; i++)
+			addRegion(views[i]);
+		for (int i = 0; i < context.length; i++)
+			addRegion(context[i]);
+	}
+
+	/**
+	 * Adds the bounds of the specified view to {@link #region}.
+	 * 
+	 * @param view
+	 *            The view whose bounds should be added.
+	 */
+	protected void addRegion(CellView view) {
+		Rectangle2D rect = (view != null) ? view.getBounds() : null;
+		if (rect != null) {
+			if (region.getWidth() < 0)
+				region.setRect(rect);
+			else
+				region.add(rect);
+		}
+	}
+
+	/**
+	 * Paints the union of the areas covered by the cells in the previous and
+	 * the current frame.
+	 */
+	protected void repaint() {
+		updateRegion();
+		clip.setRect(dirty);
+		if (region.getWidth() >= 0)
+			clip.add(region);
+		dirty.setRect(region);
+		graph.toScreen(clip);
+		int x = (int) Math.floor(clip.getX()) - inset;
+		int y = (int) Math.floor(clip.getY()) - inset;
+		graph.paintImmediately(x, y, (int) Math.ceil(clip.getWidth()) + 2
+				* inset + 1, (int) Math.ceil(clip.getHeight()) + 2 * inset + 1);
+	}
+
+	/**
+	 * Returns the maximum number of cells to be animated.
+	 * 
+	 * @return Returns the maximum number of cells.
+	 */
+	public int getMaxCells() {
+		return maxCells;
+	}
+
+	/**
+	 * Sets the maximum number of cells, including the connected edges, to be
+	 * animated.
+	 * 
+	 * @param maxCells
+	 *            The maximum number of cells to set.
+	 */
+	public void setMaxCells(int maxCells) {
+		this.maxCells = maxCells;
+	}
+
+	/**
+	 * Returns the maximum time in milliseconds to update and paint a frame.
+	 * 
+	 * @return Returns the frame budget.
+	 */
+	public int getFrameBudget() {
+		return frameBudget;
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds to update and paint a frame.
+	 * 
+	 * @param frameBudget
+	 *            The frame budget to set.
+	 */
+	public void setFrameBudget(int frameBudget) {
+		this.frameBudget = frameBudget;
+	}
+
 }
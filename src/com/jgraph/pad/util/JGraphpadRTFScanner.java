@@ -0,0 +1,251 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.util;
+
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Extracts the plain text from RTF encoded strings without building a
+ * document. The scanner implements the subset of RTF which is written by the
+ * RTF editor kit of Swing and returns the same text as the editor kit's reader
+ * for that subset. For other constructs, such as unknown keywords, character
+ * sets other than ANSI, ANSI characters between 0x80 and 0x9F, which are
+ * translated differently by the editor kit, or non-ASCII characters, the
+ * scanner returns null so that the caller can fall back to the editor kit.
+ */
+public class JGraphpadRTFScanner {
+
+	/**
+	 * Maps from the keywords which insert text to the inserted text.
+	 */
+	protected static Map textKeywords = new Hashtable();
+
+	/**
+	 * Holds the keywords which do not insert text and the keywords of the
+	 * destinations whose text is discarded.
+	 */
+	protected static Set formatKeywords = new HashSet(),
+			destinationKeywords = new HashSet();
+
+	static {
+		String[] text = new String[] { "\\", "\\", "{", "{", "}", "}", " ",
+				"\u00A0", "~", "\u00A0", "_", "\u2011", "-", "\u2027",
+				"bullet", "\u2022", "emdash", "\u2014", "emspace", "\u2003",
+				"endash", "\u2013", "enspace", "\u2002", "ldblquote",
+				"\u201C", "lquote", "\u2018", "ltrmark", "\u200E",
+				"rdblquote", "\u201D", "rquote", "\u2019", "rtlmark",
+				"\u200F", "tab", "\t", "zwj", "\u200D", "zwnj", "\u200C",
+				"par", "\n", "\n", "\n", "\r", "\n" };
+		for (int i = 0; i < text.length; i += 2)
+			textKeywords.put(text[i], text[i + 1]);
+		String[] format = new String[] { "rtf", "ansi", "ansicpg", "uc",
+				"deff", "deftab", "f", "fnil", "froman", "fswiss", "fmodern",
+				"fscript", "fdecor", "ftech", "fbidi", "fcharset", "fprq",
+				"red", "green", "blue", "s", "cs", "ds", "sbasedon", "snext",
+				"additive", "shidden", "sectd", "pard", "plain", "b", "i",
+				"ul", "ulnone", "strike", "caps", "scaps", "shad", "outl",
+				"v", "deleted", "fs", "cf", "cb", "up", "dn", "sub", "super",
+				"nosupersub", "ql", "qc", "qr", "qj", "li", "ri", "fi", "sb",
+				"sa", "sl", "slmult", "tx", "tb", "tqr", "tqc", "tqdec",
+				"tldot", "tleq", "tlhyph", "tlth", "tlul", "paperw", "paperh",
+				"margl", "margr", "margt", "margb", "gutter", "landscape",
+				"widowctrl", "widctlpar", "nowidctlpar", "defformat",
+				"saveformat" };
+		for (int i = 0; i < format.length; i++)
+			formatKeywords.add(format[i]);
+		String[] destinations = new String[] { "fonttbl", "colortbl",
+				"stylesheet", "info", "aftncn", "aftnsep", "aftnsepc",
+				"annotation", "atnauthor", "atnicn", "atnid", "atnref",
+				"atntime", "atrfend", "atrfstart", "bkmkend", "bkmkstart",
+				"datafield", "do", "dptxbxtext", "falt", "field", "file",
+				"filetbl", "fname", "fontemb", "fontfile", "footer",
+				"footerf", "footerl", "footerr", "footnote", "ftncn",
+				"ftnsep", "ftnsepc", "header", "headerf", "headerl",
+				"headerr", "keycode", "nextfile", "object", "pict", "pn",
+				"pnseclvl", "pntxtb", "pntxta", "revtbl", "rxe", "tc",
+				"template", "txe", "xe" };
+		for (int i = 0; i < destinations.length; i++)
+			destinationKeywords.add(destinations[i]);
+	}
+
+	/**
+	 * Returns the plain text of the specified RTF encoded string or null if
+	 * the string uses constructs which are not supported by this scanner.
+	 * Paragraphs, including the last paragraph, are terminated by newlines.
+	 *
+	 * @param rtf
+	 *            The RTF encoded string to be scanned.
+	 * @return Returns the plain text or null.
+	 */
+	public static String getText(String rtf) {
+		int length = rtf.length();
+		StringBuffer text = new StringBuffer(length / 2);
+
+		// Holds the group depth, the depth of the discarded destination and
+		// the number of characters to skip after a unicode character. The
+		// number of characters to skip is stored for each group.
+		int depth = 0, discard = Integer.MAX_VALUE, skipping = 0;
+		int[] uc = new int[16];
+		uc[0] = 1;
+		boolean ansi = false, started = false, paragraph = false;
+		int i = 0;
+		while (i < length) {
+			char ch = rtf.charAt(i++);
+			if (ch == '{') {
+				if (++depth >= uc.length) {
+					int[] tmp = new int[uc.length * 2];
+					System.arraycopy(uc, 0, tmp, 0, uc.length);
+					uc = tmp;
+				}
+				uc[depth] = uc[depth - 1];
+				skipping = 0;
+				continue;
+			} else if (ch == '}') {
+				if (depth == 0)
+					return null;
+				if (--depth < discard)
+					discard = Integer.MAX_VALUE;
+				skipping = 0;
+				continue;
+			} else if (ch == '\r' || ch == '\n') {
+				continue;
+			}
+
+			// Reads the next keyword, control symbol, character code or
+			// character and sets insert to the text to be inserted.
+			String keyword = null, insert = null;
+			int parameter = 0;
+			boolean hasParameter = false;
+			if (ch == '\\') {
+				if (i >= length)
+					return null;
+				ch = rtf.charAt(i++);
+				if (ch == '\'') {
+					int hi = (i < length) ? Character.digit(rtf.charAt(i), 16)
+							: -1;
+					int lo = (i + 1 < length) ? Character.digit(rtf
+							.charAt(i + 1), 16) : -1;
+					if (hi < 0 || lo < 0)
+						return null;
+					i += 2;
+					parameter = hi * 16 + lo;
+				} else if (isLetter(ch)) {
+					int start = i - 1;
+					while (i < length && isLetter(rtf.charAt(i)))
+						i++;
+					keyword = rtf.substring(start, i);
+					if (i < length
+							&& (rtf.charAt(i) == '-' || isDigit(rtf.charAt(i)))) {
+						int end = i + 1;
+						while (end < length && isDigit(rtf.charAt(end)))
+							end++;
+						try {
+							parameter = Integer.parseInt(rtf.substring(i, end));
+						} catch (NumberFormatException e) {
+							return null;
+						}
+						hasParameter = true;
+						i = end;
+					}
+
+					// Consumes the delimiter if it is a whitespace
+					if (i < length && isWhitespace(rtf.charAt(i)))
+						i++;
+				} else {
+					keyword = String.valueOf(ch);
+					insert = (String) textKeywords.get(keyword);
+					if (insert == null && ch != '*')
+						return null;
+				}
+			} else if (ch > 127 || (ch < 32 && ch != '\t')) {
+				return null;
+			} else {
+				insert = String.valueOf(ch);
+			}
+
+			// Skips the alternative representation of unicode characters
+			// and all keywords and text in discarded destinations
+			if (skipping > 0) {
+				skipping--;
+				continue;
+			} else if (depth >= discard) {
+				continue;
+			}
+
+			// Handles character codes and ignores zero characters
+			if (keyword == null && insert == null) {
+				if (ansi && parameter >= 0x80 && parameter < 0xA0)
+					return null;
+				if (parameter != 0)
+					insert = String.valueOf((char) parameter);
+			}
+
+			// Handles keywords
+			else if (keyword != null && insert == null) {
+				if (keyword.equals("*")) {
+					return null;
+				} else if (keyword.equals("rtf")) {
+					started = true;
+				} else if (hasParameter && keyword.equals("u")) {
+					insert = String.valueOf((char) ((parameter < 0) ? parameter
+							+ 65536 : parameter));
+				} else if (hasParameter && keyword.equals("uc")) {
+					uc[depth] = parameter;
+				} else if (keyword.equals("ansi")) {
+					ansi = true;
+				} else if (keyword.equals("ansicpg")) {
+					ansi = false;
+				} else if (destinationKeywords.contains(keyword)) {
+					discard = depth;
+				} else if (!hasParameter && textKeywords.containsKey(keyword)) {
+					insert = (String) textKeywords.get(keyword);
+				} else if (!formatKeywords.contains(keyword)) {
+					return null;
+				}
+			}
+			if (insert != null) {
+				if (depth == 0 || !started)
+					return null;
+				text.append(insert);
+				paragraph = !insert.equals("\n");
+				if (keyword != null && keyword.equals("u"))
+					skipping = uc[depth];
+			}
+		}
+		if (paragraph)
+			text.append('\n');
+		return (depth == 0 && started) ? text.toString() : null;
+	}
+
+	/**
+	 * Returns true if the specified character is an ASCII letter.
+	 */
+	protected static boolean isLetter(char ch) {
+		return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+	}
+
+	/**
+	 * Returns true if the specified character is an ASCII digit.
+	 */
+	protected static boolean isDigit(char ch) {
+		return ch >= '0' && ch <= '9';
+	}
+
+	/**
+	 * Returns true if the specified character is an ASCII whitespace.
+	 */
+	protected static boolean isWhitespace(char ch) {
+		return ch == ' ' || (ch >= 9 && ch <= 13) || (ch >= 28 && ch <= 31);
+	}
+
+}
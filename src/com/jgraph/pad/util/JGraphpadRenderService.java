@@ -0,0 +1,430 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.util;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.CellRendererPane;
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+import org.jgraph.JGraph;
+import org.jgraph.graph.AbstractCellView;
+import org.jgraph.graph.CellView;
+import org.jgraph.graph.CellViewRenderer;
+import org.jgraph.graph.GraphLayoutCache;
+import org.jgraph.graph.GraphModel;
+import org.jgraph.graph.PortView;
+
+import com.jgraph.pad.graph.JGraphpadLevelOfDetail;
+import com.jgraph.pad.graph.JGraphpadVertexRenderer;
+
+/**
+ * Paints graph layout caches without a visible graph component. The cell
+ * views are painted directly to a graphics object using renderers that are
+ * private to the calling thread, so that several diagrams may be exported at
+ * the same time on a pool of worker threads. The service never touches the
+ * global repaint manager or the event dispatch thread.<br>
+ * Note that the service does not lock the graph layout cache. Caches that are
+ * changed on the event dispatch thread, such as the caches of open diagrams,
+ * may only be painted on the event dispatch thread or in worker threads while
+ * the event dispatch thread waits for the result, as in a tiled image that is
+ * written on the event dispatch thread. All other threads must paint a copy
+ * that was created on the event dispatch thread, for example using
+ * {@link JGraphpadSaveManager#createSnapshot(GraphLayoutCache)}.
+ */
+public class JGraphpadRenderService {
+
+	/**
+	 * Shared singleton instance.
+	 */
+	protected static JGraphpadRenderService sharedInstance = new JGraphpadRenderService();
+
+	/**
+	 * Specifies the number of pixels by which the clip is grown before it is
+	 * compared to the bounds of the cells. This accounts for strokes and line
+	 * ends that are painted outside of the bounds. Default is 4.
+	 */
+	public static int CLIP_MARGIN = 4;
+
+	/**
+	 * Holds the worker threads that run the rendering tasks.
+	 */
+	protected ExecutorService executor;
+
+	/**
+	 * Holds Boolean.TRUE for the worker threads of all render services.
+	 */
+	protected static ThreadLocal worker = new ThreadLocal();
+
+	/**
+	 * Holds the {@link RenderContext} of each thread.
+	 */
+	protected ThreadLocal contexts = new ThreadLocal() {
+		protected Object initialValue() {
+			return new RenderContext();
+		}
+	};
+
+	/**
+	 * Constructs a new render service with one daemon worker thread per
+	 * available processor.
+	 */
+	public JGraphpadRenderService() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs a new render service with the specified number of daemon
+	 * worker threads.
+	 *
+	 * @param threads
+	 *            The number of worker threads.
+	 */
+	public JGraphpadRenderService(int threads) {
+		executor = Executors.newFixedThreadPool(Math.max(1, threads),
+				new ThreadFactory() {
+					public Thread newThread(final Runnable r) {
+						Thread thread = new Thread(new Runnable() {
+							public void run() {
+								worker.set(Boolean.TRUE);
+								r.run();
+							}
+						}, "JGraphpadRenderService");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Returns the shared instance.
+	 *
+	 * @return Returns the shared render service.
+	 */
+	public static JGraphpadRenderService getSharedInstance() {
+		return sharedInstance;
+	}
+
+	/**
+	 * Submits the specified task to be executed in a worker thread.
+	 *
+	 * @param task
+	 *            The task to be executed.
+	 * @return Returns the future result of <code>task</code>.
+	 */
+	public Future submit(Callable task) {
+		return executor.submit(task);
+	}
+
+	/**
+	 * Returns true if the calling thread is a worker thread of a render
+	 * service. Tasks that run in a worker thread must not block on other tasks
+	 * of the same service.
+	 *
+	 * @return Returns true if the calling thread is a worker thread.
+	 */
+	public static boolean isWorkerThread() {
+		return worker.get() != null;
+	}
+
+	/**
+	 * Returns the bounds of all cells in the specified cache, scaled by the
+	 * specified scale, or null if the cache contains no cells.
+	 *
+	 * @param cache
+	 *            The graph layout cache to return the bounds for.
+	 * @param scale
+	 *            The scale to apply to the bounds.
+	 * @return Returns the scaled bounds of <code>cache</code>.
+	 */
+	public static Rectangle2D getBounds(GraphLayoutCache cache, double scale) {
+		Rectangle2D bounds = AbstractCellView.getBounds(cache.getRoots());
+		if (bounds != null)
+			bounds.setFrame(bounds.getX() * scale, bounds.getY() * scale,
+					bounds.getWidth() * scale, bounds.getHeight() * scale);
+		return bounds;
+	}
+
+	/**
+	 * Returns an image of the specified cache using inset as an empty border
+	 * around the cells. If bg is null then the background of the image is
+	 * transparent. The colors and the scale are taken from the template graph,
+	 * which is never painted and may be null. Returns null if the cache
+	 * contains no cells.
+	 *
+	 * @param cache
+	 *            The graph layout cache to be painted.
+	 * @param template
+	 *            The graph to take the colors and the scale from or null.
+	 * @param bg
+	 *            The background color or null.
+	 * @param inset
+	 *            The empty border around the cells.
+	 * @return Returns an image of <code>cache</code> or null.
+	 */
+	public BufferedImage getImage(GraphLayoutCache cache, JGraph template,
+			Color bg, int inset) {
+		double scale = (template != null) ? template.getScale() : 1;
+		Rectangle2D bounds = getBounds(cache, scale);
+		if (bounds != null) {
+			BufferedImage img = new BufferedImage((int) bounds.getWidth() + 2
+					* inset, (int) bounds.getHeight() + 2 * inset,
+					(bg != null) ? BufferedImage.TYPE_INT_RGB
+							: BufferedImage.TYPE_INT_ARGB);
+			Graphics2D graphics = img.createGraphics();
+			if (bg != null) {
+				graphics.setColor(bg);
+				graphics.fillRect(0, 0, img.getWidth(), img.getHeight());
+			} else {
+				graphics.setComposite(AlphaComposite.getInstance(
+						AlphaComposite.CLEAR, 0.0f));
+				graphics.fillRect(0, 0, img.getWidth(), img.getHeight());
+				graphics.setComposite(AlphaComposite.SrcOver);
+			}
+			graphics.translate(-bounds.getX() + inset, -bounds.getY() + inset);
+			paint(graphics, cache, template);
+			graphics.dispose();
+			return img;
+		}
+		return null;
+	}
+
+	/**
+	 * Paints the cells of the specified cache to the specified graphics. The
+	 * colors and the scale are taken from the template graph, which is never
+	 * painted and may be null. Selection, ports and the grid are not painted.
+	 * If the graphics has a clip then cells outside of the clip are skipped.
+	 * All details are painted regardless of the scale unless the template
+	 * sets a {@link JGraphpadLevelOfDetail} client property.
+	 *
+	 * @param g
+	 *            The graphics to paint the cells to.
+	 * @param cache
+	 *            The graph layout cache to be painted.
+	 * @param template
+	 *            The graph to take the colors and the scale from or null.
+	 */
+	public void paint(Graphics2D g, GraphLayoutCache cache, JGraph template) {
+		paint(g, cache, null, template);
+	}
+
+	/**
+	 * Paints the specified views of the specified cache and their children to
+	 * the specified graphics. If views is null then all cells of the cache are
+	 * painted as in {@link #paint(Graphics2D, GraphLayoutCache, JGraph)}.
+	 *
+	 * @param g
+	 *            The graphics to paint the views to.
+	 * @param cache
+	 *            The graph layout cache that contains the views.
+	 * @param views
+	 *            The views to be painted or null.
+	 * @param template
+	 *            The graph to take the colors and the scale from or null.
+	 */
+	public void paint(Graphics2D g, GraphLayoutCache cache, CellView[] views,
+			JGraph template) {
+		RenderContext context = (RenderContext) contexts.get();
+		context.configure(cache, template);
+		Graphics2D g2 = (Graphics2D) g.create();
+		try {
+			if (context.isAntiAliased())
+				g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+						RenderingHints.VALUE_ANTIALIAS_ON);
+			g2.scale(context.getScale(), context.getScale());
+			Rectangle2D clip = g2.getClipBounds();
+			if (clip != null) {
+				double margin = CLIP_MARGIN / context.getScale();
+				clip.setFrame(clip.getX() - margin, clip.getY() - margin, clip
+						.getWidth()
+						+ 2 * margin, clip.getHeight() + 2 * margin);
+			}
+			if (views == null)
+				views = (clip != null) ? cache.getRoots(clip) : cache
+						.getRoots();
+			for (int i = 0; i < views.length; i++)
+				context.paintCell(g2, views[i], clip);
+		} finally {
+			g2.dispose();
+			context.configure(null, null);
+		}
+	}
+
+	/**
+	 * Graph that is used as the context for the renderers of one thread. The
+	 * context returns the model and cache that are being painted without
+	 * registering any listeners. It is never displayed.
+	 */
+	public static class RenderContext extends JGraph {
+
+		/**
+		 * Holds the model and cache that are being painted.
+		 */
+		protected GraphModel renderModel;
+
+		protected GraphLayoutCache renderCache;
+
+		/**
+		 * Maps from renderer classes to the renderers of this context.
+		 */
+		protected Map renderers = new HashMap();
+
+		/**
+		 * Paints the renderer components of this context.
+		 */
+		protected CellRendererPane rendererPane = new CellRendererPane();
+
+		/**
+		 * Configures the context to paint the specified cache using the colors
+		 * and scale of the specified template.
+		 *
+		 * @param cache
+		 *            The cache to be painted or null.
+		 * @param template
+		 *            The graph to take the colors and scale from or null.
+		 */
+		public void configure(GraphLayoutCache cache, JGraph template) {
+			renderCache = cache;
+			renderModel = (cache != null) ? cache.getModel() : null;
+			if (template != null) {
+				setBackground(template.getBackground());
+				setForeground(template.getForeground());
+				setFont(template.getFont());
+				setScale(template.getScale());
+				setAntiAliased(template.isAntiAliased());
+				setGridColor(template.getGridColor());
+				setHighlightColor(template.getHighlightColor());
+				setLockedHandleColor(template.getLockedHandleColor());
+				putClientProperty(
+						JGraphpadVertexRenderer.CLIENTPROPERTY_SHOWFOLDINGICONS,
+						template
+								.getClientProperty(JGraphpadVertexRenderer.CLIENTPROPERTY_SHOWFOLDINGICONS));
+			} else
+				setScale(1);
+
+			// Exports paint all details unless the template specifies a
+			// level of detail policy
+			Object lod = (template != null) ? template
+					.getClientProperty(JGraphpadLevelOfDetail.CLIENTPROPERTY_LEVELOFDETAIL)
+					: null;
+			putClientProperty(
+					JGraphpadLevelOfDetail.CLIENTPROPERTY_LEVELOFDETAIL,
+					(lod != null) ? lod : Boolean.FALSE);
+			if (cache == null)
+				rendererPane.removeAll();
+		}
+
+		/**
+		 * Paints the specified view and its children if the view intersects
+		 * the specified clip.
+		 *
+		 * @param g
+		 *            The graphics to paint the view to.
+		 * @param view
+		 *            The view to be painted.
+		 * @param clip
+		 *            The area to be painted or null to paint all views.
+		 */
+		public void paintCell(Graphics2D g, CellView view, Rectangle2D clip) {
+			Rectangle2D bounds = view.getBounds();
+			if (clip != null && bounds != null && !bounds.intersects(clip))
+				return;
+			if (bounds != null && !(view instanceof PortView)) {
+				CellViewRenderer renderer = getRenderer(view);
+				Component component = (renderer != null) ? renderer
+						.getRendererComponent(this, view, false, false, false)
+						: view.getRendererComponent(this, false, false, false);
+				if (component instanceof JComponent)
+					((JComponent) component).setDoubleBuffered(false);
+				rendererPane.paintComponent(g, component, this, (int) bounds
+						.getX(), (int) bounds.getY(), (int) bounds.getWidth(),
+						(int) bounds.getHeight(), true);
+			}
+			if (!view.isLeaf()) {
+				CellView[] children = view.getChildViews();
+				for (int i = 0; i < children.length; i++)
+					paintCell(g, children[i], clip);
+			}
+		}
+
+		/**
+		 * Returns the renderer of this context for the specified view. The
+		 * renderer is a new instance of the class of the view's renderer.
+		 * If no such instance can be created then the shared renderer of the
+		 * view is returned on the event dispatch thread, where the shared
+		 * renderers are used anyway, and an exception is thrown on all other
+		 * threads. Returns null if the view has no renderer, in which case the
+		 * view's own renderer component must be used.
+		 *
+		 * @param view
+		 *            The view to return the renderer for.
+		 * @return Returns the renderer for <code>view</code> or null.
+		 * @throws IllegalStateException
+		 *             If the calling thread is not the event dispatch thread
+		 *             and the renderer cannot be created.
+		 */
+		protected CellViewRenderer getRenderer(CellView view) {
+			if (!(view instanceof AbstractCellView))
+				return null;
+			CellViewRenderer shared = ((AbstractCellView) view).getRenderer();
+			if (shared == null)
+				return null;
+			Class type = shared.getClass();
+			if (!renderers.containsKey(type)) {
+				CellViewRenderer renderer = null;
+				try {
+					renderer = (CellViewRenderer) type.newInstance();
+				} catch (Exception e) {
+					// no private renderer for this type
+				}
+				renderers.put(type, renderer);
+			}
+			CellViewRenderer renderer = (CellViewRenderer) renderers.get(type);
+			if (renderer == null) {
+				if (!SwingUtilities.isEventDispatchThread())
+					throw new IllegalStateException("Cannot create "
+							+ type.getName());
+				renderer = shared;
+			}
+			return renderer;
+		}
+
+		/**
+		 * Returns the model that is being painted.
+		 */
+		public GraphModel getModel() {
+			return (renderModel != null) ? renderModel : super.getModel();
+		}
+
+		/**
+		 * Returns the cache that is being painted.
+		 */
+		public GraphLayoutCache getGraphLayoutCache() {
+			return (renderCache != null) ? renderCache : super
+					.getGraphLayoutCache();
+		}
+
+	}
+
+}
@@ -0,0 +1,423 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.util;
+
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.event.SwingPropertyChangeSupport;
+import javax.swing.tree.DefaultMutableTreeNode;
+
+import org.jgraph.graph.AttributeMap;
+import org.jgraph.graph.ConnectionSet;
+import org.jgraph.graph.DefaultGraphModel;
+import org.jgraph.graph.GraphLayoutCache;
+import org.jgraph.graph.GraphModel;
+
+import com.jgraph.editor.JGraphEditorFile;
+import com.jgraph.pad.JGraphpadDiagram;
+import com.jgraph.pad.JGraphpadFile;
+import com.jgraph.pad.JGraphpadLibrary;
+import com.jgraph.pad.graph.JGraphpadGraphLayoutCache;
+import com.jgraph.pad.graph.JGraphpadGraphModel;
+
+/**
+ * Writes files in the background. Files are snapshotted on the event dispatch
+ * thread using {@link #createSnapshot(JGraphEditorFile)} and the snapshot is
+ * then handed to a pool of worker threads, so that the user can continue to
+ * edit the file while it is being encoded and written. Saves of different
+ * files run in parallel, saves of the same filename are serialized in the
+ * order of submission. The result of a save is available through the future
+ * returned by {@link #submit(String, Callable)}, eg. to wait for the save of
+ * a file before it is closed.
+ */
+public class JGraphpadSaveManager {
+
+	/**
+	 * Bound property name for the number of pending saves.
+	 */
+	public final static String PENDING_PROPERTY = "pending";
+
+	/**
+	 * Shared singleton instance.
+	 */
+	protected static JGraphpadSaveManager sharedInstance = new JGraphpadSaveManager();
+
+	/**
+	 * Holds the worker threads that write the files.
+	 */
+	protected ExecutorService executor;
+
+	/**
+	 * Maps from filenames to the locks used to serialize saves to the same
+	 * file. A lock is removed when its last pending save has completed.
+	 */
+	protected Map locks = new Hashtable();
+
+	/**
+	 * Holds the number of saves that have been submitted but not completed.
+	 */
+	protected int pending = 0;
+
+	/**
+	 * Property change support for event notification. Events are dispatched on
+	 * the event dispatch thread.
+	 */
+	protected SwingPropertyChangeSupport changeSupport = new SwingPropertyChangeSupport(
+			this, true);
+
+	/**
+	 * Constructs a new save manager with one daemon worker thread per
+	 * available processor.
+	 */
+	public JGraphpadSaveManager() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs a new save manager with the specified number of daemon worker
+	 * threads.
+	 *
+	 * @param threads
+	 *            The number of worker threads.
+	 */
+	public JGraphpadSaveManager(int threads) {
+		executor = Executors.newFixedThreadPool(Math.max(1, threads),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "JGraphpadSaveManager");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Returns the shared instance.
+	 *
+	 * @return Returns the shared save manager.
+	 */
+	public static JGraphpadSaveManager getSharedInstance() {
+		return sharedInstance;
+	}
+
+	/**
+	 * Submits the specified task to be executed in a worker thread. Tasks for
+	 * the same filename are executed one after the other. The returned future
+	 * throws an {@link java.util.concurrent.ExecutionException} from its get
+	 * method if the task has thrown an exception.
+	 *
+	 * @param filename
+	 *            The filename that the task writes to.
+	 * @param task
+	 *            The task that writes the file.
+	 * @return Returns the future for the result of <code>task</code>.
+	 */
+	public Future submit(final String filename, final Callable task) {
+		final Lock lock = acquireLock(filename);
+		setPending(1);
+		try {
+			return executor.submit(new Callable() {
+				public Object call() throws Exception {
+					try {
+						synchronized (lock) {
+							return task.call();
+						}
+					} finally {
+						releaseLock(filename, lock);
+						setPending(-1);
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			releaseLock(filename, lock);
+			setPending(-1);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the lock used to serialize saves to the specified filename and
+	 * increments its number of pending saves.
+	 *
+	 * @param filename
+	 *            The filename to return the lock for.
+	 * @return Returns the lock for <code>filename</code>.
+	 */
+	protected synchronized Lock acquireLock(String filename) {
+		Lock lock = (Lock) locks.get(filename);
+		if (lock == null) {
+			lock = new Lock();
+			locks.put(filename, lock);
+		}
+		lock.pending++;
+		return lock;
+	}
+
+	/**
+	 * Decrements the number of pending saves of the specified lock and
+	 * removes the lock for the specified filename if it has no more pending
+	 * saves.
+	 *
+	 * @param filename
+	 *            The filename the lock was acquired for.
+	 * @param lock
+	 *            The lock to be released.
+	 */
+	protected synchronized void releaseLock(String filename, Lock lock) {
+		if (--lock.pending <= 0 && locks.get(filename) == lock)
+			locks.remove(filename);
+	}
+
+	/**
+	 * Adds <code>delta</code> to the number of pending saves and notifies
+	 * listeners and threads waiting in {@link #waitForAll()}.
+	 *
+	 * @param delta
+	 *            The value to add to the number of pending saves.
+	 */
+	protected void setPending(int delta) {
+		int oldValue, newValue;
+		synchronized (this) {
+			oldValue = pending;
+			pending += delta;
+			newValue = pending;
+			notifyAll();
+		}
+		changeSupport.firePropertyChange(PENDING_PROPERTY, oldValue, newValue);
+	}
+
+	/**
+	 * Returns the number of saves that have been submitted but not completed.
+	 *
+	 * @return Returns the number of pending saves.
+	 */
+	public synchronized int getPending() {
+		return pending;
+	}
+
+	/**
+	 * Blocks until all pending saves have completed. This should be called
+	 * before the application terminates.
+	 */
+	public synchronized void waitForAll() {
+		while (pending > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Adds the specified listener to receive notifications about the number
+	 * of pending saves.
+	 *
+	 * @param listener
+	 *            The listener to be added.
+	 */
+	public void addPropertyChangeListener(PropertyChangeListener listener) {
+		changeSupport.addPropertyChangeListener(listener);
+	}
+
+	/**
+	 * Removes the specified listener.
+	 *
+	 * @param listener
+	 *            The listener to be removed.
+	 */
+	public void removePropertyChangeListener(PropertyChangeListener listener) {
+		changeSupport.removePropertyChangeListener(listener);
+	}
+
+	/**
+	 * Returns a copy of the specified file which shares no mutable state with
+	 * the original, so that it may be encoded in a background thread while the
+	 * original is being changed. This must be called on the event dispatch
+	 * thread. Returns null if the file contains nodes or graph layout caches
+	 * that cannot be copied, in which case the file must be written on the
+	 * event dispatch thread.
+	 *
+	 * @param file
+	 *            The file to create the snapshot for.
+	 * @return Returns a snapshot of <code>file</code> or null.
+	 */
+	public static JGraphEditorFile createSnapshot(JGraphEditorFile file) {
+		if (file instanceof JGraphpadLibrary) {
+			JGraphpadLibrary library = (JGraphpadLibrary) file;
+			GraphLayoutCache cache = createSnapshot(library
+					.getGraphLayoutCache());
+			if (cache != null) {
+				JGraphpadLibrary clone = new JGraphpadLibrary(library
+						.getFilename(), cache);
+				clone.setReadOnly(library.isReadOnly());
+				return clone;
+			}
+		} else if (file != null && file.getClass() == JGraphpadFile.class) {
+			JGraphpadFile clone = new JGraphpadFile(file.getFilename());
+			Enumeration children = ((JGraphpadFile) file).children();
+			while (children.hasMoreElements()) {
+				Object child = children.nextElement();
+				if (child == null || child.getClass() != JGraphpadDiagram.class)
+					return null;
+				JGraphpadDiagram diagram = (JGraphpadDiagram) child;
+				GraphLayoutCache cache = createSnapshot(diagram
+						.getGraphLayoutCache());
+				if (cache == null)
+					return null;
+				Map properties = (diagram.getProperties() != null) ? new Hashtable(
+						diagram.getProperties())
+						: null;
+				clone.add(new JGraphpadDiagram(diagram.getName(), cache,
+						properties));
+			}
+			return clone;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a copy of the specified graph layout cache and its model, or
+	 * null if the cache is not a {@link JGraphpadGraphLayoutCache} with a
+	 * {@link JGraphpadGraphModel}. The cells are cloned using
+	 * {@link GraphModel#cloneCells(Object[])}, the order of the children and
+	 * the connections of the edges are preserved.
+	 *
+	 * @param cache
+	 *            The graph layout cache to create the snapshot for.
+	 * @return Returns a snapshot of <code>cache</code> or null.
+	 */
+	public static GraphLayoutCache createSnapshot(GraphLayoutCache cache) {
+		return createSnapshot(cache, null);
+	}
+
+	/**
+	 * Returns a copy of the specified graph layout cache and its model that
+	 * contains only the specified roots and their descendants. Connections to
+	 * cells that are not copied are removed. If roots is null then all roots
+	 * are copied as in {@link #createSnapshot(GraphLayoutCache)}.
+	 *
+	 * @param cache
+	 *            The graph layout cache to create the snapshot for.
+	 * @param roots
+	 *            The roots to be copied or null.
+	 * @return Returns a snapshot of <code>roots</code> or null.
+	 */
+	public static GraphLayoutCache createSnapshot(GraphLayoutCache cache,
+			Object[] roots) {
+		return createSnapshot(cache, roots, null);
+	}
+
+	/**
+	 * Returns a copy of the specified graph layout cache as in
+	 * {@link #createSnapshot(GraphLayoutCache, Object[])} and puts the
+	 * mapping from the copied cells to their clones into the specified map,
+	 * eg. to apply changes of the copy to the original cells.
+	 *
+	 * @param cache
+	 *            The graph layout cache to create the snapshot for.
+	 * @param roots
+	 *            The roots to be copied or null.
+	 * @param mapping
+	 *            The map to put the clones into or null.
+	 * @return Returns a snapshot of <code>roots</code> or null.
+	 */
+	public static GraphLayoutCache createSnapshot(GraphLayoutCache cache,
+			Object[] roots, Map mapping) {
+		if (cache == null || cache.getClass() != JGraphpadGraphLayoutCache.class
+				|| cache.getModel() == null
+				|| cache.getModel().getClass() != JGraphpadGraphModel.class)
+			return null;
+		GraphModel model = cache.getModel();
+		if (roots == null)
+			roots = DefaultGraphModel.getRoots(model);
+		Object[] cells = DefaultGraphModel.getDescendants(model, roots)
+				.toArray();
+		Map clones = model.cloneCells(cells);
+		if (mapping != null)
+			mapping.putAll(clones);
+
+		// Restores the order of the children which is lost in the map
+		for (int i = 0; i < cells.length; i++) {
+			int childCount = model.getChildCount(cells[i]);
+			Object clone = clones.get(cells[i]);
+			if (childCount > 0 && clone instanceof DefaultMutableTreeNode) {
+				DefaultMutableTreeNode node = (DefaultMutableTreeNode) clone;
+				node.removeAllChildren();
+				for (int j = 0; j < childCount; j++)
+					node.add((DefaultMutableTreeNode) clones.get(model
+							.getChild(cells[i], j)));
+			}
+		}
+		List rootClones = new ArrayList(roots.length);
+		for (int i = 0; i < roots.length; i++)
+			rootClones.add(clones.get(roots[i]));
+
+		// Connects the cloned edges to the cloned ports or disconnects them
+		// if the ports were not copied
+		ConnectionSet cs = new ConnectionSet();
+		for (int i = 0; i < cells.length; i++) {
+			if (model.isEdge(cells[i])) {
+				Object edge = clones.get(cells[i]);
+				Object source = model.getSource(cells[i]);
+				Object target = model.getTarget(cells[i]);
+				cs.connect(edge, (source != null) ? clones.get(source) : null,
+						true);
+				cs.connect(edge, (target != null) ? clones.get(target) : null,
+						false);
+			}
+		}
+		Map attributes = ((DefaultGraphModel) model).getAttributes();
+		JGraphpadGraphModel modelClone = new JGraphpadGraphModel(rootClones,
+				(attributes != null) ? new AttributeMap(attributes) : null, cs);
+
+		// Maps the visible set to the cloned cells
+		Set visibleSet = null;
+		if (cache.isPartial() && cache.getVisibleSet() != null) {
+			visibleSet = new HashSet();
+			Iterator it = cache.getVisibleSet().iterator();
+			while (it.hasNext()) {
+				Object clone = clones.get(it.next());
+				if (clone != null)
+					visibleSet.add(clone);
+			}
+		}
+		return new JGraphpadGraphLayoutCache(modelClone, visibleSet, cache
+				.isPartial());
+	}
+
+	/**
+	 * Serializes the saves to a filename and counts the saves that have been
+	 * submitted for the filename but not completed.
+	 */
+	protected static class Lock {
+
+		/**
+		 * Holds the number of pending saves for the filename.
+		 */
+		protected int pending = 0;
+
+	}
+
+}
@@ -0,0 +1,379 @@
+/*
+ * $Id$
+ * Copyright (c) 2001-2005, Gaudenz Alder
+ *
+ * All rights reserved.
+ *
+ * See LICENSE file for license details. If you are unable to locate
+ * this file please contact info (at) jgraph (dot) com.
+ */
+package com.jgraph.pad.util;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.jgraph.JGraph;
+import org.jgraph.graph.GraphLayoutCache;
+
+/**
+ * Image of a graph layout cache that is rendered on demand in tiles, so that
+ * diagrams can be exported which are too large to be held in memory as a
+ * single image. The image is divided into bands that span the full width of
+ * the image and are {@link #TILE_SIZE} pixels high. Each band is rendered as a
+ * row of square tiles in parallel using the shared
+ * {@link JGraphpadRenderService}, where the clip of each tile is used to skip
+ * the cells outside of the tile. At most the requested band and the following
+ * band, which is rendered in advance, are held in memory at any time.
+ * <p>
+ * Image writers that read the image row by row, such as the PNG and TIFF
+ * writers of the image I/O API, therefore need memory proportional to the
+ * width of the image and the tile size rather than the size of the image.
+ * The graph layout cache must not be changed while the image is in use.
+ */
+public class JGraphpadTiledImage implements RenderedImage {
+
+	/**
+	 * Specifies the width and height of the tiles in pixels. Default is 512.
+	 */
+	public static int TILE_SIZE = 512;
+
+	/**
+	 * References the graph layout cache to be painted and the graph to take
+	 * the colors and scale from.
+	 */
+	protected GraphLayoutCache cache;
+
+	protected JGraph template;
+
+	/**
+	 * Holds the background color and image. If the color is null then the
+	 * background is transparent.
+	 */
+	protected Color background;
+
+	protected Image backgroundImage;
+
+	/**
+	 * Holds the scaled bounds of the cells in the cache and the empty border
+	 * around the cells.
+	 */
+	protected Rectangle2D bounds;
+
+	protected int inset;
+
+	/**
+	 * Holds the size of the image and the size of the tiles.
+	 */
+	protected int width, height, tileSize;
+
+	/**
+	 * Holds the color model and the sample model of the bands.
+	 */
+	protected ColorModel colorModel;
+
+	protected SampleModel sampleModel;
+
+	/**
+	 * Maps from band indices to the futures of the tiles or to the rasters of
+	 * the bands that are currently held in memory.
+	 */
+	protected Map bands = new HashMap();
+
+	/**
+	 * Constructs a new tiled image for the specified cache using inset as an
+	 * empty border around the cells. The colors and the scale are taken from
+	 * the template graph, which is never painted and may be null. If bg is
+	 * null then the background of the image is transparent. Use
+	 * {@link JGraphpadRenderService#getBounds(GraphLayoutCache, double)} to
+	 * check if the cache contains any cells before calling this.
+	 *
+	 * @param cache
+	 *            The graph layout cache to be painted.
+	 * @param template
+	 *            The graph to take the colors and the scale from or null.
+	 * @param bg
+	 *            The background color or null.
+	 * @param backgroundImage
+	 *            The image to paint at the top, left corner or null.
+	 * @param inset
+	 *            The empty border around the cells.
+	 */
+	public JGraphpadTiledImage(GraphLayoutCache cache, JGraph template,
+			Color bg, Image backgroundImage, int inset) {
+		this.cache = cache;
+		this.template = template;
+		this.background = bg;
+		this.backgroundImage = backgroundImage;
+		this.inset = inset;
+		double scale = (template != null) ? template.getScale() : 1;
+		bounds = JGraphpadRenderService.getBounds(cache, scale);
+		if (bounds == null)
+			bounds = new Rectangle2D.Double();
+		width = Math.max(1, (int) bounds.getWidth() + 2 * inset);
+		height = Math.max(1, (int) bounds.getHeight() + 2 * inset);
+		tileSize = Math.max(1, TILE_SIZE);
+		colorModel = new BufferedImage(1, 1, getImageType()).getColorModel();
+		sampleModel = colorModel.createCompatibleSampleModel(width, Math.min(
+				tileSize, height));
+	}
+
+	/**
+	 * Returns the type of the buffered images used for the tiles.
+	 *
+	 * @return Returns the image type of the tiles.
+	 */
+	protected int getImageType() {
+		return (background != null) ? BufferedImage.TYPE_INT_RGB
+				: BufferedImage.TYPE_INT_ARGB;
+	}
+
+	/**
+	 * Returns the raster of the band with the specified index. The band is
+	 * rendered if it is not in memory and the rendering of the following band
+	 * is started. All other bands are released.
+	 *
+	 * @param index
+	 *            The index of the band to return.
+	 * @return Returns the raster of the band.
+	 */
+	protected synchronized Raster getBand(int index) {
+		Iterator it = bands.keySet().iterator();
+		while (it.hasNext()) {
+			int key = ((Integer) it.next()).intValue();
+			if (key != index && key != index + 1)
+				it.remove();
+		}
+		Object band = getOrRenderBand(index);
+		if (index + 1 < getNumYTiles())
+			getOrRenderBand(index + 1);
+		if (band instanceof Future[]) {
+			Future[] tiles = (Future[]) band;
+			WritableRaster raster = Raster.createWritableRaster(sampleModel,
+					new Point(0, index * sampleModel.getHeight()));
+			for (int i = 0; i < tiles.length; i++) {
+				try {
+					BufferedImage tile = (BufferedImage) tiles[i].get();
+					raster.setRect(i * tileSize, index
+							* sampleModel.getHeight(), tile.getRaster());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			band = raster;
+			bands.put(new Integer(index), band);
+		}
+		return (Raster) band;
+	}
+
+	/**
+	 * Returns the raster or the futures of the tiles of the specified band,
+	 * starting the rendering of the tiles if the band is not in memory.
+	 *
+	 * @param index
+	 *            The index of the band.
+	 * @return Returns the raster or the futures of the tiles of the band.
+	 */
+	protected Object getOrRenderBand(int index) {
+		Integer key = new Integer(index);
+		Object band = bands.get(key);
+		if (band == null) {
+			int y = index * sampleModel.getHeight();
+			int h = Math.min(sampleModel.getHeight(), height - y);
+			Future[] tiles = new Future[(width + tileSize - 1) / tileSize];
+			for (int i = 0; i < tiles.length; i++) {
+				int x = i * tileSize;
+				tiles[i] = renderTile(x, y, Math.min(tileSize, width - x), h);
+			}
+			band = tiles;
+			bands.put(key, band);
+		}
+		return band;
+	}
+
+	/**
+	 * Returns the future image of the specified area of this image. The tile
+	 * is rendered in a worker thread of the shared render service, or in the
+	 * calling thread if it is already a worker thread of a render service.
+	 *
+	 * @param x
+	 *            The left edge of the tile.
+	 * @param y
+	 *            The top edge of the tile.
+	 * @param w
+	 *            The width of the tile.
+	 * @param h
+	 *            The height of the tile.
+	 * @return Returns the future image of the tile.
+	 */
+	protected Future renderTile(final int x, final int y, final int w,
+			final int h) {
+		Callable task = new Callable() {
+			public Object call() throws Exception {
+				BufferedImage tile = new BufferedImage(w, h, getImageType());
+				Graphics2D graphics = tile.createGraphics();
+				try {
+					if (background != null) {
+						graphics.setColor(background);
+						graphics.fillRect(0, 0, w, h);
+					} else {
+						graphics.setComposite(AlphaComposite.getInstance(
+								AlphaComposite.CLEAR, 0.0f));
+						graphics.fillRect(0, 0, w, h);
+						graphics.setComposite(AlphaComposite.SrcOver);
+					}
+					graphics.setClip(0, 0, w, h);
+					graphics.translate(-x, -y);
+					if (backgroundImage != null)
+						graphics.drawImage(backgroundImage, 0, 0, null);
+					graphics.translate(-bounds.getX() + inset, -bounds.getY()
+							+ inset);
+					JGraphpadRenderService.getSharedInstance().paint(graphics,
+							cache, template);
+				} finally {
+					graphics.dispose();
+				}
+				return tile;
+			}
+		};
+		if (JGraphpadRenderService.isWorkerThread()) {
+			FutureTask future = new FutureTask(task);
+			future.run();
+			return future;
+		}
+		return JGraphpadRenderService.getSharedInstance().submit(task);
+	}
+
+	/**
+	 * Returns the specified band as a tile. Tiles span the full width of the
+	 * image, so <code>tileX</code> must be 0.
+	 */
+	public Raster getTile(int tileX, int tileY) {
+		return getBand(tileY);
+	}
+
+	/**
+	 * Returns a copy of the specified area of the image. Only the bands that
+	 * intersect the area are rendered.
+	 */
+	public Raster getData(Rectangle rect) {
+		WritableRaster raster = Raster.createWritableRaster(colorModel
+				.createCompatibleSampleModel(rect.width, rect.height),
+				new Point(rect.x, rect.y));
+		return copyData(raster);
+	}
+
+	/**
+	 * Returns a copy of the complete image. Note that this needs memory for
+	 * the complete image.
+	 */
+	public Raster getData() {
+		return getData(new Rectangle(0, 0, width, height));
+	}
+
+	/**
+	 * Copies the area of the specified raster from this image into the raster.
+	 * If the raster is null then a raster for the complete image is created.
+	 */
+	public WritableRaster copyData(WritableRaster raster) {
+		if (raster == null)
+			raster = colorModel.createCompatibleWritableRaster(width, height);
+		int first = Math.max(0, raster.getMinY() / sampleModel.getHeight());
+		int last = Math.min(getNumYTiles() - 1, (raster.getMinY()
+				+ raster.getHeight() - 1)
+				/ sampleModel.getHeight());
+		for (int i = first; i <= last; i++)
+			raster.setRect(getBand(i));
+		return raster;
+	}
+
+	public ColorModel getColorModel() {
+		return colorModel;
+	}
+
+	public SampleModel getSampleModel() {
+		return sampleModel;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getMinX() {
+		return 0;
+	}
+
+	public int getMinY() {
+		return 0;
+	}
+
+	public int getNumXTiles() {
+		return 1;
+	}
+
+	public int getNumYTiles() {
+		return (height + sampleModel.getHeight() - 1) / sampleModel.getHeight();
+	}
+
+	public int getMinTileX() {
+		return 0;
+	}
+
+	public int getMinTileY() {
+		return 0;
+	}
+
+	public int getTileWidth() {
+		return sampleModel.getWidth();
+	}
+
+	public int getTileHeight() {
+		return sampleModel.getHeight();
+	}
+
+	public int getTileGridXOffset() {
+		return 0;
+	}
+
+	public int getTileGridYOffset() {
+		return 0;
+	}
+
+	public Vector getSources() {
+		return null;
+	}
+
+	public Object getProperty(String name) {
+		return Image.UndefinedProperty;
+	}
+
+	public String[] getPropertyNames() {
+		return null;
+	}
+
+}
@@ -19,13 +19,13 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
 
-import javax.swing.RepaintManager;
 
 import org.jgraph.JGraph;
 
 import com.jgraph.JGraphEditor;
 import com.jgraph.editor.JGraphEditorAction;
 import com.jgraph.pad.action.JGraphpadFileAction;
+import com.jgraph.pad.util.JGraphpadRenderService;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.pdf.PdfContentByte;
@@ -87,32 +87,7 @@ public class JGraphpadPDFAction extends JGraphpadFileAction {
 			throws IOException, DocumentException {
 		if (filename != null) {
 			OutputStream out = editor.getModel().getOutputStream(filename);
-			Object[] cells = graph.getDescendants(graph.getRoots());
-			if (cells.length > 0) {
-				Document document = new Document();
-				PdfWriter writer = PdfWriter.getInstance(document, out);
-				document.open();
-				PdfContentByte cb = writer.getDirectContent();
-				cb.saveState();
-				cb.concatCTM(1, 0, 0, 1, 50, 400);
-				Rectangle2D bounds = graph.toScreen(graph.getCellBounds(cells));
-				Dimension d = bounds.getBounds().getSize();
-				Graphics2D g2 = cb.createGraphics(d.width + 10, d.height + 10);
-				g2.setColor(graph.getBackground());
-				g2.fillRect(0, 0, d.width + 2 * inset, d.height + 2 * inset);
-				g2.translate(-bounds.getX() + inset, -bounds.getY() + inset);
-
-				// Paints the graph to the svg generator with no double
-				// buffering enabled to make sure we get a vector image.
-				RepaintManager currentManager = RepaintManager
-						.currentManager(graph);
-				currentManager.setDoubleBufferingEnabled(false);
-				graph.paint(g2);
-				currentManager.setDoubleBufferingEnabled(true);
-				g2.dispose();
-				cb.restoreState();
-				document.close();
-			}
+			writePDF(graph, out, inset);
 			out.close();
 			if (JGraphEditor.isURL(filename)) {
 				URL url = new URL(filename);
@@ -122,6 +97,47 @@ public class JGraphpadPDFAction extends JGraphpadFileAction {
 		}
 	}
 
+	/**
+	 * Writes the specified graph as a PDF document to the specified stream.
+	 * The stream is not closed. This does not require the event dispatch
+	 * thread if the graph is not changed while it is written.
+	 * 
+	 * @param graph
+	 *            The graph to write as a PDF document.
+	 * @param out
+	 *            The stream to write the PDF document to.
+	 * @param inset
+	 *            The inset to use for the PDF graphics.
+	 * @throws DocumentException
+	 */
+	public static void writePDF(JGraph graph, OutputStream out, int inset)
+			throws DocumentException {
+		Object[] cells = graph.getDescendants(graph.getRoots());
+		if (cells.length > 0) {
+			Document document = new Document();
+			PdfWriter writer = PdfWriter.getInstance(document, out);
+			writer.setCloseStream(false);
+			document.open();
+			PdfContentByte cb = writer.getDirectContent();
+			cb.saveState();
+			cb.concatCTM(1, 0, 0, 1, 50, 400);
+			Rectangle2D bounds = graph.toScreen(graph.getCellBounds(cells));
+			Dimension d = bounds.getBounds().getSize();
+			Graphics2D g2 = cb.createGraphics(d.width + 10, d.height + 10);
+			g2.setColor(graph.getBackground());
+			g2.fillRect(0, 0, d.width + 2 * inset, d.height + 2 * inset);
+			g2.translate(-bounds.getX() + inset, -bounds.getY() + inset);
+
+			// Paints the cells to the pdf graphics without using the
+			// repaint manager to make sure we get a vector image.
+			JGraphpadRenderService.getSharedInstance().paint(g2,
+					graph.getGraphLayoutCache(), graph);
+			g2.dispose();
+			cb.restoreState();
+			document.close();
+		}
+	}
+
 	/**
 	 * Bundle of all actions in this class.
 	 */
@@ -20,7 +20,6 @@ import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.net.URL;
 
-import javax.swing.RepaintManager;
 
 import org.apache.batik.dom.GenericDOMImplementation;
 import org.apache.batik.svggen.SVGGraphics2D;
@@ -33,6 +32,7 @@ import com.jgraph.JGraphEditor;
 import com.jgraph.editor.JGraphEditorAction;
 import com.jgraph.editor.JGraphEditorResources;
 import com.jgraph.pad.action.JGraphpadFileAction;
+import com.jgraph.pad.util.JGraphpadRenderService;
 
 /**
  * Implements all actions that require Batik in the classpath.
@@ -109,7 +109,7 @@ public class JGraphpadSVGAction extends JGraphpadFileAction {
 			}
 			setSelected(true);
 		} else {
-			server.getServerSocket().close();
+			server.stop();
 			server = null;
 		}
 	}
@@ -162,18 +162,14 @@ public class JGraphpadSVGAction extends JGraphpadFileAction {
 			svgGenerator.translate(-bounds.getX() + inset, -bounds.getY()
 					+ inset);
 
-			// Paints the graph to the svg generator with no double
-			// buffering enabled to make sure we get a vector image.
-			RepaintManager currentManager = RepaintManager
-					.currentManager(graph);
-			currentManager.setDoubleBufferingEnabled(false);
-			graph.paint(svgGenerator);
+			// Paints the cells to the svg generator without using the
+			// repaint manager to make sure we get a vector image.
+			JGraphpadRenderService.getSharedInstance().paint(svgGenerator,
+					graph.getGraphLayoutCache(), graph);
 
 			// Writes the graph to the specified file as an SVG stream
 			Writer writer = new OutputStreamWriter(out, "UTF-8");
 			svgGenerator.stream(writer, false);
-
-			currentManager.setDoubleBufferingEnabled(true);
 		}
 	}
 
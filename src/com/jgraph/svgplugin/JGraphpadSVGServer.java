@@ -11,28 +11,49 @@ package com.jgraph.svgplugin;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
+import java.awt.image.RenderedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
+import java.util.WeakHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import org.jgraph.JGraph;
+import org.jgraph.event.GraphLayoutCacheEvent;
+import org.jgraph.event.GraphLayoutCacheListener;
+import org.jgraph.event.GraphModelEvent;
+import org.jgraph.event.GraphModelListener;
 import org.jgraph.graph.GraphLayoutCache;
 
 import com.jgraph.JGraphEditor;
@@ -41,10 +62,16 @@ import com.jgraph.editor.JGraphEditorDiagram;
 import com.jgraph.editor.JGraphEditorModel;
 import com.jgraph.editor.JGraphEditorResources;
 import com.jgraph.pad.util.JGraphpadImageEncoder;
+import com.jgraph.pad.util.JGraphpadRenderService;
+import com.jgraph.pad.util.JGraphpadSaveManager;
+import com.jgraph.pad.util.JGraphpadTiledImage;
 
 /**
  * Simple webserver to stream SVG, PNG and JPG content to clients. This
  * implementation is based on nanoHttpd (http://nanohttpd.sourceforge.net/).
+ * Connections are handled by a bounded pool of threads and are kept open for
+ * further requests as specified by HTTP/1.1. Images are streamed to the
+ * client while they are being encoded using the chunked transfer encoding.
  */
 public class JGraphpadSVGServer {
 
@@ -55,8 +82,12 @@ public class JGraphpadSVGServer {
 			HTTP_REDIRECT = "301 Moved Permanently",
 			HTTP_FORBIDDEN = "403 Forbidden", HTTP_NOTFOUND = "404 Not Found",
 			HTTP_BADREQUEST = "400 Bad Request",
+			HTTP_NOTMODIFIED = "304 Not Modified",
+			HTTP_TOOLARGE = "413 Request Entity Too Large",
+			HTTP_HEADERTOOLARGE = "431 Request Header Fields Too Large",
 			HTTP_INTERNALERROR = "500 Internal Server Error",
-			HTTP_NOTIMPLEMENTED = "501 Not Implemented";
+			HTTP_NOTIMPLEMENTED = "501 Not Implemented",
+			HTTP_UNAVAILABLE = "503 Service Unavailable";
 
 	/**
 	 * Common mime types for dynamic content
@@ -64,31 +95,143 @@ public class JGraphpadSVGServer {
 	public static final String MIME_PLAINTEXT = "text/plain",
 			MIME_HTML = "text/html",
 			MIME_DEFAULT_BINARY = "application/octet-stream",
-			MIME_PNG = "image/png", MIME_JPG = "image/jpeg";
+			MIME_PNG = "image/png", MIME_JPG = "image/jpeg",
+			MIME_GIF = "image/gif";
+
+	/**
+	 * Specifies the default maximum number of open connections. Default is 32.
+	 */
+	public static int DEFAULT_MAXCONNECTIONS = 32;
+
+	/**
+	 * Specifies the number of milliseconds an idle connection is kept open.
+	 * Default is 15000.
+	 */
+	public static int KEEPALIVE_TIMEOUT = 15000;
+
+	/**
+	 * Specifies the maximum number of requests per connection. Default is 100.
+	 */
+	public static int MAX_KEEPALIVE_REQUESTS = 100;
+
+	/**
+	 * Specifies the maximum size of the request line and headers in bytes.
+	 * Default is 8192.
+	 */
+	public static int MAX_HEADER_SIZE = 8192;
+
+	/**
+	 * Specifies the maximum size of a request body in bytes. Default is 65536.
+	 */
+	public static int MAX_CONTENT_LENGTH = 65536;
+
+	/**
+	 * Specifies the maximum total size of the rendered images in the render
+	 * cache in bytes. Default is 16 MB.
+	 */
+	public static long RENDERCACHE_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * Identifies the instance of the server in entity tags, so that tags from
+	 * an earlier instance never match.
+	 */
+	protected String instanceTag = Long.toString(System.currentTimeMillis(),
+			36);
+
+	/**
+	 * Maps from diagrams to their {@link GraphEntry}s. The entries hold the
+	 * prepared graph and the revision of the diagram.
+	 */
+	protected Map graphs = new WeakHashMap();
+
+	/**
+	 * Maps from keys of the form id/format to {@link Rendering}s in the order
+	 * of their last access.
+	 */
+	protected LinkedHashMap renderings = new LinkedHashMap(16, 0.75f, true);
+
+	/**
+	 * Holds the total size of the renderings in bytes.
+	 */
+	protected long renderingsSize = 0;
+
+	/**
+	 * Counts the requests that were served from the render cache, that were
+	 * answered with {@link #HTTP_NOTMODIFIED}, that required a rendering and
+	 * the renderings that were evicted from the cache.
+	 */
+	protected long cacheHits = 0, notModified = 0, rendered = 0,
+			evictions = 0;
+
+	/**
+	 * Holds the next identifier for graph entries.
+	 */
+	protected long nextId = 0;
 
 	/**
 	 * Holds the socket the server is listening on.
 	 */
 	protected ServerSocket serverSocket;
 
+	/**
+	 * Holds the worker threads that handle the connections.
+	 */
+	protected ThreadPoolExecutor executor;
+
+	/**
+	 * Limits the number of open connections.
+	 */
+	protected Semaphore connections;
+
 	/**
 	 * References the enclosing editor.
 	 */
 	protected JGraphEditor editor;
 
 	/**
-	 * Starts a HTTP server for the enclosing editor on the specified port.
+	 * Starts a HTTP server for the enclosing editor on the specified port
+	 * using {@link #DEFAULT_MAXCONNECTIONS}.
 	 * <p>
 	 * Throws an IOException if the socket is already in use
 	 */
 	public JGraphpadSVGServer(JGraphEditor editor, int port) throws IOException {
+		this(editor, port, DEFAULT_MAXCONNECTIONS);
+	}
+
+	/**
+	 * Starts a HTTP server for the enclosing editor on the specified port.
+	 * Each open connection is handled by a thread of a bounded pool, so that
+	 * at most <code>maxConnections</code> connections are open at any time.
+	 * Further connections are answered with {@link #HTTP_UNAVAILABLE}.
+	 * <p>
+	 * Throws an IOException if the socket is already in use
+	 */
+	public JGraphpadSVGServer(JGraphEditor editor, int port, int maxConnections)
+			throws IOException {
 		this.editor = editor;
+		maxConnections = Math.max(1, maxConnections);
+		connections = new Semaphore(maxConnections);
+		executor = new ThreadPoolExecutor(maxConnections, maxConnections, 60,
+				TimeUnit.SECONDS, new LinkedBlockingQueue(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "JGraphpadSVGServer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
 		serverSocket = new ServerSocket(port);
 		Thread t = new Thread(new Runnable() {
 			public void run() {
 				try {
-					while (true)
-						new HTTPSession(serverSocket.accept());
+					while (true) {
+						Socket socket = serverSocket.accept();
+						if (connections.tryAcquire())
+							executor.execute(new HTTPSession(socket));
+						else
+							reject(socket);
+					}
 				} catch (IOException ioe) {
 					// ignore
 				}
@@ -98,6 +241,45 @@ public class JGraphpadSVGServer {
 		t.start();
 	}
 
+	/**
+	 * Stops the server by closing the server socket and disposes the graph
+	 * entries. Open connections are closed after the current request.
+	 */
+	public void stop() throws IOException {
+		serverSocket.close();
+		executor.shutdown();
+		List entries;
+		synchronized (this) {
+			entries = new ArrayList(graphs.values());
+			graphs.clear();
+		}
+		Iterator it = entries.iterator();
+		while (it.hasNext())
+			dispose((GraphEntry) it.next());
+	}
+
+	/**
+	 * Answers a connection that exceeds the maximum number of connections
+	 * with {@link #HTTP_UNAVAILABLE} and closes it.
+	 */
+	protected void reject(Socket socket) {
+		try {
+			OutputStream out = socket.getOutputStream();
+			out.write(("HTTP/1.1 " + HTTP_UNAVAILABLE + " \r\n"
+					+ "Retry-After: 1\r\nContent-Length: 0\r\n"
+					+ "Connection: close\r\n\r\n").getBytes("ISO-8859-1"));
+			out.flush();
+		} catch (IOException e) {
+			// ignore
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
 	/**
 	 * Serves the response for the specified request. This returns a HTML index
 	 * containing the links to the diagrams in the editor's document model, or
@@ -120,51 +302,279 @@ public class JGraphpadSVGServer {
 			Properties parms) throws IOException {
 		Response response = null;
 		String format = parms.getProperty("format");
-		JGraph graph = getGraph(uri);
 		if (uri.equals("/"))
 			response = serveIndex();
-		else if (graph != null) {
+		else if (uri.equals("/stats"))
+			response = serveStats();
+		else {
+			GraphEntry entry = getGraphEntry(getDiagram(uri));
+			if (entry != null) {
+
+				// Responds with a simple HTML info if the graph is empty
+				if (entry.graph.getModel().getRootCount() == 0)
+					response = new Response(HTTP_OK, MIME_HTML,
+							JGraphEditorResources
+									.getString("GraphContainsNoData"));
+
+				// Otherwise responds with the image in the requested format
+				else if (format == null)
+					response = serveCached(entry, "svg",
+							JGraphpadSVGAction.MIME_SVG, header);
+				else if (JGraphpad.isImage(format))
+					response = serveCached(entry, format.toLowerCase(),
+							getMimeType(format), header);
+			}
+		}
+		return response;
+	}
 
-			// Responds with a simple HTML info if the graph is empty
-			if (graph.getModel().getRootCount() == 0)
-				response = new Response(HTTP_OK, MIME_HTML,
-						JGraphEditorResources.getString("GraphContainsNoData"));
+	/**
+	 * Returns the image of the specified graph entry in the specified format.
+	 * The image is taken from the render cache if it was rendered for the
+	 * current revision of the diagram. Otherwise a snapshot of the diagram is
+	 * created using {@link #createSnapshot(GraphEntry)} and its image is
+	 * streamed to the client while it is being rendered and a copy is kept in a
+	 * {@link CachingOutputStream}, which is added to the render cache if the
+	 * image is complete and fits into {@link #RENDERCACHE_SIZE}. If the entity
+	 * tag in the If-None-Match header matches the current revision then
+	 * {@link #HTTP_NOTMODIFIED} is returned without rendering the image.
+	 */
+	protected Response serveCached(final GraphEntry entry, final String format,
+			String mime, Properties header) throws IOException {
+		final String key = entry.id + "/" + format;
+		final long revision = entry.getRevision();
+		String etag = "\"" + instanceTag + "-" + key.replace('/', '-') + "-"
+				+ revision + "\"";
+		Response response = null;
+		if (matches(getHeader(header, "If-None-Match"), etag)) {
+			synchronized (this) {
+				notModified++;
+			}
+			response = new Response(HTTP_NOTMODIFIED, mime, (InputStream) null);
+		} else {
+			Rendering rendering = getRendering(key, revision);
+			if (rendering != null) {
+				response = new Response(HTTP_OK, mime, rendering.data);
+			} else {
+				final JGraph snapshot = createSnapshot(entry);
+				response = new Response(HTTP_OK, mime, new Content() {
+					public void write(OutputStream out) throws IOException {
+						final CachingOutputStream cache = new CachingOutputStream(
+								out, RENDERCACHE_SIZE);
+						if (snapshot != null) {
+							render(snapshot, format, cache);
+						} else {
 
-			// Otherwise responds with the image in the requested format
-			else if (format == null)
-				response = serveSVG(graph);
-			else if (JGraphpad.isImage(format))
-				response = serveImage(graph, format);
+							// Paints the live graph on the event dispatch
+							// thread if the diagram cannot be copied
+							final IOException[] error = new IOException[1];
+							invokeAndWait(new Runnable() {
+								public void run() {
+									try {
+										render(entry.graph, format, cache);
+									} catch (IOException e) {
+										error[0] = e;
+									}
+								}
+							});
+							if (error[0] != null)
+								throw error[0];
+						}
+						byte[] data = cache.toByteArray();
+						if (data != null)
+							putRendering(key, new Rendering(revision, data));
+					}
+				});
+			}
 		}
+		response.addHeader("ETag", etag);
+		response.addHeader("Cache-Control", "no-cache");
 		return response;
 	}
 
 	/**
-	 * Produces an SVG image of the specified graph.
+	 * Writes the image of the specified graph in the specified format to the
+	 * specified stream.
+	 */
+	protected void render(JGraph graph, String format, OutputStream out)
+			throws IOException {
+		Response r = (format.equals("svg")) ? serveSVG(graph) : serveImage(
+				graph, format);
+		r.content.write(out);
+	}
+
+	/**
+	 * Returns a graph for a copy of the diagram of the specified entry, so
+	 * that the diagram may be rendered in the calling thread while it is being
+	 * changed. The copy is created on the event dispatch thread using
+	 * {@link JGraphpadSaveManager#createSnapshot(GraphLayoutCache)}. Returns
+	 * null if the diagram cannot be copied, in which case it must be rendered
+	 * on the event dispatch thread.
+	 */
+	protected JGraph createSnapshot(final GraphEntry entry) throws IOException {
+		final JGraph[] snapshot = new JGraph[1];
+		invokeAndWait(new Runnable() {
+			public void run() {
+				GraphLayoutCache cache = JGraphpadSaveManager
+						.createSnapshot(entry.graph.getGraphLayoutCache());
+				if (cache != null)
+					snapshot[0] = createGraph(cache);
+			}
+		});
+		return snapshot[0];
+	}
+
+	/**
+	 * Runs the specified runnable on the event dispatch thread and waits for
+	 * it to finish.
+	 */
+	protected void invokeAndWait(Runnable runnable) throws IOException {
+		if (SwingUtilities.isEventDispatchThread()) {
+			runnable.run();
+		} else {
+			try {
+				SwingUtilities.invokeAndWait(runnable);
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			} catch (InvocationTargetException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the specified value of an If-None-Match header matches
+	 * the specified entity tag.
+	 */
+	protected boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch != null) {
+			StringTokenizer st = new StringTokenizer(ifNoneMatch, ",");
+			while (st.hasMoreTokens()) {
+				String tag = st.nextToken().trim();
+				if (tag.startsWith("W/"))
+					tag = tag.substring(2);
+				if (tag.equals("*") || tag.equals(etag))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the rendering for the specified key if it was rendered for the
+	 * specified revision and updates the statistics. Stale renderings are
+	 * removed from the cache.
+	 */
+	protected synchronized Rendering getRendering(String key, long revision) {
+		Rendering rendering = (Rendering) renderings.get(key);
+		if (rendering != null && rendering.revision != revision) {
+			renderings.remove(key);
+			renderingsSize -= rendering.data.length;
+			rendering = null;
+		}
+		if (rendering != null)
+			cacheHits++;
+		else
+			rendered++;
+		return rendering;
+	}
+
+	/**
+	 * Adds the specified rendering to the cache and evicts the least recently
+	 * used renderings until the total size is at most
+	 * {@link #RENDERCACHE_SIZE}. Renderings that are larger than the cache
+	 * are not stored.
+	 */
+	protected synchronized void putRendering(String key, Rendering rendering) {
+		if (rendering.data.length > RENDERCACHE_SIZE)
+			return;
+		Rendering previous = (Rendering) renderings.put(key, rendering);
+		if (previous != null)
+			renderingsSize -= previous.data.length;
+		renderingsSize += rendering.data.length;
+		Iterator it = renderings.values().iterator();
+		while (renderingsSize > RENDERCACHE_SIZE && it.hasNext()) {
+			Rendering eldest = (Rendering) it.next();
+			it.remove();
+			renderingsSize -= eldest.data.length;
+			evictions++;
+		}
+	}
+
+	/**
+	 * Produces an SVG image of the specified graph. The image is streamed
+	 * to the client while it is being encoded.
 	 */
-	protected Response serveSVG(JGraph graph) throws IOException {
-		OutputStream out = new ByteArrayOutputStream();
-		JGraphpadSVGAction.writeSVG(graph, out, 10);
-		out.close();
-		return new Response(HTTP_OK, JGraphpadSVGAction.MIME_SVG, out
-				.toString());
+	protected Response serveSVG(final JGraph graph) throws IOException {
+		return new Response(HTTP_OK, JGraphpadSVGAction.MIME_SVG,
+				new Content() {
+					public void write(OutputStream out) throws IOException {
+						JGraphpadSVGAction.writeSVG(graph, out, 10);
+						out.flush();
+					}
+				});
 	}
 
 	/**
-	 * Produces a JPG or PNG image of the specified graph.
+	 * Produces a JPG or PNG image of the specified graph. The image is
+	 * streamed to the client while it is being encoded. PNG images are
+	 * rendered in tiles so that large diagrams need not be held in memory.
 	 */
-	protected Response serveImage(JGraph graph, String format)
+	protected Response serveImage(JGraph graph, final String format)
 			throws IOException {
-		ByteArrayOutputStream out = new ByteArrayOutputStream();
-		BufferedImage img = graph.getImage(Color.white, 5);
-		if (format.equalsIgnoreCase("gif"))
-			JGraphpadImageEncoder.writeGIF(img, out);
+		final RenderedImage img;
+		if (format.equalsIgnoreCase("png"))
+			img = new JGraphpadTiledImage(graph.getGraphLayoutCache(), graph,
+					Color.white, null, 5);
 		else
-			ImageIO.write(img, format, out);
-		out.close();
-		return new Response(HTTP_OK,
-				(format.equalsIgnoreCase("png")) ? MIME_PNG : MIME_JPG, out
-						.toByteArray());
+			img = JGraphpadRenderService.getSharedInstance().getImage(
+					graph.getGraphLayoutCache(), graph, Color.white, 5);
+		return new Response(HTTP_OK, getMimeType(format), new Content() {
+					public void write(OutputStream out) throws IOException {
+						if (format.equalsIgnoreCase("gif"))
+							JGraphpadImageEncoder.writeGIF((BufferedImage) img,
+									out);
+						else
+							ImageIO.write(img, format, out);
+						out.flush();
+					}
+				});
+	}
+
+	/**
+	 * Returns the mime type for the specified image format. Formats other
+	 * than PNG, GIF and JPG use the mime type of their ImageIO writer.
+	 */
+	protected static String getMimeType(String format) {
+		if (format.equalsIgnoreCase("png"))
+			return MIME_PNG;
+		else if (format.equalsIgnoreCase("gif"))
+			return MIME_GIF;
+		else if (format.equalsIgnoreCase("jpg")
+				|| format.equalsIgnoreCase("jpeg"))
+			return MIME_JPG;
+		Iterator it = ImageIO.getImageWritersByFormatName(format);
+		if (it.hasNext()) {
+			String[] types = ((ImageWriter) it.next()).getOriginatingProvider()
+					.getMIMETypes();
+			if (types != null && types.length > 0)
+				return types[0];
+		}
+		return MIME_DEFAULT_BINARY;
+	}
+
+	/**
+	 * Produces a plain text page with the statistics of the render cache.
+	 */
+	protected synchronized Response serveStats() {
+		String content = "cached: " + cacheHits + "\n" + "notModified: "
+				+ notModified + "\n" + "rendered: " + rendered + "\n"
+				+ "evictions: " + evictions + "\n" + "entries: "
+				+ renderings.size() + "\n" + "bytes: " + renderingsSize
+				+ "\n" + "maxBytes: " + RENDERCACHE_SIZE + "\n";
+		Response response = new Response(HTTP_OK, MIME_PLAINTEXT, content);
+		response.addHeader("Cache-Control", "no-store");
+		return response;
 	}
 
 	/**
@@ -201,27 +611,66 @@ public class JGraphpadSVGServer {
 	 * Returns a JGraph for the specified reference. The refence is of the form
 	 * i/j/k/... where i is the index of the first parent in the model, j is the
 	 * index of the child etc. If the model element is a
-	 * {@link JGraphEditorDiagram} then a graph is created using
-	 * {@link #createGraph(GraphLayoutCache)} and returned.
+	 * {@link JGraphEditorDiagram} then the graph that was prepared for the
+	 * diagram using {@link #createGraph(GraphLayoutCache)} is returned.
 	 */
 	protected JGraph getGraph(String reference) {
+		GraphEntry entry = getGraphEntry(getDiagram(reference));
+		return (entry != null) ? entry.graph : null;
+	}
+
+	/**
+	 * Returns the diagram for the specified reference or null if the
+	 * reference does not point to a {@link JGraphEditorDiagram}.
+	 */
+	protected JGraphEditorDiagram getDiagram(String reference) {
 		try {
 			Object parent = editor.getModel().getRoot();
 			String[] path = reference.substring(1).split("/");
 			for (int i = 0; i < path.length; i++)
 				parent = editor.getModel().getChild(parent,
 						Integer.parseInt(path[i]));
-			if (parent instanceof JGraphEditorDiagram) {
-				GraphLayoutCache cache = ((JGraphEditorDiagram) parent)
-						.getGraphLayoutCache();
-				return createGraph(cache);
-			}
+			if (parent instanceof JGraphEditorDiagram)
+				return (JGraphEditorDiagram) parent;
 		} catch (Exception e) {
 			// ignore
 		}
 		return null;
 	}
 
+	/**
+	 * Returns the graph entry for the specified diagram. The entry is created
+	 * on the first call and reused as long as the diagram uses the same graph
+	 * layout cache. Entries that are replaced are disposed.
+	 */
+	protected synchronized GraphEntry getGraphEntry(JGraphEditorDiagram diagram) {
+		if (diagram == null || diagram.getGraphLayoutCache() == null)
+			return null;
+		GraphEntry entry = (GraphEntry) graphs.get(diagram);
+		if (entry == null
+				|| entry.graph.getGraphLayoutCache() != diagram
+						.getGraphLayoutCache()) {
+			if (entry != null)
+				dispose(entry);
+			entry = new GraphEntry(nextId++, createGraph(diagram
+					.getGraphLayoutCache()));
+			graphs.put(diagram, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Disposes the specified graph entry on the event dispatch thread, so
+	 * that the diagram no longer references the entry and its graph.
+	 */
+	protected void dispose(final GraphEntry entry) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				entry.dispose();
+			}
+		});
+	}
+
 	/**
 	 * Creates a new graph for the specified cache and puts it into the
 	 * backingFrame component hierachy.
@@ -239,6 +688,151 @@ public class JGraphpadSVGServer {
 		return graph;
 	}
 
+	/**
+	 * Holds the prepared graph for a diagram and counts the changes to the
+	 * diagram so that renderings of older revisions can be detected.
+	 */
+	protected static class GraphEntry implements GraphModelListener,
+			GraphLayoutCacheListener {
+
+		/**
+		 * Unique identifier of the entry.
+		 */
+		protected long id;
+
+		/**
+		 * The graph that is used to render the diagram.
+		 */
+		protected JGraph graph;
+
+		/**
+		 * Holds the revision of the diagram.
+		 */
+		protected long revision = 0;
+
+		/**
+		 * Constructs a new entry for the specified graph and installs the
+		 * listeners that update the revision.
+		 */
+		public GraphEntry(long id, JGraph graph) {
+			this.id = id;
+			this.graph = graph;
+			graph.getModel().addGraphModelListener(this);
+			graph.getGraphLayoutCache().addGraphLayoutCacheListener(this);
+		}
+
+		/**
+		 * Removes the listeners of this entry and of its graph from the model
+		 * and cache of the diagram. This must be invoked on the event
+		 * dispatch thread.
+		 */
+		public void dispose() {
+			graph.getModel().removeGraphModelListener(this);
+			graph.getGraphLayoutCache().removeGraphLayoutCacheListener(this);
+			graph.getUI().uninstallUI(graph);
+		}
+
+		/**
+		 * Returns the revision of the diagram.
+		 */
+		public synchronized long getRevision() {
+			return revision;
+		}
+
+		/**
+		 * Increments the revision.
+		 */
+		public synchronized void graphChanged(GraphModelEvent e) {
+			revision++;
+		}
+
+		/**
+		 * Increments the revision.
+		 */
+		public synchronized void graphLayoutCacheChanged(GraphLayoutCacheEvent e) {
+			revision++;
+		}
+
+	}
+
+	/**
+	 * Holds the image of a diagram for a specific revision.
+	 */
+	protected static class Rendering {
+
+		/**
+		 * The revision the image was rendered for.
+		 */
+		protected long revision;
+
+		/**
+		 * The encoded image.
+		 */
+		protected byte[] data;
+
+		public Rendering(long revision, byte[] data) {
+			this.revision = revision;
+			this.data = data;
+		}
+
+	}
+
+	/**
+	 * Writes the data to the underlying stream and keeps a copy of the data
+	 * as long as it does not exceed a maximum size.
+	 */
+	protected static class CachingOutputStream extends FilterOutputStream {
+
+		/**
+		 * Holds the copy of the data or null if the data exceeded the maximum
+		 * size.
+		 */
+		protected ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+		/**
+		 * Holds the maximum size of the copy.
+		 */
+		protected long maxSize;
+
+		/**
+		 * Constructs a new stream that writes to the specified stream and keeps
+		 * a copy of at most <code>maxSize</code> bytes.
+		 */
+		public CachingOutputStream(OutputStream out, long maxSize) {
+			super(out);
+			this.maxSize = maxSize;
+		}
+
+		public void write(int b) throws IOException {
+			out.write(b);
+			if (copy != null) {
+				if (copy.size() + 1 > maxSize)
+					copy = null;
+				else
+					copy.write(b);
+			}
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			if (copy != null) {
+				if (copy.size() + len > maxSize)
+					copy = null;
+				else
+					copy.write(b, off, len);
+			}
+		}
+
+		/**
+		 * Returns the copy of the data or null if the data exceeded the
+		 * maximum size.
+		 */
+		public byte[] toByteArray() {
+			return (copy != null) ? copy.toByteArray() : null;
+		}
+
+	}
+
 	/**
 	 * HTTP response. Return one of these from serve().
 	 */
@@ -283,6 +877,15 @@ public class JGraphpadSVGServer {
 			this.mimeType = mimeType;
 		}
 
+		/**
+		 * Constructs a response whose content is streamed to the client.
+		 */
+		public Response(String status, String mimeType, Content content) {
+			this.status = status;
+			this.mimeType = mimeType;
+			this.content = content;
+		}
+
 		/**
 		 * Adds given line to the header.
 		 */
@@ -305,6 +908,12 @@ public class JGraphpadSVGServer {
 		 */
 		public InputStream data;
 
+		/**
+		 * Streamed content of the response, may be null. This is used instead
+		 * of the data if it is not null.
+		 */
+		public Content content;
+
 		/**
 		 * Headers for the HTTP response. Use addHeader() to add lines.
 		 */
@@ -312,82 +921,174 @@ public class JGraphpadSVGServer {
 	}
 
 	/**
-	 * Handles one session, i.e. parses the HTTP request and returns the
-	 * response.
+	 * Writes the content of a streaming response. Use this for content which
+	 * is produced by an encoder, so that it may be written straight to the
+	 * socket without buffering the complete response.
+	 */
+	public interface Content {
+
+		/**
+		 * Writes the content to the specified stream. The stream should not
+		 * be closed.
+		 * 
+		 * @param out
+		 *            The stream to write the content to.
+		 */
+		public void write(OutputStream out) throws IOException;
+
+	}
+
+	/**
+	 * Handles one connection, i.e. parses the HTTP requests and returns the
+	 * responses until the client or the server closes the connection.
 	 */
 	private class HTTPSession implements Runnable {
+
 		public HTTPSession(Socket s) {
 			mySocket = s;
-			Thread t = new Thread(this);
-			t.setDaemon(true);
-			t.start();
 		}
 
 		public void run() {
 			try {
-				InputStream is = mySocket.getInputStream();
-				if (is == null)
-					return;
-				BufferedReader in = new BufferedReader(
-						new InputStreamReader(is));
-
-				// Read the request line
-				StringTokenizer st = new StringTokenizer(in.readLine());
-				if (!st.hasMoreTokens())
-					sendError(HTTP_BADREQUEST,
-							"BAD REQUEST: Syntax error. Usage: GET /example/file.html");
+				mySocket.setSoTimeout(KEEPALIVE_TIMEOUT);
+				myIn = new BufferedInputStream(mySocket.getInputStream());
+				myOut = new BufferedOutputStream(mySocket.getOutputStream());
+				boolean keepAlive = true;
+				for (int i = 1; keepAlive && i <= MAX_KEEPALIVE_REQUESTS; i++)
+					keepAlive = handleRequest(i < MAX_KEEPALIVE_REQUESTS);
+			} catch (InterruptedException e) {
+				// error has been sent
+			} catch (IOException e) {
+				// client closed the connection or timed out
+			} finally {
+				try {
+					mySocket.close();
+				} catch (Throwable t) {
+				}
+				connections.release();
+			}
+		}
 
-				String method = st.nextToken();
+		/**
+		 * Reads and handles the next request on the connection. Returns true
+		 * if the connection should be kept open for further requests.
+		 */
+		private boolean handleRequest(boolean allowKeepAlive)
+				throws IOException, InterruptedException {
 
-				if (!st.hasMoreTokens())
-					sendError(HTTP_BADREQUEST,
-							"BAD REQUEST: Missing URI. Usage: GET /example/file.html");
+			// Read the request line, skipping empty lines
+			String line = readLine(MAX_HEADER_SIZE);
+			while (line != null && line.length() == 0)
+				line = readLine(MAX_HEADER_SIZE);
+			if (line == null)
+				return false;
+			StringTokenizer st = new StringTokenizer(line);
+			if (!st.hasMoreTokens())
+				sendError(HTTP_BADREQUEST,
+						"BAD REQUEST: Syntax error. Usage: GET /example/file.html");
 
-				String uri = decodePercent(st.nextToken());
+			String method = st.nextToken();
 
-				// Decode parameters from the URI
-				Properties parms = new Properties();
-				int qmi = uri.indexOf('?');
-				if (qmi >= 0) {
-					decodeParms(uri.substring(qmi + 1), parms);
-					uri = decodePercent(uri.substring(0, qmi));
-				}
+			if (!st.hasMoreTokens())
+				sendError(HTTP_BADREQUEST,
+						"BAD REQUEST: Missing URI. Usage: GET /example/file.html");
 
-				// If there's another token, it's protocol version,
-				// followed by HTTP headers. Ignore version but parse headers.
-				Properties header = new Properties();
-				if (st.hasMoreTokens()) {
-					String line = in.readLine();
-					while (line.trim().length() > 0) {
-						int p = line.indexOf(':');
-						header.put(line.substring(0, p).trim(), line.substring(
-								p + 1).trim());
-						line = in.readLine();
-					}
-				}
+			String uri = st.nextToken();
 
-				// If the method is POST, there may be parameters
-				// in data section, too, read another line:
-				if (method.equalsIgnoreCase("POST"))
-					decodeParms(in.readLine(), parms);
+			// Decode parameters from the URI
+			Properties parms = new Properties();
+			int qmi = uri.indexOf('?');
+			if (qmi >= 0) {
+				decodeParms(uri.substring(qmi + 1), parms);
+				uri = decodePercent(uri.substring(0, qmi));
+			} else
+				uri = decodePercent(uri);
 
-				// Ok, now do the serve()
-				Response r = serve(uri, method, header, parms);
-				if (r == null)
-					sendError(HTTP_INTERNALERROR,
-							"SERVER INTERNAL ERROR: Serve() returned a null response.");
-				else
-					sendResponse(r.status, r.mimeType, r.header, r.data);
+			// If there's another token, it's protocol version,
+			// followed by HTTP headers.
+			Properties header = new Properties();
+			String version = "HTTP/1.0";
+			if (st.hasMoreTokens()) {
+				version = st.nextToken();
+				int size = 0;
+				line = readLine(MAX_HEADER_SIZE);
+				while (line != null && line.trim().length() > 0) {
+					size += line.length();
+					if (size > MAX_HEADER_SIZE)
+						sendError(HTTP_HEADERTOOLARGE,
+								"REQUEST HEADER FIELDS TOO LARGE");
+					int p = line.indexOf(':');
+					if (p > 0)
+						header.put(line.substring(0, p).trim(), line
+								.substring(p + 1).trim());
+					line = readLine(MAX_HEADER_SIZE);
+				}
+			}
+			boolean http11 = version.equalsIgnoreCase("HTTP/1.1");
+			String connection = getHeader(header, "Connection");
+			myKeepAlive = allowKeepAlive
+					&& ((http11) ? !"close".equalsIgnoreCase(connection)
+							: "keep-alive".equalsIgnoreCase(connection));
+			myHttp11 = http11;
 
-				in.close();
-			} catch (Exception ioe) {
+			// Reads the request body, which may contain parameters
+			// in case of a POST request
+			if (getHeader(header, "Transfer-Encoding") != null)
+				sendError(HTTP_NOTIMPLEMENTED,
+						"NOT IMPLEMENTED: Transfer-Encoding in requests");
+			String length = getHeader(header, "Content-Length");
+			if (length != null) {
+				int contentLength = -1;
 				try {
-					sendError(HTTP_INTERNALERROR,
-							"SERVER INTERNAL ERROR: IOException: "
-									+ ioe.getMessage());
-				} catch (Throwable t) {
+					contentLength = Integer.parseInt(length.trim());
+				} catch (NumberFormatException e) {
+					// handled below
 				}
+				if (contentLength < 0)
+					sendError(HTTP_BADREQUEST,
+							"BAD REQUEST: Invalid Content-Length");
+				if (contentLength > MAX_CONTENT_LENGTH)
+					sendError(HTTP_TOOLARGE, "REQUEST ENTITY TOO LARGE");
+				byte[] body = new byte[contentLength];
+				new DataInputStream(myIn).readFully(body);
+				if (method.equalsIgnoreCase("POST"))
+					decodeParms(new String(body, "ISO-8859-1"), parms);
+			}
+
+			// Ok, now do the serve()
+			Response r = null;
+			try {
+				r = serve(uri, method, header, parms);
+			} catch (Exception e) {
+				sendError(HTTP_INTERNALERROR,
+						"SERVER INTERNAL ERROR: Exception: " + e.getMessage());
+			}
+			if (r == null)
+				sendError(HTTP_INTERNALERROR,
+						"SERVER INTERNAL ERROR: Serve() returned a null response.");
+			return sendResponse(r.status, r.mimeType, r.header, r.data,
+					r.content, !method.equalsIgnoreCase("HEAD"));
+		}
+
+		/**
+		 * Reads a line terminated by LF or CRLF from the connection. Returns
+		 * null if the stream ends before the first character.
+		 */
+		private String readLine(int limit) throws IOException,
+				InterruptedException {
+			StringBuffer sb = new StringBuffer();
+			int c = myIn.read();
+			if (c < 0)
+				return null;
+			while (c >= 0 && c != '\n') {
+				if (c != '\r')
+					sb.append((char) c);
+				if (sb.length() > limit)
+					sendError(HTTP_HEADERTOOLARGE,
+							"REQUEST HEADER FIELDS TOO LARGE");
+				c = myIn.read();
 			}
+			return sb.toString();
 		}
 
 		/**
@@ -441,73 +1142,192 @@ public class JGraphpadSVGServer {
 		}
 
 		/**
-		 * Returns an error message as a HTTP response and throws
-		 * InterruptedException to stop furhter request processing.
+		 * Returns an error message as a HTTP response, closes the connection
+		 * and throws InterruptedException to stop further request processing.
 		 */
 		private void sendError(String status, String msg)
 				throws InterruptedException {
-			sendResponse(status, MIME_PLAINTEXT, null,
-					new ByteArrayInputStream(msg.getBytes()));
+			myKeepAlive = false;
+			try {
+				sendResponse(status, MIME_PLAINTEXT, null,
+						new ByteArrayInputStream(msg.getBytes()), null, true);
+			} catch (IOException e) {
+				// ignore
+			}
 			throw new InterruptedException();
 		}
 
 		/**
-		 * Sends given response to the socket.
+		 * Sends given response to the socket. Data of known length is sent
+		 * with a Content-Length header, streamed content is sent using the
+		 * chunked transfer encoding for HTTP/1.1 clients. Returns true if the
+		 * connection may be kept open.
 		 */
-		private void sendResponse(String status, String mime,
-				Properties header, InputStream data) {
-			try {
-				if (status == null)
-					throw new Error("sendResponse(): Status can't be null.");
+		private boolean sendResponse(String status, String mime,
+				Properties header, InputStream data, Content content,
+				boolean sendBody) throws IOException {
+			if (status == null)
+				throw new Error("sendResponse(): Status can't be null.");
 
-				OutputStream out = mySocket.getOutputStream();
-				PrintWriter pw = new PrintWriter(out);
-				pw.print("HTTP/1.0 " + status + " \r\n");
+			boolean bodyless = status.equals(HTTP_NOTMODIFIED);
+			boolean chunked = false;
+			long contentLength = -1;
+			if (content == null && data instanceof ByteArrayInputStream)
+				contentLength = data.available();
+			else if (content == null && data == null)
+				contentLength = 0;
+			else if (myHttp11)
+				chunked = true;
+			else
+				myKeepAlive = false;
 
-				if (mime != null)
-					pw.print("Content-Type: " + mime + "\r\n");
+			StringBuffer sb = new StringBuffer();
+			sb.append((myHttp11) ? "HTTP/1.1 " : "HTTP/1.0 ");
+			sb.append(status + " \r\n");
 
-				if (header == null || header.getProperty("Date") == null)
-					pw.print("Date: " + gmtFrmt.format(new Date()) + "\r\n");
+			if (mime != null && !bodyless)
+				sb.append("Content-Type: " + mime + "\r\n");
 
-				if (header != null) {
-					Enumeration e = header.keys();
-					while (e.hasMoreElements()) {
-						String key = (String) e.nextElement();
-						String value = header.getProperty(key);
-						pw.print(key + ": " + value + "\r\n");
-					}
+			if (header == null || header.getProperty("Date") == null)
+				sb.append("Date: " + formatDate(new Date()) + "\r\n");
+
+			if (header != null) {
+				Enumeration e = header.keys();
+				while (e.hasMoreElements()) {
+					String key = (String) e.nextElement();
+					String value = header.getProperty(key);
+					sb.append(key + ": " + value + "\r\n");
 				}
+			}
 
-				pw.print("\r\n");
-				pw.flush();
+			if (!bodyless) {
+				if (chunked)
+					sb.append("Transfer-Encoding: chunked\r\n");
+				else if (contentLength >= 0)
+					sb.append("Content-Length: " + contentLength + "\r\n");
+			}
+			sb.append("Connection: "
+					+ ((myKeepAlive) ? "keep-alive" : "close") + "\r\n");
+			sb.append("\r\n");
+			myOut.write(sb.toString().getBytes("ISO-8859-1"));
+
+			if (sendBody && !bodyless && (data != null || content != null)) {
+				OutputStream out = (chunked) ? new ChunkedOutputStream(myOut)
+						: (OutputStream) new FilterOutputStream(myOut) {
+							public void write(byte[] b, int off, int len)
+									throws IOException {
+								out.write(b, off, len);
+							}
 
-				if (data != null) {
-					byte[] buff = new byte[2048];
-					int read = 2048;
-					while (read == 2048) {
-						read = data.read(buff, 0, 2048);
+							public void close() throws IOException {
+								flush();
+							}
+						};
+				if (content != null) {
+					content.write(out);
+				} else {
+					byte[] buff = new byte[8192];
+					int read = data.read(buff);
+					while (read >= 0) {
 						out.write(buff, 0, read);
+						read = data.read(buff);
 					}
 				}
-				out.flush();
 				out.close();
-				if (data != null)
-					data.close();
-			} catch (IOException ioe) {
-				// Couldn't write? No can do.
-				try {
-					mySocket.close();
-				} catch (Throwable t) {
-				}
 			}
+			myOut.flush();
+			if (data != null)
+				data.close();
+			return myKeepAlive;
 		}
 
 		private Socket mySocket;
 
-		private BufferedReader myIn;
+		private InputStream myIn;
+
+		private OutputStream myOut;
+
+		private boolean myHttp11, myKeepAlive;
 	};
 
+	/**
+	 * Writes the data to the underlying stream using the chunked transfer
+	 * encoding. Closing the stream writes the last chunk but does not close
+	 * the underlying stream.
+	 */
+	private static class ChunkedOutputStream extends FilterOutputStream {
+
+		private byte[] buffer = new byte[8192];
+
+		private int count = 0;
+
+		private boolean closed = false;
+
+		public ChunkedOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		public void write(int b) throws IOException {
+			if (count == buffer.length)
+				writeChunk();
+			buffer[count++] = (byte) b;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len >= buffer.length) {
+				writeChunk();
+				writeChunk(b, off, len);
+			} else {
+				if (count + len > buffer.length)
+					writeChunk();
+				System.arraycopy(b, off, buffer, count, len);
+				count += len;
+			}
+		}
+
+		public void flush() throws IOException {
+			writeChunk();
+			out.flush();
+		}
+
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				writeChunk();
+				out.write("0\r\n\r\n".getBytes("ISO-8859-1"));
+				out.flush();
+			}
+		}
+
+		private void writeChunk() throws IOException {
+			writeChunk(buffer, 0, count);
+			count = 0;
+		}
+
+		private void writeChunk(byte[] b, int off, int len) throws IOException {
+			if (len > 0) {
+				out.write((Integer.toHexString(len) + "\r\n")
+						.getBytes("ISO-8859-1"));
+				out.write(b, off, len);
+				out.write("\r\n".getBytes("ISO-8859-1"));
+			}
+		}
+	}
+
+	/**
+	 * Returns the value of the specified header ignoring the case of the
+	 * header name.
+	 */
+	protected static String getHeader(Properties header, String name) {
+		Enumeration e = header.keys();
+		while (e.hasMoreElements()) {
+			String key = (String) e.nextElement();
+			if (key.equalsIgnoreCase(name))
+				return header.getProperty(key);
+		}
+		return null;
+	}
+
 	/**
 	 * URL-encodes everything between "/"-characters. Encodes spaces as '%20'
 	 * instead of '+'.
@@ -537,6 +1357,16 @@ public class JGraphpadSVGServer {
 		gmtFrmt.setTimeZone(TimeZone.getTimeZone("GMT"));
 	}
 
+	/**
+	 * Formats the specified date using the GMT date formatter, which is not
+	 * thread-safe.
+	 */
+	private static String formatDate(Date date) {
+		synchronized (gmtFrmt) {
+			return gmtFrmt.format(date);
+		}
+	}
+
 	/**
 	 * @return Returns the serverSocket.
 	 */
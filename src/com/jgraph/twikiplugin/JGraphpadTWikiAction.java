@@ -10,7 +10,7 @@
 package com.jgraph.twikiplugin;
 
 import java.awt.event.ActionEvent;
-import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
@@ -131,10 +131,11 @@ public class JGraphpadTWikiAction extends JGraphpadCodecAction {
 			out = editor.getModel().getOutputStream(imgFilename);
 			JGraphEditorDiagramPane diagramPane = JGraphEditorDiagramPane
 					.getParentDiagramPane(graph);
-			BufferedImage img = diagramPane.getImage(null, inset);
+			RenderedImage img = diagramPane.getTiledImage(null, inset);
 
-			// Note: Use JGraphpadImageEncoder.writeGIF(img, out) for GIF files,
-			// this is OK for all built-in types (eg. JPG, BMP and PNG).
+			// Note: Use JGraphpadImageEncoder.writeGIF(img, out) with
+			// diagramPane.getImage for GIF files, the tiled image is OK for all
+			// built-in types that are written row by row (eg. BMP and PNG).
 			ImageIO.write(img, "png", out);
 			out.flush();
 			out.close();